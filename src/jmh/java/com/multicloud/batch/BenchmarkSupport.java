@@ -0,0 +1,57 @@
+package com.multicloud.batch;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+
+/**
+ * Shared setup of the JMH benchmarks: an in-memory H2 database in MariaDB mode with the billing
+ * tables, and repository instances whose default (JDBC) methods can be called without Spring Data.
+ */
+public final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * @param name database name, one per benchmark class so forks and classes don't share state
+     */
+    public static JdbcTemplate h2JdbcTemplate(String name) {
+
+        SimpleDriverDataSource dataSource = new SimpleDriverDataSource(
+                new org.h2.Driver(),
+                "jdbc:h2:mem:%s;MODE=MariaDB;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1".formatted(name),
+                "sa",
+                ""
+        );
+
+        new ResourceDatabasePopulator(new ClassPathResource("benchmark-schema.sql")).execute(dataSource);
+
+        return new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Only the default methods of the repository can be called, anything else would need Spring Data JPA.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T repository(Class<T> repositoryClass) {
+
+        InvocationHandler handler = (proxy, method, args) -> {
+
+            if (!method.isDefault()) {
+                throw new UnsupportedOperationException(method.getName() + " is not available in benchmarks");
+            }
+
+            return InvocationHandler.invokeDefault(proxy, method, args);
+        };
+
+        return (T) Proxy.newProxyInstance(
+                repositoryClass.getClassLoader(), new Class<?>[]{repositoryClass}, handler
+        );
+    }
+
+}
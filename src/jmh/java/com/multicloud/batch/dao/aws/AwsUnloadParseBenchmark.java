@@ -0,0 +1,114 @@
+package com.multicloud.batch.dao.aws;
+
+import com.multicloud.batch.util.DecimalParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Decompresses and parses a synthetic gzip UNLOAD part (same columns as the CUR query) and binds
+ * the numeric columns the way the upsert does, without the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AwsUnloadParseBenchmark {
+
+    private static final String[] SERVICES = {
+            "AmazonEC2", "AmazonS3", "AmazonRDS", "AWSLambda", "AmazonCloudFront", "AmazonDynamoDB", "AWSDataTransfer"
+    };
+
+    private static final String[] REGIONS = {"eu-west-1", "eu-central-1", "us-east-1", "ap-southeast-1", ""};
+
+    @Param({"10000", "100000"})
+    private int rows;
+
+    private byte[] gzipFile;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        Random random = new Random(42);
+        LocalDate month = LocalDate.of(2025, 6, 1);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+
+            for (int i = 0; i < rows; i++) {
+
+                String service = SERVICES[random.nextInt(SERVICES.length)];
+
+                writer.write(String.join(
+                        ",",
+                        month.plusDays(random.nextInt(30)).toString(),
+                        month.toString(),
+                        "%012d".formatted(100000000000L + random.nextInt(200)),
+                        service,
+                        "\"%s service, billed\"".formatted(service),
+                        "SKU%08d".formatted(random.nextInt(5000)),
+                        REGIONS[random.nextInt(REGIONS.length)],
+                        "\"EU (Ireland)\"",
+                        "USD",
+                        random.nextBoolean() ? "OnDemand" : "Reserved",
+                        random.nextInt(10) == 0 ? "Credit" : "Usage",
+                        "EUW1-BoxUsage:t3.medium",
+                        decimal(random, 4),
+                        "Hrs",
+                        decimal(random, 2),
+                        decimal(random, 2),
+                        random.nextInt(5) == 0 ? "0" : decimal(random, 2)
+                ));
+                writer.write('\n');
+            }
+
+        }
+
+        gzipFile = bytes.toByteArray();
+    }
+
+    @Benchmark
+    public long parseAndBind(Blackhole blackhole) throws IOException {
+
+        long[] count = {0};
+
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(gzipFile), 64 * 1024)) {
+
+            AwsBillingServiceImpl.parseUnloadedFile(inputStream, record -> {
+
+                // Same columns the upsert reads from the record
+                blackhole.consume(record.get(0));
+                blackhole.consume(record.get(2));
+                blackhole.consume(DecimalParser.parse(record.get(12)));
+                blackhole.consume(DecimalParser.parse(record.get(14)));
+                blackhole.consume(DecimalParser.parse(record.get(15)));
+                blackhole.consume(DecimalParser.parse(record.get(16)));
+
+                count[0]++;
+            });
+
+        }
+
+        return count[0];
+    }
+
+    private static String decimal(Random random, int integerDigits) {
+        return "%d.%08d".formatted(random.nextInt((int) Math.pow(10, integerDigits)), random.nextInt(100000000));
+    }
+
+}
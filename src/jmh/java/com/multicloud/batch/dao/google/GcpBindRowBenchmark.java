@@ -0,0 +1,104 @@
+package com.multicloud.batch.dao.google;
+
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.FieldList;
+import com.google.cloud.bigquery.FieldValue;
+import com.google.cloud.bigquery.FieldValueList;
+import com.google.cloud.bigquery.StandardSQLTypeName;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binds synthetic BigQuery REST rows (string encoded, like tabledata.list returns them) to
+ * GcpBillingDailyCost entities.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GcpBindRowBenchmark {
+
+    private static final FieldList SCHEMA = FieldList.of(
+            Field.of("usage_date", StandardSQLTypeName.DATE),
+            Field.of("billing_month", StandardSQLTypeName.DATE),
+            Field.of("billing_account_id", StandardSQLTypeName.STRING),
+            Field.of("project_id", StandardSQLTypeName.STRING),
+            Field.of("project_name", StandardSQLTypeName.STRING),
+            Field.of("service_code", StandardSQLTypeName.STRING),
+            Field.of("service_name", StandardSQLTypeName.STRING),
+            Field.of("sku_id", StandardSQLTypeName.STRING),
+            Field.of("sku_description", StandardSQLTypeName.STRING),
+            Field.of("region", StandardSQLTypeName.STRING),
+            Field.of("location", StandardSQLTypeName.STRING),
+            Field.of("currency", StandardSQLTypeName.STRING),
+            Field.of("cost_type", StandardSQLTypeName.STRING),
+            Field.of("usage_amount", StandardSQLTypeName.FLOAT64),
+            Field.of("usage_unit", StandardSQLTypeName.STRING),
+            Field.of("cost", StandardSQLTypeName.FLOAT64),
+            Field.of("credits", StandardSQLTypeName.FLOAT64)
+    );
+
+    @Param({"10000"})
+    private int rows;
+
+    private List<FieldValueList> fieldValues;
+
+    private GoogleBillingServiceImpl service;
+
+    @Setup
+    public void setUp() {
+
+        Random random = new Random(42);
+        LocalDate month = LocalDate.of(2025, 6, 1);
+
+        fieldValues = new ArrayList<>(rows);
+
+        for (int i = 0; i < rows; i++) {
+
+            List<FieldValue> values = List.of(
+                    value(month.plusDays(random.nextInt(30)).toString()),
+                    value(month.toString()),
+                    value("01A2B3-C4D5E6-F7A8B9"),
+                    value("azerion-project-%03d".formatted(random.nextInt(300))),
+                    value("Azerion Project"),
+                    value("%04X-%04X-%04X".formatted(random.nextInt(40), random.nextInt(65536), random.nextInt(65536))),
+                    value("Compute Engine"),
+                    value("%04X-%04X-%04X".formatted(random.nextInt(4000), random.nextInt(65536), random.nextInt(65536))),
+                    value("N2 Instance Core running in Belgium"),
+                    value("europe-west1"),
+                    value("europe-west1"),
+                    value("EUR"),
+                    value("regular"),
+                    value(String.valueOf(random.nextDouble() * 10_000)),
+                    value("seconds"),
+                    value(String.valueOf(Math.round(random.nextDouble() * 1e10) / 1e8)),
+                    value(random.nextInt(4) == 0 ? "-0.125" : "0")
+            );
+
+            fieldValues.add(FieldValueList.of(values, SCHEMA));
+        }
+
+        // bindRow() doesn't use any of the collaborators
+        service = new GoogleBillingServiceImpl(null, null, null, null, null, null, null, null);
+    }
+
+    @Benchmark
+    public void bindRow(Blackhole blackhole) {
+        for (FieldValueList row : fieldValues) {
+            blackhole.consume(service.bindRow(row, true));
+        }
+    }
+
+    private static FieldValue value(String value) {
+        return FieldValue.of(FieldValue.Attribute.PRIMITIVE, value);
+    }
+
+}
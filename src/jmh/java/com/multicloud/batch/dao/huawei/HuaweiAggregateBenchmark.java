@@ -0,0 +1,138 @@
+package com.multicloud.batch.dao.huawei;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.multicloud.batch.dao.huawei.payload.HuaweiBillingGroup;
+import com.multicloud.batch.dao.huawei.payload.HuaweiResourceBillingResponse;
+import com.multicloud.batch.dao.huawei.payload.HuaweiResourceBillingResponse.MonthlyRecord;
+import com.multicloud.batch.model.HuaweiBillingDailyCost;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregates synthetic resource billing pages (1000 records each, as JSON) into {@link HuaweiBillingGroup}s
+ * with the streaming {@link HuaweiResourceBillingDecoder} and the dictionary-encoded {@link HuaweiCostAggregator}.
+ * {@code bind} is the data binding of the whole response the decoder replaced, without any aggregation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HuaweiAggregateBenchmark {
+
+    private static final int PAGE_SIZE = 1000;
+
+    private static final String[] SERVICES = {
+            "hws.service.type.ec2", "hws.service.type.obs", "hws.service.type.vpc", "hws.service.type.ebs",
+            "hws.service.type.rds", "hws.service.type.cdn"
+    };
+
+    @Param({"10", "100"})
+    private int pages;
+
+    // Average number of records (resource instances) per billing group
+    @Param({"10"})
+    private int recordsPerGroup;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private List<byte[]> bodies;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        Random random = new Random(42);
+        int groups = Math.max(1, pages * PAGE_SIZE / recordsPerGroup);
+
+        bodies = new ArrayList<>();
+
+        for (int page = 0; page < pages; page++) {
+
+            List<MonthlyRecord> records = new ArrayList<>(PAGE_SIZE);
+
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                records.add(monthlyRecord(random, random.nextInt(groups)));
+            }
+
+            bodies.add(objectMapper.writeValueAsBytes(
+                    new HuaweiResourceBillingResponse(records, pages * PAGE_SIZE, "EUR")
+            ));
+        }
+    }
+
+    @Benchmark
+    public List<HuaweiBillingDailyCost> aggregate() throws IOException {
+
+        HuaweiCostAggregator aggregator = new HuaweiCostAggregator();
+
+        for (byte[] body : bodies) {
+            aggregator.merge(HuaweiResourceBillingDecoder.decode(new ByteArrayInputStream(body)).groups());
+        }
+
+        List<HuaweiBillingDailyCost> costs = new ArrayList<>(aggregator.size());
+        aggregator.forEachSorted(true, (group, cost) -> costs.add(cost));
+
+        return costs;
+    }
+
+    @Benchmark
+    public int bind() throws IOException {
+
+        int records = 0;
+
+        for (byte[] body : bodies) {
+            records += objectMapper.readValue(body, HuaweiResourceBillingResponse.class).monthly_records().size();
+        }
+
+        return records;
+    }
+
+    private static MonthlyRecord monthlyRecord(Random random, int group) {
+
+        String service = SERVICES[group % SERVICES.length];
+
+        return new MonthlyRecord(
+                "2025-06",
+                "2025-06-%02d".formatted(1 + group % 30),
+                1,
+                "customer-%04d".formatted(group % 97),
+                "eu-west-101",
+                "EU-Dublin",
+                service,
+                service + ".vm",
+                service.toUpperCase(),
+                "Virtual Machine",
+                "instance-" + random.nextInt(1_000_000),
+                "resource-" + group,
+                null,
+                "sku-%05d".formatted(group % 1013),
+                "0",
+                "default",
+                1,
+                amount(random),
+                null, null, null, null, null, null,
+                amount(random),
+                null,
+                amount(random),
+                null,
+                null, null, null, null, null, null,
+                "spec of sku %d".formatted(group % 1013),
+                null, null, null, null, null, null, null, null,
+                "payer-01",
+                null, null, null, null, null
+        );
+    }
+
+    private static BigDecimal amount(Random random) {
+        return BigDecimal.valueOf(random.nextInt(100_000_000), 6);
+    }
+
+}
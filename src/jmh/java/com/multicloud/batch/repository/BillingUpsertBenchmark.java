@@ -0,0 +1,160 @@
+package com.multicloud.batch.repository;
+
+import com.multicloud.batch.BenchmarkSupport;
+import com.multicloud.batch.model.GcpBillingDailyCost;
+import com.multicloud.batch.model.HuaweiBillingDailyCost;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The upsert* batch writers against H2 in MariaDB mode. The first invocation inserts, every
+ * following one takes the ON DUPLICATE KEY UPDATE path, like the daily re-syncs of the current month.
+ * Absolute numbers differ from MariaDB, the benchmark is meant for comparing binding/batching changes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BillingUpsertBenchmark {
+
+    // Rows per writer call, the batch size of the AWS/GCP ingestion
+    @Param({"5000"})
+    private int rows;
+
+    // Fixed statement size, so the adaptive sizing doesn't blur comparisons
+    @Param({"500"})
+    private int statementRows;
+
+    private BulkUpsertWriter writer;
+
+    private AwsBillingDailyCostRepository awsRepository;
+    private GcpBillingDailyCostRepository gcpRepository;
+    private HuaweiBillingDailyCostRepository huaweiRepository;
+
+    private List<CSVRecord> awsRecords;
+    private List<GcpBillingDailyCost> gcpBills;
+    private List<HuaweiBillingDailyCost> huaweiBills;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        JdbcTemplate jdbcTemplate = BenchmarkSupport.h2JdbcTemplate("billing_upsert");
+
+        writer = new BulkUpsertWriter(jdbcTemplate);
+        ReflectionTestUtils.setField(writer, "initialRows", statementRows);
+        ReflectionTestUtils.setField(writer, "adaptive", false);
+        ReflectionTestUtils.setField(writer, "packetRatio", 0.5);
+
+        awsRepository = BenchmarkSupport.repository(AwsBillingDailyCostRepository.class);
+        gcpRepository = BenchmarkSupport.repository(GcpBillingDailyCostRepository.class);
+        huaweiRepository = BenchmarkSupport.repository(HuaweiBillingDailyCostRepository.class);
+
+        LocalDate month = LocalDate.of(2025, 6, 1);
+
+        // Unique keys: the row index goes into the account/sku columns
+        StringBuilder csv = new StringBuilder();
+
+        for (int i = 0; i < rows; i++) {
+            csv.append(String.join(
+                    ",",
+                    month.plusDays(i % 30).toString(), month.toString(), "%012d".formatted(i), "AmazonEC2",
+                    "Amazon Elastic Compute Cloud", "SKU%08d".formatted(i), "eu-west-1", "EU (Ireland)", "USD",
+                    "OnDemand", "Usage", "EUW1-BoxUsage:t3.medium", "24.00000000", "Hrs", "1.00160000",
+                    "1.00160000", "0.95150000"
+            )).append('\n');
+        }
+
+        awsRecords = CSVFormat.DEFAULT.parse(new StringReader(csv.toString())).getRecords();
+
+        Random random = new Random(42);
+
+        gcpBills = new ArrayList<>(rows);
+        huaweiBills = new ArrayList<>(rows);
+
+        for (int i = 0; i < rows; i++) {
+
+            gcpBills.add(GcpBillingDailyCost.builder()
+                    .usageDate(month.plusDays(i % 30))
+                    .billingMonth(month)
+                    .billingAccountId("01A2B3-C4D5E6-F7A8B9")
+                    .projectId("azerion-project-" + i)
+                    .projectName("Azerion Project")
+                    .serviceCode("6F81-5844-456A")
+                    .serviceName("Compute Engine")
+                    .skuId("SKU-" + i)
+                    .skuDescription("N2 Instance Core running in Belgium")
+                    .region("europe-west1")
+                    .location("europe-west1")
+                    .currency("EUR")
+                    .costType("regular")
+                    .usageAmount(amount(random))
+                    .usageUnit("seconds")
+                    .cost(amount(random))
+                    .credits(BigDecimal.ZERO)
+                    .extCost(BigDecimal.ZERO)
+                    .extCredits(BigDecimal.ZERO)
+                    .build());
+
+            huaweiBills.add(HuaweiBillingDailyCost.builder()
+                    .billDate(month.plusDays(i % 30))
+                    .billingMonth(month)
+                    .payerAccountId("payer-01")
+                    .customerId("customer-" + i)
+                    .enterpriseProjectId("0")
+                    .enterpriseProjectName("default")
+                    .cloudServiceType("hws.service.type.ec2")
+                    .cloudServiceTypeName("Elastic Cloud Server")
+                    .skuCode("sku-" + i)
+                    .productSpecDesc("s6.large.2")
+                    .resourceTypeCode("hws.resource.type.vm")
+                    .resourceTypeName("Virtual Machine")
+                    .resourceName("ecs-" + i)
+                    .region("eu-west-101")
+                    .regionName("EU-Dublin")
+                    .chargeMode(1)
+                    .billType(1)
+                    .usageAmount(amount(random))
+                    .consumeAmount(amount(random))
+                    .debtAmount(BigDecimal.ZERO)
+                    .officialAmount(amount(random))
+                    .extConsumeAmount(BigDecimal.ZERO)
+                    .extDebtAmount(BigDecimal.ZERO)
+                    .extOfficialAmount(BigDecimal.ZERO)
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public long upsertAwsRecords() {
+        return awsRepository.upsertAwsBillingDailyCostRecords(awsRecords, writer, true);
+    }
+
+    @Benchmark
+    public long upsertGcp() {
+        return gcpRepository.upsertGcpBillingDailyCosts(gcpBills, writer, true);
+    }
+
+    @Benchmark
+    public long upsertHuawei() {
+        return huaweiRepository.upsertHuaweiBillingDailyCosts(huaweiBills, writer, true);
+    }
+
+    private static BigDecimal amount(Random random) {
+        return BigDecimal.valueOf(random.nextInt(100_000_000), 8);
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.multicloud.batch.service;
+
+import com.multicloud.batch.BenchmarkSupport;
+import com.multicloud.batch.enums.CloudProvider;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ServiceTypeService#getParentCategory} as called once per row by the merge, with the map
+ * loaded from service_types. A quarter of the lookups miss ("Unknown").
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceTypeLookupBenchmark {
+
+    private static final CloudProvider[] PROVIDERS = CloudProvider.values();
+
+    private static final int LOOKUPS = 10_000;
+
+    @Param({"2000"})
+    private int serviceTypes;
+
+    private ServiceTypeService serviceTypeService;
+
+    private String[] codes;
+    private CloudProvider[] providers;
+
+    @Setup
+    public void setUp() {
+
+        JdbcTemplate jdbcTemplate = BenchmarkSupport.h2JdbcTemplate("service_type_lookup");
+
+        List<Object[]> rows = new ArrayList<>();
+
+        for (int i = 0; i < serviceTypes; i++) {
+            rows.add(new Object[]{
+                    "service-code-" + i, PROVIDERS[i % PROVIDERS.length].name(), "Category " + (i % 25)
+            });
+        }
+
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO service_types (code, cloud_provider, parent_category) VALUES (?, ?, ?)", rows
+        );
+
+        serviceTypeService = new ServiceTypeService(jdbcTemplate);
+        serviceTypeService.fetchAndStoreServiceTypeToMap();
+
+        Random random = new Random(42);
+
+        codes = new String[LOOKUPS];
+        providers = new CloudProvider[LOOKUPS];
+
+        for (int i = 0; i < LOOKUPS; i++) {
+            int code = random.nextInt(serviceTypes + serviceTypes / 3);
+            codes[i] = "service-code-" + code;
+            providers[i] = PROVIDERS[code % PROVIDERS.length];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void getParentCategory(Blackhole blackhole) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            blackhole.consume(serviceTypeService.getParentCategory(codes[i], providers[i]));
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+-- Tables touched by the benchmarks, same unique keys as the entities (H2 in MariaDB mode)
+
+DROP TABLE IF EXISTS aws_billing_daily_costs;
+DROP TABLE IF EXISTS gcp_billing_daily_costs;
+DROP TABLE IF EXISTS huawei_billing_daily_costs;
+DROP TABLE IF EXISTS service_types;
+
+CREATE TABLE aws_billing_daily_costs
+(
+    id                     BIGINT AUTO_INCREMENT PRIMARY KEY,
+    usage_date             DATE           NOT NULL,
+    billing_month          DATE           NOT NULL,
+    usage_account_id       VARCHAR(32)    NOT NULL,
+    service_code           VARCHAR(64)    NOT NULL,
+    service_name           VARCHAR(128)   NOT NULL,
+    sku_id                 VARCHAR(32)    NOT NULL,
+    region                 VARCHAR(32)    NOT NULL,
+    location               VARCHAR(128)   NOT NULL,
+    currency               VARCHAR(3),
+    pricing_type           VARCHAR(16),
+    billing_type           VARCHAR(32)    NOT NULL,
+    usage_type             VARCHAR(128)   NOT NULL,
+    usage_amount           DECIMAL(30, 8),
+    usage_unit             VARCHAR(128),
+    unblended_cost         DECIMAL(20, 8),
+    blended_cost           DECIMAL(20, 8),
+    net_unblended_cost     DECIMAL(20, 8),
+    ext_unblended_cost     DECIMAL(20, 8),
+    ext_blended_cost       DECIMAL(20, 8),
+    ext_net_unblended_cost DECIMAL(20, 8),
+    CONSTRAINT aws_uq UNIQUE (usage_date, billing_month, usage_account_id, service_code, sku_id, region,
+                              billing_type, usage_type)
+);
+
+CREATE TABLE gcp_billing_daily_costs
+(
+    id                 BIGINT AUTO_INCREMENT PRIMARY KEY,
+    usage_date         DATE           NOT NULL,
+    billing_month      DATE,
+    billing_account_id VARCHAR(32)    NOT NULL,
+    project_id         VARCHAR(128)   NOT NULL,
+    project_name       VARCHAR(128)   NOT NULL,
+    service_code       VARCHAR(64)    NOT NULL,
+    service_name       VARCHAR(128)   NOT NULL,
+    sku_id             VARCHAR(64)    NOT NULL,
+    sku_description    VARCHAR(512)   NOT NULL,
+    region             VARCHAR(64)    NOT NULL,
+    location           VARCHAR(128)   NOT NULL,
+    currency           VARCHAR(3),
+    cost_type          VARCHAR(32)    NOT NULL,
+    usage_amount       DECIMAL(30, 8),
+    usage_unit         VARCHAR(64),
+    cost               DECIMAL(20, 8),
+    credits            DECIMAL(20, 8),
+    ext_cost           DECIMAL(20, 8),
+    ext_credits        DECIMAL(20, 8),
+    CONSTRAINT gcp_uq UNIQUE (usage_date, billing_account_id, project_id, service_code, sku_id, region, cost_type)
+);
+
+CREATE TABLE huawei_billing_daily_costs
+(
+    id                      BIGINT AUTO_INCREMENT PRIMARY KEY,
+    bill_date               DATE           NOT NULL,
+    billing_month           DATE           NOT NULL,
+    payer_account_id        VARCHAR(64)    NOT NULL,
+    customer_id             VARCHAR(64)    NOT NULL,
+    enterprise_project_id   VARCHAR(64),
+    enterprise_project_name VARCHAR(255),
+    cloud_service_type      VARCHAR(256)   NOT NULL,
+    cloud_service_type_name VARCHAR(200),
+    sku_code                VARCHAR(64)    NOT NULL,
+    product_spec_desc       VARCHAR(255),
+    resource_type_code      VARCHAR(64)    NOT NULL,
+    resource_type_name      VARCHAR(200),
+    resource_name           VARCHAR(255),
+    region                  VARCHAR(64)    NOT NULL,
+    region_name             VARCHAR(64),
+    charge_mode             INT            NOT NULL,
+    bill_type               INT            NOT NULL,
+    usage_amount            DECIMAL(30, 8),
+    consume_amount          DECIMAL(20, 8),
+    debt_amount             DECIMAL(20, 8),
+    official_amount         DECIMAL(20, 8),
+    ext_consume_amount      DECIMAL(20, 8),
+    ext_debt_amount         DECIMAL(20, 8),
+    ext_official_amount     DECIMAL(20, 8),
+    CONSTRAINT huawei_uq UNIQUE (bill_date, billing_month, payer_account_id, customer_id, enterprise_project_id,
+                                 cloud_service_type, sku_code, resource_type_code, region, charge_mode, bill_type)
+);
+
+CREATE TABLE service_types
+(
+    id              BIGINT AUTO_INCREMENT PRIMARY KEY,
+    code            VARCHAR(128) NOT NULL,
+    cloud_provider  VARCHAR(16)  NOT NULL,
+    parent_category VARCHAR(128)
+);
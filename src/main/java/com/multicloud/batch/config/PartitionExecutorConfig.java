@@ -0,0 +1,74 @@
+package com.multicloud.batch.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class PartitionExecutorConfig {
+
+    // One bounded pool per provider, shared by every job of that provider,
+    // so the concurrency limit also holds when two jobs overlap.
+
+    // Same switch as the @Async/@Scheduled executors of Spring Boot
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Bean
+    public TaskExecutor awsPartitionTaskExecutor(
+            @Value("${batch_job.partition.aws.concurrency:8}") int concurrency) {
+        return buildExecutor("AwsPartition-", concurrency);
+    }
+
+    @Bean
+    public TaskExecutor gcpPartitionTaskExecutor(
+            @Value("${batch_job.partition.gcp.concurrency:3}") int concurrency) {
+        return buildExecutor("GcpPartition-", concurrency);
+    }
+
+    @Bean
+    public TaskExecutor huaweiPartitionTaskExecutor(
+            @Value("${batch_job.partition.huawei.concurrency:2}") int concurrency) {
+        return buildExecutor("HuaweiPartition-", concurrency);
+    }
+
+    // Workers of calculateCustomerCostStep, one product per task
+    @Bean
+    public TaskExecutor customerCostTaskExecutor(
+            @Value("${batch_job.customer_cost.concurrency:4}") int concurrency) {
+        return buildExecutor("CustomerCost-", concurrency);
+    }
+
+    private TaskExecutor buildExecutor(String threadNamePrefix, int concurrency) {
+
+        if (concurrency < 1) {
+            throw new RuntimeException("Partition concurrency must be at least 1 for " + threadNamePrefix);
+        }
+
+        if (virtualThreads) {
+
+            // A thread per task, the concurrency limit (a semaphore) holds back the submitter instead of a queue
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(concurrency);
+            executor.setTaskTerminationTimeout(60_000);
+
+            return executor;
+        }
+
+        // Fixed size pool, extra partitions wait in the (unbounded) queue
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        executor.initialize();
+
+        return executor;
+    }
+
+}
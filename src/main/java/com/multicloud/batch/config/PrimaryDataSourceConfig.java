@@ -2,6 +2,8 @@ package com.multicloud.batch.config;
 
 import jakarta.persistence.EntityManagerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.batch.BatchDataSource;
+import org.springframework.boot.autoconfigure.batch.BatchTransactionManager;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -11,6 +13,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcTransactionManager;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -24,6 +27,14 @@ import java.util.Map;
  * Email: shamim.molla@vivasoftltd.com
  */
 
+/**
+ * The billing database behind three independently sized pools:
+ * <ul>
+ *     <li>primary: JPA, the sync histories and the billing writes of the partitions,</li>
+ *     <li>batch: Spring Batch metadata (JobRepository), so that busy partitions never starve it,</li>
+ *     <li>reader: read-only connections of the long-running cursor readers (merge, invoice, customer cost).</li>
+ * </ul>
+ */
 @Configuration
 @EnableJpaRepositories(
         basePackages = "com.multicloud.batch.repository",
@@ -81,5 +92,34 @@ public class PrimaryDataSourceConfig {
         return new JdbcTemplate(dataSource);
     }
 
-}
+    @BatchDataSource
+    @Bean(name = "batchDataSource")
+    @ConfigurationProperties(prefix = "spring.datasource.batch.hikari")
+    public DataSource batchDataSource(@Qualifier("primaryDataSourceProperties")
+                                      DataSourceProperties properties) {
+
+        return properties.initializeDataSourceBuilder().build();
+    }
+
+    // The JobRepository commits its metadata on its own pool, independent of the step transactions, so a
+    // chunk's writes and its step execution update are two commits. The schedulers launch a new instance
+    // (time parameter) instead of restarting, and the billing writes are idempotent upserts, so a write whose
+    // metadata commit got lost is just written again by the next run. A step with non-idempotent writes that
+    // is ever restarted (e.g. the billings INSERT of the invoice job) needs the step's transaction manager.
+    @BatchTransactionManager
+    @Bean(name = "batchTransactionManager")
+    public PlatformTransactionManager batchTransactionManager(@Qualifier("batchDataSource") DataSource dataSource) {
 
+        return new JdbcTransactionManager(dataSource);
+    }
+
+    // The driver streams the rows of a cursor by its fetch size (MariaDB Connector/J 3), nothing is buffered
+    @Bean(name = "readerDataSource")
+    @ConfigurationProperties(prefix = "spring.datasource.reader.hikari")
+    public DataSource readerDataSource(@Qualifier("primaryDataSourceProperties")
+                                       DataSourceProperties properties) {
+
+        return properties.initializeDataSourceBuilder().build();
+    }
+
+}
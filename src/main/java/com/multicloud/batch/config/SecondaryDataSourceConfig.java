@@ -37,6 +37,7 @@ public class SecondaryDataSourceConfig {
     }
 
     @Bean(name = "secondaryDataSource")
+    @ConfigurationProperties(prefix = "secondary.datasource.hikari")
     public DataSource secondaryDataSource(@Qualifier("secondaryDataSourceProperties")
                                           DataSourceProperties properties) {
 
@@ -4,6 +4,7 @@ import com.multicloud.batch.service.EncryptionService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -27,6 +28,22 @@ public class SecurityConfig {
 
     private final EncryptionService encryptionService;
 
+    /**
+     * Basic auth for the Prometheus scraper, only on the actuator endpoints.
+     */
+    @Bean
+    @Order(1)
+    public SecurityFilterChain actuatorEndpoints(HttpSecurity http) throws Exception {
+
+        http.securityMatcher("/actuator/**")
+                .authorizeHttpRequests(auth -> auth
+                        .requestMatchers("/actuator/health").permitAll()
+                        .anyRequest().authenticated())
+                .httpBasic(Customizer.withDefaults());
+
+        return http.build();
+    }
+
     @Bean
     public SecurityFilterChain formLoginEndpoints(HttpSecurity http) throws Exception {
 
@@ -1,8 +1,11 @@
 package com.multicloud.batch.dao.aws;
 
+import com.multicloud.batch.enums.UnloadFormat;
 import software.amazon.awssdk.services.athena.AthenaClient;
 import software.amazon.awssdk.services.athena.paginators.GetQueryResultsIterable;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Created by IntelliJ IDEA.
  * User: Md. Shamim Molla
@@ -15,6 +18,19 @@ public interface AthenaService {
 
     void waitForQueryToComplete(String executionId, AthenaClient athenaClient);
 
+    /**
+     * Submits the query (waiting for a free in-flight slot) and blocks until it succeeds.
+     */
+    String executeQuery(String query, String outputLocation, String database, AthenaClient athenaClient);
+
+    /**
+     * Non-blocking variant of {@link #executeQuery}, completes with the execution id once the query succeeded.
+     */
+    CompletableFuture<String> executeQueryAsync(String query, String outputLocation, String database,
+                                                AthenaClient athenaClient);
+
+    CompletableFuture<Void> awaitQueryAsync(String executionId, AthenaClient athenaClient);
+
     void stopAthenaQuery(String executionId, AthenaClient athenaClient);
 
     GetQueryResultsIterable fetchQueryResults(String executionId, AthenaClient athenaClient);
@@ -23,4 +39,13 @@ public interface AthenaService {
 
     String wrapQueryWithUnloadCsvGzip(String selectQuery, String outputLocation);
 
+    String wrapQueryWithUnloadParquet(String selectQuery, String outputLocation);
+
+    /**
+     * UNLOAD with {@code partitioned_by}: one prefix per value of the column ({@code column=value/}).
+     * The column has to be the last one of the SELECT, it is not written to the files.
+     */
+    String wrapQueryWithPartitionedUnload(String selectQuery, String outputLocation, UnloadFormat unloadFormat,
+                                          String column);
+
 }
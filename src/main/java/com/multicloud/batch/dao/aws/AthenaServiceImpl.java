@@ -1,7 +1,15 @@
 package com.multicloud.batch.dao.aws;
 
+import com.multicloud.batch.enums.CloudProvider;
+import com.multicloud.batch.enums.UnloadFormat;
+import com.multicloud.batch.service.IngestMetricsService;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.services.athena.AthenaClient;
 import software.amazon.awssdk.services.athena.model.*;
@@ -9,6 +17,7 @@ import software.amazon.awssdk.services.athena.paginators.GetQueryResultsIterable
 
 import java.time.Duration;
 import java.util.Set;
+import java.util.concurrent.*;
 
 /**
  * Created by IntelliJ IDEA.
@@ -21,6 +30,36 @@ import java.util.Set;
 @Service
 public class AthenaServiceImpl implements AthenaService {
 
+    private static final long INITIAL_POLL_INTERVAL_MS = 500;
+    private static final long MAX_POLL_INTERVAL_MS = 10_000;
+    private static final double POLL_BACKOFF_FACTOR = 1.5;
+    private static final int MAX_SUBMIT_ATTEMPTS = 5;
+
+    @Value("${batch_job.athena.max_in_flight:10}")
+    private int maxInFlight;
+
+    @Value("${batch_job.athena.query_timeout_minutes:10}")
+    private long queryTimeoutMinutes;
+
+    private final IngestMetricsService ingestMetricsService;
+
+    private Semaphore inFlightPermits;
+    private ExecutorService submitExecutor;
+    private ScheduledExecutorService pollScheduler;
+
+    @PostConstruct
+    void init() {
+        inFlightPermits = new Semaphore(maxInFlight, true);
+        submitExecutor = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("AthenaSubmit-", 0).factory());
+        pollScheduler = Executors.newScheduledThreadPool(2, Thread.ofPlatform().name("AthenaPoll-", 0).factory());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        submitExecutor.shutdownNow();
+        pollScheduler.shutdownNow();
+    }
+
     @Override
     public String submitAthenaQuery(String query, String outputLocation, String database, AthenaClient athenaClient) {
 
@@ -44,61 +83,130 @@ public class AthenaServiceImpl implements AthenaService {
 
     @Override
     public void waitForQueryToComplete(String executionId, AthenaClient athenaClient) {
+        join(awaitQueryAsync(executionId, athenaClient, ingestMetricsService.stepTags(CloudProvider.AWS, null)));
+    }
 
-        GetQueryExecutionRequest request = GetQueryExecutionRequest.builder()
-                .queryExecutionId(executionId)
-                .build();
+    @Override
+    public String executeQuery(String query, String outputLocation, String database, AthenaClient athenaClient) {
+        return join(executeQueryAsync(query, outputLocation, database, athenaClient));
+    }
 
-        final long maxWaitMs = Duration.ofMinutes(10).toMillis();
-        final long pollIntervalMs = 1000;
-        long startTime = System.currentTimeMillis();
+    @Override
+    public CompletableFuture<String> executeQueryAsync(String query, String outputLocation, String database,
+                                                       AthenaClient athenaClient) {
 
-        while (true) {
+        // Resolved here, the submit and poll threads have no step context
+        Tags tags = ingestMetricsService.stepTags(CloudProvider.AWS, database);
+        Timer.Sample permitWait = ingestMetricsService.startTimer();
 
-            try {
+        // Submissions wait (in FIFO order) for a free slot, the slot is released once the query ends
+        return CompletableFuture
+                .supplyAsync(() -> {
 
-                GetQueryExecutionResponse response = athenaClient.getQueryExecution(request);
-                QueryExecutionStatus status = response.queryExecution().status();
-                QueryExecutionState state = status.state();
-
-                switch (state) {
-                    case SUCCEEDED:
-                        log.info("Athena query succeeded: {}", executionId);
-                        return;
-
-                    case FAILED:
-                    case CANCELLED:
-                        throw new RuntimeException("Athena query failed: " + status.stateChangeReason());
-
-                    default:
-                        long elapsed = System.currentTimeMillis() - startTime;
-                        if (elapsed > maxWaitMs) {
-                            throw new RuntimeException("Athena query timed out after waiting 10 minutes");
-                        }
-                        Thread.sleep(pollIntervalMs);
-                }
+                    acquirePermit();
+                    ingestMetricsService.stopTimer(permitWait, IngestMetricsService.ATHENA_PERMIT_WAIT, tags);
 
-            } catch (AthenaException e) {
+                    try {
+                        return submitWithRetry(query, outputLocation, database, athenaClient);
+                    } catch (RuntimeException e) {
+                        inFlightPermits.release();
+                        throw e;
+                    }
 
-                if (isRetryableAthenaException(e)) {
+                }, submitExecutor)
+                .thenCompose(executionId -> awaitQueryAsync(executionId, athenaClient, tags)
+                        .whenComplete((ignored, ex) -> inFlightPermits.release())
+                        .thenApply(ignored -> executionId));
+    }
+
+    @Override
+    public CompletableFuture<Void> awaitQueryAsync(String executionId, AthenaClient athenaClient) {
+        return awaitQueryAsync(executionId, athenaClient, ingestMetricsService.stepTags(CloudProvider.AWS, null));
+    }
 
-                    log.warn("Temporary error from Athena: {}. Retrying...", e.awsErrorDetails().errorMessage());
+    private CompletableFuture<Void> awaitQueryAsync(String executionId, AthenaClient athenaClient, Tags tags) {
 
-                    try {
-                        Thread.sleep(2000 + (long) (Math.random() * 1000)); // backoff + jitter
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("Interrupted while waiting for retry", ie);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        long deadline = System.nanoTime() + Duration.ofMinutes(queryTimeoutMinutes).toNanos();
+
+        schedulePoll(
+                executionId, athenaClient, future, INITIAL_POLL_INTERVAL_MS, INITIAL_POLL_INTERVAL_MS, deadline, tags
+        );
+
+        return future;
+    }
+
+    private void schedulePoll(String executionId, AthenaClient athenaClient, CompletableFuture<Void> future,
+                              long delayMs, long pollIntervalMs, long deadline, Tags tags) {
+        pollScheduler.schedule(
+                () -> poll(executionId, athenaClient, future, pollIntervalMs, deadline, tags),
+                delayMs, TimeUnit.MILLISECONDS
+        );
+    }
+
+    private void poll(String executionId, AthenaClient athenaClient, CompletableFuture<Void> future,
+                      long pollIntervalMs, long deadline, Tags tags) {
+
+        if (future.isDone()) {
+            return;
+        }
+
+        GetQueryExecutionRequest request = GetQueryExecutionRequest.builder()
+                .queryExecutionId(executionId)
+                .build();
+
+        try {
+
+            GetQueryExecutionResponse response = athenaClient.getQueryExecution(request);
+            QueryExecutionStatus status = response.queryExecution().status();
+            QueryExecutionState state = status.state();
+
+            switch (state) {
+                case SUCCEEDED:
+                    log.info("Athena query succeeded: {}", executionId);
+                    recordStatistics(response.queryExecution().statistics(), tags);
+                    future.complete(null);
+                    break;
+
+                case FAILED:
+                case CANCELLED:
+                    future.completeExceptionally(
+                            new RuntimeException("Athena query failed: " + status.stateChangeReason())
+                    );
+                    break;
+
+                default:
+                    if (System.nanoTime() > deadline) {
+                        stopAthenaQuery(executionId, athenaClient);
+                        future.completeExceptionally(new RuntimeException(
+                                "Athena query timed out after waiting %d minutes".formatted(queryTimeoutMinutes)
+                        ));
+                        break;
                     }
 
-                } else {
-                    throw new RuntimeException("Non-retryable Athena error", e);
-                }
+                    // Short queries are picked up quickly, long UNLOADs are polled less and less often
+                    long nextInterval = Math.min((long) (pollIntervalMs * POLL_BACKOFF_FACTOR), MAX_POLL_INTERVAL_MS);
+                    schedulePoll(executionId, athenaClient, future, pollIntervalMs, nextInterval, deadline, tags);
+            }
+
+        } catch (AthenaException e) {
 
-            } catch (Exception ex) {
-                throw new RuntimeException("Unexpected error during Athena query polling", ex);
+            if (isRetryableAthenaException(e)) {
+
+                log.warn("Temporary error from Athena: {}. Retrying...", e.awsErrorDetails().errorMessage());
+
+                // backoff + jitter
+                schedulePoll(
+                        executionId, athenaClient, future,
+                        2000 + ThreadLocalRandom.current().nextLong(1000), pollIntervalMs, deadline, tags
+                );
+
+            } else {
+                future.completeExceptionally(new RuntimeException("Non-retryable Athena error", e));
             }
 
+        } catch (Exception ex) {
+            future.completeExceptionally(new RuntimeException("Unexpected error during Athena query polling", ex));
         }
 
     }
@@ -176,6 +284,112 @@ public class AthenaServiceImpl implements AthenaService {
                 """, selectQuery.trim(), outputLocation);
     }
 
+    @Override
+    public String wrapQueryWithUnloadParquet(String selectQuery, String outputLocation) {
+
+        return String.format("""
+                UNLOAD (
+                    %s
+                )
+                TO '%s'
+                WITH (
+                    format = 'PARQUET',
+                    compression = 'SNAPPY'
+                );
+                """, selectQuery.trim(), outputLocation);
+    }
+
+    @Override
+    public String wrapQueryWithPartitionedUnload(String selectQuery, String outputLocation,
+                                                 UnloadFormat unloadFormat, String column) {
+
+        String format = switch (unloadFormat) {
+            case CSV -> "format = 'TEXTFILE', field_delimiter = ',', compression = 'GZIP'";
+            case PARQUET -> "format = 'PARQUET', compression = 'SNAPPY'";
+        };
+
+        return String.format("""
+                UNLOAD (
+                    %s
+                )
+                TO '%s'
+                WITH (
+                    %s,
+                    partitioned_by = ARRAY['%s']
+                );
+                """, selectQuery.trim(), outputLocation, format, column);
+    }
+
+    private String submitWithRetry(String query, String outputLocation, String database, AthenaClient athenaClient) {
+
+        for (int attempt = 1; ; attempt++) {
+
+            try {
+                return submitAthenaQuery(query, outputLocation, database, athenaClient);
+            } catch (AthenaException e) {
+
+                if (!isRetryableAthenaException(e) || attempt == MAX_SUBMIT_ATTEMPTS) {
+                    throw e;
+                }
+
+                log.warn("Athena throttled query submission (attempt {}), retrying...", attempt);
+                sleep(1000L * attempt + ThreadLocalRandom.current().nextLong(1000));
+            }
+
+        }
+
+    }
+
+    private void recordStatistics(QueryExecutionStatistics statistics, Tags tags) {
+
+        if (statistics == null) {
+            return;
+        }
+
+        if (statistics.queryQueueTimeInMillis() != null) {
+            ingestMetricsService.recordTime(
+                    IngestMetricsService.ATHENA_QUEUE, tags, statistics.queryQueueTimeInMillis(), TimeUnit.MILLISECONDS
+            );
+        }
+
+        if (statistics.engineExecutionTimeInMillis() != null) {
+            ingestMetricsService.recordTime(
+                    IngestMetricsService.ATHENA_EXECUTION, tags,
+                    statistics.engineExecutionTimeInMillis(), TimeUnit.MILLISECONDS
+            );
+        }
+
+    }
+
+    private void acquirePermit() {
+        try {
+            inFlightPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a free Athena query slot", e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for retry", e);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
     private boolean isRetryableAthenaException(AthenaException e) {
 
         String code = e.awsErrorDetails() != null ? e.awsErrorDetails().errorCode() : "";
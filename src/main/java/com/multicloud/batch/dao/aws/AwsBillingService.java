@@ -1,11 +1,14 @@
 package com.multicloud.batch.dao.aws;
 
+import com.multicloud.batch.dto.DaySyncResultDTO;
+import com.multicloud.batch.enums.UnloadFormat;
 import org.springframework.data.util.Pair;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Created by IntelliJ IDEA.
@@ -21,19 +24,23 @@ public interface AwsBillingService {
             String accessKey, String secretKey, String region
     );
 
-    void syncDailyCostUsageFromAthena(
+    // The sync methods return the rows written, 0 when the data was unchanged. With days, the range is one
+    // UNLOAD partitioned by usage date whose days are loaded in parallel and reported one by one.
+    long syncDailyCostUsageFromAthena(
             String databaseName, String tableName, String accessKey, String secretKey, String region,
-            LocalDate start, LocalDate end, boolean internal
+            LocalDate start, LocalDate end, boolean internal, UnloadFormat unloadFormat,
+            Consumer<DaySyncResultDTO> days
     );
 
-    void syncDailyCostUsageFromAthenaV2(
+    long syncDailyCostUsageFromAthenaV2(
             String databaseName, String tableName, String accessKey, String secretKey, String region,
-            LocalDate start, LocalDate end, boolean internal
+            LocalDate start, LocalDate end, boolean internal, UnloadFormat unloadFormat,
+            Consumer<DaySyncResultDTO> days
     );
 
-    void syncDailyCostUsageFromAthenaView(
+    long syncDailyCostUsageFromAthenaView(
             String databaseName, String tableName, String accessKey, String secretKey, String region,
-            LocalDate start, LocalDate end
+            LocalDate start, LocalDate end, UnloadFormat unloadFormat, Consumer<DaySyncResultDTO> days
     );
 
 }
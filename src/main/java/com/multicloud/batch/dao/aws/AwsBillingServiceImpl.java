@@ -1,31 +1,49 @@
 package com.multicloud.batch.dao.aws;
 
-import com.multicloud.batch.model.AwsBillingDailyCost;
+import com.multicloud.batch.dto.DaySyncResultDTO;
+import com.multicloud.batch.enums.CloudProvider;
+import com.multicloud.batch.enums.LastSyncStatus;
+import com.multicloud.batch.enums.UnloadFormat;
+import com.multicloud.batch.model.BillingSyncFingerprint;
 import com.multicloud.batch.repository.AwsBillingDailyCostRepository;
+import com.multicloud.batch.repository.BulkLoadWriter;
+import com.multicloud.batch.repository.BulkUpsertWriter;
+import com.multicloud.batch.service.BillingChangeLogService;
+import com.multicloud.batch.service.BillingSyncFingerprintService;
+import com.multicloud.batch.service.IngestMetricsService;
+import com.multicloud.batch.util.DecimalParser;
+import com.multicloud.batch.util.Util;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.util.Pair;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-import software.amazon.awssdk.core.ResponseInputStream;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.athena.AthenaClient;
+import software.amazon.awssdk.services.athena.model.Datum;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.*;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.YearMonth;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.zip.GZIPInputStream;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
 
 import static com.multicloud.batch.helper.AwsQueryHelper.GENERAL_AMORTIZE_COST_QUERY;
 import static com.multicloud.batch.helper.AwsQueryHelper.HKTS_AMORTIZE_COST_QUERY;
@@ -47,21 +65,60 @@ public class AwsBillingServiceImpl implements AwsBillingService {
             "usage_type", "usage_amount", "usage_unit", "unblended_cost", "blended_cost", "net_unblended_cost"
     };
 
-    private final JdbcTemplate jdbcTemplate;
+    // Files of an UNLOAD partitioned by usage_date, the date is in their prefix
+    private final static String[] DAY_COLS = Arrays.copyOfRange(COLS, 1, COLS.length);
+
+    private final static CSVFormat CSV_FORMAT = CSVFormat.DEFAULT
+            .builder()
+            .setHeader(COLS)
+            .get();
+
+    private final static CSVFormat DAY_CSV_FORMAT = CSVFormat.DEFAULT
+            .builder()
+            .setHeader(DAY_COLS)
+            .get();
+
+    // LOAD DATA LOCAL INFILE into a staging table and one merge per partition, meant for backfills
+    @Value("${batch_job.bulk_load.enabled:false}")
+    private boolean bulkLoad;
+
+    // Days loaded at once across all partitions, each with its own S3 readers (aws_unload.download_concurrency)
+    // and, with the bulk load, its own connection of the primary pool
+    @Value("${batch_job.aws_unload.day_concurrency:3}")
+    private int dayConcurrency;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private final BulkUpsertWriter bulkUpsertWriter;
+    private final BulkLoadWriter bulkLoadWriter;
     private final AthenaService athenaService;
+    private final S3UnloadedFileReader s3UnloadedFileReader;
+    private final AwsClientProvider awsClientProvider;
     private final AwsBillingDailyCostRepository awsBillingDailyCostRepository;
+    private final BillingChangeLogService billingChangeLogService;
+    private final BillingSyncFingerprintService billingSyncFingerprintService;
+    private final IngestMetricsService ingestMetricsService;
 
-    @Override
-    public Set<String> tableListByDatabase(String database, String accessKey, String secretKey, String region) {
+    // Shared by the partitions, so running partitions don't multiply the day concurrency
+    private ExecutorService dayExecutor;
 
-        StaticCredentialsProvider credentialsProvider = StaticCredentialsProvider.create(
-                AwsBasicCredentials.create(accessKey, secretKey)
+    @PostConstruct
+    void init() {
+        dayExecutor = Executors.newFixedThreadPool(
+                dayConcurrency, Util.threadFactory("AwsUnloadDay-", virtualThreads)
         );
+    }
+
+    @PreDestroy
+    void shutdown() {
+        dayExecutor.shutdownNow();
+    }
 
-        AthenaClient athenaClient = AthenaClient.builder()
-                .credentialsProvider(credentialsProvider)
-                .region(Region.of(region))
-                .build();
+    @Override
+    public Set<String> tableListByDatabase(String database, String accessKey, String secretKey, String region) {
+
+        AthenaClient athenaClient = awsClientProvider.athenaClient(accessKey, secretKey, region);
 
         String query = "SHOW TABLES";
 
@@ -70,8 +127,7 @@ public class AwsBillingServiceImpl implements AwsBillingService {
 
         String outputLocation = "s3://%s/%s/".formatted(bucket, prefix);
 
-        String executionId = athenaService.submitAthenaQuery(query, outputLocation, database, athenaClient);
-        athenaService.waitForQueryToComplete(executionId, athenaClient);
+        String executionId = athenaService.executeQuery(query, outputLocation, database, athenaClient);
 
         Set<String> tables = new HashSet<>();
 
@@ -87,14 +143,7 @@ public class AwsBillingServiceImpl implements AwsBillingService {
                                                                                         String secretKey,
                                                                                         String region) {
 
-        StaticCredentialsProvider credentialsProvider = StaticCredentialsProvider.create(
-                AwsBasicCredentials.create(accessKey, secretKey)
-        );
-
-        AthenaClient athenaClient = AthenaClient.builder()
-                .credentialsProvider(credentialsProvider)
-                .region(Region.of(region))
-                .build();
+        AthenaClient athenaClient = awsClientProvider.athenaClient(accessKey, secretKey, region);
 
         String database = "athenacurcfn_athena";
         String bucket = "azerion-athena-results";
@@ -102,10 +151,11 @@ public class AwsBillingServiceImpl implements AwsBillingService {
 
         String outputLocation = "s3://%s/%s/".formatted(bucket, prefix);
 
-        Map<Pair<LocalDate, String>, BigDecimal> results = new HashMap<>();
-
         YearMonth thisMonth = YearMonth.now();
 
+        // Submit all queries up front, they run concurrently on Athena
+        List<CompletableFuture<String>> executions = new ArrayList<>();
+
         // Previous one month
         for (int i = 0; i < 2; i++) {
 
@@ -114,22 +164,30 @@ public class AwsBillingServiceImpl implements AwsBillingService {
             int year = current.getYear();
             int month = current.getMonthValue();
 
-            executeQueryAndBindResult(
-                    GENERAL_AMORTIZE_COST_QUERY.formatted(year, month), outputLocation, database, athenaClient, results
-            );
-            executeQueryAndBindResult(
-                    HKTS_AMORTIZE_COST_QUERY.formatted(year, month), outputLocation, database, athenaClient, results
-            );
+            executions.add(athenaService.executeQueryAsync(
+                    GENERAL_AMORTIZE_COST_QUERY.formatted(year, month), outputLocation, database, athenaClient
+            ));
+            executions.add(athenaService.executeQueryAsync(
+                    HKTS_AMORTIZE_COST_QUERY.formatted(year, month), outputLocation, database, athenaClient
+            ));
+
+        }
+
+        Map<Pair<LocalDate, String>, BigDecimal> results = new HashMap<>();
 
+        // Bind in submission order, so later queries still override earlier ones
+        for (CompletableFuture<String> execution : executions) {
+            bindQueryResult(execution.join(), athenaClient, results);
         }
 
         return results;
     }
 
     @Override
-    public void syncDailyCostUsageFromAthena(String database, String tableName,
+    public long syncDailyCostUsageFromAthena(String database, String tableName,
                                              String accessKey, String secretKey, String region,
-                                             LocalDate start, LocalDate end, boolean internal) {
+                                             LocalDate start, LocalDate end, boolean internal,
+                                             UnloadFormat unloadFormat, Consumer<DaySyncResultDTO> days) {
 
         int year = start.getYear();
         int month = start.getMonthValue();
@@ -144,6 +202,15 @@ public class AwsBillingServiceImpl implements AwsBillingService {
                     """;
         }
 
+        String where = """
+                WHERE CAST(year AS INTEGER) = %d
+                    AND CAST(month AS INTEGER) = %d
+                    AND (
+                        DATE(line_item_usage_start_date) >= DATE '%s' AND DATE(line_item_usage_start_date) <= DATE '%s'
+                        OR DATE(line_item_usage_start_date) >= DATE '%s'
+                    )
+                """.formatted(year, month, start, end, startOfNextMonth);
+
         String query = """
                 SELECT DATE(line_item_usage_start_date)                                      AS usage_date,
                 
@@ -154,14 +221,14 @@ public class AwsBillingServiceImpl implements AwsBillingService {
                 
                     -- Service
                     COALESCE(product_servicecode, '')                                        AS service_code,
-                    CONCAT('"', COALESCE(MAX(product_servicename), ''), '"')                 AS service_name,
+                    %s                                                                       AS service_name,
                 
                     -- SKU
                     COALESCE(product_sku, '')                                                AS sku_id,
                 
                     -- Region & Location
                     COALESCE(product_region, '')                                             AS region,
-                    CONCAT('"', COALESCE(MAX(product_location), ''), '"')                    AS location,
+                    %s                                                                       AS location,
                 
                     -- Currency & Usage & Cost
                     COALESCE(MAX(line_item_currency_code), '')                               AS currency,
@@ -177,23 +244,34 @@ public class AwsBillingServiceImpl implements AwsBillingService {
                     %s
                 
                 FROM "%s"
-                WHERE CAST(year AS INTEGER) = %d
-                    AND CAST(month AS INTEGER) = %d
-                    AND (
-                        DATE(line_item_usage_start_date) >= DATE '%s' AND DATE(line_item_usage_start_date) <= DATE '%s'
-                        OR DATE(line_item_usage_start_date) >= DATE '%s'
-                    )
+                %s
                 GROUP BY 1, 2, 3, 4, 6, 7, 11, 12
-                """.formatted(netUnblendedCol, tableName, year, month, start, end, startOfNextMonth);
+                """.formatted(
+                unloadText("COALESCE(MAX(product_servicename), '')", unloadFormat),
+                unloadText("COALESCE(MAX(product_location), '')", unloadFormat),
+                netUnblendedCol, tableName, where
+        );
+
+        String fingerprintQuery = fingerprintQuery(
+                "DATE(line_item_usage_start_date)", "DATE(CONCAT(year, '-', month, '-01'))",
+                curCostColumns(internal),
+                List.of("line_item_usage_account_id", "product_sku", "product_region", "line_item_line_item_type",
+                        "line_item_usage_type", "line_item_unblended_cost"),
+                tableName, where
+        );
 
-        syncDailyCostUsageFromAthena(database, query, accessKey, secretKey, region, internal);
+        return syncDailyCostUsageFromAthena(
+                database, tableName, query, fingerprintQuery, accessKey, secretKey, region,
+                start, end, internal, unloadFormat, days
+        );
 
     }
 
     @Override
-    public void syncDailyCostUsageFromAthenaV2(String database, String tableName,
+    public long syncDailyCostUsageFromAthenaV2(String database, String tableName,
                                                String accessKey, String secretKey, String region,
-                                               LocalDate start, LocalDate end, boolean internal) {
+                                               LocalDate start, LocalDate end, boolean internal,
+                                               UnloadFormat unloadFormat, Consumer<DaySyncResultDTO> days) {
 
         int year = start.getYear();
         int month = start.getMonthValue();
@@ -208,6 +286,14 @@ public class AwsBillingServiceImpl implements AwsBillingService {
                     """;
         }
 
+        String where = """
+                WHERE billing_period = '%d-%02d'
+                    AND (
+                        DATE(line_item_usage_start_date) >= DATE '%s' AND DATE(line_item_usage_start_date) <= DATE '%s'
+                        OR DATE(line_item_usage_start_date) >= DATE '%s'
+                    )
+                """.formatted(year, month, start, end, startOfNextMonth);
+
         String query = """
                 SELECT DATE(line_item_usage_start_date)                                      AS usage_date,
                 
@@ -218,14 +304,14 @@ public class AwsBillingServiceImpl implements AwsBillingService {
                 
                     -- Service
                     COALESCE(product_servicecode, '')                                        AS service_code,
-                    CONCAT('"', COALESCE(MAX(product['servicename']), ''), '"')              AS service_name,
+                    %s                                                                       AS service_name,
                 
                     -- SKU
                     COALESCE(product_sku, '')                                                AS sku_id,
                 
                     -- Region & Location
                     COALESCE(product_region_code, '')                                        AS region,
-                    CONCAT('"', COALESCE(MAX(product_location), ''), '"')                    AS location,
+                    %s                                                                       AS location,
                 
                     -- Currency & Usage & Cost
                     COALESCE(MAX(line_item_currency_code), '')                               AS currency,
@@ -241,29 +327,53 @@ public class AwsBillingServiceImpl implements AwsBillingService {
                     %s
                 
                 FROM "%s"
-                WHERE billing_period = '%d-%02d'
-                    AND (
-                        DATE(line_item_usage_start_date) >= DATE '%s' AND DATE(line_item_usage_start_date) <= DATE '%s'
-                        OR DATE(line_item_usage_start_date) >= DATE '%s'
-                    )
+                %s
                 GROUP BY 1, 2, 3, 4, 6, 7, 11, 12
-                """.formatted(netUnblendedCol, tableName, year, month, start, end, startOfNextMonth);
+                """.formatted(
+                unloadText("COALESCE(MAX(product['servicename']), '')", unloadFormat),
+                unloadText("COALESCE(MAX(product_location), '')", unloadFormat),
+                netUnblendedCol, tableName, where
+        );
 
-        syncDailyCostUsageFromAthena(database, query, accessKey, secretKey, region, internal);
+        String fingerprintQuery = fingerprintQuery(
+                "DATE(line_item_usage_start_date)", "DATE(CONCAT(billing_period, '-01'))",
+                curCostColumns(internal),
+                List.of("line_item_usage_account_id", "product_sku", "product_region_code", "line_item_line_item_type",
+                        "line_item_usage_type", "line_item_unblended_cost"),
+                tableName, where
+        );
+
+        return syncDailyCostUsageFromAthena(
+                database, tableName, query, fingerprintQuery, accessKey, secretKey, region,
+                start, end, internal, unloadFormat, days
+        );
 
     }
 
     // Table name represents view name
     @Override
-    public void syncDailyCostUsageFromAthenaView(String database, String tableName,
+    public long syncDailyCostUsageFromAthenaView(String database, String tableName,
                                                  String accessKey, String secretKey, String region,
-                                                 LocalDate start, LocalDate end) {
+                                                 LocalDate start, LocalDate end,
+                                                 UnloadFormat unloadFormat, Consumer<DaySyncResultDTO> days) {
 
         int year = start.getYear();
         int month = start.getMonthValue();
 
         LocalDate startOfNextMonth = end.plusMonths(1).withDayOfMonth(1);
 
+        String where = """
+                WHERE CAST(year AS INTEGER) = %d
+                    AND CAST(month AS INTEGER) = %d
+                    AND (
+                        (usage_date >= DATE '%s' AND usage_date <= DATE '%s')
+                        OR (
+                            CAST(year AS INTEGER) = %d AND CAST(month AS INTEGER) = %d
+                            AND usage_date >= DATE '%s'
+                        )
+                    )
+                """.formatted(year, month, start, end, year, month, startOfNextMonth);
+
         String query = """
                 SELECT
                     usage_date,
@@ -284,171 +394,464 @@ public class AwsBillingServiceImpl implements AwsBillingService {
                     CAST(0 AS DECIMAL(20, 8))    AS blended_cost,
                     CAST(0 AS DECIMAL(20, 8))    AS net_unblended_cost
                 FROM "%s"
-                WHERE CAST(year AS INTEGER) = %d
-                    AND CAST(month AS INTEGER) = %d
-                    AND (
-                        (usage_date >= DATE '%s' AND usage_date <= DATE '%s')
-                        OR (
-                            CAST(year AS INTEGER) = %d AND CAST(month AS INTEGER) = %d
-                            AND usage_date >= DATE '%s'
-                        )
-                    )
-                """.formatted(tableName, year, month, start, end, year, month, startOfNextMonth);
+                %s
+                """.formatted(tableName, where);
+
+        String fingerprintQuery = fingerprintQuery(
+                "usage_date", "billing_month",
+                List.of("usage_amount", "cost"),
+                List.of("usage_account_id", "sku_id", "region", "billing_type", "usage_type", "cost"),
+                tableName, where
+        );
 
-        syncDailyCostUsageFromAthena(database, query, accessKey, secretKey, region, false);
+        return syncDailyCostUsageFromAthena(
+                database, tableName, query, fingerprintQuery, accessKey, secretKey, region,
+                start, end, false, unloadFormat, days
+        );
 
     }
 
-    private void syncDailyCostUsageFromAthena(String database, String query,
+    private long syncDailyCostUsageFromAthena(String database, String tableName, String query,
+                                              String fingerprintQuery,
                                               String accessKey, String secretKey, String region,
-                                              boolean internal) {
-
-        StaticCredentialsProvider credentialsProvider = StaticCredentialsProvider.create(
-                AwsBasicCredentials.create(accessKey, secretKey)
-        );
-
-        AthenaClient athenaClient = AthenaClient.builder()
-                .credentialsProvider(credentialsProvider)
-                .region(Region.of(region))
-                .build();
+                                              LocalDate start, LocalDate end, boolean internal,
+                                              UnloadFormat unloadFormat, Consumer<DaySyncResultDTO> days) {
 
-        S3Client s3Client = S3Client.builder()
-                .credentialsProvider(credentialsProvider)
-                .region(Region.of(region))
-                .build();
+        AthenaClient athenaClient = awsClientProvider.athenaClient(accessKey, secretKey, region);
+        S3Client s3Client = awsClientProvider.s3Client(accessKey, secretKey, region);
 
         String bucket = "azerion-athena-results";
         String prefix = "azerion_mc";
 
+        Tags tags = ingestMetricsService.stepTags(CloudProvider.AWS, tableName);
+
+        Map<BillingSyncFingerprint.Slice, String> fingerprints = Map.of();
+
+        if (billingSyncFingerprintService.isEnabled()) {
+
+            fingerprints = fetchFingerprints(
+                    fingerprintQuery, "s3://%s/%s/".formatted(bucket, prefix), database, athenaClient
+            );
+
+            if (billingSyncFingerprintService.unchanged(CloudProvider.AWS, tableName, internal, fingerprints)) {
+                log.info("AWS billing data of {} unchanged since the last sync, skipping the unload.", tableName);
+                ingestMetricsService.count(IngestMetricsService.SKIPPED_UNCHANGED, tags, 1);
+                return 0;
+            }
+
+        }
+
         // If you use 'unload' -- it required empty folder on S3,
         // It may generate multiple files
         prefix = "%s/%s/%s".formatted(prefix, "unloaded_data", UUID.randomUUID().toString());
 
         String outputLocation = "s3://%s/%s/".formatted(bucket, prefix);
 
+        if (days != null) {
+
+            Map<LocalDate, DaySyncResultDTO> results = syncByDay(
+                    database, tableName, query, outputLocation, bucket, prefix, athenaClient, s3Client,
+                    start, end, internal, unloadFormat, fingerprints, tags
+            );
+
+            results.values().forEach(days);
+
+            return results.values().stream()
+                    .map(DaySyncResultDTO::rowCount)
+                    .filter(Objects::nonNull)
+                    .mapToLong(Long::longValue)
+                    .sum();
+        }
+
         // Wrap query for unload
-        query = athenaService.wrapQueryWithUnloadCsvGzip(query, outputLocation);
+        query = switch (unloadFormat) {
+            case CSV -> athenaService.wrapQueryWithUnloadCsvGzip(query, outputLocation);
+            case PARQUET -> athenaService.wrapQueryWithUnloadParquet(query, outputLocation);
+        };
 
-        String executionId = athenaService.submitAthenaQuery(query, outputLocation, database, athenaClient);
-        athenaService.waitForQueryToComplete(executionId, athenaClient);
+        athenaService.executeQuery(query, outputLocation, database, athenaClient);
 
-        long totalResults = fetchResultsToUnloadedFileFromS3(bucket, prefix, s3Client, internal);
+        long totalResults = fetchResultsToUnloadedFileFromS3(bucket, prefix, s3Client, unloadFormat, internal, tags);
+
+        // Only reached when every object was read, a failed read throws
+        billingSyncFingerprintService.store(CloudProvider.AWS, tableName, internal, fingerprints);
 
         log.info("AWS billing data fetched and stored successfully. Total results: {}", totalResults);
 
+        return totalResults;
+
+    }
+
+    private long fetchResultsToUnloadedFileFromS3(String bucket, String prefix, S3Client s3Client,
+                                                  UnloadFormat unloadFormat, boolean internal, Tags tags) {
+
+        return switch (unloadFormat) {
+
+            case CSV -> storeUnloadedRows(
+                    writer -> s3UnloadedFileReader.<CSVRecord>read(
+                            s3Client, bucket, prefix, 5000, tags, AwsBillingServiceImpl::parseUnloadedFile, writer
+                    ),
+                    () -> awsBillingDailyCostRepository.openAwsBillingDailyCostRecordLoad(bulkLoadWriter, internal),
+                    batch -> awsBillingDailyCostRepository.upsertAwsBillingDailyCostRecords(
+                            batch, bulkUpsertWriter, internal
+                    ),
+                    record -> record.get(0), record -> record.get(1), tags
+            );
+
+            case PARQUET -> storeUnloadedRows(
+                    writer -> s3UnloadedFileReader.<Object[]>readParquet(
+                            s3Client, bucket, prefix, 5000, tags,
+                            (file, sink) -> ParquetUnloadedFileParser.parse(file, COLS, sink), writer
+                    ),
+                    () -> awsBillingDailyCostRepository.openAwsBillingDailyCostRowLoad(bulkLoadWriter, internal),
+                    batch -> awsBillingDailyCostRepository.upsertAwsBillingDailyCostRows(
+                            batch, bulkUpsertWriter, internal
+                    ),
+                    row -> row[0], row -> row[1], tags
+            );
+
+        };
     }
 
-    private long fetchResultsToUnloadedFileFromS3(String bucket, String prefix, S3Client s3Client, boolean internal) {
+    /**
+     * One UNLOAD of the range partitioned by usage_date (one query and one scan for the billing month), then
+     * the day prefixes are loaded in parallel on the day executor shared by all partitions. Each day is written
+     * by its own worker, outside the step's transaction, so it succeeds or fails (and is retried) on its own.
+     * Days whose fingerprints are unchanged are not downloaded. Usage dates after the range (next month's usage billed in this month) count towards
+     * the last day of the range, whose retry loads them again.
+     *
+     * @return a result for every day of the range
+     */
+    private Map<LocalDate, DaySyncResultDTO> syncByDay(String database, String tableName, String query,
+                                                       String outputLocation, String bucket, String prefix,
+                                                       AthenaClient athenaClient, S3Client s3Client,
+                                                       LocalDate start, LocalDate end, boolean internal,
+                                                       UnloadFormat unloadFormat,
+                                                       Map<BillingSyncFingerprint.Slice, String> fingerprints,
+                                                       Tags tags) {
+
+        long queryStart = System.currentTimeMillis();
+
+        athenaService.executeQuery(
+                athenaService.wrapQueryWithPartitionedUnload(
+                        usageDateLast(query), outputLocation, unloadFormat, "usage_date"
+                ),
+                outputLocation, database, athenaClient
+        );
 
-        ListObjectsV2Request s3Request = ListObjectsV2Request.builder()
-                .bucket(bucket)
-                .prefix(prefix)
-                .build();
+        Map<String, String> partitions = s3UnloadedFileReader.partitions(s3Client, bucket, prefix, "usage_date");
 
-        ListObjectsV2Response s3Response = s3Client.listObjectsV2(s3Request);
+        // The query's run time is shared by its days
+        long queryMs = (System.currentTimeMillis() - queryStart) / Math.max(partitions.size(), 1);
 
-        List<AwsBillingDailyCost> results = new ArrayList<>();
-        long count = 0;
+        Set<LocalDate> unchanged = new HashSet<>();
+        fingerprints.keySet().forEach(slice -> unchanged.add(slice.usageDate()));
+        unchanged.removeAll(
+                billingSyncFingerprintService.changedDays(CloudProvider.AWS, tableName, internal, fingerprints)
+        );
 
-        for (S3Object s3Object : s3Response.contents()) {
+        Map<LocalDate, CompletableFuture<DaySyncResultDTO>> loads = new TreeMap<>();
 
-            String key = s3Object.key();
+        partitions.forEach((value, dayPrefix) -> {
 
-            if (key.endsWith(".gz")) {
+            LocalDate day = LocalDate.parse(value);
 
-                log.info("Processing AWS Athena unloaded file: {}", key);
+            if (unchanged.contains(day)) {
+                ingestMetricsService.count(IngestMetricsService.SKIPPED_UNCHANGED, tags, 1);
+                return;
+            }
 
-                // Read and parse this file only
-                GetObjectRequest getRequest = GetObjectRequest.builder()
-                        .bucket(bucket)
-                        .key(key)
-                        .build();
+            loads.put(day, CompletableFuture.supplyAsync(
+                    () -> loadDay(bucket, dayPrefix, s3Client, day, unloadFormat, internal, queryMs, tags),
+                    dayExecutor
+            ));
 
-                try (
-                        ResponseInputStream<GetObjectResponse> s3Stream = s3Client.getObject(getRequest);
-                        BufferedReader reader = new BufferedReader(
-                                new InputStreamReader(new GZIPInputStream(s3Stream))
-                        )
-                ) {
+        });
 
-                    Iterable<CSVRecord> records = CSVFormat.DEFAULT
-                            .builder()
-                            .setHeader(COLS)
-                            .get()
-                            .parse(reader);
+        Map<LocalDate, DaySyncResultDTO> results = new TreeMap<>();
 
-                    for (CSVRecord record : records) {
+        // Days without data (or unchanged) are done too
+        for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+            results.put(day, new DaySyncResultDTO(day, LastSyncStatus.SUCCESS, null, null));
+        }
 
-                        results.add(bindRecord(record, internal));
-                        count++;
+        // loadDay reports its failure instead of throwing
+        loads.forEach((day, load) -> results.merge(
+                reportedDay(day, start, end), load.join(), AwsBillingServiceImpl::mergeDay
+        ));
 
-                        if (results.size() == 5000) {
-                            // Save each batch
-                            // Clean before the next
-                            log.info("Upserting {} fetched AWS records into DB.", results.size());
-                            awsBillingDailyCostRepository.upsertAwsBillingDailyCosts(results, jdbcTemplate, internal);
-                            results.clear();
-                        }
+        // A failed day keeps its old fingerprints, so the retry is not skipped as unchanged
+        Map<BillingSyncFingerprint.Slice, String> loaded = new HashMap<>();
 
-                    }
+        fingerprints.forEach((slice, fingerprint) -> {
+            if (results.get(reportedDay(slice.usageDate(), start, end)).status() == LastSyncStatus.SUCCESS) {
+                loaded.put(slice, fingerprint);
+            }
+        });
 
-                } catch (IOException e) {
-                    log.error("Error reading file: {}", key, e);
-                }
+        billingSyncFingerprintService.store(CloudProvider.AWS, tableName, internal, loaded);
+
+        log.info(
+                "AWS billing data of {} fetched by day: {} days loaded, {} unchanged, {} failed.",
+                tableName, loads.size(), partitions.size() - loads.size(),
+                results.values().stream().filter(day -> day.status() == LastSyncStatus.FAIL).count()
+        );
+
+        return results;
+
+    }
+
+    private DaySyncResultDTO loadDay(String bucket, String prefix, S3Client s3Client, LocalDate day,
+                                     UnloadFormat unloadFormat, boolean internal, long queryMs, Tags tags) {
+
+        long dayStart = System.currentTimeMillis();
+
+        try {
 
+            long rows = storeUnloadedRows(
+                    writer -> switch (unloadFormat) {
+                        case CSV -> s3UnloadedFileReader.<Object[]>read(
+                                s3Client, bucket, prefix, 5000, tags,
+                                (inputStream, sink) -> parseUnloadedFile(
+                                        inputStream, DAY_CSV_FORMAT, record -> sink.accept(dayRow(day, record))
+                                ),
+                                writer
+                        );
+                        case PARQUET -> s3UnloadedFileReader.<Object[]>readParquet(
+                                s3Client, bucket, prefix, 5000, tags,
+                                (file, sink) -> ParquetUnloadedFileParser.parse(
+                                        file, DAY_COLS, values -> sink.accept(dayRow(day, values))
+                                ),
+                                writer
+                        );
+                    },
+                    () -> awsBillingDailyCostRepository.openAwsBillingDailyCostRowLoad(bulkLoadWriter, internal),
+                    batch -> awsBillingDailyCostRepository.upsertAwsBillingDailyCostRows(
+                            batch, bulkUpsertWriter, internal
+                    ),
+                    row -> row[0], row -> row[1], tags
+            );
+
+            if (rows == 0) {
+                return new DaySyncResultDTO(day, LastSyncStatus.SUCCESS, null, null);
             }
 
+            return new DaySyncResultDTO(
+                    day, LastSyncStatus.SUCCESS, rows, queryMs + System.currentTimeMillis() - dayStart
+            );
+
+        } catch (RuntimeException e) {
+            log.error("Failed to load the AWS billing data of {} from {}", day, prefix, e);
+            return new DaySyncResultDTO(day, LastSyncStatus.FAIL, null, null);
         }
+    }
+
+    private static LocalDate reportedDay(LocalDate day, LocalDate start, LocalDate end) {
+        return day.isBefore(start) || day.isAfter(end) ? end : day;
+    }
+
+    private static DaySyncResultDTO mergeDay(DaySyncResultDTO a, DaySyncResultDTO b) {
 
-        // Save the remaining records
-        log.info("Upserting {} fetched AWS records into DB.", results.size());
-        awsBillingDailyCostRepository.upsertAwsBillingDailyCosts(results, jdbcTemplate, internal);
-        results.clear();
+        if (a.status() == LastSyncStatus.FAIL || b.status() == LastSyncStatus.FAIL) {
+            return new DaySyncResultDTO(a.usageDate(), LastSyncStatus.FAIL, null, null);
+        }
 
-        return count;
+        return new DaySyncResultDTO(
+                a.usageDate(), LastSyncStatus.SUCCESS,
+                sum(a.rowCount(), b.rowCount()), sum(a.durationMs(), b.durationMs())
+        );
     }
 
-    private AwsBillingDailyCost bindRecord(CSVRecord record, boolean internal) {
-
-        return AwsBillingDailyCost.builder()
-                .usageDate(LocalDate.parse(record.get("usage_date")))
-                .billingMonth(LocalDate.parse(record.get("billing_month")))
-                .usageAccountId(record.get("usage_account_id"))
-                .serviceCode(record.get("service_code"))
-                .serviceName(record.get("service_name"))
-                .skuId(record.get("sku_id"))
-                .region(record.get("region"))
-                .location(record.get("location"))
-                .currency(record.get("currency"))
-                .pricingType(record.get("pricing_type"))
-                .billingType(record.get("billing_type"))
-                .usageType(record.get("usage_type"))
-                .usageAmount(parseBigDecimalSafe(record.get("usage_amount")))
-                .usageUnit(record.get("usage_unit"))
-                .unblendedCost(internal ? parseBigDecimalSafe(record.get("unblended_cost")) : BigDecimal.ZERO)
-                .blendedCost(internal ? parseBigDecimalSafe(record.get("blended_cost")) : BigDecimal.ZERO)
-                .netUnblendedCost(internal ? parseBigDecimalSafe(record.get("net_unblended_cost")) : BigDecimal.ZERO)
-                .extUnblendedCost(internal ? BigDecimal.ZERO : parseBigDecimalSafe(record.get("unblended_cost")))
-                .extBlendedCost(internal ? BigDecimal.ZERO : parseBigDecimalSafe(record.get("blended_cost")))
-                .extNetUnblendedCost(internal ? BigDecimal.ZERO : parseBigDecimalSafe(record.get("net_unblended_cost")))
-                .build();
+    private static Long sum(Long a, Long b) {
+        return a == null ? b : b == null ? a : a + b;
     }
 
-    private BigDecimal parseBigDecimalSafe(String value) {
-        try {
-            return (value == null || value.isEmpty()) ? BigDecimal.ZERO : new BigDecimal(value);
-        } catch (Exception e) {
-            log.error("Error parsing BigDecimal: {}", value, e);
-            throw new RuntimeException(e.getMessage());
+    // partitioned_by columns have to come last in the SELECT
+    private static String usageDateLast(String query) {
+        return "SELECT %s, usage_date\nFROM (\n%s)".formatted(String.join(", ", DAY_COLS), query);
+    }
+
+    // Typed row in COLS order (like a Parquet row), from a CSV record of DAY_COLS
+    private static Object[] dayRow(LocalDate usageDate, CSVRecord record) {
+
+        Object[] row = new Object[COLS.length];
+        row[0] = usageDate;
+        row[1] = LocalDate.parse(record.get(0));
+
+        for (int i = 2; i < 12; i++) {
+            row[i] = record.get(i - 1);
         }
+
+        row[12] = DecimalParser.parse(record.get(11));
+        row[13] = record.get(12);
+
+        for (int i = 14; i < 17; i++) {
+            row[i] = DecimalParser.parse(record.get(i - 1));
+        }
+
+        return row;
     }
 
-    private void executeQueryAndBindResult(String query, String outputLocation, String database,
-                                           AthenaClient athenaClient,
-                                           Map<Pair<LocalDate, String>, BigDecimal> results) {
+    private static Object[] dayRow(LocalDate usageDate, Object[] values) {
+
+        Object[] row = new Object[COLS.length];
+        row[0] = usageDate;
+        System.arraycopy(values, 0, row, 1, values.length);
+
+        return row;
+    }
+
+    /**
+     * Writes the batches of the reader (upsert, or staging load and merge in the bulk mode) and marks the
+     * days and billing months they touched as changed.
+     */
+    private <T> long storeUnloadedRows(ToLongFunction<Consumer<List<T>>> reader,
+                                       Supplier<BulkLoadWriter.Session<T>> openLoad,
+                                       ToLongFunction<List<T>> upsert,
+                                       Function<T, Object> usageDate, Function<T, Object> billingMonth,
+                                       Tags tags) {
+
+        Set<Object> usageDates = new HashSet<>();
+        Set<Object> billingMonths = new HashSet<>();
+
+        try (BulkLoadWriter.Session<T> load = bulkLoad ? openLoad.get() : null) {
+
+            long totalResults = reader.applyAsLong(batch -> {
+
+                if (load != null) {
+                    log.info("Loading {} fetched AWS records into the staging table.", batch.size());
+                    ingestMetricsService.time(IngestMetricsService.BULK_LOAD, tags, () -> load.load(batch));
+                } else {
+                    log.info("Upserting {} fetched AWS records into DB.", batch.size());
+                    ingestMetricsService.recordUpsert(tags, batch.size(), () -> upsert.applyAsLong(batch));
+                }
+
+                for (T row : batch) {
+                    usageDates.add(usageDate.apply(row));
+                    billingMonths.add(billingMonth.apply(row));
+                }
+
+            });
+
+            if (load != null) {
+                ingestMetricsService.recordUpsert(tags, totalResults, load::merge);
+            }
+
+            // CSV gives the dates as text, Parquet as LocalDate
+            billingChangeLogService.markChanged(
+                    CloudProvider.AWS,
+                    usageDates.stream().map(date -> LocalDate.parse(date.toString())).toList(),
+                    billingMonths.stream().map(date -> LocalDate.parse(date.toString())).toList()
+            );
+
+            return totalResults;
+        }
+    }
+
+    /**
+     * Text column of the UNLOAD. The CSV TEXTFILE output has no quoting of its own, so values that may
+     * contain the delimiter are wrapped in quotes; Parquet takes them as they are.
+     */
+    private static String unloadText(String expression, UnloadFormat unloadFormat) {
+
+        return switch (unloadFormat) {
+            case CSV -> "CONCAT('\"', %s, '\"')".formatted(expression);
+            case PARQUET -> expression;
+        };
+    }
+
+    private static List<String> curCostColumns(boolean internal) {
+
+        // line_item_net_unblended_cost is only read for internal tables (see the sync queries)
+        if (internal) {
+            return List.of(
+                    "line_item_usage_amount", "line_item_unblended_cost", "line_item_blended_cost",
+                    "line_item_net_unblended_cost"
+            );
+        }
+
+        return List.of("line_item_usage_amount", "line_item_unblended_cost", "line_item_blended_cost");
+    }
+
+    /**
+     * Row count, decimal sums and an order-insensitive checksum of the line items per (usage date,
+     * billing month), over the WHERE of the sync query. Much cheaper than the UNLOAD it may save.
+     */
+    private static String fingerprintQuery(String usageDate, String billingMonth, List<String> sumColumns,
+                                           List<String> lineColumns, String tableName, String where) {
+
+        String sums = sumColumns.stream()
+                .map(col -> "CAST(COALESCE(SUM(CAST(%s AS DECIMAL(30, 10))), 0) AS VARCHAR)".formatted(col))
+                .collect(Collectors.joining(",\n    "));
+
+        String line = lineColumns.stream()
+                .map(col -> "COALESCE(CAST(%s AS VARCHAR), '')".formatted(col))
+                .collect(Collectors.joining(", '|', "));
+
+        return """
+                SELECT %s AS usage_date,
+                    %s AS billing_month,
+                    COUNT(*) AS row_count,
+                    %s,
+                    to_hex(checksum(CONCAT(%s))) AS line_checksum
+                FROM "%s"
+                %s
+                GROUP BY 1, 2
+                """.formatted(usageDate, billingMonth, sums, line, tableName, where);
+    }
+
+    private Map<BillingSyncFingerprint.Slice, String> fetchFingerprints(String query, String outputLocation,
+                                                                        String database, AthenaClient athenaClient) {
+
+        String executionId = athenaService.executeQuery(query, outputLocation, database, athenaClient);
+
+        Map<BillingSyncFingerprint.Slice, String> fingerprints = new HashMap<>();
+
+        AtomicBoolean firstRow = new AtomicBoolean(true);
+
+        athenaService.fetchQueryResults(executionId, athenaClient)
+                .forEach(res -> res.resultSet().rows().forEach(row -> {
+
+                    // Header
+                    if (firstRow.getAndSet(false)) {
+                        return;
+                    }
+
+                    fingerprints.put(
+                            new BillingSyncFingerprint.Slice(
+                                    LocalDate.parse(row.data().get(1).varCharValue()),
+                                    LocalDate.parse(row.data().getFirst().varCharValue())
+                            ),
+                            BillingSyncFingerprintService.digest(
+                                    row.data().stream().skip(2).map(Datum::varCharValue).toArray()
+                            )
+                    );
+
+                }));
+
+        return fingerprints;
+    }
+
+    /**
+     * Parses one decompressed UNLOAD part, records are bound by column index in the writer, no entity per row.
+     */
+    static void parseUnloadedFile(InputStream inputStream, Consumer<CSVRecord> sink) throws IOException {
+        parseUnloadedFile(inputStream, CSV_FORMAT, sink);
+    }
+
+    private static void parseUnloadedFile(InputStream inputStream, CSVFormat format,
+                                          Consumer<CSVRecord> sink) throws IOException {
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+
+        for (CSVRecord record : format.parse(reader)) {
+            sink.accept(record);
+        }
+
+    }
 
-        String executionId = athenaService.submitAthenaQuery(query, outputLocation, database, athenaClient);
-        athenaService.waitForQueryToComplete(executionId, athenaClient);
+    private void bindQueryResult(String executionId, AthenaClient athenaClient,
+                                 Map<Pair<LocalDate, String>, BigDecimal> results) {
 
         AtomicBoolean firstRow = new AtomicBoolean(true);
 
@@ -0,0 +1,79 @@
+package com.multicloud.batch.dao.aws;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.SdkClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.athena.AthenaClient;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one Athena and one S3 client per credential and region. The SDK clients are thread-safe
+ * and hold their own HTTP connection pools, so they are shared by all partitions and closed on
+ * shutdown instead of being built (and leaked) on every call.
+ */
+@Slf4j
+@Component
+public class AwsClientProvider {
+
+    private record ClientKey(String accessKey, String secretKey, String region) {
+
+        @Override
+        public String toString() {
+            return "ClientKey[accessKey=%s, region=%s]".formatted(accessKey, region);
+        }
+
+    }
+
+    private final Map<ClientKey, AthenaClient> athenaClients = new ConcurrentHashMap<>();
+    private final Map<ClientKey, S3Client> s3Clients = new ConcurrentHashMap<>();
+
+    public AthenaClient athenaClient(String accessKey, String secretKey, String region) {
+        return athenaClients.computeIfAbsent(
+                new ClientKey(accessKey, secretKey, region),
+                key -> AthenaClient.builder()
+                        .credentialsProvider(credentialsProvider(key))
+                        .region(Region.of(key.region()))
+                        .build()
+        );
+    }
+
+    public S3Client s3Client(String accessKey, String secretKey, String region) {
+        return s3Clients.computeIfAbsent(
+                new ClientKey(accessKey, secretKey, region),
+                key -> S3Client.builder()
+                        .credentialsProvider(credentialsProvider(key))
+                        .region(Region.of(key.region()))
+                        .build()
+        );
+    }
+
+    @PreDestroy
+    public void close() {
+        athenaClients.values().forEach(this::closeQuietly);
+        s3Clients.values().forEach(this::closeQuietly);
+        athenaClients.clear();
+        s3Clients.clear();
+    }
+
+    private StaticCredentialsProvider credentialsProvider(ClientKey key) {
+        return StaticCredentialsProvider.create(
+                AwsBasicCredentials.create(key.accessKey(), key.secretKey())
+        );
+    }
+
+    private void closeQuietly(SdkClient client) {
+        try {
+            client.close();
+        } catch (Exception e) {
+            log.warn("Failed to close AWS client {}", client.serviceName(), e);
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.multicloud.batch.dao.aws;
+
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.io.LocalInputFile;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Reads a Parquet file of an Athena UNLOAD column by column (one {@link ColumnReader} per column and row group),
+ * no record model in between. Rows come out as arrays in the order of the requested columns with typed values:
+ * DATE as {@link LocalDate}, DECIMAL (and other numbers) as {@link BigDecimal}, VARCHAR as String, NULL as null.
+ */
+public final class ParquetUnloadedFileParser {
+
+    private ParquetUnloadedFileParser() {
+    }
+
+    public static void parse(Path file, String[] columns, Consumer<Object[]> sink) throws IOException {
+
+        try (ParquetFileReader reader = ParquetFileReader.open(
+                new LocalInputFile(file), ParquetReadOptions.builder().build()
+        )) {
+
+            FileMetaData metaData = reader.getFooter().getFileMetaData();
+            MessageType schema = metaData.getSchema();
+
+            Map<String, ColumnDescriptor> byName = new HashMap<>();
+            schema.getColumns().forEach(column -> byName.put(column.getPath()[0], column));
+
+            ColumnDescriptor[] descriptors = new ColumnDescriptor[columns.length];
+            Function<ColumnReader, Object>[] decoders = decoders(columns.length);
+
+            for (int i = 0; i < columns.length; i++) {
+
+                descriptors[i] = byName.get(columns[i]);
+
+                if (descriptors[i] == null) {
+                    throw new RuntimeException("Column %s missing in %s".formatted(columns[i], file.getFileName()));
+                }
+
+                decoders[i] = decoder(descriptors[i].getPrimitiveType());
+            }
+
+            PageReadStore rowGroup;
+
+            while ((rowGroup = reader.readNextRowGroup()) != null) {
+
+                ColumnReadStoreImpl store = new ColumnReadStoreImpl(
+                        rowGroup, new GroupRecordConverter(schema).getRootConverter(), schema, metaData.getCreatedBy()
+                );
+
+                ColumnReader[] readers = new ColumnReader[columns.length];
+
+                for (int i = 0; i < columns.length; i++) {
+                    readers[i] = store.getColumnReader(descriptors[i]);
+                }
+
+                for (long r = 0; r < rowGroup.getRowCount(); r++) {
+
+                    Object[] row = new Object[columns.length];
+
+                    for (int i = 0; i < columns.length; i++) {
+
+                        ColumnReader column = readers[i];
+
+                        // Flat schema, below the max definition level the value is NULL
+                        if (column.getCurrentDefinitionLevel() == descriptors[i].getMaxDefinitionLevel()) {
+                            row[i] = decoders[i].apply(column);
+                        }
+
+                        column.consume();
+                    }
+
+                    sink.accept(row);
+                }
+
+            }
+
+        }
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<ColumnReader, Object>[] decoders(int length) {
+        return new Function[length];
+    }
+
+    private static Function<ColumnReader, Object> decoder(PrimitiveType type) {
+
+        LogicalTypeAnnotation logicalType = type.getLogicalTypeAnnotation();
+
+        if (logicalType instanceof LogicalTypeAnnotation.DecimalLogicalTypeAnnotation decimal) {
+
+            int scale = decimal.getScale();
+
+            return switch (type.getPrimitiveTypeName()) {
+                case INT32 -> column -> BigDecimal.valueOf(column.getInteger(), scale);
+                case INT64 -> column -> BigDecimal.valueOf(column.getLong(), scale);
+                // Unscaled big-endian two's complement, DECIMAL(20, 8) does not fit a long
+                default -> column -> new BigDecimal(new BigInteger(column.getBinary().getBytesUnsafe()), scale);
+            };
+        }
+
+        if (logicalType instanceof LogicalTypeAnnotation.DateLogicalTypeAnnotation) {
+            return column -> LocalDate.ofEpochDay(column.getInteger());
+        }
+
+        return switch (type.getPrimitiveTypeName()) {
+            case INT32 -> column -> BigDecimal.valueOf(column.getInteger());
+            case INT64 -> column -> BigDecimal.valueOf(column.getLong());
+            case DOUBLE -> column -> BigDecimal.valueOf(column.getDouble());
+            case FLOAT -> column -> BigDecimal.valueOf(column.getFloat());
+            case BOOLEAN -> ColumnReader::getBoolean;
+            case BINARY, FIXED_LEN_BYTE_ARRAY -> column -> column.getBinary().toStringUsingUTF8();
+            default -> throw new RuntimeException("Unsupported Parquet column type " + type);
+        };
+    }
+
+}
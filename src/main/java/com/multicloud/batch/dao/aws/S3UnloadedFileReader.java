@@ -0,0 +1,281 @@
+package com.multicloud.batch.dao.aws;
+
+import com.multicloud.batch.service.IngestMetricsService;
+import com.multicloud.batch.util.Util;
+import io.micrometer.core.instrument.Tags;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads Athena UNLOAD output as a pipeline: the listing is paginated, several objects are
+ * downloaded/decompressed/parsed concurrently and the parsed batches are handed to a single
+ * writer (the calling thread) over a bounded queue.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class S3UnloadedFileReader {
+
+    private final IngestMetricsService ingestMetricsService;
+
+    @Value("${batch_job.aws_unload.download_concurrency:4}")
+    private int downloadConcurrency;
+
+    @Value("${batch_job.aws_unload.queue_capacity:8}")
+    private int queueCapacity;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @FunctionalInterface
+    public interface FileParser<T> {
+
+        void parse(InputStream inputStream, Consumer<T> sink) throws IOException;
+
+    }
+
+    @FunctionalInterface
+    public interface LocalFileParser<T> {
+
+        void parse(Path file, Consumer<T> sink) throws IOException;
+
+    }
+
+    @FunctionalInterface
+    private interface ObjectParser<T> {
+
+        void parse(String key, Consumer<T> sink) throws IOException;
+
+    }
+
+    /**
+     * Gzip TEXTFILE output, each object is parsed as it downloads.
+     *
+     * @param tags metric tags of the calling step, see {@link IngestMetricsService#stepTags}
+     * @return total number of parsed rows
+     */
+    public <T> long read(S3Client s3Client, String bucket, String prefix, int batchSize, Tags tags,
+                         FileParser<T> parser, Consumer<List<T>> writer) {
+
+        return read(s3Client, bucket, prefix, batchSize, tags, key -> key.endsWith(".gz"), (key, sink) -> {
+
+            try (
+                    ResponseInputStream<GetObjectResponse> s3Stream = s3Client.getObject(getRequest(bucket, key));
+                    InputStream inputStream = new GZIPInputStream(s3Stream, 64 * 1024)
+            ) {
+                countBytes(s3Stream.response().contentLength(), tags);
+                parser.parse(inputStream, sink);
+            }
+
+        }, writer);
+    }
+
+    /**
+     * Parquet output. The footer (schema, row groups) is at the end of a file, so each object is downloaded
+     * to a temp file first and parsed from there.
+     *
+     * @return total number of parsed rows
+     */
+    public <T> long readParquet(S3Client s3Client, String bucket, String prefix, int batchSize, Tags tags,
+                                LocalFileParser<T> parser, Consumer<List<T>> writer) {
+
+        // The query's manifest and metadata go to the same prefix
+        Predicate<String> dataFile = key -> !key.endsWith("/")
+                && !key.endsWith("-manifest.csv") && !key.endsWith(".metadata");
+
+        return read(s3Client, bucket, prefix, batchSize, tags, dataFile, (key, sink) -> {
+
+            Path file = Files.createTempFile("athena-unload-", ".parquet");
+
+            try {
+
+                try (ResponseInputStream<GetObjectResponse> s3Stream = s3Client.getObject(getRequest(bucket, key))) {
+                    countBytes(s3Stream.response().contentLength(), tags);
+                    Files.copy(s3Stream, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                parser.parse(file, sink);
+
+            } finally {
+                Files.deleteIfExists(file);
+            }
+
+        }, writer);
+    }
+
+    /**
+     * Prefixes of a partitioned UNLOAD ({@code <prefix>/<column>=<value>/}) by partition value.
+     */
+    public Map<String, String> partitions(S3Client s3Client, String bucket, String prefix, String column) {
+
+        ListObjectsV2Request listRequest = ListObjectsV2Request.builder()
+                .bucket(bucket)
+                .prefix(prefix + "/" + column + "=")
+                .delimiter("/")
+                .build();
+
+        Map<String, String> partitions = new TreeMap<>();
+
+        for (CommonPrefix partition : s3Client.listObjectsV2Paginator(listRequest).commonPrefixes()) {
+
+            String path = partition.prefix();
+            String value = path.substring(path.lastIndexOf('=') + 1, path.length() - 1);
+
+            partitions.put(value, path.substring(0, path.length() - 1));
+        }
+
+        return partitions;
+    }
+
+    private <T> long read(S3Client s3Client, String bucket, String prefix, int batchSize, Tags tags,
+                          Predicate<String> dataFile, ObjectParser<T> parser, Consumer<List<T>> writer) {
+
+        BlockingQueue<List<T>> queue = new ArrayBlockingQueue<>(queueCapacity);
+        List<CompletableFuture<Long>> readers = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                downloadConcurrency, Util.threadFactory("S3Unload-", virtualThreads)
+        );
+
+        try {
+
+            ListObjectsV2Request listRequest = ListObjectsV2Request.builder()
+                    .bucket(bucket)
+                    .prefix(prefix)
+                    .build();
+
+            // The paginator follows continuation tokens, so more than 1000 parts are handled too
+            for (S3Object s3Object : s3Client.listObjectsV2Paginator(listRequest).contents()) {
+
+                String key = s3Object.key();
+
+                if (!dataFile.test(key)) {
+                    continue;
+                }
+
+                readers.add(CompletableFuture.supplyAsync(
+                        () -> readFile(key, batchSize, tags, parser, queue), executor
+                ));
+
+            }
+
+            CompletableFuture<Void> allRead = CompletableFuture.allOf(readers.toArray(CompletableFuture[]::new));
+
+            // Writer stage
+            while (true) {
+
+                List<T> batch = queue.poll(500, TimeUnit.MILLISECONDS);
+
+                if (batch != null) {
+                    writer.accept(batch);
+                    continue;
+                }
+
+                if (allRead.isDone() && queue.isEmpty()) {
+                    // Surface the first reader failure, if any
+                    allRead.join();
+                    break;
+                }
+
+            }
+
+            return readers.stream().mapToLong(CompletableFuture::join).sum();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading unloaded files from s3://%s/%s".formatted(bucket, prefix), e);
+        } catch (CompletionException e) {
+            throw new RuntimeException(
+                    "Failed to read unloaded files from s3://%s/%s".formatted(bucket, prefix), e.getCause()
+            );
+        } finally {
+            // Unblocks readers waiting on a full queue when the writer failed
+            executor.shutdownNow();
+        }
+
+    }
+
+    private <T> long readFile(String key, int batchSize, Tags tags, ObjectParser<T> parser,
+                              BlockingQueue<List<T>> queue) {
+
+        log.info("Processing AWS Athena unloaded file: {}", key);
+
+        List<T> batch = new ArrayList<>(batchSize);
+        long[] count = {0};
+
+        try {
+
+            parser.parse(key, row -> {
+
+                batch.add(row);
+                count[0]++;
+
+                if (batch.size() == batchSize) {
+                    put(queue, new ArrayList<>(batch));
+                    batch.clear();
+                }
+
+            });
+
+        } catch (IOException e) {
+            // Fails the read, a partly read file must not pass as loaded (nor get its fingerprints stored)
+            throw new UncheckedIOException("Error reading file: " + key, e);
+        }
+
+        if (!batch.isEmpty()) {
+            put(queue, batch);
+        }
+
+        ingestMetricsService.count(IngestMetricsService.ROWS_PARSED, tags, count[0]);
+
+        return count[0];
+    }
+
+    private static GetObjectRequest getRequest(String bucket, String key) {
+
+        return GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .build();
+    }
+
+    private void countBytes(Long contentLength, Tags tags) {
+        if (contentLength != null) {
+            ingestMetricsService.count(IngestMetricsService.S3_BYTES, tags, contentLength);
+        }
+    }
+
+    private static <T> void put(BlockingQueue<List<T>> queue, List<T> batch) {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while queueing parsed rows", e);
+        }
+    }
+
+}
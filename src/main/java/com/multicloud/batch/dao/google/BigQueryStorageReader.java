@@ -0,0 +1,205 @@
+package com.multicloud.batch.dao.google;
+
+import com.google.api.gax.rpc.ServerStream;
+import com.google.cloud.bigquery.TableId;
+import com.google.cloud.bigquery.storage.v1.*;
+import com.multicloud.batch.service.IngestMetricsService;
+import com.multicloud.batch.util.Util;
+import io.micrometer.core.instrument.Tags;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Reads a (query result) table through the BigQuery Storage Read API: one read session with several
+ * Avro streams decoded in parallel, the bound batches are handed to a single writer (the calling
+ * thread) over a bounded queue.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BigQueryStorageReader {
+
+    private static final int QUEUE_CAPACITY = 8;
+
+    private final IngestMetricsService ingestMetricsService;
+
+    @Value("${batch_job.gcp_billing_data.read_streams:4}")
+    private int maxStreams;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @FunctionalInterface
+    public interface RecordBinder<T> {
+
+        T bind(GenericRecord record);
+
+    }
+
+    /**
+     * @param binderFactory creates the binder once the Avro schema of the session is known,
+     *                      so field positions are resolved once and not per row
+     * @param tags          metric tags of the calling step, see {@link IngestMetricsService#stepTags}
+     * @return total number of rows
+     */
+    public <T> long read(BigQueryReadClient client, TableId table, int batchSize, Tags tags,
+                         Function<Schema, RecordBinder<T>> binderFactory, Consumer<List<T>> writer) {
+
+        String tablePath = "projects/%s/datasets/%s/tables/%s".formatted(
+                table.getProject(), table.getDataset(), table.getTable()
+        );
+
+        CreateReadSessionRequest sessionRequest = CreateReadSessionRequest.newBuilder()
+                .setParent("projects/" + table.getProject())
+                .setReadSession(ReadSession.newBuilder()
+                        .setTable(tablePath)
+                        .setDataFormat(DataFormat.AVRO)
+                        .build())
+                .setMaxStreamCount(maxStreams)
+                .build();
+
+        ReadSession session = client.createReadSession(sessionRequest);
+
+        // An empty table gets a session without streams
+        if (session.getStreamsCount() == 0) {
+            return 0;
+        }
+
+        Schema schema = new Schema.Parser().parse(session.getAvroSchema().getSchema());
+        RecordBinder<T> binder = binderFactory.apply(schema);
+
+        log.info("Reading BigQuery table {} with {} streams", tablePath, session.getStreamsCount());
+
+        BlockingQueue<List<T>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        List<CompletableFuture<Long>> readers = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                session.getStreamsCount(), Util.threadFactory("BigQueryRead-", virtualThreads)
+        );
+
+        try {
+
+            for (ReadStream stream : session.getStreamsList()) {
+                readers.add(CompletableFuture.supplyAsync(
+                        () -> readStream(client, stream.getName(), schema, binder, batchSize, tags, queue), executor
+                ));
+            }
+
+            CompletableFuture<Void> allRead = CompletableFuture.allOf(readers.toArray(CompletableFuture[]::new));
+
+            // Writer stage
+            while (true) {
+
+                List<T> batch = queue.poll(500, TimeUnit.MILLISECONDS);
+
+                if (batch != null) {
+                    writer.accept(batch);
+                    continue;
+                }
+
+                if (allRead.isDone() && queue.isEmpty()) {
+                    // Surface the first reader failure, if any
+                    allRead.join();
+                    break;
+                }
+
+            }
+
+            return readers.stream().mapToLong(CompletableFuture::join).sum();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading BigQuery table " + tablePath, e);
+        } catch (CompletionException e) {
+            throw new RuntimeException("Failed to read BigQuery table " + tablePath, e.getCause());
+        } finally {
+            // Unblocks readers waiting on a full queue when the writer failed
+            executor.shutdownNow();
+        }
+
+    }
+
+    private <T> long readStream(BigQueryReadClient client, String streamName, Schema schema, RecordBinder<T> binder,
+                                int batchSize, Tags tags, BlockingQueue<List<T>> queue) {
+
+        GenericDatumReader<GenericRecord> datumReader = new GenericDatumReader<>(schema);
+
+        BinaryDecoder decoder = null;
+        GenericRecord record = null;
+
+        List<T> batch = new ArrayList<>(batchSize);
+        long count = 0;
+
+        ReadRowsRequest request = ReadRowsRequest.newBuilder()
+                .setReadStream(streamName)
+                .build();
+
+        ServerStream<ReadRowsResponse> responses = client.readRowsCallable().call(request);
+
+        try {
+
+            for (ReadRowsResponse response : responses) {
+
+                if (!response.hasAvroRows()) {
+                    continue;
+                }
+
+                decoder = DecoderFactory.get().binaryDecoder(
+                        response.getAvroRows().getSerializedBinaryRows().newInput(), decoder
+                );
+
+                while (!decoder.isEnd()) {
+
+                    // The record is reused, the binder copies what it needs
+                    record = datumReader.read(record, decoder);
+
+                    batch.add(binder.bind(record));
+                    count++;
+
+                    if (batch.size() == batchSize) {
+                        put(queue, batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+
+                }
+
+            }
+
+        } catch (IOException e) {
+            responses.cancel();
+            throw new RuntimeException("Failed to decode BigQuery read stream " + streamName, e);
+        }
+
+        if (!batch.isEmpty()) {
+            put(queue, batch);
+        }
+
+        ingestMetricsService.count(IngestMetricsService.ROWS_PARSED, tags, count);
+
+        return count;
+    }
+
+    private static <T> void put(BlockingQueue<List<T>> queue, List<T> batch) {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while queueing decoded rows", e);
+        }
+    }
+
+}
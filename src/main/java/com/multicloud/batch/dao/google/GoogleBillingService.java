@@ -10,6 +10,7 @@ import java.time.LocalDate;
 
 public interface GoogleBillingService {
 
-    void fetchDailyServiceCostUsage(byte[] jsonKey, LocalDate start, LocalDate end, boolean internal);
+    // Returns the rows written, 0 when the data was unchanged
+    long fetchDailyServiceCostUsage(byte[] jsonKey, LocalDate start, LocalDate end, boolean internal);
 
 }
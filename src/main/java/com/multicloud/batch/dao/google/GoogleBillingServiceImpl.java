@@ -1,21 +1,36 @@
 package com.multicloud.batch.dao.google;
 
-import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.bigquery.*;
+import com.multicloud.batch.enums.CloudProvider;
+import com.multicloud.batch.model.BillingSyncFingerprint;
 import com.multicloud.batch.model.GcpBillingDailyCost;
+import com.multicloud.batch.repository.BulkLoadWriter;
+import com.multicloud.batch.repository.BulkUpsertWriter;
 import com.multicloud.batch.repository.GcpBillingDailyCostRepository;
+import com.multicloud.batch.service.BillingChangeLogService;
+import com.multicloud.batch.service.BillingSyncFingerprintService;
+import com.multicloud.batch.service.IngestMetricsService;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayInputStream;
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Created by IntelliJ IDEA.
@@ -28,11 +43,30 @@ import java.util.List;
 @Service
 public class GoogleBillingServiceImpl implements GoogleBillingService {
 
-    private final JdbcTemplate jdbcTemplate;
+    private static final String STORAGE_READ_MODE = "storage";
+
+    // Metric source tag of the billing export query
+    private static final String BILLING_EXPORT = "gcp_billing_export_v1";
+
+    // rest: TableResult paging, storage: destination table read through the Storage Read API
+    @Value("${batch_job.gcp_billing_data.read_mode:rest}")
+    private String readMode;
+
+    // LOAD DATA LOCAL INFILE into a staging table and one merge per partition, meant for backfills
+    @Value("${batch_job.bulk_load.enabled:false}")
+    private boolean bulkLoad;
+
+    private final BulkUpsertWriter bulkUpsertWriter;
+    private final BulkLoadWriter bulkLoadWriter;
     private final GcpBillingDailyCostRepository gcpBillingDailyCostRepository;
+    private final BillingChangeLogService billingChangeLogService;
+    private final BillingSyncFingerprintService billingSyncFingerprintService;
+    private final GoogleClientProvider googleClientProvider;
+    private final BigQueryStorageReader bigQueryStorageReader;
+    private final IngestMetricsService ingestMetricsService;
 
     @Override
-    public void fetchDailyServiceCostUsage(byte[] jsonKey, LocalDate start, LocalDate end, boolean internal) {
+    public long fetchDailyServiceCostUsage(byte[] jsonKey, LocalDate start, LocalDate end, boolean internal) {
 
         String query = """
                     SELECT DATE(t.usage_start_time)                                      AS usage_date,
@@ -85,60 +119,349 @@ public class GoogleBillingServiceImpl implements GoogleBillingService {
                 .replace(":start_date", start.format(DateTimeFormatter.ISO_DATE))
                 .replace(":end_date", end.format(DateTimeFormatter.ISO_DATE));
 
-        try {
+        // Same filter, per (usage date, invoice month): row count, NUMERIC sums (exact, unlike FLOAT64 sums)
+        // and an order-insensitive checksum of the lines
+        String fingerprintQuery = """
+                    SELECT DATE(t.usage_start_time)                                      AS usage_date,
+                
+                        COALESCE(
+                            PARSE_DATE('%Y%m', t.invoice.month), DATE_TRUNC(DATE(t.usage_start_time), MONTH)
+                        )                                                                AS billing_month,
+                
+                        COUNT(*)                                                         AS row_count,
+                        CAST(SUM(CAST(t.usage.amount AS NUMERIC)) AS STRING)             AS usage_amount,
+                        CAST(SUM(CAST(t.cost AS NUMERIC)) AS STRING)                     AS cost,
+                        CAST(
+                            SUM((
+                                SELECT COALESCE(SUM(CAST(c.amount AS NUMERIC)), 0)
+                                FROM UNNEST(t.credits) AS c
+                            )) AS STRING
+                        )                                                                AS credits,
+                        CAST(
+                            BIT_XOR(FARM_FINGERPRINT(CONCAT(
+                                COALESCE(t.project.id, ''), '|', COALESCE(t.sku.id, ''), '|',
+                                COALESCE(t.cost_type, ''), '|', CAST(t.cost AS STRING)
+                            ))) AS STRING
+                        )                                                                AS line_checksum
+                
+                    FROM `azerion-billing.azerion_billing_eu.gcp_billing_export_v1_*` AS t
+                    WHERE _PARTITIONDATE BETWEEN ':start_date' AND ':end_date'
+                    GROUP BY 1, 2
+                """
+                .replace(":start_date", start.format(DateTimeFormatter.ISO_DATE))
+                .replace(":end_date", end.format(DateTimeFormatter.ISO_DATE));
 
-            GoogleCredentials credentials = GoogleCredentials.fromStream(
-                    new ByteArrayInputStream(jsonKey)
-            );
+        try (BulkLoadWriter.Session<GcpBillingDailyCost> load = bulkLoad
+                ? gcpBillingDailyCostRepository.openGcpBillingDailyCostLoad(bulkLoadWriter, internal)
+                : null) {
 
-            BigQuery bigQuery = BigQueryOptions.newBuilder()
-                    .setCredentials(credentials)
-                    .build()
-                    .getService();
+            BigQuery bigQuery = googleClientProvider.bigQuery(jsonKey);
 
             QueryJobConfiguration queryConfig = QueryJobConfiguration.newBuilder(query).build();
 
-            TableResult result = bigQuery.query(queryConfig);
+            Set<LocalDate> usageDates = new HashSet<>();
+            Set<LocalDate> billingMonths = new HashSet<>();
+
+            Tags tags = ingestMetricsService.stepTags(CloudProvider.GCP, BILLING_EXPORT);
+
+            Map<BillingSyncFingerprint.Slice, String> fingerprints = Map.of();
+
+            if (billingSyncFingerprintService.isEnabled()) {
+
+                fingerprints = fetchFingerprints(bigQuery, fingerprintQuery, tags);
+
+                if (billingSyncFingerprintService.unchanged(CloudProvider.GCP, BILLING_EXPORT, internal, fingerprints)) {
+                    log.info("GCP billing data of {} - {} unchanged since the last sync, skipped.", start, end);
+                    ingestMetricsService.count(IngestMetricsService.SKIPPED_UNCHANGED, tags, 1);
+                    return 0;
+                }
+
+            }
+
+            long count;
+
+            if (STORAGE_READ_MODE.equals(readMode)) {
+                count = fetchWithStorageReadApi(
+                        bigQuery, queryConfig, jsonKey, internal, tags, load, usageDates, billingMonths
+                );
+            } else {
+                count = fetchWithRestPaging(bigQuery, queryConfig, internal, tags, load, usageDates, billingMonths);
+            }
+
+            if (load != null) {
+                ingestMetricsService.recordUpsert(tags, count, load::merge);
+            }
+
+            billingChangeLogService.markChanged(CloudProvider.GCP, usageDates, billingMonths);
+
+            billingSyncFingerprintService.store(CloudProvider.GCP, BILLING_EXPORT, internal, fingerprints);
+
+            log.info("GCP billing data fetched and stored successfully. Total results: {}", count);
+
+            return count;
+
+        } catch (Exception e) {
+            log.error("GCP billing data fetch error", e);
+            throw new RuntimeException("GCP billing data fetch error", e);
+        }
+
+    }
+
+    private Map<BillingSyncFingerprint.Slice, String> fetchFingerprints(BigQuery bigQuery, String query, Tags tags)
+            throws InterruptedException {
+
+        Timer.Sample querySample = ingestMetricsService.startTimer();
+        TableResult result = bigQuery.query(QueryJobConfiguration.newBuilder(query).build());
+        ingestMetricsService.stopTimer(querySample, IngestMetricsService.BIGQUERY_QUERY, tags);
+
+        Map<BillingSyncFingerprint.Slice, String> fingerprints = new HashMap<>();
+
+        for (FieldValueList row : result.iterateAll()) {
+            fingerprints.put(
+                    new BillingSyncFingerprint.Slice(
+                            LocalDate.parse(row.get("billing_month").getStringValue()),
+                            LocalDate.parse(row.get("usage_date").getStringValue())
+                    ),
+                    BillingSyncFingerprintService.digest(
+                            row.get("row_count").getStringValue(),
+                            row.get("usage_amount").getStringValue(),
+                            row.get("cost").getStringValue(),
+                            row.get("credits").getStringValue(),
+                            row.get("line_checksum").getStringValue()
+                    )
+            );
+        }
+
+        return fingerprints;
+    }
+
+    private long fetchWithRestPaging(BigQuery bigQuery, QueryJobConfiguration queryConfig, boolean internal,
+                                     Tags tags, BulkLoadWriter.Session<GcpBillingDailyCost> load,
+                                     Set<LocalDate> usageDates,
+                                     Set<LocalDate> billingMonths) throws InterruptedException {
+
+        // Runs the query and fetches the first page
+        Timer.Sample querySample = ingestMetricsService.startTimer();
+        TableResult page = bigQuery.query(queryConfig);
+        ingestMetricsService.stopTimer(querySample, IngestMetricsService.BIGQUERY_QUERY, tags);
 
-            List<GcpBillingDailyCost> billings = new ArrayList<>();
+        List<GcpBillingDailyCost> billings = new ArrayList<>();
 
-            long count = 0;
+        long count = 0;
 
-            // BigQuery returns results in pages.
-            // Each page can contain up to 10,000 rows by default, depending on the query and row size.
-            for (FieldValueList row : result.iterateAll()) {
+        // BigQuery returns results in pages.
+        // Each page can contain up to 10,000 rows by default, depending on the query and row size.
+        // Paged explicitly (not iterateAll) so the fetch of every page can be timed.
+        while (page != null) {
+
+            long pageCount = 0;
+
+            for (FieldValueList row : page.getValues()) {
 
                 GcpBillingDailyCost billing = bindRow(row, internal);
 
                 billings.add(billing);
-                count++;
+                pageCount++;
+
+                usageDates.add(billing.getUsageDate());
+                billingMonths.add(billing.getBillingMonth());
 
                 if (billings.size() == 5000) {
 
                     // Save each batch
                     // Clean before the next
-                    log.info("Upserting {} fetched GCP records into DB.", billings.size());
-                    gcpBillingDailyCostRepository.upsertGcpBillingDailyCosts(billings, jdbcTemplate, internal);
+                    upsert(billings, internal, tags, load);
                     billings.clear();
 
                 }
 
             }
 
-            log.info("Upserting {} fetched GCP records into DB.", billings.size());
-            gcpBillingDailyCostRepository.upsertGcpBillingDailyCosts(billings, jdbcTemplate, internal);
-            billings.clear();
+            ingestMetricsService.count(IngestMetricsService.ROWS_PARSED, tags, pageCount);
+            count += pageCount;
 
-            log.info("GCP billing data fetched and stored successfully. Total results: {}", count);
+            TableResult current = page;
 
-        } catch (Exception e) {
-            log.error("GCP billing data fetch error", e);
-            throw new RuntimeException("GCP billing data fetch error", e);
+            page = page.hasNextPage()
+                    ? ingestMetricsService.time(IngestMetricsService.BIGQUERY_PAGE, tags, current::getNextPage)
+                    : null;
+
+        }
+
+        upsert(billings, internal, tags, load);
+        billings.clear();
+
+        return count;
+    }
+
+    /**
+     * Upserts the batch, or only stages it in bulk mode (merged once the partition is fetched).
+     */
+    private void upsert(List<GcpBillingDailyCost> billings, boolean internal, Tags tags,
+                        BulkLoadWriter.Session<GcpBillingDailyCost> load) {
+
+        if (load != null) {
+            log.info("Loading {} fetched GCP records into the staging table.", billings.size());
+            ingestMetricsService.time(IngestMetricsService.BULK_LOAD, tags, () -> load.load(billings));
+            return;
+        }
+
+        log.info("Upserting {} fetched GCP records into DB.", billings.size());
+
+        ingestMetricsService.recordUpsert(tags, billings.size(), () ->
+                gcpBillingDailyCostRepository.upsertGcpBillingDailyCosts(billings, bulkUpsertWriter, internal)
+        );
+    }
+
+    /**
+     * Runs the query into its (anonymous, temporary) destination table and reads that table
+     * through parallel Avro streams of the Storage Read API.
+     */
+    private long fetchWithStorageReadApi(BigQuery bigQuery, QueryJobConfiguration queryConfig, byte[] jsonKey,
+                                         boolean internal, Tags tags,
+                                         BulkLoadWriter.Session<GcpBillingDailyCost> load,
+                                         Set<LocalDate> usageDates,
+                                         Set<LocalDate> billingMonths) throws InterruptedException {
+
+        Timer.Sample querySample = ingestMetricsService.startTimer();
+        Job job = bigQuery.create(JobInfo.of(queryConfig)).waitFor();
+        ingestMetricsService.stopTimer(querySample, IngestMetricsService.BIGQUERY_QUERY, tags);
+
+        if (job == null) {
+            throw new RuntimeException("GCP billing query job no longer exists");
+        }
+
+        if (job.getStatus().getError() != null) {
+            throw new RuntimeException("GCP billing query failed: " + job.getStatus().getError());
+        }
+
+        TableId destination = ((QueryJobConfiguration) job.getConfiguration()).getDestinationTable();
+
+        return bigQueryStorageReader.read(
+                googleClientProvider.bigQueryReadClient(jsonKey),
+                destination,
+                5000,
+                tags,
+                schema -> avroBinder(schema, internal),
+                batch -> {
+
+                    upsert(batch, internal, tags, load);
+
+                    for (GcpBillingDailyCost billing : batch) {
+                        usageDates.add(billing.getUsageDate());
+                        billingMonths.add(billing.getBillingMonth());
+                    }
+
+                }
+        );
+    }
+
+    /**
+     * Binds by field position, resolved once from the session schema.
+     */
+    private BigQueryStorageReader.RecordBinder<GcpBillingDailyCost> avroBinder(Schema schema, boolean internal) {
+
+        int usageDate = schema.getField("usage_date").pos();
+        int billingMonth = schema.getField("billing_month").pos();
+        int billingAccountId = schema.getField("billing_account_id").pos();
+        int projectId = schema.getField("project_id").pos();
+        int projectName = schema.getField("project_name").pos();
+        int serviceCode = schema.getField("service_code").pos();
+        int serviceName = schema.getField("service_name").pos();
+        int skuId = schema.getField("sku_id").pos();
+        int skuDescription = schema.getField("sku_description").pos();
+        int region = schema.getField("region").pos();
+        int location = schema.getField("location").pos();
+        int currency = schema.getField("currency").pos();
+        int costType = schema.getField("cost_type").pos();
+        int usageAmount = schema.getField("usage_amount").pos();
+        int usageUnit = schema.getField("usage_unit").pos();
+        int cost = schema.getField("cost").pos();
+        int credits = schema.getField("credits").pos();
+
+        int usageAmountScale = decimalScale(schema.getField("usage_amount"));
+        int costScale = decimalScale(schema.getField("cost"));
+        int creditsScale = decimalScale(schema.getField("credits"));
+
+        return record -> {
+
+            BigDecimal costValue = avroDecimal(record.get(cost), costScale);
+            BigDecimal creditsValue = avroDecimal(record.get(credits), creditsScale);
+
+            return GcpBillingDailyCost.builder()
+                    .usageDate(avroDate(record.get(usageDate)))
+                    .billingMonth(avroDate(record.get(billingMonth)))
+                    .billingAccountId(avroString(record.get(billingAccountId)))
+                    .projectId(avroString(record.get(projectId)))
+                    .projectName(avroString(record.get(projectName)))
+                    .serviceCode(avroString(record.get(serviceCode)))
+                    .serviceName(avroString(record.get(serviceName)))
+                    .skuId(avroString(record.get(skuId)))
+                    .skuDescription(avroString(record.get(skuDescription)))
+                    .region(avroString(record.get(region)))
+                    .location(avroString(record.get(location)))
+                    .currency(avroString(record.get(currency)))
+                    .costType(avroString(record.get(costType)))
+                    .usageAmount(avroDecimal(record.get(usageAmount), usageAmountScale))
+                    .usageUnit(avroString(record.get(usageUnit)))
+                    .cost(internal ? costValue : BigDecimal.ZERO)
+                    .credits(internal ? creditsValue : BigDecimal.ZERO)
+                    .extCost(internal ? BigDecimal.ZERO : costValue)
+                    .extCredits(internal ? BigDecimal.ZERO : creditsValue)
+                    .build();
+        };
+    }
+
+    private static String avroString(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    // DATE is an int (days since epoch) with the date logical type
+    private static LocalDate avroDate(Object value) {
+
+        if (value == null) {
+            return null;
+        }
+
+        if (value instanceof Integer days) {
+            return LocalDate.ofEpochDay(days);
+        }
+
+        return LocalDate.parse(value.toString());
+    }
+
+    // FLOAT64 comes as a double, NUMERIC/BIGNUMERIC as decimal bytes
+    private static BigDecimal avroDecimal(Object value, int scale) {
+
+        return switch (value) {
+            case null -> null;
+            case Double d -> BigDecimal.valueOf(d);
+            case Long l -> BigDecimal.valueOf(l);
+            case ByteBuffer bytes -> {
+                byte[] unscaled = new byte[bytes.remaining()];
+                bytes.duplicate().get(unscaled);
+                yield new BigDecimal(new BigInteger(unscaled), scale);
+            }
+            default -> new BigDecimal(value.toString());
+        };
+    }
+
+    private static int decimalScale(Schema.Field field) {
+
+        Schema schema = field.schema();
+
+        // Nullable columns are a union of null and the actual type
+        if (schema.getType() == Schema.Type.UNION) {
+            schema = schema.getTypes().stream()
+                    .filter(type -> type.getType() != Schema.Type.NULL)
+                    .findFirst()
+                    .orElse(schema);
         }
 
+        return schema.getLogicalType() instanceof LogicalTypes.Decimal decimal ? decimal.getScale() : 0;
     }
 
-    private GcpBillingDailyCost bindRow(FieldValueList row, boolean internal) {
+    GcpBillingDailyCost bindRow(FieldValueList row, boolean internal) {
 
         return GcpBillingDailyCost.builder()
                 .usageDate(parseLocalDate(row, "usage_date"))
@@ -0,0 +1,83 @@
+package com.multicloud.batch.dao.google;
+
+import com.google.api.gax.core.FixedCredentialsProvider;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.BigQueryOptions;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadClient;
+import com.google.cloud.bigquery.storage.v1.BigQueryReadSettings;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one BigQuery and one BigQuery Storage Read client per service account key, shared by all
+ * partitions instead of being built from the JSON key on every call.
+ */
+@Slf4j
+@Component
+public class GoogleClientProvider {
+
+    private static final String CLOUD_PLATFORM_SCOPE = "https://www.googleapis.com/auth/cloud-platform";
+
+    private final Map<String, BigQuery> bigQueryClients = new ConcurrentHashMap<>();
+    private final Map<String, BigQueryReadClient> readClients = new ConcurrentHashMap<>();
+
+    public BigQuery bigQuery(byte[] jsonKey) {
+        return bigQueryClients.computeIfAbsent(
+                new String(jsonKey, StandardCharsets.UTF_8),
+                key -> BigQueryOptions.newBuilder()
+                        .setCredentials(credentials(jsonKey))
+                        .build()
+                        .getService()
+        );
+    }
+
+    public BigQueryReadClient bigQueryReadClient(byte[] jsonKey) {
+        return readClients.computeIfAbsent(
+                new String(jsonKey, StandardCharsets.UTF_8),
+                key -> {
+                    try {
+                        BigQueryReadSettings settings = BigQueryReadSettings.newBuilder()
+                                .setCredentialsProvider(FixedCredentialsProvider.create(
+                                        credentials(jsonKey).createScoped(CLOUD_PLATFORM_SCOPE)
+                                ))
+                                .build();
+                        return BigQueryReadClient.create(settings);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Failed to create BigQuery read client", e);
+                    }
+                }
+        );
+    }
+
+    @PreDestroy
+    public void close() {
+
+        readClients.values().forEach(client -> {
+            try {
+                client.close();
+            } catch (Exception e) {
+                log.warn("Failed to close BigQuery read client", e);
+            }
+        });
+
+        readClients.clear();
+        bigQueryClients.clear();
+    }
+
+    private GoogleCredentials credentials(byte[] jsonKey) {
+        try {
+            return GoogleCredentials.fromStream(new ByteArrayInputStream(jsonKey));
+        } catch (IOException e) {
+            throw new RuntimeException("Invalid GCP service account key", e);
+        }
+    }
+
+}
@@ -11,6 +11,7 @@ import com.multicloud.batch.job.CustomDateRange;
 
 public interface HuaweiBillingService {
 
-    void fetchDailyServiceCostUsage(CustomDateRange range, HuaweiAuthDetails authDetails, boolean internal);
+    // Returns the rows written, unchanged days are not counted
+    long fetchDailyServiceCostUsage(CustomDateRange range, HuaweiAuthDetails authDetails, boolean internal);
 
 }
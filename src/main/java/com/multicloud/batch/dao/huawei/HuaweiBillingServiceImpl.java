@@ -1,24 +1,44 @@
 package com.multicloud.batch.dao.huawei;
 
 import com.multicloud.batch.dao.huawei.payload.HuaweiAuthDetails;
-import com.multicloud.batch.dao.huawei.payload.HuaweiBillingGroup;
 import com.multicloud.batch.dao.huawei.payload.HuaweiResourceBillingRequest;
-import com.multicloud.batch.dao.huawei.payload.HuaweiResourceBillingResponse;
+import com.multicloud.batch.enums.CloudProvider;
 import com.multicloud.batch.job.CustomDateRange;
+import com.multicloud.batch.model.BillingSyncFingerprint;
 import com.multicloud.batch.model.HuaweiBillingDailyCost;
+import com.multicloud.batch.repository.BulkLoadWriter;
+import com.multicloud.batch.repository.BulkUpsertWriter;
 import com.multicloud.batch.repository.HuaweiBillingDailyCostRepository;
+import com.multicloud.batch.service.BillingChangeLogService;
+import com.multicloud.batch.service.BillingSyncFingerprintService;
+import com.multicloud.batch.service.IngestMetricsService;
+import com.multicloud.batch.util.RateLimiter;
 import com.multicloud.batch.util.Util;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.security.MessageDigest;
 import java.time.LocalDate;
-import java.time.YearMonth;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Created by IntelliJ IDEA.
@@ -31,26 +51,170 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class HuaweiBillingServiceImpl implements HuaweiBillingService {
 
-    private final JdbcTemplate jdbcTemplate;
+    private static final int PAGE_SIZE = 1000;
+
+    private static final int WRITE_BATCH_SIZE = 5000;
+
+    @Value("${batch_job.huawei_api.page_concurrency:3}")
+    private int pageConcurrency;
+
+    // Shared by all Huawei partitions and jobs of this instance
+    @Value("${batch_job.huawei_api.requests_per_second:5}")
+    private double requestsPerSecond;
+
+    // LOAD DATA LOCAL INFILE into a staging table and one merge per partition, meant for backfills
+    @Value("${batch_job.bulk_load.enabled:false}")
+    private boolean bulkLoad;
+
+    // Per partition, above it the aggregation of a day spills sorted runs to temp files
+    @Value("${batch_job.huawei_api.aggregation_memory_mb:256}")
+    private long aggregationMemoryMb;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private RateLimiter rateLimiter;
+
+    private final BulkUpsertWriter bulkUpsertWriter;
+    private final BulkLoadWriter bulkLoadWriter;
     private final RestTemplate restTemplate;
 
     private final HuaweiBillingDailyCostRepository huaweiBillingDailyCostRepository;
+    private final BillingChangeLogService billingChangeLogService;
+    private final BillingSyncFingerprintService billingSyncFingerprintService;
+    private final IngestMetricsService ingestMetricsService;
+
+    @PostConstruct
+    public void init() {
+        rateLimiter = new RateLimiter(requestsPerSecond);
+    }
 
     @Override
-    public void fetchDailyServiceCostUsage(CustomDateRange range, HuaweiAuthDetails authDetails, boolean internal) {
+    public long fetchDailyServiceCostUsage(CustomDateRange range, HuaweiAuthDetails authDetails, boolean internal) {
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                pageConcurrency, Util.threadFactory("HuaweiPage-", virtualThreads)
+        );
+
+        Tags tags = ingestMetricsService.stepTags(CloudProvider.HWC, authDetails.payerAccountId());
+
+        long total = 0;
+
+        // Of the changed days, stored once all of them are written
+        Map<BillingSyncFingerprint.Slice, String> fingerprints = new HashMap<>();
+
+        try (BulkLoadWriter.Session<HuaweiBillingDailyCost> load = bulkLoad
+                ? huaweiBillingDailyCostRepository.openHuaweiBillingDailyCostLoad(bulkLoadWriter, internal)
+                : null) {
+
+            // One bill date at a time, so each day is complete (and flushed) before the next one starts
+            for (LocalDate day = range.start(); !day.isAfter(range.end()); day = day.plusDays(1)) {
+
+                try (HuaweiCostSpill costs = new HuaweiCostSpill(aggregationMemoryMb << 20)) {
+
+                    fetchDay(range, day, authDetails, costs, tags, executor);
+
+                    Map<BillingSyncFingerprint.Slice, String> dayFingerprints = Map.of();
+
+                    if (billingSyncFingerprintService.isEnabled()) {
+
+                        dayFingerprints = fingerprints(costs, internal);
+
+                        if (billingSyncFingerprintService.unchanged(
+                                CloudProvider.HWC, authDetails.payerAccountId(), internal, dayFingerprints
+                        )) {
+                            log.info("Huawei billing data of {} unchanged since the last sync, skipped.", day);
+                            ingestMetricsService.count(IngestMetricsService.SKIPPED_UNCHANGED, tags, 1);
+                            continue;
+                        }
+
+                    }
+
+                    long stored = store(costs, load, internal, tags);
+
+                    log.info("Huawei billing data of {} stored: {} ({} spilled runs)", day, stored, costs.runs());
+
+                    total += stored;
+                    fingerprints.putAll(dayFingerprints);
+                }
+            }
+
+            if (load != null) {
+                ingestMetricsService.recordUpsert(tags, total, load::merge);
+            }
+
+            billingSyncFingerprintService.store(CloudProvider.HWC, authDetails.payerAccountId(), internal, fingerprints);
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        log.info("Huawei billing data fetched and stored successfully. Total results: {}", total);
+
+        return total;
+
+    }
+
+    /**
+     * Reads the first page to learn total_count, then requests the remaining pages concurrently,
+     * at most pageConcurrency of them in flight: the next page is requested once the oldest one is
+     * merged, so decoded pages never pile up behind a slow one outside the spill budget.
+     * Pages are merged on the calling thread in page order, so the descriptive fields of a
+     * group still come from its first record like with the sequential paging.
+     */
+    private void fetchDay(CustomDateRange range, LocalDate day, HuaweiAuthDetails authDetails,
+                          HuaweiCostSpill costs, Tags tags, ExecutorService executor) {
+
+        HuaweiResourceBillingDecoder.Page first = fetchPage(range, day, authDetails, 0, tags);
+
+        costs.merge(first.groups());
 
-        Map<HuaweiBillingGroup, HuaweiBillingDailyCost> data = new HashMap<>();
-        doRequest(range, authDetails, 0, data, internal);
-        huaweiBillingDailyCostRepository.upsertHuaweiBillingDailyCosts(data.values(), jdbcTemplate, internal);
+        int pages = (first.totalCount() + PAGE_SIZE - 1) / PAGE_SIZE;
 
-        log.info("Huawei billing data fetched and stored successfully. Total results: {}", data.size());
+        Deque<CompletableFuture<HuaweiResourceBillingDecoder.Page>> inFlight = new ArrayDeque<>();
 
-        data.clear();
+        int next = 1;
+
+        HuaweiResourceBillingDecoder.Page last = first;
+
+        try {
+
+            while (next < pages || !inFlight.isEmpty()) {
+
+                while (next < pages && inFlight.size() < pageConcurrency) {
+                    int offset = next * PAGE_SIZE;
+                    inFlight.add(CompletableFuture.supplyAsync(
+                            () -> fetchPage(range, day, authDetails, offset, tags), executor
+                    ));
+                    next++;
+                }
+
+                last = inFlight.poll().join();
+                costs.merge(last.groups());
+            }
+
+        } catch (CompletionException e) {
+            inFlight.forEach(future -> future.cancel(true));
+            throw new RuntimeException("Failed to fetch Huawei billing data of " + day, e.getCause());
+        }
+
+        // total_count is a snapshot, keep paging while pages come back full
+        int offset = Math.max(pages, 1) * PAGE_SIZE;
+
+        while (last.records() == PAGE_SIZE) {
+            last = fetchPage(range, day, authDetails, offset, tags);
+            costs.merge(last.groups());
+            offset += PAGE_SIZE;
+        }
 
     }
 
-    private void doRequest(CustomDateRange range, HuaweiAuthDetails authDetails, int offset,
-                           Map<HuaweiBillingGroup, HuaweiBillingDailyCost> data, boolean internal) {
+    /**
+     * The body is decoded as it streams in (see {@link HuaweiResourceBillingDecoder}), so the page
+     * comes back already aggregated.
+     */
+    private HuaweiResourceBillingDecoder.Page fetchPage(CustomDateRange range, LocalDate day,
+                                                        HuaweiAuthDetails authDetails, int offset, Tags tags) {
 
         HuaweiResourceBillingRequest request = new HuaweiResourceBillingRequest(
                 String.valueOf(range.year()),
@@ -60,10 +224,10 @@ public class HuaweiBillingServiceImpl implements HuaweiBillingService {
                 "all",
                 2,
                 "DAILY",
-                range.start().toString(),
-                range.end().toString(),
+                day.toString(),
+                day.toString(),
                 offset,
-                1000
+                PAGE_SIZE
         );
 
         String url = "https://bss.myhuaweicloud.eu/v2/bills/customer-bills/res-records/query";
@@ -75,79 +239,129 @@ public class HuaweiBillingServiceImpl implements HuaweiBillingService {
 
         HttpEntity<HuaweiResourceBillingRequest> entity = new HttpEntity<>(request, headers);
 
-        ResponseEntity<HuaweiResourceBillingResponse> response = restTemplate.exchange(
+        rateLimiter.acquire();
+
+        // Timed after the rate limiter, so it is the API latency only
+        Timer.Sample sample = ingestMetricsService.startTimer();
+
+        HuaweiResourceBillingDecoder.Page page = restTemplate.execute(
                 url,
                 HttpMethod.POST,
-                entity,
-                HuaweiResourceBillingResponse.class
+                restTemplate.httpEntityCallback(entity),
+                response -> HuaweiResourceBillingDecoder.decode(response.getBody())
         );
 
-        if (response.getBody() != null) {
+        ingestMetricsService.stopTimer(sample, IngestMetricsService.HUAWEI_PAGE, tags);
 
-            response.getBody().monthly_records().forEach(row -> {
+        if (page == null) {
+            throw new RuntimeException("Failed to fetch daily service cost usage, response body is null");
+        }
 
-                HuaweiBillingGroup group = new HuaweiBillingGroup(
-                        LocalDate.parse(row.bill_date()),
-                        YearMonth.parse(row.cycle()).atDay(1),
-                        Util.nullToEmpty(row.payer_account_id()),
-                        Util.nullToEmpty(row.customer_id()),
-                        Util.nullToEmpty(row.enterprise_project_id()),
-                        Util.nullToEmpty(row.cloud_service_type()),
-                        Util.nullToEmpty(row.sku_code()),
-                        Util.nullToEmpty(row.resource_Type_code()),
-                        Util.nullToEmpty(row.region()),
-                        row.charge_mode(),
-                        row.bill_type()
-                );
+        ingestMetricsService.count(IngestMetricsService.ROWS_PARSED, tags, page.records());
 
-                HuaweiBillingDailyCost cost = data.get(group);
+        return page;
+    }
 
-                if (cost == null) {
+    /**
+     * Writes the costs of a day in batches, the groups come one at a time out of the (spilled) aggregation.
+     */
+    private long store(HuaweiCostSpill costs, BulkLoadWriter.Session<HuaweiBillingDailyCost> load, boolean internal,
+                       Tags tags) {
 
-                    HuaweiBillingDailyCost newCost = HuaweiBillingDailyCost.from(row, internal);
-                    data.put(group, newCost);
+        List<HuaweiBillingDailyCost> bills = new ArrayList<>(WRITE_BATCH_SIZE);
 
-                } else {
+        Set<LocalDate> billDates = new HashSet<>();
+        Set<LocalDate> billingMonths = new HashSet<>();
 
-                    if (internal) {
+        long[] stored = {0};
 
-                        if (row.consume_amount() != null) {
-                            cost.setConsumeAmount(cost.getConsumeAmount().add(row.consume_amount()));
-                        }
-                        if (row.debt_amount() != null) {
-                            cost.setDebtAmount(cost.getDebtAmount().add(row.debt_amount()));
-                        }
-                        if (row.official_amount() != null) {
-                            cost.setOfficialAmount(cost.getOfficialAmount().add(row.official_amount()));
-                        }
+        costs.forEachSorted(internal, (group, cost) -> {
 
-                    } else {
+            bills.add(cost);
+            billDates.add(group.billDate());
+            billingMonths.add(group.billingMonth());
 
-                        if (row.consume_amount() != null) {
-                            cost.setExtConsumeAmount(cost.getExtConsumeAmount().add(row.consume_amount()));
-                        }
-                        if (row.debt_amount() != null) {
-                            cost.setExtDebtAmount(cost.getExtDebtAmount().add(row.debt_amount()));
-                        }
-                        if (row.official_amount() != null) {
-                            cost.setExtOfficialAmount(cost.getExtOfficialAmount().add(row.official_amount()));
-                        }
+            if (bills.size() == WRITE_BATCH_SIZE) {
+                stored[0] += write(bills, load, internal, tags);
+            }
 
-                    }
+        });
 
-                    data.put(group, cost);
-                }
+        stored[0] += write(bills, load, internal, tags);
 
-            });
+        billingChangeLogService.markChanged(CloudProvider.HWC, billDates, billingMonths);
 
-            if (!response.getBody().monthly_records().isEmpty()) {
-                doRequest(range, authDetails, offset + 1000, data, internal);
-            }
+        return stored[0];
+    }
 
+    private int write(List<HuaweiBillingDailyCost> bills, BulkLoadWriter.Session<HuaweiBillingDailyCost> load,
+                      boolean internal, Tags tags) {
+
+        if (bills.isEmpty()) {
+            return 0;
+        }
+
+        if (load != null) {
+            ingestMetricsService.time(IngestMetricsService.BULK_LOAD, tags, () -> load.load(bills));
         } else {
-            throw new RuntimeException("Failed to fetch daily service cost usage, response body is null");
+            ingestMetricsService.recordUpsert(tags, bills.size(), () ->
+                    huaweiBillingDailyCostRepository.upsertHuaweiBillingDailyCosts(
+                            bills, bulkUpsertWriter, internal
+                    )
+            );
+        }
+
+        int written = bills.size();
+        bills.clear();
+
+        return written;
+    }
+
+    /**
+     * Per (billing month, bill date): digest of the aggregated groups in group order. The res-records API
+     * has nothing to push this down to, so the pages are still read, an unchanged day only saves the
+     * upsert and the re-merge.
+     */
+    private static Map<BillingSyncFingerprint.Slice, String> fingerprints(HuaweiCostSpill costs, boolean internal) {
+
+        Map<BillingSyncFingerprint.Slice, MessageDigest> digests = new HashMap<>();
+
+        costs.forEachSorted(internal, (group, cost) -> BillingSyncFingerprintService.update(
+                digests.computeIfAbsent(
+                        new BillingSyncFingerprint.Slice(group.billingMonth(), group.billDate()),
+                        slice -> BillingSyncFingerprintService.newDigest()
+                ),
+                fingerprintLine(cost)
+        ));
+
+        Map<BillingSyncFingerprint.Slice, String> fingerprints = new HashMap<>();
+        digests.forEach((slice, digest) -> fingerprints.put(slice, BillingSyncFingerprintService.finish(digest)));
+
+        return fingerprints;
+    }
+
+    /**
+     * Every column the upsert writes (HuaweiBillingDailyCostRepository.COLUMNS), so that a changed name
+     * is not skipped as unchanged.
+     */
+    private static String fingerprintLine(HuaweiBillingDailyCost cost) {
+
+        StringJoiner line = new StringJoiner("|", "", "\n");
+
+        for (Object value : new Object[]{
+                cost.getBillDate(), cost.getBillingMonth(), cost.getPayerAccountId(), cost.getCustomerId(),
+                cost.getEnterpriseProjectId(), cost.getEnterpriseProjectName(),
+                cost.getCloudServiceType(), cost.getCloudServiceTypeName(),
+                cost.getSkuCode(), cost.getProductSpecDesc(),
+                cost.getResourceTypeCode(), cost.getResourceTypeName(), cost.getResourceName(),
+                cost.getRegion(), cost.getRegionName(), cost.getChargeMode(), cost.getBillType(),
+                cost.getUsageAmount(), cost.getConsumeAmount(), cost.getDebtAmount(), cost.getOfficialAmount(),
+                cost.getExtConsumeAmount(), cost.getExtDebtAmount(), cost.getExtOfficialAmount()
+        }) {
+            line.add(String.valueOf(value));
         }
 
+        return line.toString();
     }
 
 //    private void doRequest(long orgId, CustomDateRange range, HuaweiAuthDetails authDetails, int offset,
@@ -0,0 +1,492 @@
+package com.multicloud.batch.dao.huawei;
+
+import com.multicloud.batch.dao.huawei.payload.HuaweiBillingGroup;
+import com.multicloud.batch.model.HuaweiBillingDailyCost;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Aggregation of res-records into {@link HuaweiBillingGroup}s without an object per group: every dimension
+ * is dictionary-encoded (payer ids, customer ids, service types, SKUs, regions repeat a lot), the codes
+ * of a group are packed into {@value #KEY_LONGS} longs of an open-addressing table and the amounts are
+ * summed as fixed-point longs (scale {@value #SCALE}, the scale of the cost columns). Group records and
+ * {@link HuaweiBillingDailyCost}s are only created by {@link #forEachSorted}, one at a time.
+ * <p>
+ * Not thread safe, a page is decoded into its own aggregator and {@link #merge merged} into the one of
+ * the day.
+ */
+final class HuaweiCostAggregator {
+
+    // Key dimensions, the values as read. The String ones come first, their nulls are grouped as ""
+    static final int BILL_DATE = 0;
+    static final int CYCLE = 1;
+    static final int PAYER_ACCOUNT_ID = 2;
+    static final int CUSTOMER_ID = 3;
+    static final int ENTERPRISE_PROJECT_ID = 4;
+    static final int CLOUD_SERVICE_TYPE = 5;
+    static final int SKU_CODE = 6;
+    static final int RESOURCE_TYPE_CODE = 7;
+    static final int REGION = 8;
+    static final int CHARGE_MODE = 9;
+    static final int BILL_TYPE = 10;
+    static final int DIMENSIONS = 11;
+
+    // Descriptive fields, from the first record of a group
+    static final int ENTERPRISE_PROJECT_NAME = 0;
+    static final int CLOUD_SERVICE_TYPE_NAME = 1;
+    static final int PRODUCT_SPEC_DESC = 2;
+    static final int RESOURCE_TYPE_NAME = 3;
+    static final int RESOURCE_NAME = 4;
+    static final int REGION_NAME = 5;
+    static final int NAMES = 6;
+
+    private static final int CODE_BITS = 21;
+    private static final int CODES_PER_LONG = 3;
+    private static final int KEY_LONGS = (DIMENSIONS + CODES_PER_LONG - 1) / CODES_PER_LONG;
+
+    private static final int AMOUNTS = 3;
+    private static final int SCALE = 8;
+
+    private final Dictionary[] dictionaries = new Dictionary[DIMENSIONS];
+    private final Dictionary names = new Dictionary();
+
+    // Per group, in insertion order
+    private long[] keys;
+    private int[] groupNames;
+    private long[] amounts;
+    private int size;
+
+    // Group index + 1 per slot, 0 when free
+    private int[] table;
+
+    // Reused by add
+    private final long[] key = new long[KEY_LONGS];
+
+    HuaweiCostAggregator() {
+
+        for (int i = 0; i < DIMENSIONS; i++) {
+            dictionaries[i] = new Dictionary();
+        }
+
+        keys = new long[64 * KEY_LONGS];
+        groupNames = new int[64 * NAMES];
+        amounts = new long[64 * AMOUNTS];
+        table = new int[128];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a record, the arrays are read (not kept) so the caller can reuse them.
+     *
+     * @param dimensions the {@value #DIMENSIONS} key values
+     * @param names      the {@value #NAMES} descriptive fields
+     */
+    void add(Object[] dimensions, String[] names, BigDecimal consumeAmount, BigDecimal debtAmount,
+             BigDecimal officialAmount) {
+
+        Arrays.fill(key, 0);
+
+        for (int i = 0; i < DIMENSIONS; i++) {
+            Object value = dimensions[i] == null && i < CHARGE_MODE ? "" : dimensions[i];
+            pack(key, i, dictionaries[i].encode(value));
+        }
+
+        int group = find(key);
+
+        if (group < 0) {
+
+            group = insert(key);
+
+            for (int i = 0; i < NAMES; i++) {
+                groupNames[group * NAMES + i] = this.names.encode(names[i] == null ? "" : names[i]);
+            }
+
+        }
+
+        add(group, fixed(consumeAmount), fixed(debtAmount), fixed(officialAmount));
+    }
+
+    /**
+     * Adds the groups of another aggregator (the next page), a group already here keeps its descriptive fields.
+     */
+    void merge(HuaweiCostAggregator other) {
+
+        // Code in other -> code here, per dimension
+        int[][] remap = new int[DIMENSIONS][];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            remap[i] = other.dictionaries[i].remap(dictionaries[i]);
+        }
+
+        int[] nameRemap = other.names.remap(names);
+
+        for (int g = 0; g < other.size; g++) {
+
+            Arrays.fill(key, 0);
+
+            for (int i = 0; i < DIMENSIONS; i++) {
+                pack(key, i, remap[i][unpack(other.keys, g, i)]);
+            }
+
+            int group = find(key);
+
+            if (group < 0) {
+
+                group = insert(key);
+
+                for (int i = 0; i < NAMES; i++) {
+                    groupNames[group * NAMES + i] = nameRemap[other.groupNames[g * NAMES + i]];
+                }
+
+            }
+
+            add(
+                    group,
+                    other.amounts[g * AMOUNTS],
+                    other.amounts[g * AMOUNTS + 1],
+                    other.amounts[g * AMOUNTS + 2]
+            );
+        }
+
+    }
+
+    /**
+     * Rough heap size of the aggregation (arrays and dictionaries), what the spill budget is compared to.
+     */
+    long estimatedBytes() {
+
+        long bytes = (long) keys.length * Long.BYTES + (long) groupNames.length * Integer.BYTES
+                + (long) amounts.length * Long.BYTES + (long) table.length * Integer.BYTES + names.bytes;
+
+        for (Dictionary dictionary : dictionaries) {
+            bytes += dictionary.bytes;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * The aggregated costs in {@link HuaweiBillingGroup} order, the amounts into the columns of the account type.
+     * Group and cost objects are created one at a time.
+     */
+    void forEachSorted(boolean internal, BiConsumer<HuaweiBillingGroup, HuaweiBillingDailyCost> consumer) {
+
+        Object[] dimensions = new Object[DIMENSIONS];
+        String[] names = new String[NAMES];
+        long[] amounts = new long[AMOUNTS];
+
+        for (int g : sortedGroups()) {
+
+            read(g, dimensions, names, amounts);
+
+            HuaweiBillingGroup group = group(dimensions);
+            consumer.accept(group, cost(group, names, amounts, internal));
+        }
+
+    }
+
+    /**
+     * Writes the groups in {@link HuaweiBillingGroup} order, see {@link HuaweiCostSpill}.
+     */
+    void writeSorted(DataOutputStream out) throws IOException {
+
+        Object[] dimensions = new Object[DIMENSIONS];
+        String[] names = new String[NAMES];
+        long[] amounts = new long[AMOUNTS];
+
+        for (int g : sortedGroups()) {
+
+            read(g, dimensions, names, amounts);
+
+            for (Object value : dimensions) {
+                HuaweiCostSpill.writeValue(out, value);
+            }
+
+            for (String value : names) {
+                HuaweiCostSpill.writeValue(out, value);
+            }
+
+            for (long amount : amounts) {
+                out.writeLong(amount);
+            }
+
+        }
+
+    }
+
+    /**
+     * The order of {@link HuaweiBillingGroup#compareTo} on the values as read: ISO dates and cycles sort
+     * as text like the dates they are parsed to.
+     */
+    static int compare(Object[] dimensions, Object[] other) {
+
+        for (int i = 0; i < DIMENSIONS; i++) {
+
+            int result = compareValues(dimensions[i], other[i]);
+
+            if (result != 0) {
+                return result;
+            }
+
+        }
+
+        return 0;
+    }
+
+    static HuaweiBillingGroup group(Object[] dimensions) {
+
+        return new HuaweiBillingGroup(
+                LocalDate.parse((String) dimensions[BILL_DATE]),
+                YearMonth.parse((String) dimensions[CYCLE]).atDay(1),
+                (String) dimensions[PAYER_ACCOUNT_ID],
+                (String) dimensions[CUSTOMER_ID],
+                (String) dimensions[ENTERPRISE_PROJECT_ID],
+                (String) dimensions[CLOUD_SERVICE_TYPE],
+                (String) dimensions[SKU_CODE],
+                (String) dimensions[RESOURCE_TYPE_CODE],
+                (String) dimensions[REGION],
+                (Integer) dimensions[CHARGE_MODE],
+                (Integer) dimensions[BILL_TYPE]
+        );
+    }
+
+    static HuaweiBillingDailyCost cost(HuaweiBillingGroup group, String[] names, long[] amounts, boolean internal) {
+
+        BigDecimal consumeAmount = BigDecimal.valueOf(amounts[0], SCALE);
+        BigDecimal debtAmount = BigDecimal.valueOf(amounts[1], SCALE);
+        BigDecimal officialAmount = BigDecimal.valueOf(amounts[2], SCALE);
+
+        return HuaweiBillingDailyCost.builder()
+                .billDate(group.billDate())
+                .billingMonth(group.billingMonth())
+                .payerAccountId(group.payerAccountId())
+                .customerId(group.customerId())
+                .enterpriseProjectId(group.enterpriseProjectId())
+                .enterpriseProjectName(names[ENTERPRISE_PROJECT_NAME])
+                .cloudServiceType(group.cloudServiceType())
+                .cloudServiceTypeName(names[CLOUD_SERVICE_TYPE_NAME])
+                .skuCode(group.skuCode())
+                .productSpecDesc(names[PRODUCT_SPEC_DESC])
+                .resourceTypeCode(group.resourceTypeCode())
+                .resourceTypeName(names[RESOURCE_TYPE_NAME])
+                .resourceName(names[RESOURCE_NAME])
+                .region(group.region())
+                .regionName(names[REGION_NAME])
+                .chargeMode(group.chargeMode())
+                .billType(group.billType())
+                .consumeAmount(internal ? consumeAmount : BigDecimal.ZERO)
+                .debtAmount(internal ? debtAmount : BigDecimal.ZERO)
+                .officialAmount(internal ? officialAmount : BigDecimal.ZERO)
+                .extConsumeAmount(internal ? BigDecimal.ZERO : consumeAmount)
+                .extDebtAmount(internal ? BigDecimal.ZERO : debtAmount)
+                .extOfficialAmount(internal ? BigDecimal.ZERO : officialAmount)
+                .build();
+    }
+
+    private int[] sortedGroups() {
+
+        return IntStream.range(0, size).boxed()
+                .sorted((a, b) -> {
+
+                    for (int i = 0; i < DIMENSIONS; i++) {
+
+                        int code = unpack(keys, a, i);
+                        int other = unpack(keys, b, i);
+
+                        // Same dictionary, same code is the same value
+                        if (code != other) {
+                            return compareValues(dictionaries[i].value(code), dictionaries[i].value(other));
+                        }
+
+                    }
+
+                    return 0;
+                })
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private void read(int group, Object[] dimensions, String[] names, long[] amounts) {
+
+        for (int i = 0; i < DIMENSIONS; i++) {
+            dimensions[i] = dictionaries[i].value(unpack(keys, group, i));
+        }
+
+        for (int i = 0; i < NAMES; i++) {
+            names[i] = (String) this.names.value(groupNames[group * NAMES + i]);
+        }
+
+        System.arraycopy(this.amounts, group * AMOUNTS, amounts, 0, AMOUNTS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object value, Object other) {
+
+        if (value == null || other == null) {
+            return value == null ? (other == null ? 0 : -1) : 1;
+        }
+
+        return ((Comparable<Object>) value).compareTo(other);
+    }
+
+    private void add(int group, long consumeAmount, long debtAmount, long officialAmount) {
+        amounts[group * AMOUNTS] = Math.addExact(amounts[group * AMOUNTS], consumeAmount);
+        amounts[group * AMOUNTS + 1] = Math.addExact(amounts[group * AMOUNTS + 1], debtAmount);
+        amounts[group * AMOUNTS + 2] = Math.addExact(amounts[group * AMOUNTS + 2], officialAmount);
+    }
+
+    private int find(long[] key) {
+
+        int mask = table.length - 1;
+
+        for (int slot = hash(key, 0) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+
+            int group = table[slot] - 1;
+
+            if (Arrays.equals(keys, group * KEY_LONGS, (group + 1) * KEY_LONGS, key, 0, KEY_LONGS)) {
+                return group;
+            }
+
+        }
+
+        return -1;
+    }
+
+    private int insert(long[] key) {
+
+        if (size == keys.length / KEY_LONGS) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+            groupNames = Arrays.copyOf(groupNames, groupNames.length * 2);
+            amounts = Arrays.copyOf(amounts, amounts.length * 2);
+        }
+
+        int group = size++;
+        System.arraycopy(key, 0, keys, group * KEY_LONGS, KEY_LONGS);
+
+        // Load factor of 0.5 at most, the probes stay short
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        } else {
+            place(group, table);
+        }
+
+        return group;
+    }
+
+    private void rehash(int capacity) {
+
+        int[] grown = new int[capacity];
+
+        for (int g = 0; g < size; g++) {
+            place(g, grown);
+        }
+
+        table = grown;
+    }
+
+    private void place(int group, int[] table) {
+
+        int mask = table.length - 1;
+        int slot = hash(keys, group * KEY_LONGS) & mask;
+
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        table[slot] = group + 1;
+    }
+
+    private static int hash(long[] keys, int offset) {
+
+        long h = 0;
+
+        for (int i = 0; i < KEY_LONGS; i++) {
+            h = (h ^ keys[offset + i]) * 0x9E3779B97F4A7C15L;
+        }
+
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static void pack(long[] key, int dimension, int code) {
+        key[dimension / CODES_PER_LONG] |= (long) code << (dimension % CODES_PER_LONG * CODE_BITS);
+    }
+
+    private static int unpack(long[] keys, int group, int dimension) {
+
+        long packed = keys[group * KEY_LONGS + dimension / CODES_PER_LONG];
+
+        return (int) (packed >>> (dimension % CODES_PER_LONG * CODE_BITS)) & ((1 << CODE_BITS) - 1);
+    }
+
+    private static long fixed(BigDecimal amount) {
+
+        if (amount == null) {
+            return 0;
+        }
+
+        return amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Value <-> code, codes in first-seen order.
+     */
+    private static final class Dictionary {
+
+        private final Map<Object, Integer> codes = new HashMap<>();
+        private final List<Object> values = new ArrayList<>();
+
+        // Map entry, boxed code and list slot per value, plus the value
+        private long bytes;
+
+        int encode(Object value) {
+
+            Integer code = codes.get(value);
+
+            if (code != null) {
+                return code;
+            }
+
+            if (values.size() == 1 << CODE_BITS) {
+                throw new RuntimeException("Too many distinct Huawei billing values to aggregate: " + values.size());
+            }
+
+            codes.put(value, values.size());
+            values.add(value);
+
+            bytes += 64 + (value instanceof String text ? 40 + text.length() : 16);
+
+            return values.size() - 1;
+        }
+
+        Object value(int code) {
+            return values.get(code);
+        }
+
+        int[] remap(Dictionary target) {
+
+            int[] remap = new int[values.size()];
+
+            for (int i = 0; i < remap.length; i++) {
+                remap[i] = target.encode(values.get(i));
+            }
+
+            return remap;
+        }
+
+    }
+
+}
@@ -0,0 +1,252 @@
+package com.multicloud.batch.dao.huawei;
+
+import com.multicloud.batch.dao.huawei.payload.HuaweiBillingGroup;
+import com.multicloud.batch.model.HuaweiBillingDailyCost;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * The aggregation of a day within a memory budget. When the {@link HuaweiCostAggregator} goes over the budget,
+ * its groups are written to a temp file as a sorted run and it starts over. {@link #forEachSorted} then merges
+ * the runs (memory-mapped) in one streaming pass, summing the partial aggregates of a group. Without spilling
+ * it is the aggregator alone.
+ * <p>
+ * Runs are in page order, so on a tie the first run's descriptive fields win, like the first record's in memory.
+ */
+@Slf4j
+final class HuaweiCostSpill implements AutoCloseable {
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+
+    private final long budgetBytes;
+    private final List<Path> runs = new ArrayList<>();
+
+    private HuaweiCostAggregator aggregator = new HuaweiCostAggregator();
+
+    HuaweiCostSpill(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    void merge(HuaweiCostAggregator page) {
+
+        aggregator.merge(page);
+
+        if (aggregator.estimatedBytes() > budgetBytes) {
+            spill();
+        }
+    }
+
+    int runs() {
+        return runs.size();
+    }
+
+    /**
+     * The aggregated costs in {@link HuaweiBillingGroup} order, can be called more than once.
+     */
+    void forEachSorted(boolean internal, BiConsumer<HuaweiBillingGroup, HuaweiBillingDailyCost> consumer) {
+
+        if (runs.isEmpty()) {
+            aggregator.forEachSorted(internal, consumer);
+            return;
+        }
+
+        if (aggregator.size() > 0) {
+            spill();
+        }
+
+        PriorityQueue<Run> queue = new PriorityQueue<>(
+                Comparator.comparing((Run run) -> run.dimensions, HuaweiCostAggregator::compare)
+                        .thenComparingInt(run -> run.index)
+        );
+
+        for (int i = 0; i < runs.size(); i++) {
+
+            Run run = new Run(i, map(runs.get(i)));
+
+            if (run.next()) {
+                queue.add(run);
+            }
+
+        }
+
+        long[] amounts = new long[3];
+
+        while (!queue.isEmpty()) {
+
+            Run first = queue.poll();
+
+            Object[] dimensions = first.dimensions;
+            String[] names = first.names;
+            System.arraycopy(first.amounts, 0, amounts, 0, amounts.length);
+
+            advance(first, queue);
+
+            while (!queue.isEmpty() && HuaweiCostAggregator.compare(queue.peek().dimensions, dimensions) == 0) {
+
+                Run same = queue.poll();
+
+                for (int i = 0; i < amounts.length; i++) {
+                    amounts[i] = Math.addExact(amounts[i], same.amounts[i]);
+                }
+
+                advance(same, queue);
+            }
+
+            HuaweiBillingGroup group = HuaweiCostAggregator.group(dimensions);
+            consumer.accept(group, HuaweiCostAggregator.cost(group, names, amounts, internal));
+        }
+
+    }
+
+    @Override
+    public void close() {
+
+        for (Path run : runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException e) {
+                log.warn("Failed to delete the Huawei billing run {}", run, e);
+            }
+        }
+
+        runs.clear();
+    }
+
+    private void spill() {
+
+        try {
+
+            Path run = Files.createTempFile("huawei-billing-", ".run");
+            runs.add(run);
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+                aggregator.writeSorted(out);
+            }
+
+            log.info(
+                    "Spilled {} Huawei billing groups (~{} MB) to {}",
+                    aggregator.size(), aggregator.estimatedBytes() >> 20, run
+            );
+
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to spill the Huawei billing aggregation", e);
+        }
+
+        aggregator = new HuaweiCostAggregator();
+    }
+
+    private static void advance(Run run, PriorityQueue<Run> queue) {
+        if (run.next()) {
+            queue.add(run);
+        }
+    }
+
+    private static MappedByteBuffer map(Path run) {
+
+        try (FileChannel channel = FileChannel.open(run, StandardOpenOption.READ)) {
+
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new RuntimeException("Huawei billing run too large to map, lower the aggregation memory: " + run);
+            }
+
+            // The mapping outlives the channel
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read the Huawei billing run " + run, e);
+        }
+    }
+
+    static void writeValue(DataOutputStream out, Object value) throws IOException {
+
+        switch (value) {
+            case null -> out.writeByte(NULL);
+            case String text -> {
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                out.writeByte(STRING);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            case Integer number -> {
+                out.writeByte(INTEGER);
+                out.writeInt(number);
+            }
+            default -> throw new IllegalArgumentException("Unsupported value " + value.getClass());
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+
+        return switch (buffer.get()) {
+            case NULL -> null;
+            case STRING -> {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                yield new String(bytes, StandardCharsets.UTF_8);
+            }
+            case INTEGER -> buffer.getInt();
+            default -> throw new IllegalStateException("Corrupt Huawei billing run");
+        };
+    }
+
+    /**
+     * Cursor over a run, the arrays are new for every group (the merge keeps the first one of a group).
+     */
+    private static final class Run {
+
+        final int index;
+        final ByteBuffer buffer;
+
+        Object[] dimensions;
+        String[] names;
+        final long[] amounts = new long[3];
+
+        Run(int index, ByteBuffer buffer) {
+            this.index = index;
+            this.buffer = buffer;
+        }
+
+        boolean next() {
+
+            if (!buffer.hasRemaining()) {
+                return false;
+            }
+
+            dimensions = new Object[HuaweiCostAggregator.DIMENSIONS];
+            names = new String[HuaweiCostAggregator.NAMES];
+
+            for (int i = 0; i < dimensions.length; i++) {
+                dimensions[i] = readValue(buffer);
+            }
+
+            for (int i = 0; i < names.length; i++) {
+                names[i] = (String) readValue(buffer);
+            }
+
+            for (int i = 0; i < amounts.length; i++) {
+                amounts[i] = buffer.getLong();
+            }
+
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.multicloud.batch.dao.huawei;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.multicloud.batch.dao.huawei.payload.HuaweiResourceBillingResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Streaming decoder of a res-records page ({@link HuaweiResourceBillingResponse}): reads the body token by
+ * token, keeps only the fields of the billing group and the cost columns (20 of about 50) and adds each
+ * record to the {@link HuaweiCostAggregator} of the page right away. No MonthlyRecord, az_code_infos list or
+ * unused amount is materialized.
+ */
+final class HuaweiResourceBillingDecoder {
+
+    // Thread safe, the parsers it creates are not
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * @param records number of records in the page (full pages mean there may be more)
+     * @param groups  the records of the page aggregated
+     */
+    record Page(int totalCount, int records, HuaweiCostAggregator groups) {
+    }
+
+    private HuaweiResourceBillingDecoder() {
+    }
+
+    static Page decode(InputStream body) throws IOException {
+
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new RuntimeException("Failed to fetch daily service cost usage, response body is not an object");
+            }
+
+            int totalCount = 0;
+            int records = -1;
+            HuaweiCostAggregator groups = new HuaweiCostAggregator();
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+
+                if ("total_count".equals(name)) {
+                    totalCount = parser.getValueAsInt();
+                } else if ("monthly_records".equals(name) && token == JsonToken.START_ARRAY) {
+                    records = readRecords(parser, groups);
+                } else {
+                    parser.skipChildren();
+                }
+
+            }
+
+            if (records < 0) {
+                throw new RuntimeException("Failed to fetch daily service cost usage, response has no records");
+            }
+
+            return new Page(totalCount, records, groups);
+        }
+    }
+
+    private static int readRecords(JsonParser parser, HuaweiCostAggregator groups) throws IOException {
+
+        // Reused for every record of the page
+        Fields fields = new Fields();
+        int records = 0;
+
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+
+            fields.read(parser);
+            groups.add(fields.dimensions, fields.names, fields.consumeAmount, fields.debtAmount, fields.officialAmount);
+
+            records++;
+        }
+
+        return records;
+    }
+
+    /**
+     * The used fields of a MonthlyRecord, in the layout of {@link HuaweiCostAggregator#add}.
+     */
+    private static final class Fields {
+
+        final Object[] dimensions = new Object[HuaweiCostAggregator.DIMENSIONS];
+        final String[] names = new String[HuaweiCostAggregator.NAMES];
+        BigDecimal consumeAmount;
+        BigDecimal debtAmount;
+        BigDecimal officialAmount;
+
+        // Reads one record, the parser is on its START_OBJECT
+        void read(JsonParser parser) throws IOException {
+
+            Arrays.fill(dimensions, null);
+            Arrays.fill(names, null);
+            consumeAmount = debtAmount = officialAmount = null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+                String name = parser.currentName();
+                parser.nextToken();
+
+                switch (name) {
+                    case "cycle" -> dimensions[HuaweiCostAggregator.CYCLE] = parser.getValueAsString();
+                    case "bill_date" -> dimensions[HuaweiCostAggregator.BILL_DATE] = parser.getValueAsString();
+                    case "bill_type" -> dimensions[HuaweiCostAggregator.BILL_TYPE] = integer(parser);
+                    case "customer_id" -> dimensions[HuaweiCostAggregator.CUSTOMER_ID] = parser.getValueAsString();
+                    case "region" -> dimensions[HuaweiCostAggregator.REGION] = parser.getValueAsString();
+                    case "region_name" -> names[HuaweiCostAggregator.REGION_NAME] = parser.getValueAsString();
+                    case "cloud_service_type" ->
+                            dimensions[HuaweiCostAggregator.CLOUD_SERVICE_TYPE] = parser.getValueAsString();
+                    case "resource_Type_code" ->
+                            dimensions[HuaweiCostAggregator.RESOURCE_TYPE_CODE] = parser.getValueAsString();
+                    case "cloud_service_type_name" ->
+                            names[HuaweiCostAggregator.CLOUD_SERVICE_TYPE_NAME] = parser.getValueAsString();
+                    case "resource_type_name" ->
+                            names[HuaweiCostAggregator.RESOURCE_TYPE_NAME] = parser.getValueAsString();
+                    case "resource_name" -> names[HuaweiCostAggregator.RESOURCE_NAME] = parser.getValueAsString();
+                    case "sku_code" -> dimensions[HuaweiCostAggregator.SKU_CODE] = parser.getValueAsString();
+                    case "enterprise_project_id" ->
+                            dimensions[HuaweiCostAggregator.ENTERPRISE_PROJECT_ID] = parser.getValueAsString();
+                    case "enterprise_project_name" ->
+                            names[HuaweiCostAggregator.ENTERPRISE_PROJECT_NAME] = parser.getValueAsString();
+                    case "charge_mode" -> dimensions[HuaweiCostAggregator.CHARGE_MODE] = integer(parser);
+                    case "consume_amount" -> consumeAmount = decimal(parser);
+                    case "debt_amount" -> debtAmount = decimal(parser);
+                    case "official_amount" -> officialAmount = decimal(parser);
+                    case "product_spec_desc" ->
+                            names[HuaweiCostAggregator.PRODUCT_SPEC_DESC] = parser.getValueAsString();
+                    case "payer_account_id" ->
+                            dimensions[HuaweiCostAggregator.PAYER_ACCOUNT_ID] = parser.getValueAsString();
+                    default -> parser.skipChildren();
+                }
+
+            }
+        }
+
+        private static Integer integer(JsonParser parser) throws IOException {
+
+            if (parser.currentToken() == JsonToken.VALUE_NULL) {
+                return null;
+            }
+
+            return parser.getValueAsInt();
+        }
+
+        // Amounts may come as numbers or as strings, like the data binding accepted
+        private static BigDecimal decimal(JsonParser parser) throws IOException {
+
+            return switch (parser.currentToken()) {
+                case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getDecimalValue();
+                case VALUE_STRING -> parser.getText().isBlank() ? null : new BigDecimal(parser.getText().trim());
+                default -> null;
+            };
+        }
+
+    }
+
+}
@@ -0,0 +1,14 @@
+package com.multicloud.batch.dto;
+
+import com.multicloud.batch.enums.LastSyncStatus;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Result of one day of a partition that is loaded day by day, recorded as its own sync history range.
+ * rowCount and durationMs are null when nothing was written, like for a partition.
+ */
+public record DaySyncResultDTO(LocalDate usageDate, LastSyncStatus status, Long rowCount,
+                               Long durationMs) implements Serializable {
+}
@@ -0,0 +1,6 @@
+package com.multicloud.batch.dto;
+
+import java.time.LocalDate;
+
+public record SyncRangeDTO(String source, LocalDate start, LocalDate end) {
+}
@@ -0,0 +1,8 @@
+package com.multicloud.batch.dto;
+
+public interface SyncSourceView extends SyncVolumeView {
+
+    // Table or project of the sync history
+    String getSource();
+
+}
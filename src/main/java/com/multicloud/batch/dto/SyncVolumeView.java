@@ -0,0 +1,11 @@
+package com.multicloud.batch.dto;
+
+public interface SyncVolumeView {
+
+    Long getRowCount();
+
+    Long getDurationMs();
+
+    Long getDays();
+
+}
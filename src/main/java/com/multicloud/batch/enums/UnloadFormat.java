@@ -0,0 +1,14 @@
+package com.multicloud.batch.enums;
+
+/**
+ * Output format of the Athena UNLOAD of the AWS sync jobs (batch_job.*.unload_format).
+ */
+public enum UnloadFormat {
+
+    // Gzip TEXTFILE, parsed as CSV
+    CSV,
+
+    // Snappy Parquet, typed DATE/DECIMAL columns read column by column
+    PARQUET
+
+}
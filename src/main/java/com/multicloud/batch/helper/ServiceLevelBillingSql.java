@@ -1,5 +1,10 @@
 package com.multicloud.batch.helper;
 
+import com.multicloud.batch.constant.BillingTypeConstant;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
 /**
  * Created by IntelliJ IDEA.
  * User: Md. Shamim Molla
@@ -117,7 +122,8 @@ public class ServiceLevelBillingSql {
                 GROUP BY 1, 3, 4, 6, 8;
             """;
 
-    public static final String UPSERT_SQL = """
+    // Multi-row upsert, see BulkUpsertWriter
+    public static final String UPSERT_INSERT_INTO = """
                 INSERT INTO service_level_billings (
                     usage_date,
                     cloud_provider,
@@ -133,14 +139,109 @@ public class ServiceLevelBillingSql {
                     ext_cost,
                     last_updated_at
                 )
-                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    public static final String UPSERT_ON_DUPLICATE_KEY_UPDATE = """
                 ON DUPLICATE KEY UPDATE
                     usage_account_name = VALUES(usage_account_name),
                     service_name = VALUES(service_name),
                     parent_category = VALUES(parent_category),
                     cost = VALUES(cost),
                     ext_cost = VALUES(ext_cost),
-                    last_updated_at = VALUES(last_updated_at);
+                    last_updated_at = VALUES(last_updated_at)
             """;
 
+    // Same rules as the merge job's processor: service type parent category, billing type fallback
+    // for empty codes/categories and 'Unknown' for codes without a service type.
+    // BINARY keeps the comparisons case-sensitive like the Java lookups.
+    private static final String PARENT_CATEGORY_CASE = """
+                CASE
+                    WHEN t.service_code = '' OR st.parent_category = '' THEN
+                        CASE
+                            WHEN BINARY t.billing_type IN (%s) THEN 'Regular'
+                            WHEN BINARY t.billing_type IN (%s) THEN 'Fee'
+                            WHEN BINARY t.billing_type IN (%s) THEN 'Discount'
+                            WHEN BINARY t.billing_type IN (%s) THEN 'Tax'
+                            ELSE 'Other'
+                        END
+                    ELSE COALESCE(st.parent_category, 'Unknown')
+                END
+            """.formatted(
+            sqlList(BillingTypeConstant.REGULAR),
+            sqlList(BillingTypeConstant.FEE),
+            sqlList(BillingTypeConstant.DISCOUNT),
+            sqlList(BillingTypeConstant.TAX)
+    );
+
+    /**
+     * Wraps one of the select statements above into a set-based
+     * {@code INSERT ... SELECT ... ON DUPLICATE KEY UPDATE} into service_level_billings.
+     * <p>
+     * Parameters: last_updated_at, the parameters of the wrapped select, then the
+     * usage_date range (from, to) of the slice to write.
+     * The target columns are qualified, the derived table has columns with the same names.
+     */
+    public static String pushDownUpsertSql(String selectSql) {
+
+        String select = selectSql.strip();
+
+        if (select.endsWith(";")) {
+            select = select.substring(0, select.length() - 1);
+        }
+
+        return """
+                INSERT INTO service_level_billings (
+                    usage_date,
+                    cloud_provider,
+                    billing_account_id,
+                    usage_account_id,
+                    usage_account_name,
+                    service_code,
+                    service_name,
+                    billing_type,
+                    is_li_outside_of_month,
+                    parent_category,
+                    cost,
+                    ext_cost,
+                    last_updated_at
+                )
+                SELECT t.usage_date,
+                    t.cloud_provider,
+                    t.billing_account_id,
+                    t.usage_account_id,
+                    t.usage_account_name,
+                    t.service_code,
+                    t.service_name,
+                    t.billing_type,
+                    t.is_li_outside_of_month,
+                    %s,
+                    t.cost,
+                    t.ext_cost,
+                    ?
+                FROM (
+                    %s
+                ) t
+                LEFT JOIN (
+                    SELECT code, cloud_provider, MAX(parent_category) AS parent_category
+                    FROM service_types
+                    GROUP BY BINARY code, cloud_provider
+                ) st ON BINARY st.code = BINARY t.service_code AND st.cloud_provider = t.cloud_provider
+                WHERE t.usage_date >= ? AND t.usage_date <= ?
+                ON DUPLICATE KEY UPDATE
+                    service_level_billings.usage_account_name = VALUES(usage_account_name),
+                    service_level_billings.service_name = VALUES(service_name),
+                    service_level_billings.parent_category = VALUES(parent_category),
+                    service_level_billings.cost = VALUES(cost),
+                    service_level_billings.ext_cost = VALUES(ext_cost),
+                    service_level_billings.last_updated_at = VALUES(last_updated_at)
+                """.formatted(PARENT_CATEGORY_CASE.strip(), select);
+    }
+
+    private static String sqlList(Set<String> values) {
+        return values.stream()
+                .sorted()
+                .map(value -> "'" + value.replace("'", "''") + "'")
+                .collect(Collectors.joining(", "));
+    }
+
 }
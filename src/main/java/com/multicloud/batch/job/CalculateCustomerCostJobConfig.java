@@ -7,10 +7,14 @@ import com.multicloud.batch.dto.ProductDTO;
 import com.multicloud.batch.enums.CloudProvider;
 import com.multicloud.batch.secondary.model.CustomerDailyCost;
 import com.multicloud.batch.service.AzerionCostStoreService;
+import com.multicloud.batch.service.CostCubeStoreService;
 import com.multicloud.batch.service.CustomerCostService;
 import com.multicloud.batch.service.SecretPayloadStoreService;
+import com.multicloud.batch.util.CostCube;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.job.builder.JobBuilder;
 import org.springframework.batch.core.repository.JobRepository;
@@ -23,6 +27,8 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.util.Pair;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.transaction.PlatformTransactionManager;
 
@@ -34,6 +40,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Created by IntelliJ IDEA.
@@ -46,12 +54,26 @@ import java.util.Map;
 @ConditionalOnExpression("${batch_job.customer_cost.enabled}")
 public class CalculateCustomerCostJobConfig {
 
+    public static final String JOB_NAME = "calculateCustomerCostJob";
+
     private static final String SECRET_STORE_KEY = "global_aws_billing_data_secret";
 
     @Value("${batch_job.aws_billing_data.secret_path}")
     private String awsSecretPath;
 
-    private final DataSource dataSource;
+    // Products per chunk, they are calculated concurrently and written in one batch
+    @Value("${batch_job.customer_cost.chunk_size:20}")
+    private int chunkSize;
+
+    // One grouped query per month for all products instead of three queries per product
+    @Value("${batch_job.customer_cost.bulk:false}")
+    private boolean bulk;
+
+    // Load service_level_billings once into memory and answer the per product queries from there
+    @Value("${batch_job.customer_cost.cost_cube:false}")
+    private boolean costCube;
+
+    private final DataSource readerDataSource;
 
     private final JobRepository jobRepository;
 
@@ -62,8 +84,11 @@ public class CalculateCustomerCostJobConfig {
     private final SecretPayloadStoreService secretPayloadStoreService;
     private final AwsSecretsManagerService awsSecretsManagerService;
     private final AzerionCostStoreService azerionCostStoreService;
+    private final TaskExecutor customerCostTaskExecutor;
+    private final CostCubeStoreService costCubeStoreService;
 
-    public CalculateCustomerCostJobConfig(DataSource dataSource,
+    public CalculateCustomerCostJobConfig(@Qualifier(value = "readerDataSource")
+                                          DataSource readerDataSource,
                                           @Qualifier(value = "secondaryJdbcTemplate")
                                           JdbcTemplate secondaryJdbcTemplate,
                                           @Qualifier(value = "secondaryTransactionManager")
@@ -72,9 +97,12 @@ public class CalculateCustomerCostJobConfig {
                                           CustomerCostService customerCostService,
                                           SecretPayloadStoreService secretPayloadStoreService,
                                           AwsSecretsManagerService awsSecretsManagerService,
-                                          AzerionCostStoreService azerionCostStoreService) {
+                                          AzerionCostStoreService azerionCostStoreService,
+                                          @Qualifier(value = "customerCostTaskExecutor")
+                                          TaskExecutor customerCostTaskExecutor,
+                                          CostCubeStoreService costCubeStoreService) {
 
-        this.dataSource = dataSource;
+        this.readerDataSource = readerDataSource;
         this.secondaryJdbcTemplate = secondaryJdbcTemplate;
         this.jobRepository = jobRepository;
         this.secondaryTransactionManager = secondaryTransactionManager;
@@ -82,17 +110,54 @@ public class CalculateCustomerCostJobConfig {
         this.secretPayloadStoreService = secretPayloadStoreService;
         this.awsSecretsManagerService = awsSecretsManagerService;
         this.azerionCostStoreService = azerionCostStoreService;
+        this.customerCostTaskExecutor = customerCostTaskExecutor;
+        this.costCubeStoreService = costCubeStoreService;
     }
 
     @Bean
     public Job calculateCustomerCostJob() {
 
-        return new JobBuilder("calculateCustomerCostJob", jobRepository)
+        // The bulk step computes everything in one query and never reads the cube
+        if (costCube && !bulk) {
+            return new JobBuilder(JOB_NAME, jobRepository)
+                    .listener(new JobExecutionListener() {
+
+                        @Override
+                        public void afterJob(JobExecution jobExecution) {
+                            costCubeStoreService.release(JOB_NAME);
+                        }
+
+                    })
+                    .start(loadCustomerCostCubeStep())
+                    .next(retrieveAzerionCostForAllExceptionalClientsStep())
+                    .next(calculateCustomerCostStep())
+                    .build();
+        }
+
+        return new JobBuilder(JOB_NAME, jobRepository)
                 .start(retrieveAzerionCostForAllExceptionalClientsStep())
-                .next(calculateCustomerCostStep())
+                .next(bulk ? calculateCustomerCostBulkStep() : calculateCustomerCostStep())
                 .build();
     }
 
+    @Bean
+    public Step loadCustomerCostCubeStep() {
+
+        return new StepBuilder("loadCustomerCostCubeStep", jobRepository)
+                .tasklet((contribution, chunkContext) -> {
+
+                    // Same range as calculateCustomerCostStep
+                    LocalDate end = LocalDate.now();
+                    LocalDate start = end.minusMonths(1).withDayOfMonth(1);
+
+                    CostCube cube = costCubeStoreService.load(JOB_NAME, start, end);
+
+                    contribution.incrementReadCount(cube.size());
+
+                    return RepeatStatus.FINISHED;
+                }, secondaryTransactionManager).build();
+    }
+
     @Bean
     public Step retrieveAzerionCostForAllExceptionalClientsStep() {
 
@@ -124,55 +189,140 @@ public class CalculateCustomerCostJobConfig {
     public Step calculateCustomerCostStep() {
 
         return new StepBuilder("calculateCustomerCostStep", jobRepository)
-                .<ProductDTO, ProductDTO>chunk(1, secondaryTransactionManager)
+                .<ProductDTO, ProductDTO>chunk(chunkSize, secondaryTransactionManager)
                 .reader(customerCostProductReader())
                 .writer(chunk -> {
 
                     LocalDate end = LocalDate.now();
                     LocalDate start = end.minusMonths(1).withDayOfMonth(1);
 
+                    CostCube cube = costCubeStoreService.get(JOB_NAME);
+
+                    // The workers only read (primary DB), all writes stay on this thread and transaction
+                    List<CompletableFuture<List<CustomerDailyCost>>> futures = new ArrayList<>();
+
                     for (ProductDTO productDTO : chunk.getItems()) {
+                        futures.add(CompletableFuture.supplyAsync(
+                                () -> calculateCosts(cube, productDTO, start, end), customerCostTaskExecutor
+                        ));
+                    }
 
-                        log.info(
-                                "Calculating customer cost for product: {}, organization: {}, external: {} exceptional: {}",
-                                productDTO.productName(),
-                                productDTO.organizationName(),
-                                productDTO.isInternalOrg(),
-                                productDTO.isExceptionalOrg()
-                        );
+                    // Reader order is kept, so products sharing an organization (and a unique key)
+                    // end up exactly as with the sequential run
+                    List<CustomerDailyCost> customerDailyCostList = new ArrayList<>();
 
-                        List<PerDayCostDTO> customerCostList = customerCostService.findPerDayCustomerCost(
-                                productDTO.productId(),
-                                productDTO.organizationId(),
-                                productDTO.isInternalOrg(),
-                                start,
-                                end
-                        );
+                    try {
+                        futures.forEach(future -> customerDailyCostList.addAll(future.join()));
+                    } catch (CompletionException e) {
+                        futures.forEach(future -> future.cancel(true));
+                        throw new RuntimeException("Customer cost calculation failed", e.getCause());
+                    }
 
-                        List<CustomerDailyCost> customerDailyCostList = new ArrayList<>();
+                    insertCosts(customerDailyCostList);
 
-                        if (productDTO.isExceptionalOrg()) {
-                            handleAllExceptionalCase(
-                                    productDTO, customerCostList, customerDailyCostList
-                            );
-                        } else {
-                            handleAllRegularCases(productDTO, start, end, customerCostList, customerDailyCostList);
-                        }
+                })
+                .build();
+
+    }
+
+    @Bean
+    public Step calculateCustomerCostBulkStep() {
+
+        return new StepBuilder("calculateCustomerCostBulkStep", jobRepository)
+                .tasklet((contribution, chunkContext) -> {
+
+                    LocalDate end = LocalDate.now();
+                    LocalDate start = end.minusMonths(1).withDayOfMonth(1);
+
+                    Map<Pair<Long, Long>, Map<LocalDate, BigDecimal>> perDayAwsCosts =
+                            customerCostService.findAllPerDayAzerionCosts(start, end);
+
+                    Map<Pair<Long, Long>, Map<LocalDate, BigDecimal>> outsideAwsCosts =
+                            customerCostService.findAllOutsideOfMonthAzerionCosts(start);
+
+                    List<CustomerDailyCost> customerDailyCostList = new ArrayList<>();
+
+                    for (LocalDate month = start; !month.isAfter(end); month = month.plusMonths(1)) {
+
+                        LocalDate monthEnd = month.withDayOfMonth(month.lengthOfMonth());
+
+                        customerCostService.streamPerDayCustomerCosts(
+                                month,
+                                monthEnd.isAfter(end) ? end : monthEnd,
+                                (productDTO, customerCostList) -> {
+
+                                    if (productDTO.isExceptionalOrg()) {
+                                        handleAllExceptionalCase(productDTO, customerCostList, customerDailyCostList);
+                                    } else {
+
+                                        Pair<Long, Long> key = Pair.of(productDTO.productId(), productDTO.organizationId());
 
-                        insertCosts(customerDailyCostList);
+                                        addRegularCosts(
+                                                productDTO,
+                                                customerCostList,
+                                                perDayAwsCosts.getOrDefault(key, Map.of()),
+                                                outsideAwsCosts.getOrDefault(key, Map.of()),
+                                                customerDailyCostList
+                                        );
+
+                                    }
+
+                                    if (customerDailyCostList.size() >= 500) {
+                                        contribution.incrementWriteCount(customerDailyCostList.size());
+                                        insertCosts(customerDailyCostList);
+                                        customerDailyCostList.clear();
+                                    }
+
+                                }
+                        );
 
                     }
 
-                })
-                .build();
+                    contribution.incrementWriteCount(customerDailyCostList.size());
+                    insertCosts(customerDailyCostList);
+
+                    return RepeatStatus.FINISHED;
+                }, secondaryTransactionManager).build();
+    }
+
+    private List<CustomerDailyCost> calculateCosts(CostCube cube, ProductDTO productDTO, LocalDate start,
+                                                   LocalDate end) {
+
+        log.info(
+                "Calculating customer cost for product: {}, organization: {}, external: {} exceptional: {}",
+                productDTO.productName(),
+                productDTO.organizationName(),
+                productDTO.isInternalOrg(),
+                productDTO.isExceptionalOrg()
+        );
+
+        List<PerDayCostDTO> customerCostList = customerCostService.findPerDayCustomerCost(
+                cube,
+                productDTO.productId(),
+                productDTO.organizationId(),
+                productDTO.isInternalOrg(),
+                start,
+                end
+        );
 
+        List<CustomerDailyCost> customerDailyCostList = new ArrayList<>();
+
+        if (productDTO.isExceptionalOrg()) {
+            handleAllExceptionalCase(
+                    productDTO, customerCostList, customerDailyCostList
+            );
+        } else {
+            handleAllRegularCases(productDTO, start, end, customerCostList, customerDailyCostList);
+        }
+
+        return customerDailyCostList;
     }
 
     @Bean
     public ItemReader<ProductDTO> customerCostProductReader() {
 
         JdbcCursorItemReader<ProductDTO> reader = new JdbcCursorItemReader<>();
-        reader.setDataSource(dataSource);
+        reader.setDataSource(readerDataSource);
         reader.setSql("""
                     SELECT p.id, p.name, o.id AS org_id, o.name AS org_name, o.internal, o.exceptional
                     FROM products p
@@ -213,7 +363,9 @@ public class CalculateCustomerCostJobConfig {
                     customer_cost = VALUES(customer_cost);
                 """;
 
-        secondaryJdbcTemplate.batchUpdate(query, costs, 100, (ps, cost) -> {
+        log.info("Inserting {} customer daily costs", costs.size());
+
+        secondaryJdbcTemplate.batchUpdate(query, costs, 500, (ps, cost) -> {
             ps.setDate(1, Date.valueOf(cost.getDay()));
             ps.setLong(2, cost.getMcOrgId());
             ps.setString(3, cost.getMcOrgName());
@@ -254,6 +406,14 @@ public class CalculateCustomerCostJobConfig {
                 perDay.usageDate(), perDay.cost()
         ));
 
+        addRegularCosts(productDTO, customerCostList, perDayAwsMap, outsideAwsMap, customerDailyCostList);
+
+    }
+
+    private void addRegularCosts(ProductDTO productDTO, List<PerDayCostDTO> customerCostList,
+                                 Map<LocalDate, BigDecimal> perDayAwsMap, Map<LocalDate, BigDecimal> outsideAwsMap,
+                                 List<CustomerDailyCost> customerDailyCostList) {
+
         for (PerDayCostDTO dto : customerCostList) {
 
             BigDecimal azerionCost = BigDecimal.ZERO;
@@ -12,6 +12,7 @@ import org.springframework.batch.core.step.builder.StepBuilder;
 import org.springframework.batch.item.Chunk;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.database.JdbcCursorItemReader;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -35,7 +36,8 @@ public class DailyOrganizationPricingUpdateJobConfig {
 
     private static final int CHUNK = 500;
 
-    private final DataSource dataSource;
+    @Qualifier("readerDataSource")
+    private final DataSource readerDataSource;
     private final JdbcTemplate jdbcTemplate;
 
     private final JobRepository jobRepository;
@@ -98,7 +100,7 @@ public class DailyOrganizationPricingUpdateJobConfig {
 
         JdbcCursorItemReader<DailyOrganizationPricingDTO> reader = new JdbcCursorItemReader<>();
 
-        reader.setDataSource(dataSource);
+        reader.setDataSource(readerDataSource);
         reader.setSql(sql);
         reader.setVerifyCursorPosition(false);
         reader.setSaveState(false);
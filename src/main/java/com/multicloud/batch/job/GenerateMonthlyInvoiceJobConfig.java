@@ -5,11 +5,15 @@ import com.multicloud.batch.dto.CloudProviderCostDTO;
 import com.multicloud.batch.dto.OrganizationPricingDTO;
 import com.multicloud.batch.dto.ProductDTO;
 import com.multicloud.batch.enums.CloudProvider;
+import com.multicloud.batch.service.CostCubeStoreService;
 import com.multicloud.batch.service.InvoiceCostService;
 import com.multicloud.batch.service.OrganizationPricingService;
+import com.multicloud.batch.util.CostCube;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.job.builder.JobBuilder;
 import org.springframework.batch.core.repository.JobRepository;
@@ -17,6 +21,8 @@ import org.springframework.batch.core.step.builder.StepBuilder;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.database.JdbcCursorItemReader;
 import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -30,6 +36,7 @@ import java.sql.Date;
 import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by IntelliJ IDEA.
@@ -43,7 +50,18 @@ import java.util.List;
 @ConditionalOnExpression("${batch_job.monthly_invoice.enabled}")
 public class GenerateMonthlyInvoiceJobConfig {
 
-    private final DataSource dataSource;
+    public static final String JOB_NAME = "generateMonthlyInvoiceJob";
+
+    // One grouped query for all products instead of one per product
+    @Value("${batch_job.monthly_invoice.bulk:false}")
+    private boolean bulk;
+
+    // Load last month's service_level_billings once into memory and answer the per product queries from there
+    @Value("${batch_job.monthly_invoice.cost_cube:false}")
+    private boolean costCube;
+
+    @Qualifier("readerDataSource")
+    private final DataSource readerDataSource;
     private final JdbcTemplate jdbcTemplate;
 
     private final JobRepository jobRepository;
@@ -51,13 +69,31 @@ public class GenerateMonthlyInvoiceJobConfig {
 
     private final OrganizationPricingService organizationPricingService;
     private final InvoiceCostService invoiceCostService;
+    private final CostCubeStoreService costCubeStoreService;
 
     @Bean
     public Job generateMonthlyInvoiceJob() {
 
-        return new JobBuilder("generateMonthlyInvoiceJob", jobRepository)
+        // The bulk step computes everything in one query and never reads the cube
+        if (costCube && !bulk) {
+            return new JobBuilder(JOB_NAME, jobRepository)
+                    .listener(new JobExecutionListener() {
+
+                        @Override
+                        public void afterJob(JobExecution jobExecution) {
+                            costCubeStoreService.release(JOB_NAME);
+                        }
+
+                    })
+                    .start(cacheAllPricingStep())
+                    .next(loadInvoiceCostCubeStep())
+                    .next(generateMonthlyInvoiceStep())
+                    .build();
+        }
+
+        return new JobBuilder(JOB_NAME, jobRepository)
                 .start(cacheAllPricingStep())
-                .next(generateMonthlyInvoiceStep())
+                .next(bulk ? generateMonthlyInvoiceBulkStep() : generateMonthlyInvoiceStep())
                 .build();
     }
 
@@ -74,6 +110,22 @@ public class GenerateMonthlyInvoiceJobConfig {
                 .build();
     }
 
+    @Bean
+    public Step loadInvoiceCostCubeStep() {
+        return new StepBuilder("loadInvoiceCostCubeStep", jobRepository)
+                .tasklet((contribution, chunkContext) -> {
+
+                    YearMonth lastMonth = YearMonth.now().minusMonths(1);
+
+                    CostCube cube = costCubeStoreService.load(JOB_NAME, lastMonth.atDay(1), lastMonth.atEndOfMonth());
+
+                    contribution.incrementReadCount(cube.size());
+
+                    return RepeatStatus.FINISHED;
+                }, platformTransactionManager)
+                .build();
+    }
+
     @Bean
     public Step generateMonthlyInvoiceStep() {
 
@@ -87,9 +139,12 @@ public class GenerateMonthlyInvoiceJobConfig {
 
                     List<BillingDTO> billings = new ArrayList<>();
 
+                    CostCube cube = costCubeStoreService.get(JOB_NAME);
+
                     for (ProductDTO item : chunk.getItems()) {
 
                         List<CloudProviderCostDTO> providerCosts = invoiceCostService.findCloudProviderCosts(
+                                cube,
                                 item.productId(),
                                 item.organizationId(),
                                 item.isInternalOrg(),
@@ -99,52 +154,90 @@ public class GenerateMonthlyInvoiceJobConfig {
 
                         long invoiceNumber = invoiceCostService.getLatestInvoiceNumber(item.productId());
 
-                        for (CloudProviderCostDTO providerCost : providerCosts) {
+                        addBillings(item, providerCosts, invoiceNumber, lastMonth, billings);
+
+                    }
+
+                    log.info("Writing {} billings to database", billings.size());
+
+                    insertBillings(billings);
 
-                            invoiceNumber++;
+                })
+                .build();
+    }
 
-                            OrganizationPricingDTO pricing = organizationPricingService.getPricing(
-                                    item.organizationId(), CloudProvider.valueOf(providerCost.cloudProvider())
-                            );
+    @Bean
+    public Step generateMonthlyInvoiceBulkStep() {
 
-                            double handlingFee =  0;
-                            double supportFee = 0;
+        return new StepBuilder("generateMonthlyInvoiceBulkStep", jobRepository)
+                .tasklet((contribution, chunkContext) -> {
 
-                            if (pricing != null) {
-                                handlingFee = pricing.handlingFee();
-                                supportFee = pricing.supportFee();
-                            }
+                    YearMonth lastMonth = YearMonth.now().minusMonths(1);
 
-                            billings.add(new BillingDTO(
-                                    lastMonth,
-                                    item.productId(),
-                                    item.organizationId(),
-                                    CloudProvider.valueOf(providerCost.cloudProvider()),
-                                    providerCost.cost(),
-                                    calculatePercentage(providerCost.cost(), handlingFee),
-                                    calculatePercentage(providerCost.cost(), supportFee),
-                                    invoiceNumber,
-                                    lastMonth.atDay(4),
-                                    lastMonth.atDay(4).plusMonths(1)
-                            ));
+                    Map<Long, Long> invoiceNumbers = invoiceCostService.getLatestInvoiceNumbers();
 
-                        }
+                    List<BillingDTO> billings = new ArrayList<>();
 
-                    }
+                    invoiceCostService.streamCloudProviderCosts(
+                            lastMonth.atDay(1),
+                            lastMonth.atEndOfMonth(),
+                            (item, providerCosts) -> addBillings(
+                                    item, providerCosts, invoiceNumbers.getOrDefault(item.productId(), 0L),
+                                    lastMonth, billings
+                            )
+                    );
 
                     log.info("Writing {} billings to database", billings.size());
 
+                    contribution.incrementWriteCount(billings.size());
                     insertBillings(billings);
 
-                })
+                    return RepeatStatus.FINISHED;
+                }, platformTransactionManager)
                 .build();
     }
 
+    private void addBillings(ProductDTO item, List<CloudProviderCostDTO> providerCosts, long invoiceNumber,
+                             YearMonth lastMonth, List<BillingDTO> billings) {
+
+        for (CloudProviderCostDTO providerCost : providerCosts) {
+
+            invoiceNumber++;
+
+            OrganizationPricingDTO pricing = organizationPricingService.getPricing(
+                    item.organizationId(), CloudProvider.valueOf(providerCost.cloudProvider())
+            );
+
+            double handlingFee =  0;
+            double supportFee = 0;
+
+            if (pricing != null) {
+                handlingFee = pricing.handlingFee();
+                supportFee = pricing.supportFee();
+            }
+
+            billings.add(new BillingDTO(
+                    lastMonth,
+                    item.productId(),
+                    item.organizationId(),
+                    CloudProvider.valueOf(providerCost.cloudProvider()),
+                    providerCost.cost(),
+                    calculatePercentage(providerCost.cost(), handlingFee),
+                    calculatePercentage(providerCost.cost(), supportFee),
+                    invoiceNumber,
+                    lastMonth.atDay(4),
+                    lastMonth.atDay(4).plusMonths(1)
+            ));
+
+        }
+
+    }
+
     @Bean
     public ItemReader<ProductDTO> monthlyInvoiceProductReader() {
 
         JdbcCursorItemReader<ProductDTO> reader = new JdbcCursorItemReader<>();
-        reader.setDataSource(dataSource);
+        reader.setDataSource(readerDataSource);
         reader.setSql("""
                     SELECT p.id, p.name, o.id AS org_id, o.name AS org_name, o.internal, o.exceptional
                     FROM products p
@@ -3,7 +3,11 @@ package com.multicloud.batch.job;
 import com.multicloud.batch.constant.BillingTypeConstant;
 import com.multicloud.batch.enums.CloudProvider;
 import com.multicloud.batch.helper.ServiceLevelBillingSql;
+import com.multicloud.batch.model.BillingDataChange;
 import com.multicloud.batch.model.ServiceLevelBilling;
+import com.multicloud.batch.repository.BulkUpsertWriter;
+import com.multicloud.batch.service.BillingChangeLogService;
+import com.multicloud.batch.service.BillingMergeService;
 import com.multicloud.batch.service.JobStepService;
 import com.multicloud.batch.service.ServiceTypeService;
 import lombok.RequiredArgsConstructor;
@@ -18,20 +22,22 @@ import org.springframework.batch.item.Chunk;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.database.JdbcCursorItemReader;
 import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.sql.DataSource;
 import java.sql.Date;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by IntelliJ IDEA.
@@ -47,17 +53,69 @@ public class MergeAllBillingDataJobConfig {
 
     private static final int CHUNK = 500;
 
-    private final DataSource dataSource;
+    private static final String PUSH_DOWN_ENGINE = "push_down";
+
+    private static final BulkUpsertWriter.UpsertStatement<ServiceLevelBilling> SERVICE_LEVEL_BILLING_UPSERT =
+            new BulkUpsertWriter.UpsertStatement<>(
+                    "service_level_billings",
+                    ServiceLevelBillingSql.UPSERT_INSERT_INTO,
+                    13,
+                    ServiceLevelBillingSql.UPSERT_ON_DUPLICATE_KEY_UPDATE,
+                    384,
+                    (ps, offset, item) -> {
+                        ps.setDate(offset + 1, Date.valueOf(item.getUsageDate()));
+                        ps.setString(offset + 2, item.getCloudProvider().name());
+                        ps.setString(offset + 3, item.getBillingAccountId());
+                        ps.setString(offset + 4, item.getUsageAccountId());
+                        ps.setString(offset + 5, item.getUsageAccountName());
+                        ps.setString(offset + 6, item.getServiceCode());
+                        ps.setString(offset + 7, item.getServiceName());
+                        ps.setString(offset + 8, item.getBillingType());
+                        ps.setBoolean(offset + 9, item.isLiOutsideOfMonth());
+                        ps.setString(offset + 10, item.getParentCategory());
+                        ps.setBigDecimal(offset + 11, item.getCost());
+                        ps.setBigDecimal(offset + 12, item.getExtCost());
+                        ps.setTimestamp(offset + 13, Timestamp.valueOf(item.getLastUpdatedAt()));
+                    }
+            );
+
+    // cursor: rows go through the JVM, push_down: INSERT ... SELECT inside MariaDB
+    @Value("${batch_job.merge_billing.engine:cursor}")
+    private String mergeEngine;
+
+    // Only re-merges the provider/day slices the sync jobs marked as changed (push down engine)
+    @Value("${batch_job.merge_billing.incremental:false}")
+    private boolean incrementalMerge;
+
+    @Qualifier("readerDataSource")
+    private final DataSource readerDataSource;
     private final JdbcTemplate jdbcTemplate;
+    private final BulkUpsertWriter bulkUpsertWriter;
 
     private final JobRepository jobRepository;
     private final PlatformTransactionManager platformTransactionManager;
 
     private final ServiceTypeService serviceTypeService;
     private final JobStepService jobStepService;
+    private final BillingMergeService billingMergeService;
+    private final BillingChangeLogService billingChangeLogService;
 
     @Bean
     public Job mergeAllBillingDataJob() {
+
+        if (incrementalMerge) {
+            return new JobBuilder("mergeAllBillingDataJob", jobRepository)
+                    .start(incrementalMergeBillingDataStep())
+                    .build();
+        }
+
+        if (PUSH_DOWN_ENGINE.equals(mergeEngine)) {
+            return new JobBuilder("mergeAllBillingDataJob", jobRepository)
+                    .start(pushDownMergeBillingDataStep())
+                    .next(cleanupUnknownDataStep())
+                    .build();
+        }
+
         return new JobBuilder("mergeAllBillingDataJob", jobRepository)
                 .start(fetchAndStoreServiceTypeStep())
                 .next(mergeHuaweiBillingDataStep())
@@ -82,6 +140,123 @@ public class MergeAllBillingDataJobConfig {
                 .build();
     }
 
+    @Bean
+    public Step pushDownMergeBillingDataStep() {
+        return new StepBuilder("pushDownMergeBillingDataStep", jobRepository)
+                .tasklet((contribution, chunkContext) -> {
+
+                    LocalDate now = LocalDate.now();
+                    LocalDateTime updatedAt = LocalDateTime.now();
+
+                    // Same 6 months window as the cursor readers, one month per transaction
+                    for (LocalDate month = now.minusMonths(6).withDayOfMonth(1);
+                         !month.isAfter(now);
+                         month = month.plusMonths(1)) {
+
+                        int rows = billingMergeService.mergeSlice(
+                                month, month.withDayOfMonth(month.lengthOfMonth()), updatedAt
+                        );
+
+                        contribution.incrementWriteCount(rows);
+
+                    }
+
+                    return RepeatStatus.FINISHED;
+                }, platformTransactionManager)
+                .build();
+    }
+
+    @Bean
+    public Step incrementalMergeBillingDataStep() {
+        return new StepBuilder("incrementalMergeBillingDataStep", jobRepository)
+                .tasklet((contribution, chunkContext) -> {
+
+                    // Changes made after the snapshot wait for the next run
+                    LocalDateTime snapshot = LocalDateTime.now();
+                    LocalDateTime updatedAt = snapshot.truncatedTo(ChronoUnit.SECONDS);
+
+                    if (!jobStepService.hasStepEverCompleted("incrementalMergeBillingDataStep")) {
+
+                        // First run: nothing is known to be merged yet, take the full 6 months window
+                        LocalDate now = LocalDate.now();
+
+                        for (CloudProvider provider : CloudProvider.values()) {
+
+                            for (LocalDate month = now.minusMonths(6).withDayOfMonth(1);
+                                 !month.isAfter(now);
+                                 month = month.plusMonths(1)) {
+
+                                int rows = billingMergeService.mergeChangedSlice(
+                                        provider, month, month.withDayOfMonth(month.lengthOfMonth()),
+                                        updatedAt, List.of()
+                                );
+
+                                contribution.incrementWriteCount(rows);
+
+                            }
+
+                        }
+
+                    }
+
+                    List<BillingDataChange> pending = billingChangeLogService.findPending(snapshot);
+
+                    log.info("Found {} changed billing days to merge", pending.size());
+
+                    for (List<BillingDataChange> slice : toSlices(pending)) {
+
+                        BillingDataChange first = slice.getFirst();
+                        BillingDataChange last = slice.getLast();
+
+                        int rows = billingMergeService.mergeChangedSlice(
+                                first.getCloudProvider(), first.getUsageDate(), last.getUsageDate(), updatedAt, slice
+                        );
+
+                        contribution.incrementWriteCount(rows);
+
+                    }
+
+                    return RepeatStatus.FINISHED;
+                }, platformTransactionManager)
+                .build();
+    }
+
+    /**
+     * Groups the (provider, date) ordered changes into runs of consecutive days of one provider
+     * within one month, each run is merged in a single statement pair.
+     */
+    private static List<List<BillingDataChange>> toSlices(List<BillingDataChange> changes) {
+
+        List<List<BillingDataChange>> slices = new ArrayList<>();
+        List<BillingDataChange> current = new ArrayList<>();
+
+        for (BillingDataChange change : changes) {
+
+            if (!current.isEmpty()) {
+
+                BillingDataChange previous = current.getLast();
+
+                boolean contiguous = previous.getCloudProvider() == change.getCloudProvider()
+                        && previous.getUsageDate().plusDays(1).equals(change.getUsageDate())
+                        && previous.getUsageDate().getMonth() == change.getUsageDate().getMonth();
+
+                if (!contiguous) {
+                    slices.add(current);
+                    current = new ArrayList<>();
+                }
+
+            }
+
+            current.add(change);
+        }
+
+        if (!current.isEmpty()) {
+            slices.add(current);
+        }
+
+        return slices;
+    }
+
     @Bean
     public Step cleanupUnknownDataStep() {
 
@@ -263,7 +438,7 @@ public class MergeAllBillingDataJobConfig {
 
         JdbcCursorItemReader<ServiceLevelBilling> reader = new JdbcCursorItemReader<>();
 
-        reader.setDataSource(dataSource);
+        reader.setDataSource(readerDataSource);
         reader.setSql(sql);
         reader.setVerifyCursorPosition(false);
         reader.setSaveState(false);
@@ -336,38 +511,7 @@ public class MergeAllBillingDataJobConfig {
 
         log.info("Upserting {} records...", records.size());
 
-        jdbcTemplate.batchUpdate(
-                ServiceLevelBillingSql.UPSERT_SQL,
-                new BatchPreparedStatementSetter() {
-
-                    @Override
-                    public void setValues(PreparedStatement ps, int i) throws SQLException {
-
-                        ServiceLevelBilling item = records.getItems().get(i);
-
-                        ps.setDate(1, Date.valueOf(item.getUsageDate()));
-                        ps.setString(2, item.getCloudProvider().name());
-                        ps.setString(3, item.getBillingAccountId());
-                        ps.setString(4, item.getUsageAccountId());
-                        ps.setString(5, item.getUsageAccountName());
-                        ps.setString(6, item.getServiceCode());
-                        ps.setString(7, item.getServiceName());
-                        ps.setString(8, item.getBillingType());
-                        ps.setBoolean(9, item.isLiOutsideOfMonth());
-                        ps.setString(10, item.getParentCategory());
-                        ps.setBigDecimal(11, item.getCost());
-                        ps.setBigDecimal(12, item.getExtCost());
-                        ps.setTimestamp(13, Timestamp.valueOf(item.getLastUpdatedAt()));
-
-                    }
-
-                    @Override
-                    public int getBatchSize() {
-                        return records.size();
-                    }
-
-                }
-        );
+        bulkUpsertWriter.write(SERVICE_LEVEL_BILLING_UPSERT, records.getItems());
 
     }
 
@@ -0,0 +1,306 @@
+package com.multicloud.batch.job;
+
+import com.multicloud.batch.dto.DaySyncResultDTO;
+import com.multicloud.batch.dto.SyncRangeDTO;
+import com.multicloud.batch.dto.SyncSourceView;
+import com.multicloud.batch.dto.SyncVolumeView;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.partition.PartitionHandler;
+import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Partition planning of the incremental sync jobs (AWS, GCP and Huawei):
+ * <ul>
+ *     <li>the sync window of each table/project: 6 months on the first sync, the previous month on the
+ *     refresh days, the last 10 days otherwise (or from the startDate job parameter),</li>
+ *     <li>the date ranges of the window, sized from the volume of recent runs: rows and run time per day,
+ *     so that a partition stays within the row budget and the target duration. Quiet sources get long
+ *     ranges (fewer Athena/BigQuery round trips), busy ones go down to single days. Without recorded
+ *     history the job's fixed interval is used,</li>
+ *     <li>the failed ranges to retry, unless a planned range covers them (partly overlapping ones are merged),</li>
+ *     <li>the run order: failed ranges first, then the newest ranges (today) first.</li>
+ * </ul>
+ * The history of a job is loaded with two queries, whatever the number of its tables/projects.
+ */
+@Slf4j
+@Component
+public class PartitionPlanner {
+
+    // Failed ranges are retried until they failed this many times
+    public static final int MAX_FAIL_COUNT = 3;
+
+    private static final String ORDER_KEY = "order";
+
+    // Per-day results of a partition loaded day by day, see #putDays
+    private static final String DAYS_KEY = "days";
+
+    @Value("${batch_job.partition.sizing.enabled:true}")
+    private boolean enabled;
+
+    @Value("${batch_job.partition.sizing.row_budget:250000}")
+    private long rowBudget;
+
+    @Value("${batch_job.partition.sizing.target_duration_ms:600000}")
+    private long targetDurationMs;
+
+    // Partitions never span months (DateRangePartition), so anything above 31 is the same
+    @Value("${batch_job.partition.sizing.max_days:31}")
+    private long maxDays;
+
+    @Value("${batch_job.partition.sizing.history_days:30}")
+    private long historyDays;
+
+    public Map<String, ExecutionContext> plan(SyncPartitionSpec spec) {
+
+        LocalDate now = LocalDate.now();
+
+        Map<String, SyncSourceView> history = new HashMap<>();
+
+        for (SyncSourceView view : spec.getHistory().findSyncSources(
+                spec.getJobName(), LocalDateTime.now().minusDays(historyDays)
+        )) {
+            history.put(view.getSource(), view);
+        }
+
+        // Source range -> retry
+        Map<SourceRange, Boolean> planned = new HashMap<>();
+
+        for (String source : spec.getSources()) {
+
+            long days = days(spec, history.containsKey(source), now);
+
+            List<CustomDateRange> ranges = spec.isWholeMonths()
+                    ? DateRangePartition.getPartitions(days, Long.MAX_VALUE)
+                    : partitions(source, days, spec.getInterval(), history.get(source));
+
+            for (CustomDateRange range : ranges) {
+                planned.put(new SourceRange(source, range), false);
+            }
+
+        }
+
+        int retries = 0;
+        int covered = 0;
+
+        for (SyncRangeDTO item : spec.getHistory().findRetryRanges(spec.getJobName(), MAX_FAIL_COUNT)) {
+
+            if (!spec.getSources().contains(item.source())) {
+                continue;
+            }
+
+            SourceRange retry = new SourceRange(item.source(), new CustomDateRange(
+                    item.start(), item.end(), item.end().getYear(), item.end().getMonthValue()
+            ));
+
+            // Two partitions over the same days would unload and upsert the same keys at once. A covered
+            // retry is left to the covering partition (whose success resolves it, see recordSyncResult),
+            // one that overlaps is merged with the ranges it overlaps.
+            List<SourceRange> overlapping = planned.keySet().stream().filter(retry::overlaps).toList();
+
+            if (overlapping.stream().anyMatch(other -> other.covers(retry))) {
+                covered++;
+                continue;
+            }
+
+            SourceRange merged = retry;
+
+            for (SourceRange other : overlapping) {
+                merged = merged.union(other);
+                planned.remove(other);
+            }
+
+            planned.put(merged, true);
+
+            retries++;
+        }
+
+        List<SourceRange> ordered = planned.keySet().stream()
+                .sorted(Comparator.comparing((SourceRange item) -> !planned.get(item))
+                        .thenComparing(item -> item.range().end(), Comparator.reverseOrder()))
+                .toList();
+
+        Map<String, ExecutionContext> partitions = new HashMap<>();
+
+        int i = 1;
+
+        for (SourceRange item : ordered) {
+
+            ExecutionContext executionContext = new ExecutionContext();
+            executionContext.put("range", item.range());
+            executionContext.putInt(ORDER_KEY, i);
+
+            if (spec.getSourceKey() != null) {
+                executionContext.put(spec.getSourceKey(), spec.getSourceValue().apply(item.source()));
+            }
+
+            partitions.put("partition" + i, executionContext);
+
+            i++;
+        }
+
+        log.info(
+                "Planned {} partitions for {} over {} sources ({} retries, {} covered by planned ranges)",
+                partitions.size(), spec.getJobName(), spec.getSources().size(), retries, covered
+        );
+
+        return partitions;
+    }
+
+    /**
+     * Handler of a master step: runs the planned partitions in their order on the provider's executor
+     * (the shared concurrency limit of the provider).
+     */
+    public PartitionHandler handler(Step step, TaskExecutor taskExecutor) {
+
+        OrderedPartitionHandler handler = new OrderedPartitionHandler();
+        handler.setStep(step);
+        handler.setTaskExecutor(taskExecutor);
+
+        return handler;
+    }
+
+    private static long days(SyncPartitionSpec spec, boolean synced, LocalDate now) {
+
+        if (spec.getStartDate() != null) {
+            return ChronoUnit.DAYS.between(spec.getStartDate(), now) + 1;
+        }
+
+        if (!synced) {
+            return ChronoUnit.DAYS.between(now.minusMonths(6).withDayOfMonth(1), now) + 1;
+        }
+
+        if (spec.getRefreshDays().contains(now.getDayOfMonth())) {
+            return ChronoUnit.DAYS.between(now.minusMonths(1).withDayOfMonth(1), now) + 1;
+        }
+
+        return Math.min(now.getDayOfMonth(), 10);
+    }
+
+    private List<CustomDateRange> partitions(String source, long days, long defaultInterval, SyncVolumeView volume) {
+
+        long interval = defaultInterval;
+
+        if (enabled) {
+            interval = interval(volume, defaultInterval);
+        }
+
+        if (interval != defaultInterval) {
+            log.info("Partitioning {} days of {} by {} days (default {})", days, source, interval, defaultInterval);
+        }
+
+        return DateRangePartition.getPartitions(days, interval);
+    }
+
+    /**
+     * Rows written by a finished partition step, null when it failed or wrote nothing (skipped as unchanged),
+     * so that the history keeps the volume of the last run that did the work.
+     */
+    public static Long rowCount(StepExecution stepExecution) {
+
+        if (!BatchStatus.COMPLETED.equals(stepExecution.getStatus()) || stepExecution.getWriteCount() == 0) {
+            return null;
+        }
+
+        return stepExecution.getWriteCount();
+    }
+
+    public static Long durationMs(StepExecution stepExecution) {
+
+        if (rowCount(stepExecution) == null || stepExecution.getStartTime() == null) {
+            return null;
+        }
+
+        return Duration.between(stepExecution.getStartTime(), LocalDateTime.now()).toMillis();
+    }
+
+    /**
+     * Keeps the per-day results of a partition for its listener, which records them as single-day ranges
+     * (a failed day is retried alone).
+     */
+    public static void putDays(StepExecution stepExecution, List<DaySyncResultDTO> days) {
+        stepExecution.getExecutionContext().put(DAYS_KEY, new ArrayList<>(days));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<DaySyncResultDTO> days(StepExecution stepExecution) {
+
+        Object days = stepExecution.getExecutionContext().get(DAYS_KEY);
+
+        return days == null ? List.of() : (List<DaySyncResultDTO>) days;
+    }
+
+    private long interval(SyncVolumeView volume, long defaultInterval) {
+
+        if (volume == null || volume.getDays() == null || volume.getDays() == 0) {
+            return defaultInterval;
+        }
+
+        double rowsPerDay = (double) volume.getRowCount() / volume.getDays();
+
+        // Includes the fixed per-partition cost (query queue, unload), which favours longer ranges
+        double msPerDay = (double) volume.getDurationMs() / volume.getDays();
+
+        long byRows = rowsPerDay > 0 ? (long) (rowBudget / rowsPerDay) : maxDays;
+        long byDuration = msPerDay > 0 ? (long) (targetDurationMs / msPerDay) : maxDays;
+
+        return Math.clamp(Math.min(byRows, byDuration), 1, maxDays);
+    }
+
+    private record SourceRange(String source, CustomDateRange range) {
+
+        boolean overlaps(SourceRange other) {
+            return source.equals(other.source)
+                    && !range.start().isAfter(other.range.end()) && !other.range.start().isAfter(range.end());
+        }
+
+        boolean covers(SourceRange other) {
+            return source.equals(other.source)
+                    && !range.start().isAfter(other.range.start()) && !range.end().isBefore(other.range.end());
+        }
+
+        // Partitions never span months, so overlapping ranges are of the same month
+        SourceRange union(SourceRange other) {
+
+            LocalDate start = range.start().isBefore(other.range.start()) ? range.start() : other.range.start();
+            LocalDate end = range.end().isAfter(other.range.end()) ? range.end() : other.range.end();
+
+            return new SourceRange(source, new CustomDateRange(start, end, end.getYear(), end.getMonthValue()));
+        }
+
+    }
+
+    /**
+     * The executor queue is FIFO, so the partitions start in the order they are submitted
+     * (the step executions come from the splitter as an unordered set).
+     */
+    private static class OrderedPartitionHandler extends TaskExecutorPartitionHandler {
+
+        @Override
+        protected Set<StepExecution> doHandle(StepExecution managerStepExecution,
+                                              Set<StepExecution> partitionStepExecutions) throws Exception {
+
+            Set<StepExecution> ordered = new TreeSet<>(
+                    Comparator.comparingInt((StepExecution item) -> item.getExecutionContext().getInt(ORDER_KEY, 0))
+                            .thenComparing(StepExecution::getStepName)
+            );
+            ordered.addAll(partitionStepExecutions);
+
+            return super.doHandle(managerStepExecution, ordered);
+        }
+
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.multicloud.batch.job;
+
+import com.multicloud.batch.repository.DataSyncHistoryQueries;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * What an incremental sync job partitions, see {@link PartitionPlanner#plan(SyncPartitionSpec)}.
+ */
+@Getter
+@Builder
+public class SyncPartitionSpec {
+
+    // Job name of the sync history
+    private final String jobName;
+
+    private final DataSyncHistoryQueries history;
+
+    // Tables/projects of the job
+    private final Collection<String> sources;
+
+    // Execution context key of the source, none for the single-source jobs
+    private final String sourceKey;
+
+    // Execution context value of a source, the name itself by default
+    @Builder.Default
+    private final Function<String, Object> sourceValue = source -> source;
+
+    // Days of the month that re-sync the whole previous month (late invoice corrections)
+    @Builder.Default
+    private final Set<Integer> refreshDays = Set.of(1, 2, 3, 4);
+
+    // Default days per partition, see PartitionPlanner#partitions
+    private final long interval;
+
+    // One partition per month of the window, no sizing (the AWS jobs' UNLOAD partitioned by day)
+    private final boolean wholeMonths;
+
+    // Job parameter, overrides the window
+    private final LocalDate startDate;
+
+}
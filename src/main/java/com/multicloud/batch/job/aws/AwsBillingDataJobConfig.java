@@ -1,5 +1,8 @@
 package com.multicloud.batch.job.aws;
 
+import com.multicloud.batch.enums.CloudProvider;
+import com.multicloud.batch.service.BillingChangeLogService;
+import com.multicloud.batch.service.BillingSyncFingerprintService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
@@ -33,10 +36,15 @@ public class AwsBillingDataJobConfig {
 
     public static final String JOB_NAME = "awsBillingDataJob";
 
+    // Days of the month that re-sync the previous month, CUR data of a closed month still changes for a while
+    public static final Set<Integer> REFRESH_DAYS = Set.of(1, 2, 3, 4, 5, 8, 11, 14, 17, 20, 23, 26, 29);
+
     private final JobRepository jobRepository;
     private final PlatformTransactionManager platformTransactionManager;
 
     private final JdbcTemplate jdbcTemplate;
+    private final BillingChangeLogService billingChangeLogService;
+    private final BillingSyncFingerprintService billingSyncFingerprintService;
 
     private final Step awsBillingDataOneMasterStep;
     private final Step awsBillingDataTwoMasterStep;
@@ -65,7 +73,7 @@ public class AwsBillingDataJobConfig {
 
                     if (StringUtils.hasText(cleanUp)
                         && cleanUp.equals("true")
-                        && Set.of(1, 2, 3, 4, 5, 8, 11, 14, 17, 20, 23, 26, 29).contains(now.getDayOfMonth())) {
+                        && REFRESH_DAYS.contains(now.getDayOfMonth())) {
 
                         String query = "delete from aws_billing_daily_costs where usage_date >= ? and billing_month >= ?";
 
@@ -73,6 +81,12 @@ public class AwsBillingDataJobConfig {
 
                         jdbcTemplate.update(query, firstDayOfLastMonth, firstDayOfLastMonth);
 
+                        // Days that are not re-synced must still be re-merged (to drop their rows)
+                        billingChangeLogService.markChanged(CloudProvider.AWS, firstDayOfLastMonth, now);
+
+                        // and the deleted days must not be skipped as unchanged
+                        billingSyncFingerprintService.clear(CloudProvider.AWS, firstDayOfLastMonth);
+
                     }
 
                     return RepeatStatus.FINISHED;
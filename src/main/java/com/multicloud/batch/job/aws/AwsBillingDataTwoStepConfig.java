@@ -3,10 +3,12 @@ package com.multicloud.batch.job.aws;
 import com.multicloud.batch.dao.aws.AwsBillingService;
 import com.multicloud.batch.dao.aws.AwsSecretsManagerService;
 import com.multicloud.batch.dao.aws.payload.SecretPayload;
+import com.multicloud.batch.dto.DaySyncResultDTO;
 import com.multicloud.batch.enums.LastSyncStatus;
+import com.multicloud.batch.enums.UnloadFormat;
 import com.multicloud.batch.job.CustomDateRange;
-import com.multicloud.batch.job.DateRangePartition;
-import com.multicloud.batch.model.AwsDataSyncHistory;
+import com.multicloud.batch.job.PartitionPlanner;
+import com.multicloud.batch.job.SyncPartitionSpec;
 import com.multicloud.batch.repository.AwsDataSyncHistoryRepository;
 import com.multicloud.batch.service.SecretPayloadStoreService;
 import lombok.RequiredArgsConstructor;
@@ -16,16 +18,15 @@ import org.springframework.batch.core.partition.support.Partitioner;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.scope.context.StepSynchronizationManager;
 import org.springframework.batch.core.step.builder.StepBuilder;
-import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 
 import static java.util.Objects.requireNonNull;
@@ -49,8 +50,18 @@ public class AwsBillingDataTwoStepConfig {
     @Value("${batch_job.aws_billing_data.secret_path}")
     private String awsSecretPath;
 
+    @Value("${batch_job.aws_billing_data.unload_format:CSV}")
+    private UnloadFormat unloadFormat;
+
+    // One UNLOAD per table and month partitioned by usage_date, loaded and recorded day by day
+    @Value("${batch_job.aws_billing_data.unload_by_day:false}")
+    private boolean unloadByDay;
+
     private final JobRepository jobRepository;
     private final PlatformTransactionManager platformTransactionManager;
+    private final TaskExecutor awsPartitionTaskExecutor;
+
+    private final PartitionPlanner partitionPlanner;
 
     private final AwsDataSyncHistoryRepository awsDataSyncHistoryRepository;
     private final SecretPayloadStoreService secretPayloadStoreService;
@@ -61,8 +72,7 @@ public class AwsBillingDataTwoStepConfig {
     public Step awsBillingDataTwoMasterStep() {
         return new StepBuilder("awsBillingDataTwoMasterStep", jobRepository)
                 .partitioner(awsBillingDataTwoSlaveStep().getName(), awsBillingDataTwoPartitioner())
-                .step(awsBillingDataTwoSlaveStep())
-                .gridSize(1)
+                .partitionHandler(partitionPlanner.handler(awsBillingDataTwoSlaveStep(), awsPartitionTaskExecutor))
                 .build();
     }
 
@@ -95,88 +105,18 @@ public class AwsBillingDataTwoStepConfig {
                     "cur-willhaben-data"
             );
 
-            Set<AwsUniqueStep> unique = new HashSet<>();
-            Map<String, ExecutionContext> partitions = new HashMap<>();
-
-            int i = 1;
-
-            for (String table : tables) {
-
-                // Partition calculation
-                boolean exist = awsDataSyncHistoryRepository.existsAny(AwsBillingDataJobConfig.JOB_NAME, table);
-
-                LocalDate now = LocalDate.now();
-
-                long days = ChronoUnit.DAYS.between(
-                        now.minusMonths(6).withDayOfMonth(1), now
-                ) + 1;
-
-                if (exist) {
-
-                    if (Set.of(1, 2, 3, 4, 5, 8, 11, 14, 17, 20, 23, 26, 29).contains(now.getDayOfMonth())) {
-
-                        days = ChronoUnit.DAYS.between(
-                                now.minusMonths(1).withDayOfMonth(1), now
-                        ) + 1;
-
-                    } else {
-                        days = Math.min(now.getDayOfMonth(), 10);
-                    }
-
-                }
-
-                if (startDate != null) {
-                    days = ChronoUnit.DAYS.between(
-                            startDate, now
-                    ) + 1;
-                }
-
-                List<CustomDateRange> dateRanges = DateRangePartition.getPartitions(days, 11);
-
-                for (CustomDateRange dateRange : dateRanges) {
-
-                    ExecutionContext executionContext = new ExecutionContext();
-                    executionContext.put("range", dateRange);
-                    executionContext.put("tableName", table);
-
-                    partitions.put("partition" + i, executionContext);
-
-                    unique.add(new AwsUniqueStep(table, dateRange));
-
-                    i++;
-
-                }
-
-            }
-
-            List<AwsDataSyncHistory> failList = awsDataSyncHistoryRepository.findAllByJobNameAndTableNameInAndLastSyncStatusAndFailCountLessThan(
-                    AwsBillingDataJobConfig.JOB_NAME, tables, LastSyncStatus.FAIL, 3
+            return partitionPlanner.plan(
+                    SyncPartitionSpec.builder()
+                            .jobName(AwsBillingDataJobConfig.JOB_NAME)
+                            .history(awsDataSyncHistoryRepository)
+                            .sources(tables)
+                            .sourceKey("tableName")
+                            .refreshDays(AwsBillingDataJobConfig.REFRESH_DAYS)
+                            .interval(11)
+                            .wholeMonths(unloadByDay)
+                            .startDate(startDate)
+                            .build()
             );
-
-            for (AwsDataSyncHistory item : failList) {
-
-                CustomDateRange dateRange = new CustomDateRange(
-                        item.getStart(), item.getEnd(), item.getEnd().getYear(), item.getEnd().getMonthValue()
-                );
-
-                AwsUniqueStep awsUniqueStep = new AwsUniqueStep(item.getTableName(), dateRange);
-
-                if (unique.contains(awsUniqueStep)) {
-                    continue;
-                }
-
-                unique.add(new AwsUniqueStep(item.getTableName(), dateRange));
-
-                ExecutionContext executionContext = new ExecutionContext();
-                executionContext.put("range", dateRange);
-                executionContext.put("tableName", item.getTableName());
-
-                partitions.put("partition" + i, executionContext);
-
-                i++;
-            }
-
-            return partitions;
         };
     }
 
@@ -198,12 +138,18 @@ public class AwsBillingDataTwoStepConfig {
 
                         SecretPayload secret = secretPayloadStoreService.get(SECRET_STORE_KEY);
 
-                        awsBillingService.syncDailyCostUsageFromAthenaV2(
+                        List<DaySyncResultDTO> days = new ArrayList<>();
+
+                        long rows = awsBillingService.syncDailyCostUsageFromAthenaV2(
                                 DATABASE_NAME, tableName,
                                 secret.getAccessKey(), secret.getSecretKey(), secret.getRegion(),
-                                range.start(), range.end(), true
+                                range.start(), range.end(), true, unloadFormat,
+                                unloadByDay ? days::add : null
                         );
 
+                        contribution.incrementWriteCount(rows);
+                        PartitionPlanner.putDays(stepExecution, days);
+
                     }
 
                     return RepeatStatus.FINISHED;
@@ -250,20 +196,22 @@ public class AwsBillingDataTwoStepConfig {
 
                 if (range != null && tableName != null) {
 
-                    AwsDataSyncHistory sync = awsDataSyncHistoryRepository.findByJobNameAndTableNameAndStartAndEnd(
-                            AwsBillingDataJobConfig.JOB_NAME, tableName, range.start(), range.end()
-                    ).orElse(new AwsDataSyncHistory(
-                            AwsBillingDataJobConfig.JOB_NAME, tableName, range.start(), range.end()
-                    ));
-
-                    if (status.equals(BatchStatus.COMPLETED)) {
-                        sync.setLastSyncStatus(LastSyncStatus.SUCCESS);
-                    } else {
-                        sync.setLastSyncStatus(LastSyncStatus.FAIL);
-                        sync.setFailCount(sync.getFailCount() + 1);
-                    }
+                    List<DaySyncResultDTO> days = PartitionPlanner.days(stepExecution);
+
+                    // Loaded by day: the volume goes to the days, recorded after the range so a failed day stays failed
+                    awsDataSyncHistoryRepository.recordSyncResult(
+                            AwsBillingDataJobConfig.JOB_NAME, tableName, range.start(), range.end(),
+                            status.equals(BatchStatus.COMPLETED) ? LastSyncStatus.SUCCESS : LastSyncStatus.FAIL,
+                            days.isEmpty() ? PartitionPlanner.rowCount(stepExecution) : null,
+                            days.isEmpty() ? PartitionPlanner.durationMs(stepExecution) : null
+                    );
 
-                    awsDataSyncHistoryRepository.save(sync);
+                    for (DaySyncResultDTO day : days) {
+                        awsDataSyncHistoryRepository.recordSyncResult(
+                                AwsBillingDataJobConfig.JOB_NAME, tableName, day.usageDate(), day.usageDate(),
+                                day.status(), day.rowCount(), day.durationMs()
+                        );
+                    }
 
                 }
 
@@ -3,10 +3,12 @@ package com.multicloud.batch.job.aws;
 import com.multicloud.batch.dao.aws.AwsBillingService;
 import com.multicloud.batch.dao.aws.AwsSecretsManagerService;
 import com.multicloud.batch.dao.aws.payload.SecretPayload;
+import com.multicloud.batch.dto.DaySyncResultDTO;
 import com.multicloud.batch.enums.LastSyncStatus;
+import com.multicloud.batch.enums.UnloadFormat;
 import com.multicloud.batch.job.CustomDateRange;
-import com.multicloud.batch.job.DateRangePartition;
-import com.multicloud.batch.model.AwsDataSyncHistory;
+import com.multicloud.batch.job.PartitionPlanner;
+import com.multicloud.batch.job.SyncPartitionSpec;
 import com.multicloud.batch.repository.AwsDataSyncHistoryRepository;
 import com.multicloud.batch.service.SecretPayloadStoreService;
 import lombok.RequiredArgsConstructor;
@@ -17,16 +19,15 @@ import org.springframework.batch.core.partition.support.Partitioner;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.scope.context.StepSynchronizationManager;
 import org.springframework.batch.core.step.builder.StepBuilder;
-import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 
 import static java.util.Objects.requireNonNull;
@@ -50,8 +51,18 @@ public class ExternalAwsBillingDataJobConfig {
     @Value("${batch_job.external_aws_billing_data.secret_path}")
     private String awsSecretPath;
 
+    @Value("${batch_job.external_aws_billing_data.unload_format:CSV}")
+    private UnloadFormat unloadFormat;
+
+    // One UNLOAD per table and month partitioned by usage_date, loaded and recorded day by day
+    @Value("${batch_job.external_aws_billing_data.unload_by_day:false}")
+    private boolean unloadByDay;
+
     private final JobRepository jobRepository;
     private final PlatformTransactionManager platformTransactionManager;
+    private final TaskExecutor awsPartitionTaskExecutor;
+
+    private final PartitionPlanner partitionPlanner;
 
     private final AwsDataSyncHistoryRepository awsDataSyncHistoryRepository;
     private final SecretPayloadStoreService secretPayloadStoreService;
@@ -71,8 +82,7 @@ public class ExternalAwsBillingDataJobConfig {
     public Step externalAwsBillingDataMasterStep() {
         return new StepBuilder("externalAwsBillingDataMasterStep", jobRepository)
                 .partitioner(externalAwsBillingDataSlaveStep().getName(), externalAwsBillingDataPartitioner())
-                .step(externalAwsBillingDataSlaveStep())
-                .gridSize(1)
+                .partitionHandler(partitionPlanner.handler(externalAwsBillingDataSlaveStep(), awsPartitionTaskExecutor))
                 .build();
     }
 
@@ -112,87 +122,18 @@ public class ExternalAwsBillingDataJobConfig {
             // Removing a test table
             tables.remove("cur_stratego_billing_group");
 
-            Set<AwsUniqueStep> unique = new HashSet<>();
-            Map<String, ExecutionContext> partitions = new HashMap<>();
-
-            int i = 1;
-
-            for (String table : tables) {
-
-                // Partition calculation
-                boolean exist = awsDataSyncHistoryRepository.existsAny(JOB_NAME, table);
-
-                LocalDate now = LocalDate.now();
-
-                long days = ChronoUnit.DAYS.between(
-                        now.minusMonths(6).withDayOfMonth(1), now
-                ) + 1;
-
-                if (exist) {
-
-                    if (Set.of(1, 2, 3, 4, 5, 8, 11, 14, 17, 20, 23, 26, 29).contains(now.getDayOfMonth())) {
-
-                        days = ChronoUnit.DAYS.between(
-                                now.minusMonths(1).withDayOfMonth(1), now
-                        ) + 1;
-
-                    } else {
-                        days = Math.min(now.getDayOfMonth(), 10);
-                    }
-
-                }
-
-                if (startDate != null ) {
-                    days = ChronoUnit.DAYS.between(
-                            startDate, now
-                    ) + 1;
-                }
-
-                List<CustomDateRange> dateRanges = DateRangePartition.getPartitions(days, 11);
-
-                for (CustomDateRange dateRange : dateRanges) {
-
-                    ExecutionContext executionContext = new ExecutionContext();
-                    executionContext.put("range", dateRange);
-                    executionContext.put("tableName", table);
-
-                    partitions.put("partition" + i, executionContext);
-
-                    unique.add(new AwsUniqueStep(table, dateRange));
-
-                    i++;
-                }
-
-            }
-
-            List<AwsDataSyncHistory> failList = awsDataSyncHistoryRepository.findAllByJobNameAndTableNameInAndLastSyncStatusAndFailCountLessThan(
-                    JOB_NAME, tables, LastSyncStatus.FAIL, 3
+            return partitionPlanner.plan(
+                    SyncPartitionSpec.builder()
+                            .jobName(JOB_NAME)
+                            .history(awsDataSyncHistoryRepository)
+                            .sources(tables)
+                            .sourceKey("tableName")
+                            .refreshDays(AwsBillingDataJobConfig.REFRESH_DAYS)
+                            .interval(11)
+                            .wholeMonths(unloadByDay)
+                            .startDate(startDate)
+                            .build()
             );
-
-            for (AwsDataSyncHistory item : failList) {
-
-                CustomDateRange dateRange = new CustomDateRange(
-                        item.getStart(), item.getEnd(), item.getEnd().getYear(), item.getEnd().getMonthValue()
-                );
-
-                AwsUniqueStep awsUniqueStep = new AwsUniqueStep(item.getTableName(), dateRange);
-
-                if (unique.contains(awsUniqueStep)) {
-                    continue;
-                }
-
-                unique.add(awsUniqueStep);
-
-                ExecutionContext executionContext = new ExecutionContext();
-                executionContext.put("range", dateRange);
-                executionContext.put("tableName", item.getTableName());
-
-                partitions.put("partition" + i, executionContext);
-
-                i++;
-            }
-
-            return partitions;
         };
     }
 
@@ -214,12 +155,18 @@ public class ExternalAwsBillingDataJobConfig {
 
                         SecretPayload secret = secretPayloadStoreService.get(SECRET_STORE_KEY);
 
-                        awsBillingService.syncDailyCostUsageFromAthena(
+                        List<DaySyncResultDTO> days = new ArrayList<>();
+
+                        long rows = awsBillingService.syncDailyCostUsageFromAthena(
                                 DATABASE_NAME, tableName,
                                 secret.getAccessKey(), secret.getSecretKey(), secret.getRegion(),
-                                range.start(), range.end(), false
+                                range.start(), range.end(), false, unloadFormat,
+                                unloadByDay ? days::add : null
                         );
 
+                        contribution.incrementWriteCount(rows);
+                        PartitionPlanner.putDays(stepExecution, days);
+
                     }
 
                     return RepeatStatus.FINISHED;
@@ -264,20 +211,22 @@ public class ExternalAwsBillingDataJobConfig {
 
                 if (range != null && tableName != null) {
 
-                    AwsDataSyncHistory sync = awsDataSyncHistoryRepository.findByJobNameAndTableNameAndStartAndEnd(
-                            JOB_NAME, tableName, range.start(), range.end()
-                    ).orElse(new AwsDataSyncHistory(
-                            JOB_NAME, tableName, range.start(), range.end()
-                    ));
-
-                    if (status.equals(BatchStatus.COMPLETED)) {
-                        sync.setLastSyncStatus(LastSyncStatus.SUCCESS);
-                    } else {
-                        sync.setLastSyncStatus(LastSyncStatus.FAIL);
-                        sync.setFailCount(sync.getFailCount() + 1);
-                    }
+                    List<DaySyncResultDTO> days = PartitionPlanner.days(stepExecution);
+
+                    // Loaded by day: the volume goes to the days, recorded after the range so a failed day stays failed
+                    awsDataSyncHistoryRepository.recordSyncResult(
+                            JOB_NAME, tableName, range.start(), range.end(),
+                            status.equals(BatchStatus.COMPLETED) ? LastSyncStatus.SUCCESS : LastSyncStatus.FAIL,
+                            days.isEmpty() ? PartitionPlanner.rowCount(stepExecution) : null,
+                            days.isEmpty() ? PartitionPlanner.durationMs(stepExecution) : null
+                    );
 
-                    awsDataSyncHistoryRepository.save(sync);
+                    for (DaySyncResultDTO day : days) {
+                        awsDataSyncHistoryRepository.recordSyncResult(
+                                JOB_NAME, tableName, day.usageDate(), day.usageDate(),
+                                day.status(), day.rowCount(), day.durationMs()
+                        );
+                    }
 
                 }
 
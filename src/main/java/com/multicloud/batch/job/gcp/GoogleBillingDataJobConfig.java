@@ -5,8 +5,8 @@ import com.multicloud.batch.dao.aws.payload.SecretPayload;
 import com.multicloud.batch.dao.google.GoogleBillingService;
 import com.multicloud.batch.enums.LastSyncStatus;
 import com.multicloud.batch.job.CustomDateRange;
-import com.multicloud.batch.job.DateRangePartition;
-import com.multicloud.batch.model.GcpDataSyncHistory;
+import com.multicloud.batch.job.PartitionPlanner;
+import com.multicloud.batch.job.SyncPartitionSpec;
 import com.multicloud.batch.repository.GcpDataSyncHistoryRepository;
 import com.multicloud.batch.service.SecretPayloadStoreService;
 import lombok.RequiredArgsConstructor;
@@ -17,16 +17,15 @@ import org.springframework.batch.core.partition.support.Partitioner;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.scope.context.StepSynchronizationManager;
 import org.springframework.batch.core.step.builder.StepBuilder;
-import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 
 import static java.util.Objects.requireNonNull;
@@ -53,6 +52,9 @@ public class GoogleBillingDataJobConfig {
 
     private final JobRepository jobRepository;
     private final PlatformTransactionManager platformTransactionManager;
+    private final TaskExecutor gcpPartitionTaskExecutor;
+
+    private final PartitionPlanner partitionPlanner;
 
     private final GcpDataSyncHistoryRepository gcpDataSyncHistoryRepository;
     private final SecretPayloadStoreService secretPayloadStoreService;
@@ -66,14 +68,12 @@ public class GoogleBillingDataJobConfig {
                 .build();
     }
 
-    // Using a single thread and fetched 3-day of data at once.
-    // There is a lot of data aiming to store it slowly.
+    // Planner-sized ranges (3 days without history) run in parallel on the shared GCP partition executor.
     @Bean
     public Step gcpBillingDataMasterStep() {
         return new StepBuilder("gcpBillingDataMasterStep", jobRepository)
                 .partitioner(gcpBillingDataSlaveStep().getName(), gcpBillingDataPartitioner())
-                .step(gcpBillingDataSlaveStep())
-                .gridSize(1)
+                .partitionHandler(partitionPlanner.handler(gcpBillingDataSlaveStep(), gcpPartitionTaskExecutor))
                 .build();
     }
 
@@ -102,79 +102,15 @@ public class GoogleBillingDataJobConfig {
 
             }
 
-            // Partition calculation
-            boolean exist = gcpDataSyncHistoryRepository.existsAny(JOB_NAME);
-
-            LocalDate now = LocalDate.now();
-
-            long days = ChronoUnit.DAYS.between(
-                    now.minusMonths(6).withDayOfMonth(1), now
-            ) + 1;
-
-            if (exist) {
-
-                if (Set.of(1, 2, 3, 4).contains(now.getDayOfMonth())) {
-
-                    days = ChronoUnit.DAYS.between(
-                            now.minusMonths(1).withDayOfMonth(1), now
-                    ) + 1;
-
-                } else {
-                    days = Math.min(now.getDayOfMonth(), 10);
-                }
-
-            }
-
-            if (startDate != null ) {
-                days = ChronoUnit.DAYS.between(
-                        startDate, now
-                ) + 1;
-            }
-
-            List<CustomDateRange> dateRanges = DateRangePartition.getPartitions(days, 3);
-
-            Set<CustomDateRange> unique = new HashSet<>();
-            Map<String, ExecutionContext> partitions = new HashMap<>();
-
-            int i = 1;
-
-            for (CustomDateRange dateRange : dateRanges) {
-
-                ExecutionContext executionContext = new ExecutionContext();
-                executionContext.put("range", dateRange);
-
-                partitions.put("partition" + i, executionContext);
-
-                unique.add(dateRange);
-
-                i++;
-            }
-
-            List<GcpDataSyncHistory> failList = gcpDataSyncHistoryRepository.findAllByJobNameAndProjectAndLastSyncStatusAndFailCountLessThan(
-                    JOB_NAME, PROJECT_NAME, LastSyncStatus.FAIL, 3
+            return partitionPlanner.plan(
+                    SyncPartitionSpec.builder()
+                            .jobName(JOB_NAME)
+                            .history(gcpDataSyncHistoryRepository)
+                            .sources(Set.of(PROJECT_NAME))
+                            .interval(3)
+                            .startDate(startDate)
+                            .build()
             );
-
-            for (GcpDataSyncHistory item : failList) {
-
-                CustomDateRange dateRange = new CustomDateRange(
-                        item.getStart(), item.getEnd(), item.getEnd().getYear(), item.getEnd().getMonthValue()
-                );
-
-                if (unique.contains(dateRange)) {
-                    continue;
-                }
-
-                unique.add(dateRange);
-
-                ExecutionContext executionContext = new ExecutionContext();
-                executionContext.put("range", dateRange);
-
-                partitions.put("partition" + i, executionContext);
-
-                i++;
-            }
-
-            return partitions;
         };
     }
 
@@ -195,10 +131,12 @@ public class GoogleBillingDataJobConfig {
 
                         SecretPayload secret = secretPayloadStoreService.get(SECRET_STORE_KEY);
 
-                        googleBillingService.fetchDailyServiceCostUsage(
+                        long rows = googleBillingService.fetchDailyServiceCostUsage(
                                 secret.getJsonKey().getBytes(), range.start(), range.end(), true
                         );
 
+                        contribution.incrementWriteCount(rows);
+
                     }
 
                     return RepeatStatus.FINISHED;
@@ -241,20 +179,11 @@ public class GoogleBillingDataJobConfig {
 
                 if (range != null) {
 
-                    GcpDataSyncHistory sync = gcpDataSyncHistoryRepository.findByJobNameAndProjectAndStartAndEnd(
-                            JOB_NAME, PROJECT_NAME, range.start(), range.end()
-                    ).orElse(new GcpDataSyncHistory(
-                            JOB_NAME, PROJECT_NAME, range.start(), range.end()
-                    ));
-
-                    if (status.equals(BatchStatus.COMPLETED)) {
-                        sync.setLastSyncStatus(LastSyncStatus.SUCCESS);
-                    } else {
-                        sync.setLastSyncStatus(LastSyncStatus.FAIL);
-                        sync.setFailCount(sync.getFailCount() + 1);
-                    }
-
-                    gcpDataSyncHistoryRepository.save(sync);
+                    gcpDataSyncHistoryRepository.recordSyncResult(
+                            JOB_NAME, PROJECT_NAME, range.start(), range.end(),
+                            status.equals(BatchStatus.COMPLETED) ? LastSyncStatus.SUCCESS : LastSyncStatus.FAIL,
+                            PartitionPlanner.rowCount(stepExecution), PartitionPlanner.durationMs(stepExecution)
+                    );
 
                 }
 
@@ -8,8 +8,8 @@ import com.multicloud.batch.dao.huawei.payload.HuaweiAuthDetails;
 import com.multicloud.batch.dto.HuaweiSubAccountInfoDTO;
 import com.multicloud.batch.enums.LastSyncStatus;
 import com.multicloud.batch.job.CustomDateRange;
-import com.multicloud.batch.job.DateRangePartition;
-import com.multicloud.batch.model.HuaweiDataSyncHistory;
+import com.multicloud.batch.job.PartitionPlanner;
+import com.multicloud.batch.job.SyncPartitionSpec;
 import com.multicloud.batch.repository.HuaweiDataSyncHistoryRepository;
 import com.multicloud.batch.service.HuaweiSubAccountInfoService;
 import com.multicloud.batch.service.SecretPayloadStoreService;
@@ -27,11 +27,12 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static java.util.Objects.requireNonNull;
@@ -56,6 +57,9 @@ public class ExternalHuaweiBillingDataJobConfig {
 
     private final JobRepository jobRepository;
     private final PlatformTransactionManager platformTransactionManager;
+    private final TaskExecutor huaweiPartitionTaskExecutor;
+
+    private final PartitionPlanner partitionPlanner;
 
     private final HuaweiDataSyncHistoryRepository huaweiDataSyncHistoryRepository;
     private final HuaweiSubAccountInfoService huaweiSubAccountInfoService;
@@ -107,8 +111,7 @@ public class ExternalHuaweiBillingDataJobConfig {
     public Step externalHuaweiBillingDataMasterStep() {
         return new StepBuilder("externalHuaweiBillingDataMasterStep", jobRepository)
                 .partitioner(externalHuaweiBillingDataSlaveStep().getName(), externalHuaweiBillingDataPartitioner())
-                .step(externalHuaweiBillingDataSlaveStep())
-                .gridSize(1)
+                .partitionHandler(partitionPlanner.handler(externalHuaweiBillingDataSlaveStep(), huaweiPartitionTaskExecutor))
                 .build();
     }
 
@@ -124,91 +127,22 @@ public class ExternalHuaweiBillingDataJobConfig {
 
             List<HuaweiSubAccountInfoDTO> subAccountInfoList = huaweiSubAccountInfoService.findAllSubAccountInfo();
 
-            Set<String> uniqueNames = subAccountInfoList.stream()
-                    .map(HuaweiSubAccountInfoDTO::getUniqueName)
-                    .collect(Collectors.toSet());
-
-            Set<HuaweiUniqueStep> unique = new HashSet<>();
-            Map<String, ExecutionContext> partitions = new HashMap<>();
-
-            int i = 1;
-
-            for (HuaweiSubAccountInfoDTO dto : subAccountInfoList) {
-
-                // Partition calculation
-                boolean exist = huaweiDataSyncHistoryRepository.existsAny(JOB_NAME, dto.getUniqueName());
-
-                LocalDate now = LocalDate.now();
-
-                long days = ChronoUnit.DAYS.between(
-                        now.minusMonths(6).withDayOfMonth(1), now
-                ) + 1;
-
-                if (exist) {
-
-                    if (Set.of(1, 2, 3, 4).contains(now.getDayOfMonth())) {
-
-                        days = ChronoUnit.DAYS.between(
-                                now.minusMonths(1).withDayOfMonth(1), now
-                        ) + 1;
-
-                    } else {
-                        days = Math.min(now.getDayOfMonth(), 10);
-                    }
-
-                }
-
-                if (startDate != null ) {
-                    days = ChronoUnit.DAYS.between(
-                            startDate, now
-                    ) + 1;
-                }
-
-                List<CustomDateRange> dateRanges = DateRangePartition.getPartitions(days, 11);
-
-                for (CustomDateRange dateRange : dateRanges) {
-
-                    ExecutionContext executionContext = new ExecutionContext();
-                    executionContext.put("range", dateRange);
-                    executionContext.put("project", dto);
-
-                    partitions.put("partition" + i, executionContext);
-
-                    unique.add(new HuaweiUniqueStep(dto.getUniqueName(), dateRange));
-
-                    i++;
-                }
-
-            }
+            Map<String, HuaweiSubAccountInfoDTO> subAccounts = subAccountInfoList.stream()
+                    .collect(Collectors.toMap(
+                            HuaweiSubAccountInfoDTO::getUniqueName, Function.identity(), (first, second) -> first
+                    ));
 
-            List<HuaweiDataSyncHistory> failList = huaweiDataSyncHistoryRepository.findAllByJobNameAndProjectInAndLastSyncStatusAndFailCountLessThan(
-                    JOB_NAME, uniqueNames, LastSyncStatus.FAIL, 3
+            return partitionPlanner.plan(
+                    SyncPartitionSpec.builder()
+                            .jobName(JOB_NAME)
+                            .history(huaweiDataSyncHistoryRepository)
+                            .sources(subAccounts.keySet())
+                            .sourceKey("project")
+                            .sourceValue(subAccounts::get)
+                            .interval(11)
+                            .startDate(startDate)
+                            .build()
             );
-
-            for (HuaweiDataSyncHistory item : failList) {
-
-                CustomDateRange dateRange = new CustomDateRange(
-                        item.getStart(), item.getEnd(), item.getEnd().getYear(), item.getEnd().getMonthValue()
-                );
-
-                HuaweiUniqueStep huaweiUniqueStep = new HuaweiUniqueStep(item.getProject(), dateRange);
-
-                if (unique.contains(huaweiUniqueStep)) {
-                    continue;
-                }
-
-                unique.add(huaweiUniqueStep);
-
-                ExecutionContext executionContext = new ExecutionContext();
-                executionContext.put("range", dateRange);
-                executionContext.put("project", HuaweiSubAccountInfoDTO.build(item.getProject()));
-
-                partitions.put("partition" + i, executionContext);
-
-                i++;
-            }
-
-            return partitions;
         };
     }
 
@@ -243,10 +177,12 @@ public class ExternalHuaweiBillingDataJobConfig {
                         );
 
                         // Fetch data for subaccount with assumeRoleToken
-                        huaweiBillingService.fetchDailyServiceCostUsage(
+                        long rows = huaweiBillingService.fetchDailyServiceCostUsage(
                                 range, assumeRoleToken, false
                         );
 
+                        contribution.incrementWriteCount(rows);
+
                     }
 
                     return RepeatStatus.FINISHED;
@@ -301,20 +237,11 @@ public class ExternalHuaweiBillingDataJobConfig {
 
                 if (range != null && project != null) {
 
-                    HuaweiDataSyncHistory sync = huaweiDataSyncHistoryRepository.findByJobNameAndProjectAndStartAndEnd(
-                            JOB_NAME, project.getUniqueName(), range.start(), range.end()
-                    ).orElse(new HuaweiDataSyncHistory(
-                            JOB_NAME, project.getUniqueName(), range.start(), range.end()
-                    ));
-
-                    if (status.equals(BatchStatus.COMPLETED)) {
-                        sync.setLastSyncStatus(LastSyncStatus.SUCCESS);
-                    } else {
-                        sync.setLastSyncStatus(LastSyncStatus.FAIL);
-                        sync.setFailCount(sync.getFailCount() + 1);
-                    }
-
-                    huaweiDataSyncHistoryRepository.save(sync);
+                    huaweiDataSyncHistoryRepository.recordSyncResult(
+                            JOB_NAME, project.getUniqueName(), range.start(), range.end(),
+                            status.equals(BatchStatus.COMPLETED) ? LastSyncStatus.SUCCESS : LastSyncStatus.FAIL,
+                            PartitionPlanner.rowCount(stepExecution), PartitionPlanner.durationMs(stepExecution)
+                    );
 
                 }
 
@@ -329,7 +256,4 @@ public class ExternalHuaweiBillingDataJobConfig {
 
     }
 
-    record HuaweiUniqueStep(String project, CustomDateRange range) {
-    }
-
 }
@@ -7,8 +7,8 @@ import com.multicloud.batch.dao.huawei.HuaweiBillingService;
 import com.multicloud.batch.dao.huawei.payload.HuaweiAuthDetails;
 import com.multicloud.batch.enums.LastSyncStatus;
 import com.multicloud.batch.job.CustomDateRange;
-import com.multicloud.batch.job.DateRangePartition;
-import com.multicloud.batch.model.HuaweiDataSyncHistory;
+import com.multicloud.batch.job.PartitionPlanner;
+import com.multicloud.batch.job.SyncPartitionSpec;
 import com.multicloud.batch.repository.HuaweiDataSyncHistoryRepository;
 import com.multicloud.batch.service.SecretPayloadStoreService;
 import lombok.RequiredArgsConstructor;
@@ -19,16 +19,15 @@ import org.springframework.batch.core.partition.support.Partitioner;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.scope.context.StepSynchronizationManager;
 import org.springframework.batch.core.step.builder.StepBuilder;
-import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 
 import static java.util.Objects.requireNonNull;
@@ -55,6 +54,9 @@ public class HuaweiBillingDataJobConfig {
 
     private final JobRepository jobRepository;
     private final PlatformTransactionManager platformTransactionManager;
+    private final TaskExecutor huaweiPartitionTaskExecutor;
+
+    private final PartitionPlanner partitionPlanner;
 
     private final HuaweiDataSyncHistoryRepository huaweiDataSyncHistoryRepository;
     private final AwsSecretsManagerService awsSecretsManagerService;
@@ -105,8 +107,7 @@ public class HuaweiBillingDataJobConfig {
     public Step huaweiBillingDataMasterStep() {
         return new StepBuilder("huaweiBillingDataMasterStep", jobRepository)
                 .partitioner(huaweiBillingDataSlaveStep().getName(), huaweiBillingDataPartitioner())
-                .step(huaweiBillingDataSlaveStep())
-                .gridSize(1)
+                .partitionHandler(partitionPlanner.handler(huaweiBillingDataSlaveStep(), huaweiPartitionTaskExecutor))
                 .build();
     }
 
@@ -120,79 +121,15 @@ public class HuaweiBillingDataJobConfig {
             JobParameters jobParameters = stepExecution.getJobParameters();
             LocalDate startDate = jobParameters.getLocalDate("startDate");
 
-            // Partition calculation
-            boolean exist = huaweiDataSyncHistoryRepository.existsAny(JOB_NAME, PROJECT);
-
-            LocalDate now = LocalDate.now();
-
-            long days = ChronoUnit.DAYS.between(
-                    now.minusMonths(6).withDayOfMonth(1), now
-            ) + 1;
-
-            if (exist) {
-
-                if (Set.of(1, 2, 3, 4).contains(now.getDayOfMonth())) {
-
-                    days = ChronoUnit.DAYS.between(
-                            now.minusMonths(1).withDayOfMonth(1), now
-                    ) + 1;
-
-                } else {
-                    days = Math.min(now.getDayOfMonth(), 10);
-                }
-
-            }
-
-            if (startDate != null ) {
-                days = ChronoUnit.DAYS.between(
-                        startDate, now
-                ) + 1;
-            }
-
-            List<CustomDateRange> dateRanges = DateRangePartition.getPartitions(days, 3);
-
-            Set<CustomDateRange> unique = new HashSet<>();
-            Map<String, ExecutionContext> partitions = new HashMap<>();
-
-            int i = 1;
-
-            for (CustomDateRange dateRange : dateRanges) {
-
-                ExecutionContext executionContext = new ExecutionContext();
-                executionContext.put("range", dateRange);
-
-                partitions.put("partition" + i, executionContext);
-
-                unique.add(dateRange);
-
-                i++;
-            }
-
-            List<HuaweiDataSyncHistory> failList = huaweiDataSyncHistoryRepository.findAllByJobNameAndProjectAndLastSyncStatusAndFailCountLessThan(
-                    JOB_NAME, PROJECT, LastSyncStatus.FAIL, 3
+            return partitionPlanner.plan(
+                    SyncPartitionSpec.builder()
+                            .jobName(JOB_NAME)
+                            .history(huaweiDataSyncHistoryRepository)
+                            .sources(Set.of(PROJECT))
+                            .interval(3)
+                            .startDate(startDate)
+                            .build()
             );
-
-            for (HuaweiDataSyncHistory item : failList) {
-
-                CustomDateRange dateRange = new CustomDateRange(
-                        item.getStart(), item.getEnd(), item.getEnd().getYear(), item.getEnd().getMonthValue()
-                );
-
-                if (unique.contains(dateRange)) {
-                    continue;
-                }
-
-                unique.add(dateRange);
-
-                ExecutionContext executionContext = new ExecutionContext();
-                executionContext.put("range", dateRange);
-
-                partitions.put("partition" + i, executionContext);
-
-                i++;
-            }
-
-            return partitions;
         };
     }
 
@@ -217,10 +154,12 @@ public class HuaweiBillingDataJobConfig {
                                 secret.getUsername(), secret.getPassword(), secret.getDomainName(), secret.getRegion()
                         );
 
-                        huaweiBillingService.fetchDailyServiceCostUsage(
+                        long rows = huaweiBillingService.fetchDailyServiceCostUsage(
                                 range, token, true
                         );
 
+                        contribution.incrementWriteCount(rows);
+
                     }
 
                     return RepeatStatus.FINISHED;
@@ -272,20 +211,11 @@ public class HuaweiBillingDataJobConfig {
 
                 if (range != null) {
 
-                    HuaweiDataSyncHistory sync = huaweiDataSyncHistoryRepository.findByJobNameAndProjectAndStartAndEnd(
-                            JOB_NAME, PROJECT, range.start(), range.end()
-                    ).orElse(new HuaweiDataSyncHistory(
-                            JOB_NAME, PROJECT, range.start(), range.end()
-                    ));
-
-                    if (status.equals(BatchStatus.COMPLETED)) {
-                        sync.setLastSyncStatus(LastSyncStatus.SUCCESS);
-                    } else {
-                        sync.setLastSyncStatus(LastSyncStatus.FAIL);
-                        sync.setFailCount(sync.getFailCount() + 1);
-                    }
-
-                    huaweiDataSyncHistoryRepository.save(sync);
+                    huaweiDataSyncHistoryRepository.recordSyncResult(
+                            JOB_NAME, PROJECT, range.start(), range.end(),
+                            status.equals(BatchStatus.COMPLETED) ? LastSyncStatus.SUCCESS : LastSyncStatus.FAIL,
+                            PartitionPlanner.rowCount(stepExecution), PartitionPlanner.durationMs(stepExecution)
+                    );
 
                 }
 
@@ -0,0 +1,50 @@
+package com.multicloud.batch.model;
+
+import com.multicloud.batch.enums.CloudProvider;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Change watermark of one (provider, usage_date) slice of the raw billing tables.
+ * The sync jobs bump changed_at, the incremental merge sets merged_at once the slice is merged.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Builder
+@ToString
+@Entity
+@Table(
+        name = "billing_data_changes",
+        uniqueConstraints = @UniqueConstraint(
+                name = "idx_uq_billing_data_changes",
+                columnNames = {"cloud_provider", "usage_date"}
+        ),
+        indexes = {
+                @Index(name = "idx_changed_at_billing_data_changes", columnList = "changed_at")
+        }
+)
+public class BillingDataChange {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "cloud_provider", nullable = false, length = 100)
+    private CloudProvider cloudProvider;
+
+    @Column(name = "usage_date", nullable = false)
+    private LocalDate usageDate;
+
+    @Column(name = "changed_at", nullable = false)
+    private LocalDateTime changedAt;
+
+    @Column(name = "merged_at")
+    private LocalDateTime mergedAt;
+
+}
@@ -0,0 +1,64 @@
+package com.multicloud.batch.model;
+
+import com.multicloud.batch.enums.CloudProvider;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Content fingerprint (row count, cost sums and a checksum) of one (source, billing month, usage date)
+ * slice as last synced. The sync jobs skip a partition whose slices all still have the same fingerprint.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Builder
+@ToString
+@Entity
+@Table(
+        name = "billing_sync_fingerprints",
+        uniqueConstraints = @UniqueConstraint(
+                name = "idx_uq_billing_sync_fingerprints",
+                columnNames = {"cloud_provider", "source", "internal", "billing_month", "usage_date"}
+        ),
+        indexes = {
+                @Index(name = "idx_usage_date_billing_sync_fingerprints", columnList = "cloud_provider, usage_date")
+        }
+)
+public class BillingSyncFingerprint {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "cloud_provider", nullable = false, length = 100)
+    private CloudProvider cloudProvider;
+
+    // Athena table, BigQuery export or Huawei payer account
+    @Column(nullable = false, length = 150)
+    private String source;
+
+    // Internal costs or the ext_* columns
+    @Column(nullable = false)
+    private boolean internal;
+
+    @Column(name = "billing_month", nullable = false)
+    private LocalDate billingMonth;
+
+    @Column(name = "usage_date", nullable = false)
+    private LocalDate usageDate;
+
+    @Column(nullable = false, length = 64)
+    private String fingerprint;
+
+    @Column(name = "synced_at", nullable = false)
+    private LocalDateTime syncedAt;
+
+    public record Slice(LocalDate billingMonth, LocalDate usageDate) {
+    }
+
+}
@@ -58,6 +58,13 @@ public class GcpDataSyncHistory {
     @Column(name = "fail_count")
     private int failCount;
 
+    // Volume of the last successful run with writes, for the partition sizing
+    @Column(name = "row_count")
+    private Long rowCount;
+
+    @Column(name = "duration_ms")
+    private Long durationMs;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
     @Column(name = "updated_at")
@@ -1,13 +1,10 @@
 package com.multicloud.batch.model;
 
-import com.multicloud.batch.dao.huawei.payload.HuaweiResourceBillingResponse;
-import com.multicloud.batch.util.Util;
 import jakarta.persistence.*;
 import lombok.*;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.time.YearMonth;
 
 /**
  * Created by IntelliJ IDEA.
@@ -140,37 +137,4 @@ public class HuaweiBillingDailyCost {
     @Column(name = "ext_official_amount", precision = 20, scale = 8)
     private BigDecimal extOfficialAmount;
 
-    public static HuaweiBillingDailyCost from(HuaweiResourceBillingResponse.MonthlyRecord record, boolean internal) {
-
-        return HuaweiBillingDailyCost.builder()
-                .billDate(LocalDate.parse(record.bill_date()))
-                .billingMonth(YearMonth.parse(record.cycle()).atDay(1))
-                .payerAccountId(Util.nullToEmpty(record.payer_account_id()))
-                .customerId(Util.nullToEmpty(record.customer_id()))
-                .enterpriseProjectId(Util.nullToEmpty(record.enterprise_project_id()))
-                .enterpriseProjectName(Util.nullToEmpty(record.enterprise_project_name()))
-                .cloudServiceType(Util.nullToEmpty(record.cloud_service_type()))
-                .cloudServiceTypeName(Util.nullToEmpty(record.cloud_service_type_name()))
-                .skuCode(Util.nullToEmpty(record.sku_code()))
-                .productSpecDesc(Util.nullToEmpty(record.product_spec_desc()))
-                .resourceTypeCode(Util.nullToEmpty(record.resource_Type_code()))
-                .resourceTypeName(Util.nullToEmpty(record.resource_type_name()))
-                .resourceName(Util.nullToEmpty(record.resource_name()))
-                .region(Util.nullToEmpty(record.region()))
-                .regionName(Util.nullToEmpty(record.region_name()))
-                .chargeMode(record.charge_mode())
-                .billType(record.bill_type())
-                .consumeAmount(internal ? getNumericSafe(record.consume_amount()) : BigDecimal.ZERO)
-                .debtAmount(internal ? getNumericSafe(record.debt_amount()) : BigDecimal.ZERO)
-                .officialAmount(internal ? getNumericSafe(record.official_amount()) : BigDecimal.ZERO)
-                .extConsumeAmount(internal ? BigDecimal.ZERO : getNumericSafe(record.consume_amount()))
-                .extDebtAmount(internal ? BigDecimal.ZERO : getNumericSafe(record.debt_amount()))
-                .extOfficialAmount(internal ? BigDecimal.ZERO : getNumericSafe(record.official_amount()))
-                .build();
-    }
-
-    private static BigDecimal getNumericSafe(BigDecimal value) {
-        return value == null ? BigDecimal.ZERO : value;
-    }
-
 }
@@ -1,10 +1,13 @@
 package com.multicloud.batch.repository;
 
 import com.multicloud.batch.model.AwsBillingDailyCost;
+import com.multicloud.batch.util.DecimalParser;
+import org.apache.commons.csv.CSVRecord;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
 
 /**
@@ -16,16 +19,138 @@ import java.util.List;
 @Repository
 public interface AwsBillingDailyCostRepository extends JpaRepository<AwsBillingDailyCost, Long> {
 
-    default void upsertAwsBillingDailyCosts(List<AwsBillingDailyCost> bills, JdbcTemplate jdbcTemplate, boolean internal) {
+    // Column order of the upsert and the bulk load
+    String COLUMNS = """
+                usage_date, billing_month, usage_account_id, service_code, service_name, sku_id,
+                region, location, currency, pricing_type, billing_type, usage_type, usage_amount, usage_unit,
+                unblended_cost, blended_cost, net_unblended_cost,
+                ext_unblended_cost, ext_blended_cost, ext_net_unblended_cost
+            """;
 
-        String sql = """
-                    INSERT INTO aws_billing_daily_costs
-                    (usage_date, billing_month, usage_account_id, service_code, service_name, sku_id,
-                     region, location, currency, pricing_type, billing_type, usage_type, usage_amount, usage_unit,
-                     unblended_cost, blended_cost, net_unblended_cost, 
-                     ext_unblended_cost, ext_blended_cost, ext_net_unblended_cost)
-                    VALUES
-                    (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+    /**
+     * Binds Athena CSV rows (column order of the UNLOAD query) straight into the statement,
+     * without building an {@link AwsBillingDailyCost} per row.
+     */
+    default long upsertAwsBillingDailyCostRecords(List<CSVRecord> records, BulkUpsertWriter writer, boolean internal) {
+
+        // Internal costs go to the regular columns, external ones to ext_*
+        int costIndex = internal ? 15 : 18;
+        int zeroIndex = internal ? 18 : 15;
+
+        return writer.write(upsertStatement(internal, (ps, offset, record) -> {
+            ps.setDate(offset + 1, java.sql.Date.valueOf(record.get(0)));
+            ps.setDate(offset + 2, java.sql.Date.valueOf(record.get(1)));
+
+            for (int i = 2; i < 12; i++) {
+                ps.setString(offset + i + 1, record.get(i));
+            }
+
+            ps.setBigDecimal(offset + 13, DecimalParser.parse(record.get(12)));
+            ps.setString(offset + 14, record.get(13));
+
+            for (int i = 0; i < 3; i++) {
+                ps.setBigDecimal(offset + costIndex + i, DecimalParser.parse(record.get(14 + i)));
+                ps.setBigDecimal(offset + zeroIndex + i, BigDecimal.ZERO);
+            }
+        }), records);
+    }
+
+    /**
+     * Staging session for the bulk mode, rows are Athena CSV records like in
+     * {@link #upsertAwsBillingDailyCostRecords}.
+     */
+    default BulkLoadWriter.Session<CSVRecord> openAwsBillingDailyCostRecordLoad(BulkLoadWriter writer,
+                                                                               boolean internal) {
+
+        return writer.open(new BulkLoadWriter.LoadStatement<>(
+                "aws_billing_daily_costs", COLUMNS, onDuplicateKeyUpdate(internal),
+                (row, record) -> {
+
+                    for (int i = 0; i < 12; i++) {
+                        row.add(record.get(i));
+                    }
+
+                    row.add(DecimalParser.parse(record.get(12)));
+                    row.add(record.get(13));
+
+                    // Internal costs go to the regular columns, external ones to ext_*
+                    for (int i = 0; i < 3; i++) {
+                        row.add(internal ? DecimalParser.parse(record.get(14 + i)) : BigDecimal.ZERO);
+                    }
+
+                    for (int i = 0; i < 3; i++) {
+                        row.add(internal ? BigDecimal.ZERO : DecimalParser.parse(record.get(14 + i)));
+                    }
+                }
+        ));
+    }
+
+    /**
+     * Binds typed rows of a Parquet UNLOAD (column order of the UNLOAD query, see
+     * {@link com.multicloud.batch.dao.aws.ParquetUnloadedFileParser}), no text to parse.
+     */
+    default long upsertAwsBillingDailyCostRows(List<Object[]> rows, BulkUpsertWriter writer, boolean internal) {
+
+        // Internal costs go to the regular columns, external ones to ext_*
+        int costIndex = internal ? 15 : 18;
+        int zeroIndex = internal ? 18 : 15;
+
+        return writer.write(upsertStatement(internal, (ps, offset, row) -> {
+            ps.setDate(offset + 1, java.sql.Date.valueOf((LocalDate) row[0]));
+            ps.setDate(offset + 2, java.sql.Date.valueOf((LocalDate) row[1]));
+
+            for (int i = 2; i < 12; i++) {
+                ps.setString(offset + i + 1, (String) row[i]);
+            }
+
+            ps.setBigDecimal(offset + 13, (BigDecimal) row[12]);
+            ps.setString(offset + 14, (String) row[13]);
+
+            for (int i = 0; i < 3; i++) {
+                ps.setBigDecimal(offset + costIndex + i, (BigDecimal) row[14 + i]);
+                ps.setBigDecimal(offset + zeroIndex + i, BigDecimal.ZERO);
+            }
+        }), rows);
+    }
+
+    /**
+     * Staging session for the bulk mode, rows are typed like in {@link #upsertAwsBillingDailyCostRows}.
+     */
+    default BulkLoadWriter.Session<Object[]> openAwsBillingDailyCostRowLoad(BulkLoadWriter writer, boolean internal) {
+
+        return writer.open(new BulkLoadWriter.LoadStatement<>(
+                "aws_billing_daily_costs", COLUMNS, onDuplicateKeyUpdate(internal),
+                (row, values) -> {
+
+                    for (int i = 0; i < 14; i++) {
+                        row.add(values[i]);
+                    }
+
+                    // Internal costs go to the regular columns, external ones to ext_*
+                    for (int i = 0; i < 3; i++) {
+                        row.add(internal ? values[14 + i] : BigDecimal.ZERO);
+                    }
+
+                    for (int i = 0; i < 3; i++) {
+                        row.add(internal ? BigDecimal.ZERO : values[14 + i]);
+                    }
+                }
+        ));
+    }
+
+    private static <T> BulkUpsertWriter.UpsertStatement<T> upsertStatement(boolean internal,
+                                                                         BulkUpsertWriter.RowBinder<T> binder) {
+
+        return new BulkUpsertWriter.UpsertStatement<>(
+                internal ? "aws_billing_daily_costs" : "aws_billing_daily_costs:ext",
+                "INSERT INTO aws_billing_daily_costs (" + COLUMNS + ")", 20, onDuplicateKeyUpdate(internal), 512,
+                binder
+        );
+    }
+
+    private static String onDuplicateKeyUpdate(boolean internal) {
+
+        String onDuplicateKeyUpdate = """
                     ON DUPLICATE KEY UPDATE
                         service_name = VALUES(service_name),
                         location = VALUES(location),
@@ -36,41 +161,20 @@ public interface AwsBillingDailyCostRepository extends JpaRepository<AwsBillingD
                 """;
 
         if (internal) {
-            sql += """
+            onDuplicateKeyUpdate += """
                         unblended_cost = VALUES(unblended_cost),
                         blended_cost = VALUES(blended_cost),
                         net_unblended_cost = VALUES(net_unblended_cost)
                     """;
         } else {
-            sql += """
+            onDuplicateKeyUpdate += """
                         ext_unblended_cost = VALUES(ext_unblended_cost),
                         ext_blended_cost = VALUES(ext_blended_cost),
                         ext_net_unblended_cost = VALUES(ext_net_unblended_cost)
                     """;
         }
 
-        jdbcTemplate.batchUpdate(sql, bills, 500, (ps, bill) -> {
-            ps.setDate(1, java.sql.Date.valueOf(bill.getUsageDate()));
-            ps.setDate(2, java.sql.Date.valueOf(bill.getBillingMonth()));
-            ps.setString(3, bill.getUsageAccountId());
-            ps.setString(4, bill.getServiceCode());
-            ps.setString(5, bill.getServiceName());
-            ps.setString(6, bill.getSkuId());
-            ps.setString(7, bill.getRegion());
-            ps.setString(8, bill.getLocation());
-            ps.setString(9, bill.getCurrency());
-            ps.setString(10, bill.getPricingType());
-            ps.setString(11, bill.getBillingType());
-            ps.setString(12, bill.getUsageType());
-            ps.setBigDecimal(13, bill.getUsageAmount());
-            ps.setString(14, bill.getUsageUnit());
-            ps.setBigDecimal(15, bill.getUnblendedCost());
-            ps.setBigDecimal(16, bill.getBlendedCost());
-            ps.setBigDecimal(17, bill.getNetUnblendedCost());
-            ps.setBigDecimal(18, bill.getExtUnblendedCost());
-            ps.setBigDecimal(19, bill.getExtBlendedCost());
-            ps.setBigDecimal(20, bill.getExtNetUnblendedCost());
-        });
+        return onDuplicateKeyUpdate;
     }
 
 }
@@ -1,15 +1,19 @@
 package com.multicloud.batch.repository;
 
+import com.multicloud.batch.dto.SyncRangeDTO;
+import com.multicloud.batch.dto.SyncSourceView;
 import com.multicloud.batch.enums.LastSyncStatus;
 import com.multicloud.batch.model.AwsDataSyncHistory;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 
 /**
  * Created by IntelliJ IDEA.
@@ -17,26 +21,98 @@ import java.util.Set;
  * Email: shamim.molla@vivasoftltd.com
  */
 
-public interface AwsDataSyncHistoryRepository extends JpaRepository<AwsDataSyncHistory, Long> {
+public interface AwsDataSyncHistoryRepository extends JpaRepository<AwsDataSyncHistory, Long>, DataSyncHistoryQueries {
 
-    @Query("""
-            SELECT EXISTS(
-                SELECT 1 FROM AwsDataSyncHistory d WHERE d.jobName = :jobName AND d.tableName = :tableName
-            )
-            """)
-    boolean existsAny(@Param("jobName") String jobName, @Param("tableName") String tableName);
-
-    List<AwsDataSyncHistory> findAllByJobNameAndTableNameAndLastSyncStatusAndFailCountLessThan(
-            String jobName, String tableName, LastSyncStatus lastSyncStatus, int failCount
+    List<AwsDataSyncHistory> findAllByJobNameAndLastSyncStatusAndFailCountLessThan(
+            String jobName, LastSyncStatus lastSyncStatus, int failCount
     );
 
-    List<AwsDataSyncHistory> findAllByJobNameAndTableNameInAndLastSyncStatusAndFailCountLessThan(
-            String jobName, Set<String> tables, LastSyncStatus lastSyncStatus, int failCount
-    );
+    @Override
+    default List<SyncRangeDTO> findRetryRanges(String jobName, int maxFailCount) {
+        return findAllByJobNameAndLastSyncStatusAndFailCountLessThan(jobName, LastSyncStatus.FAIL, maxFailCount)
+                .stream()
+                .map(item -> new SyncRangeDTO(item.getTableName(), item.getStart(), item.getEnd()))
+                .toList();
+    }
 
     Optional<AwsDataSyncHistory> findByJobNameAndTableNameAndStartAndEnd(
             String jobName, String tableName, LocalDate from, LocalDate to
     );
 
+    /**
+     * Atomic insert-or-update of a partition result, so that partitions finishing
+     * concurrently (or out of order) never lose a status or a fail count.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            INSERT INTO aws_data_sync_histories (
+                job_name, table_name, `start`, `end`, last_sync_status, fail_count, row_count, duration_ms, created_at
+            )
+            VALUES (:jobName, :tableName, :start, :end, :status, IF(:status = 'FAIL', 1, 0), :rowCount, :durationMs, :now)
+            ON DUPLICATE KEY UPDATE
+                fail_count = IF(VALUES(last_sync_status) = 'FAIL', fail_count + 1, fail_count),
+                last_sync_status = VALUES(last_sync_status),
+                row_count = COALESCE(VALUES(row_count), row_count),
+                duration_ms = COALESCE(VALUES(duration_ms), duration_ms),
+                updated_at = :now
+            """, nativeQuery = true)
+    void upsertSyncResult(@Param("jobName") String jobName,
+                          @Param("tableName") String tableName,
+                          @Param("start") LocalDate start,
+                          @Param("end") LocalDate end,
+                          @Param("status") String status,
+                          @Param("rowCount") Long rowCount,
+                          @Param("durationMs") Long durationMs,
+                          @Param("now") LocalDateTime now);
+
+    /**
+     * @param rowCount   rows written by the partition, null keeps the recorded volume (failed or skipped runs)
+     * @param durationMs run time of the partition, recorded together with rowCount
+     */
+    default void recordSyncResult(String jobName, String tableName, LocalDate start, LocalDate end,
+                                  LastSyncStatus status, Long rowCount, Long durationMs) {
+
+        LocalDateTime now = LocalDateTime.now();
+
+        upsertSyncResult(jobName, tableName, start, end, status.name(), rowCount, durationMs, now);
+
+        // Failed ranges the planner left to this partition (see PartitionPlanner#plan)
+        if (status == LastSyncStatus.SUCCESS) {
+            resolveCoveredFailures(jobName, tableName, start, end, now);
+        }
+    }
+
+    /**
+     * Marks the failed ranges inside a successfully synced range as synced.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE aws_data_sync_histories
+            SET last_sync_status = 'SUCCESS', updated_at = :now
+            WHERE job_name = :jobName AND table_name = :tableName AND last_sync_status = 'FAIL'
+                AND `start` >= :start AND `end` <= :end
+            """, nativeQuery = true)
+    void resolveCoveredFailures(@Param("jobName") String jobName,
+                                @Param("tableName") String tableName,
+                                @Param("start") LocalDate start,
+                                @Param("end") LocalDate end,
+                                @Param("now") LocalDateTime now);
+
+    @Override
+    @Query(value = """
+            SELECT h.table_name AS source,
+                   COALESCE(SUM(v.row_count), 0) AS rowCount,
+                   COALESCE(SUM(v.duration_ms), 0) AS durationMs,
+                   COALESCE(SUM(DATEDIFF(v.`end`, v.`start`) + 1), 0) AS days
+            FROM aws_data_sync_histories h
+            LEFT JOIN aws_data_sync_histories v ON v.id = h.id
+                AND v.last_sync_status = 'SUCCESS' AND v.row_count IS NOT NULL
+                AND COALESCE(v.updated_at, v.created_at) >= :since
+            WHERE h.job_name = :jobName
+            GROUP BY h.table_name
+            """, nativeQuery = true)
+    List<SyncSourceView> findSyncSources(@Param("jobName") String jobName, @Param("since") LocalDateTime since);
 
 }
@@ -0,0 +1,67 @@
+package com.multicloud.batch.repository;
+
+import com.multicloud.batch.enums.CloudProvider;
+import com.multicloud.batch.model.BillingDataChange;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BillingDataChangeRepository extends JpaRepository<BillingDataChange, Long> {
+
+    @Query("""
+            SELECT d FROM BillingDataChange d
+            WHERE d.changedAt <= :snapshot AND (d.mergedAt IS NULL OR d.mergedAt < d.changedAt)
+            ORDER BY d.cloudProvider, d.usageDate
+            """)
+    List<BillingDataChange> findAllPending(@Param("snapshot") LocalDateTime snapshot);
+
+    /**
+     * Marks the slices as merged, unless a sync job bumped changed_at after they were read.
+     */
+    default void markMerged(List<BillingDataChange> changes, JdbcTemplate jdbcTemplate) {
+
+        if (changes == null || changes.isEmpty()) {
+            return;
+        }
+
+        String sql = "UPDATE billing_data_changes SET merged_at = changed_at WHERE id = ? AND changed_at = ?";
+
+        jdbcTemplate.batchUpdate(sql, changes, 500, (ps, change) -> {
+            ps.setLong(1, change.getId());
+            ps.setTimestamp(2, Timestamp.valueOf(change.getChangedAt()));
+        });
+    }
+
+    default void upsertChanges(CloudProvider provider, Collection<LocalDate> usageDates, LocalDateTime changedAt,
+                               JdbcTemplate jdbcTemplate) {
+
+        if (usageDates == null || usageDates.isEmpty()) {
+            return;
+        }
+
+        String sql = """
+                    INSERT INTO billing_data_changes (cloud_provider, usage_date, changed_at)
+                    VALUES (?, ?, ?)
+                    ON DUPLICATE KEY UPDATE
+                        changed_at = VALUES(changed_at)
+                """;
+
+        jdbcTemplate.batchUpdate(sql, new ArrayList<>(usageDates), 500, (ps, usageDate) -> {
+            ps.setString(1, provider.name());
+            ps.setDate(2, Date.valueOf(usageDate));
+            ps.setTimestamp(3, Timestamp.valueOf(changedAt));
+        });
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.multicloud.batch.repository;
+
+import com.multicloud.batch.enums.CloudProvider;
+import com.multicloud.batch.model.BillingSyncFingerprint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+public interface BillingSyncFingerprintRepository extends JpaRepository<BillingSyncFingerprint, Long> {
+
+    List<BillingSyncFingerprint> findAllByCloudProviderAndSourceAndInternalAndUsageDateBetween(
+            CloudProvider cloudProvider, String source, boolean internal, LocalDate from, LocalDate to
+    );
+
+    /**
+     * For data removed outside of the sync jobs, its days must not be skipped on the next sync.
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            DELETE FROM BillingSyncFingerprint f
+            WHERE f.cloudProvider = :cloudProvider AND f.usageDate >= :usageDate AND f.billingMonth >= :billingMonth
+            """)
+    int deleteFrom(@Param("cloudProvider") CloudProvider cloudProvider,
+                   @Param("usageDate") LocalDate usageDate,
+                   @Param("billingMonth") LocalDate billingMonth);
+
+    default void upsertFingerprints(CloudProvider provider, String source, boolean internal,
+                                    Map<BillingSyncFingerprint.Slice, String> fingerprints, LocalDateTime syncedAt,
+                                    JdbcTemplate jdbcTemplate) {
+
+        if (fingerprints == null || fingerprints.isEmpty()) {
+            return;
+        }
+
+        String sql = """
+                    INSERT INTO billing_sync_fingerprints
+                    (cloud_provider, source, internal, billing_month, usage_date, fingerprint, synced_at)
+                    VALUES (?, ?, ?, ?, ?, ?, ?)
+                    ON DUPLICATE KEY UPDATE
+                        fingerprint = VALUES(fingerprint),
+                        synced_at = VALUES(synced_at)
+                """;
+
+        jdbcTemplate.batchUpdate(sql, new ArrayList<>(fingerprints.entrySet()), 500, (ps, entry) -> {
+            ps.setString(1, provider.name());
+            ps.setString(2, source);
+            ps.setBoolean(3, internal);
+            ps.setDate(4, Date.valueOf(entry.getKey().billingMonth()));
+            ps.setDate(5, Date.valueOf(entry.getKey().usageDate()));
+            ps.setString(6, entry.getValue());
+            ps.setTimestamp(7, Timestamp.valueOf(syncedAt));
+        });
+    }
+
+}
@@ -0,0 +1,319 @@
+package com.multicloud.batch.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bulk mode for large backfills: rows are streamed as TSV through {@code LOAD DATA LOCAL INFILE} into a
+ * temporary staging table (an {@link InputStream} fed by the rows, nothing is written to disk) and merged
+ * into the target table with a single {@code INSERT ... SELECT ... ON DUPLICATE KEY UPDATE}.
+ * <p>
+ * Needs local_infile enabled on the server and allowLocalInfile on the connection, the primary pool only
+ * sets it when batch_job.bulk_load.enabled is on.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BulkLoadWriter {
+
+    // Rows are encoded in chunks of about this size while the driver reads the stream
+    private static final int CHUNK_BYTES = 64 * 1024;
+
+    // Load order of the staged rows, the merge applies them in it so a later row of the same key wins
+    private static final String SEQUENCE_COLUMN = "staging_seq";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @FunctionalInterface
+    public interface TsvEncoder<T> {
+
+        /**
+         * Adds the columns of one row, in the order of {@link LoadStatement#columns()}.
+         */
+        void encode(TsvRow out, T row);
+
+    }
+
+    /**
+     * @param table                target table, the staging table copies its column types
+     * @param columns              comma separated target columns
+     * @param onDuplicateKeyUpdate {@code ON DUPLICATE KEY UPDATE ...} of the merge
+     */
+    public record LoadStatement<T>(String table, String columns, String onDuplicateKeyUpdate,
+                                   TsvEncoder<T> encoder) {
+    }
+
+    /**
+     * Temporary tables are per connection: the session holds one connection (the transactional one, when
+     * there is a transaction) from {@link #open} until {@link Session#close()}.
+     */
+    public <T> Session<T> open(LoadStatement<T> statement) {
+
+        DataSource dataSource = Objects.requireNonNull(jdbcTemplate.getDataSource());
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+
+        Session<T> session = new Session<>(statement, dataSource, connection);
+
+        try {
+            session.createStagingTable();
+        } catch (RuntimeException e) {
+            session.close();
+            throw e;
+        }
+
+        return session;
+    }
+
+    public static final class Session<T> implements AutoCloseable {
+
+        private final LoadStatement<T> statement;
+        private final DataSource dataSource;
+        private final Connection connection;
+        private final String stagingTable;
+
+        // Not synchronized: JDBC I/O inside a monitor would pin a virtual thread to its carrier (Java 21)
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private long loadedRows;
+
+        private Session(LoadStatement<T> statement, DataSource dataSource, Connection connection) {
+            this.statement = statement;
+            this.dataSource = dataSource;
+            this.connection = connection;
+            this.stagingTable = statement.table() + "_staging";
+        }
+
+        /**
+         * @return rows loaded into the staging table
+         */
+        public long load(List<? extends T> rows) {
+
+            if (rows == null || rows.isEmpty()) {
+                return 0;
+            }
+
+            // Default LOAD DATA format: tab separated, backslash escaped, \N for NULL
+            String sql = """
+                    LOAD DATA LOCAL INFILE '%s.tsv' INTO TABLE %s CHARACTER SET utf8mb4 (%s)
+                    """.formatted(stagingTable, stagingTable, statement.columns());
+
+            lock.lock();
+
+            try (Statement st = connection.createStatement()) {
+
+                st.unwrap(org.mariadb.jdbc.Statement.class)
+                        .setLocalInfileInputStream(new TsvInputStream<>(rows.iterator(), statement.encoder()));
+
+                long loaded = st.executeLargeUpdate(sql);
+                loadedRows += loaded;
+
+                return loaded;
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Bulk load into " + stagingTable + " failed", e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Merges everything loaded so far into the target table and empties the staging table.
+         *
+         * @return affected rows as reported by the driver
+         */
+        public long merge() {
+
+            String sql = """
+                    INSERT INTO %s (%s)
+                    SELECT %s FROM %s ORDER BY %s
+                    %s
+                    """.formatted(
+                    statement.table(), statement.columns(), statement.columns(), stagingTable, SEQUENCE_COLUMN,
+                    statement.onDuplicateKeyUpdate()
+            );
+
+            lock.lock();
+
+            try (Statement st = connection.createStatement()) {
+
+                if (loadedRows == 0) {
+                    return 0;
+                }
+
+                long affected = st.executeLargeUpdate(sql);
+
+                // Not TRUNCATE, it would commit an open transaction
+                st.executeUpdate("DELETE FROM " + stagingTable);
+
+                log.info("Merged {} staged rows into {}, affected rows: {}", loadedRows, statement.table(), affected);
+                loadedRows = 0;
+
+                return affected;
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Merge of " + stagingTable + " into " + statement.table() + " failed", e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+
+            lock.lock();
+
+            try (Statement st = connection.createStatement()) {
+                st.executeUpdate("DROP TEMPORARY TABLE IF EXISTS " + stagingTable);
+            } catch (SQLException e) {
+                log.warn("Could not drop {}: {}", stagingTable, e.getMessage());
+            } finally {
+                DataSourceUtils.releaseConnection(connection, dataSource);
+                lock.unlock();
+            }
+        }
+
+        private void createStagingTable() {
+
+            // Column types of the target table, without its keys, so any row loads; LOAD DATA leaves the
+            // sequence column out and it numbers the rows in load order
+            try (Statement st = connection.createStatement()) {
+                st.executeUpdate("DROP TEMPORARY TABLE IF EXISTS " + stagingTable);
+                st.executeUpdate(
+                        "CREATE TEMPORARY TABLE %s (%s BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY) SELECT %s FROM %s LIMIT 0"
+                                .formatted(stagingTable, SEQUENCE_COLUMN, statement.columns(), statement.table())
+                );
+            } catch (SQLException e) {
+                throw new RuntimeException("Could not create " + stagingTable, e);
+            }
+        }
+
+    }
+
+    /**
+     * The TSV lines of the chunk being encoded, an encoder adds the columns of its row.
+     */
+    public static final class TsvRow {
+
+        private final StringBuilder text = new StringBuilder(CHUNK_BYTES + 4096);
+        private boolean lineStart = true;
+
+        public TsvRow add(Object value) {
+
+            if (!lineStart) {
+                text.append('\t');
+            }
+
+            lineStart = false;
+
+            if (value == null) {
+                text.append("\\N");
+                return this;
+            }
+
+            String str = value instanceof BigDecimal decimal ? decimal.toPlainString() : value.toString();
+
+            for (int i = 0; i < str.length(); i++) {
+
+                char c = str.charAt(i);
+
+                switch (c) {
+                    case '\\' -> text.append("\\\\");
+                    case '\t' -> text.append("\\t");
+                    case '\n' -> text.append("\\n");
+                    case '\r' -> text.append("\\r");
+                    case '\0' -> text.append("\\0");
+                    default -> text.append(c);
+                }
+            }
+
+            return this;
+        }
+
+        private void endLine() {
+            text.append('\n');
+            lineStart = true;
+        }
+
+    }
+
+    /**
+     * Encodes the rows lazily, chunk by chunk, as the driver sends the stream to the server.
+     */
+    private static final class TsvInputStream<T> extends InputStream {
+
+        private final Iterator<? extends T> rows;
+        private final TsvEncoder<T> encoder;
+        private final TsvRow row = new TsvRow();
+
+        private byte[] buffer = new byte[0];
+        private int position;
+
+        private TsvInputStream(Iterator<? extends T> rows, TsvEncoder<T> encoder) {
+            this.rows = rows;
+            this.encoder = encoder;
+        }
+
+        @Override
+        public int read() {
+            return fill() ? buffer[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+
+            if (len == 0) {
+                return 0;
+            }
+
+            if (!fill()) {
+                return -1;
+            }
+
+            int n = Math.min(len, buffer.length - position);
+            System.arraycopy(buffer, position, b, off, n);
+            position += n;
+
+            return n;
+        }
+
+        private boolean fill() {
+
+            if (position < buffer.length) {
+                return true;
+            }
+
+            if (!rows.hasNext()) {
+                return false;
+            }
+
+            row.text.setLength(0);
+
+            while (rows.hasNext() && row.text.length() < CHUNK_BYTES) {
+                encoder.encode(row, rows.next());
+                row.endLine();
+            }
+
+            buffer = row.text.toString().getBytes(StandardCharsets.UTF_8);
+            position = 0;
+
+            return true;
+        }
+
+    }
+
+}
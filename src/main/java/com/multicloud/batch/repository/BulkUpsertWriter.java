@@ -0,0 +1,231 @@
+package com.multicloud.batch.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes rows as multi-row {@code INSERT ... VALUES (...), (...) ON DUPLICATE KEY UPDATE} statements.
+ * <p>
+ * The rows per statement are capped by the placeholder limit and a share of max_allowed_packet, and
+ * adapt to the measured latency per statement: they grow while a statement stays under the target
+ * latency and are halved when it takes more than twice the target. Full statements of one call share
+ * a single prepared statement, only the remainder gets its own. Prepared statements don't outlive the
+ * call, the pool closes them with the connection; only the SQL text of the full size is kept.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BulkUpsertWriter {
+
+    // Placeholder limit of a prepared statement (MariaDB/MySQL)
+    private static final int MAX_PLACEHOLDERS = 65_535;
+    private static final int MIN_ROWS = 16;
+
+    // MariaDB default, used when the variable can't be read
+    private static final long DEFAULT_MAX_ALLOWED_PACKET = 16L * 1024 * 1024;
+
+    @Value("${batch_job.bulk_upsert.initial_rows:500}")
+    private int initialRows;
+
+    // false: every statement keeps initial_rows (still capped by the limits)
+    @Value("${batch_job.bulk_upsert.adaptive:true}")
+    private boolean adaptive;
+
+    @Value("${batch_job.bulk_upsert.target_latency_ms:250}")
+    private long targetLatencyMs;
+
+    // Share of max_allowed_packet one statement may use, row sizes are estimates
+    @Value("${batch_job.bulk_upsert.packet_ratio:0.5}")
+    private double packetRatio;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<String, AtomicInteger> batchRows = new ConcurrentHashMap<>();
+
+    // Last full-size SQL per statement, remainders are built on demand
+    private final Map<String, StatementSql> statementSql = new ConcurrentHashMap<>();
+
+    private volatile long maxAllowedPacket;
+
+    @FunctionalInterface
+    public interface RowBinder<T> {
+
+        /**
+         * @param offset parameter index before the first column of the row, bind columns at offset + 1 ... offset + n
+         */
+        void bind(PreparedStatement ps, int offset, T row) throws SQLException;
+
+    }
+
+    /**
+     * @param name                 unique per SQL text, batch sizes are tracked per name
+     * @param insertInto           {@code INSERT INTO table (columns)}
+     * @param columnCount          placeholders per row
+     * @param onDuplicateKeyUpdate {@code ON DUPLICATE KEY UPDATE ...}
+     * @param estimatedRowBytes    rough size of one row in the statement, for the packet limit
+     */
+    public record UpsertStatement<T>(String name, String insertInto, int columnCount, String onDuplicateKeyUpdate,
+                                     int estimatedRowBytes, RowBinder<T> binder) {
+    }
+
+    private record StatementSql(int rows, String sql) {
+    }
+
+    /**
+     * @return affected rows as reported by the driver
+     */
+    public <T> long write(UpsertStatement<T> statement, List<? extends T> rows) {
+
+        if (rows == null || rows.isEmpty()) {
+            return 0;
+        }
+
+        int configuredRows = batchRows(statement);
+        int statementRows = Math.min(configuredRows, rows.size());
+
+        Long affected = jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+
+            long total = 0;
+            long fullNanos = 0;
+            int fullExecutions = 0;
+
+            try (PreparedStatement full = con.prepareStatement(fullSql(statement, statementRows))) {
+
+                for (int from = 0; from < rows.size(); from += statementRows) {
+
+                    List<? extends T> chunk = rows.subList(from, Math.min(from + statementRows, rows.size()));
+
+                    if (chunk.size() < statementRows) {
+                        try (PreparedStatement remainder = con.prepareStatement(sql(statement, chunk.size()))) {
+                            bind(remainder, statement, chunk);
+                            total += remainder.executeUpdate();
+                        }
+                        continue;
+                    }
+
+                    bind(full, statement, chunk);
+
+                    long startedAt = System.nanoTime();
+                    total += full.executeUpdate();
+                    fullNanos += System.nanoTime() - startedAt;
+                    fullExecutions++;
+                }
+
+            }
+
+            // Only full statements of the configured size say something about that size
+            if (adaptive && statementRows == configuredRows && fullExecutions > 0) {
+                adapt(statement, configuredRows, fullNanos / fullExecutions / 1_000_000);
+            }
+
+            return total;
+        });
+
+        return affected == null ? 0 : affected;
+    }
+
+    private static <T> void bind(PreparedStatement ps, UpsertStatement<T> statement, List<? extends T> chunk)
+            throws SQLException {
+
+        int offset = 0;
+
+        for (T row : chunk) {
+            statement.binder().bind(ps, offset, row);
+            offset += statement.columnCount();
+        }
+    }
+
+    private int batchRows(UpsertStatement<?> statement) {
+
+        int rows = batchRows.computeIfAbsent(statement.name(), key -> new AtomicInteger(initialRows)).get();
+
+        return Math.clamp(rows, Math.min(MIN_ROWS, maxRows(statement)), maxRows(statement));
+    }
+
+    private int maxRows(UpsertStatement<?> statement) {
+
+        long byPacket = (long) (maxAllowedPacket() * packetRatio) / Math.max(1, statement.estimatedRowBytes());
+        long byPlaceholders = MAX_PLACEHOLDERS / statement.columnCount();
+
+        return (int) Math.max(1, Math.min(byPacket, byPlaceholders));
+    }
+
+    private void adapt(UpsertStatement<?> statement, int rows, long latencyMs) {
+
+        int maxRows = maxRows(statement);
+        int next = rows;
+
+        if (latencyMs > targetLatencyMs * 2) {
+            next = Math.max(MIN_ROWS, rows / 2);
+        } else if (latencyMs < targetLatencyMs) {
+            next = Math.min(maxRows, rows + Math.max(MIN_ROWS, rows / 4));
+        }
+
+        if (next != rows) {
+            // Another thread may have adapted in between, the last measurement wins
+            batchRows.get(statement.name()).set(next);
+            log.debug("{}: {} rows took {} ms, next statements use {} rows", statement.name(), rows, latencyMs, next);
+        }
+    }
+
+    private String fullSql(UpsertStatement<?> statement, int rows) {
+
+        StatementSql cached = statementSql.get(statement.name());
+
+        if (cached != null && cached.rows() == rows) {
+            return cached.sql();
+        }
+
+        String sql = sql(statement, rows);
+        statementSql.put(statement.name(), new StatementSql(rows, sql));
+
+        return sql;
+    }
+
+    private static String sql(UpsertStatement<?> statement, int rows) {
+
+        String row = "(" + "?, ".repeat(statement.columnCount() - 1) + "?)";
+
+        StringBuilder sql = new StringBuilder(
+                statement.insertInto().length() + statement.onDuplicateKeyUpdate().length() + rows * (row.length() + 2)
+        );
+
+        sql.append(statement.insertInto()).append(" VALUES ");
+
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "" : ", ").append(row);
+        }
+
+        return sql.append(' ').append(statement.onDuplicateKeyUpdate()).toString();
+    }
+
+    private long maxAllowedPacket() {
+
+        if (maxAllowedPacket == 0) {
+
+            try {
+                Long value = jdbcTemplate.queryForObject("SELECT @@max_allowed_packet", Long.class);
+                maxAllowedPacket = value == null ? DEFAULT_MAX_ALLOWED_PACKET : value;
+            } catch (DataAccessException e) {
+                log.warn("Could not read max_allowed_packet, assuming {} bytes", DEFAULT_MAX_ALLOWED_PACKET);
+                maxAllowedPacket = DEFAULT_MAX_ALLOWED_PACKET;
+            }
+
+        }
+
+        return maxAllowedPacket;
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.multicloud.batch.repository;
+
+import com.multicloud.batch.dto.SyncRangeDTO;
+import com.multicloud.batch.dto.SyncSourceView;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Sync history reads of the partition planning, shared by the AWS, GCP and Huawei history repositories.
+ * Both load a whole job at once, whatever the number of its tables/projects.
+ */
+public interface DataSyncHistoryQueries {
+
+    /**
+     * One row per table/project of the job that has any history, with the volume of its successful
+     * partitions since the given time (zero without recorded volume).
+     */
+    List<SyncSourceView> findSyncSources(String jobName, LocalDateTime since);
+
+    /**
+     * Failed ranges of the job to retry, those that failed fewer than maxFailCount times.
+     */
+    List<SyncRangeDTO> findRetryRanges(String jobName, int maxFailCount);
+
+}
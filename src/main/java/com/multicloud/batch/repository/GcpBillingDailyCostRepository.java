@@ -2,7 +2,6 @@ package com.multicloud.batch.repository;
 
 import com.multicloud.batch.model.GcpBillingDailyCost;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -16,19 +15,79 @@ import java.util.List;
 @Repository
 public interface GcpBillingDailyCostRepository extends JpaRepository<GcpBillingDailyCost, Long> {
 
-    default void upsertGcpBillingDailyCosts(List<GcpBillingDailyCost> bills, JdbcTemplate jdbcTemplate, boolean internal) {
+    // Column order of the upsert and the bulk load
+    String COLUMNS = """
+                usage_date, billing_month, billing_account_id, project_id, project_name,
+                service_code, service_name, sku_id, sku_description, region, location,
+                currency, cost_type, usage_amount, usage_unit, cost, credits, ext_cost, ext_credits
+            """;
 
-        if (bills == null || bills.isEmpty()) {
-            return;
-        }
+    default long upsertGcpBillingDailyCosts(List<GcpBillingDailyCost> bills, BulkUpsertWriter writer,
+                                            boolean internal) {
+
+        BulkUpsertWriter.UpsertStatement<GcpBillingDailyCost> statement = new BulkUpsertWriter.UpsertStatement<>(
+                internal ? "gcp_billing_daily_costs" : "gcp_billing_daily_costs:ext",
+                "INSERT INTO gcp_billing_daily_costs (" + COLUMNS + ")", 19, onDuplicateKeyUpdate(internal), 640,
+                (ps, offset, bill) -> {
+                    ps.setDate(offset + 1, java.sql.Date.valueOf(bill.getUsageDate()));
+                    ps.setDate(offset + 2, java.sql.Date.valueOf(bill.getBillingMonth()));
+                    ps.setString(offset + 3, bill.getBillingAccountId());
+                    ps.setString(offset + 4, bill.getProjectId());
+                    ps.setString(offset + 5, bill.getProjectName());
+                    ps.setString(offset + 6, bill.getServiceCode());
+                    ps.setString(offset + 7, bill.getServiceName());
+                    ps.setString(offset + 8, bill.getSkuId());
+                    ps.setString(offset + 9, bill.getSkuDescription());
+                    ps.setString(offset + 10, bill.getRegion());
+                    ps.setString(offset + 11, bill.getLocation());
+                    ps.setString(offset + 12, bill.getCurrency());
+                    ps.setString(offset + 13, bill.getCostType());
+                    ps.setBigDecimal(offset + 14, bill.getUsageAmount());
+                    ps.setString(offset + 15, bill.getUsageUnit());
+                    ps.setBigDecimal(offset + 16, bill.getCost());
+                    ps.setBigDecimal(offset + 17, bill.getCredits());
+                    ps.setBigDecimal(offset + 18, bill.getExtCost());
+                    ps.setBigDecimal(offset + 19, bill.getExtCredits());
+                }
+        );
+
+        return writer.write(statement, bills);
+    }
+
+    /**
+     * Staging session for the bulk mode, the entities already carry their internal or ext_* costs.
+     */
+    default BulkLoadWriter.Session<GcpBillingDailyCost> openGcpBillingDailyCostLoad(BulkLoadWriter writer,
+                                                                                   boolean internal) {
 
-        String sql = """
-                    INSERT INTO gcp_billing_daily_costs
-                    (usage_date, billing_month, billing_account_id, project_id, project_name,
-                     service_code, service_name, sku_id, sku_description, region, location,
-                     currency, cost_type, usage_amount, usage_unit, cost, credits, ext_cost, ext_credits)
-                    VALUES
-                    (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+        return writer.open(new BulkLoadWriter.LoadStatement<GcpBillingDailyCost>(
+                "gcp_billing_daily_costs", COLUMNS, onDuplicateKeyUpdate(internal),
+                (row, bill) -> row
+                        .add(bill.getUsageDate())
+                        .add(bill.getBillingMonth())
+                        .add(bill.getBillingAccountId())
+                        .add(bill.getProjectId())
+                        .add(bill.getProjectName())
+                        .add(bill.getServiceCode())
+                        .add(bill.getServiceName())
+                        .add(bill.getSkuId())
+                        .add(bill.getSkuDescription())
+                        .add(bill.getRegion())
+                        .add(bill.getLocation())
+                        .add(bill.getCurrency())
+                        .add(bill.getCostType())
+                        .add(bill.getUsageAmount())
+                        .add(bill.getUsageUnit())
+                        .add(bill.getCost())
+                        .add(bill.getCredits())
+                        .add(bill.getExtCost())
+                        .add(bill.getExtCredits())
+        ));
+    }
+
+    private static String onDuplicateKeyUpdate(boolean internal) {
+
+        String onDuplicateKeyUpdate = """
                     ON DUPLICATE KEY UPDATE
                         billing_month = VALUES(billing_month),
                         project_name = VALUES(project_name),
@@ -41,39 +100,18 @@ public interface GcpBillingDailyCostRepository extends JpaRepository<GcpBillingD
                 """;
 
         if (internal) {
-            sql += """
+            onDuplicateKeyUpdate += """
                         cost = VALUES(cost),
                         credits = VALUES(credits)
                     """;
         } else {
-            sql += """
+            onDuplicateKeyUpdate += """
                         ext_cost = VALUES(ext_cost),
                         ext_credits = VALUES(ext_credits)
                     """;
         }
 
-        jdbcTemplate.batchUpdate(sql, bills, 500, (ps, bill) -> {
-            ps.setDate(1, java.sql.Date.valueOf(bill.getUsageDate()));
-            ps.setDate(2, java.sql.Date.valueOf(bill.getBillingMonth()));
-            ps.setString(3, bill.getBillingAccountId());
-            ps.setString(4, bill.getProjectId());
-            ps.setString(5, bill.getProjectName());
-            ps.setString(6, bill.getServiceCode());
-            ps.setString(7, bill.getServiceName());
-            ps.setString(8, bill.getSkuId());
-            ps.setString(9, bill.getSkuDescription());
-            ps.setString(10, bill.getRegion());
-            ps.setString(11, bill.getLocation());
-            ps.setString(12, bill.getCurrency());
-            ps.setString(13, bill.getCostType());
-            ps.setBigDecimal(14, bill.getUsageAmount());
-            ps.setString(15, bill.getUsageUnit());
-            ps.setBigDecimal(16, bill.getCost());
-            ps.setBigDecimal(17, bill.getCredits());
-            ps.setBigDecimal(18, bill.getExtCost());
-            ps.setBigDecimal(19, bill.getExtCredits());
-        });
-
+        return onDuplicateKeyUpdate;
     }
 
 }
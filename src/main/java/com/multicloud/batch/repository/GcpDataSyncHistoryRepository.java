@@ -1,15 +1,19 @@
 package com.multicloud.batch.repository;
 
+import com.multicloud.batch.dto.SyncRangeDTO;
+import com.multicloud.batch.dto.SyncSourceView;
 import com.multicloud.batch.enums.LastSyncStatus;
 import com.multicloud.batch.model.GcpDataSyncHistory;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 
 /**
  * Created by IntelliJ IDEA.
@@ -17,25 +21,98 @@ import java.util.Set;
  * Email: shamim.molla@vivasoftltd.com
  */
 
-public interface GcpDataSyncHistoryRepository extends JpaRepository<GcpDataSyncHistory, Long> {
+public interface GcpDataSyncHistoryRepository extends JpaRepository<GcpDataSyncHistory, Long>, DataSyncHistoryQueries {
 
-    @Query("""
-            SELECT EXISTS(
-                SELECT 1 FROM GcpDataSyncHistory d WHERE d.jobName = :jobName
-            )
-            """)
-    boolean existsAny(@Param("jobName") String jobName);
-
-    List<GcpDataSyncHistory> findAllByJobNameAndProjectAndLastSyncStatusAndFailCountLessThan(
-            String jobName, String project, LastSyncStatus lastSyncStatus, int failCount
+    List<GcpDataSyncHistory> findAllByJobNameAndLastSyncStatusAndFailCountLessThan(
+            String jobName, LastSyncStatus lastSyncStatus, int failCount
     );
 
-    List<GcpDataSyncHistory> findAllByJobNameAndProjectInAndLastSyncStatusAndFailCountLessThan(
-            String jobName, Set<String> projects, LastSyncStatus lastSyncStatus, int failCount
-    );
+    @Override
+    default List<SyncRangeDTO> findRetryRanges(String jobName, int maxFailCount) {
+        return findAllByJobNameAndLastSyncStatusAndFailCountLessThan(jobName, LastSyncStatus.FAIL, maxFailCount)
+                .stream()
+                .map(item -> new SyncRangeDTO(item.getProject(), item.getStart(), item.getEnd()))
+                .toList();
+    }
 
     Optional<GcpDataSyncHistory> findByJobNameAndProjectAndStartAndEnd(
             String jobName, String project, LocalDate from, LocalDate to
     );
 
+    /**
+     * Atomic insert-or-update of a partition result, so that partitions finishing
+     * concurrently (or out of order) never lose a status or a fail count.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            INSERT INTO gcp_data_sync_histories (
+                job_name, project, `start`, `end`, last_sync_status, fail_count, row_count, duration_ms, created_at
+            )
+            VALUES (:jobName, :project, :start, :end, :status, IF(:status = 'FAIL', 1, 0), :rowCount, :durationMs, :now)
+            ON DUPLICATE KEY UPDATE
+                fail_count = IF(VALUES(last_sync_status) = 'FAIL', fail_count + 1, fail_count),
+                last_sync_status = VALUES(last_sync_status),
+                row_count = COALESCE(VALUES(row_count), row_count),
+                duration_ms = COALESCE(VALUES(duration_ms), duration_ms),
+                updated_at = :now
+            """, nativeQuery = true)
+    void upsertSyncResult(@Param("jobName") String jobName,
+                          @Param("project") String project,
+                          @Param("start") LocalDate start,
+                          @Param("end") LocalDate end,
+                          @Param("status") String status,
+                          @Param("rowCount") Long rowCount,
+                          @Param("durationMs") Long durationMs,
+                          @Param("now") LocalDateTime now);
+
+    /**
+     * @param rowCount   rows written by the partition, null keeps the recorded volume (failed or skipped runs)
+     * @param durationMs run time of the partition, recorded together with rowCount
+     */
+    default void recordSyncResult(String jobName, String project, LocalDate start, LocalDate end,
+                                  LastSyncStatus status, Long rowCount, Long durationMs) {
+
+        LocalDateTime now = LocalDateTime.now();
+
+        upsertSyncResult(jobName, project, start, end, status.name(), rowCount, durationMs, now);
+
+        // Failed ranges the planner left to this partition (see PartitionPlanner#plan)
+        if (status == LastSyncStatus.SUCCESS) {
+            resolveCoveredFailures(jobName, project, start, end, now);
+        }
+    }
+
+    /**
+     * Marks the failed ranges inside a successfully synced range as synced.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE gcp_data_sync_histories
+            SET last_sync_status = 'SUCCESS', updated_at = :now
+            WHERE job_name = :jobName AND project = :project AND last_sync_status = 'FAIL'
+                AND `start` >= :start AND `end` <= :end
+            """, nativeQuery = true)
+    void resolveCoveredFailures(@Param("jobName") String jobName,
+                                @Param("project") String project,
+                                @Param("start") LocalDate start,
+                                @Param("end") LocalDate end,
+                                @Param("now") LocalDateTime now);
+
+    @Override
+    @Query(value = """
+            SELECT h.project AS source,
+                   COALESCE(SUM(v.row_count), 0) AS rowCount,
+                   COALESCE(SUM(v.duration_ms), 0) AS durationMs,
+                   COALESCE(SUM(DATEDIFF(v.`end`, v.`start`) + 1), 0) AS days
+            FROM gcp_data_sync_histories h
+            LEFT JOIN gcp_data_sync_histories v ON v.id = h.id
+                AND v.last_sync_status = 'SUCCESS' AND v.row_count IS NOT NULL
+                AND COALESCE(v.updated_at, v.created_at) >= :since
+            WHERE h.job_name = :jobName
+            GROUP BY h.project
+            """, nativeQuery = true)
+    List<SyncSourceView> findSyncSources(@Param("jobName") String jobName, @Param("since") LocalDateTime since);
+
 }
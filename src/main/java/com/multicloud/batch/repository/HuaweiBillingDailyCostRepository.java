@@ -2,10 +2,9 @@ package com.multicloud.batch.repository;
 
 import com.multicloud.batch.model.HuaweiBillingDailyCost;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
-import java.util.Collection;
+import java.util.List;
 
 /**
  * Created by IntelliJ IDEA.
@@ -16,22 +15,91 @@ import java.util.Collection;
 @Repository
 public interface HuaweiBillingDailyCostRepository extends JpaRepository<HuaweiBillingDailyCost, Long> {
 
-    default void upsertHuaweiBillingDailyCosts(Collection<HuaweiBillingDailyCost> bills, JdbcTemplate jdbcTemplate,
+    // Column order of the upsert and the bulk load
+    String COLUMNS = """
+                bill_date, billing_month, payer_account_id, customer_id, enterprise_project_id, enterprise_project_name,
+                cloud_service_type, cloud_service_type_name, sku_code, product_spec_desc,
+                resource_type_code, resource_type_name, resource_name, region, region_name,
+                charge_mode, bill_type, usage_amount, consume_amount, debt_amount, official_amount,
+                ext_consume_amount, ext_debt_amount, ext_official_amount
+            """;
+
+    default long upsertHuaweiBillingDailyCosts(List<HuaweiBillingDailyCost> bills, BulkUpsertWriter writer,
                                                boolean internal) {
 
-        if (bills == null || bills.isEmpty()) {
-            return;
-        }
+        BulkUpsertWriter.UpsertStatement<HuaweiBillingDailyCost> statement = new BulkUpsertWriter.UpsertStatement<>(
+                internal ? "huawei_billing_daily_costs" : "huawei_billing_daily_costs:ext",
+                "INSERT INTO huawei_billing_daily_costs (" + COLUMNS + ")", 24, onDuplicateKeyUpdate(internal), 768,
+                (ps, offset, bill) -> {
+                    ps.setDate(offset + 1, java.sql.Date.valueOf(bill.getBillDate()));
+                    ps.setDate(offset + 2, java.sql.Date.valueOf(bill.getBillingMonth()));
+                    ps.setString(offset + 3, bill.getPayerAccountId());
+                    ps.setString(offset + 4, bill.getCustomerId());
+                    ps.setString(offset + 5, bill.getEnterpriseProjectId());
+                    ps.setString(offset + 6, bill.getEnterpriseProjectName());
+                    ps.setString(offset + 7, bill.getCloudServiceType());
+                    ps.setString(offset + 8, bill.getCloudServiceTypeName());
+                    ps.setString(offset + 9, bill.getSkuCode());
+                    ps.setString(offset + 10, bill.getProductSpecDesc());
+                    ps.setString(offset + 11, bill.getResourceTypeCode());
+                    ps.setString(offset + 12, bill.getResourceTypeName());
+                    ps.setString(offset + 13, bill.getResourceName());
+                    ps.setString(offset + 14, bill.getRegion());
+                    ps.setString(offset + 15, bill.getRegionName());
+                    ps.setInt(offset + 16, bill.getChargeMode());
+                    ps.setInt(offset + 17, bill.getBillType());
+                    ps.setBigDecimal(offset + 18, bill.getUsageAmount());
+                    ps.setBigDecimal(offset + 19, bill.getConsumeAmount());
+                    ps.setBigDecimal(offset + 20, bill.getDebtAmount());
+                    ps.setBigDecimal(offset + 21, bill.getOfficialAmount());
+                    ps.setBigDecimal(offset + 22, bill.getExtConsumeAmount());
+                    ps.setBigDecimal(offset + 23, bill.getExtDebtAmount());
+                    ps.setBigDecimal(offset + 24, bill.getExtOfficialAmount());
+                }
+        );
+
+        return writer.write(statement, bills);
+    }
+
+    /**
+     * Staging session for the bulk mode, the entities already carry their internal or ext_* amounts.
+     */
+    default BulkLoadWriter.Session<HuaweiBillingDailyCost> openHuaweiBillingDailyCostLoad(BulkLoadWriter writer,
+                                                                                         boolean internal) {
+
+        return writer.open(new BulkLoadWriter.LoadStatement<HuaweiBillingDailyCost>(
+                "huawei_billing_daily_costs", COLUMNS, onDuplicateKeyUpdate(internal),
+                (row, bill) -> row
+                        .add(bill.getBillDate())
+                        .add(bill.getBillingMonth())
+                        .add(bill.getPayerAccountId())
+                        .add(bill.getCustomerId())
+                        .add(bill.getEnterpriseProjectId())
+                        .add(bill.getEnterpriseProjectName())
+                        .add(bill.getCloudServiceType())
+                        .add(bill.getCloudServiceTypeName())
+                        .add(bill.getSkuCode())
+                        .add(bill.getProductSpecDesc())
+                        .add(bill.getResourceTypeCode())
+                        .add(bill.getResourceTypeName())
+                        .add(bill.getResourceName())
+                        .add(bill.getRegion())
+                        .add(bill.getRegionName())
+                        .add(bill.getChargeMode())
+                        .add(bill.getBillType())
+                        .add(bill.getUsageAmount())
+                        .add(bill.getConsumeAmount())
+                        .add(bill.getDebtAmount())
+                        .add(bill.getOfficialAmount())
+                        .add(bill.getExtConsumeAmount())
+                        .add(bill.getExtDebtAmount())
+                        .add(bill.getExtOfficialAmount())
+        ));
+    }
+
+    private static String onDuplicateKeyUpdate(boolean internal) {
 
-        String sql = """
-                    INSERT INTO huawei_billing_daily_costs (
-                        bill_date, billing_month, payer_account_id, customer_id, enterprise_project_id, enterprise_project_name,
-                        cloud_service_type, cloud_service_type_name, sku_code, product_spec_desc,
-                        resource_type_code, resource_type_name, resource_name, region, region_name,
-                        charge_mode, bill_type, usage_amount, consume_amount, debt_amount, official_amount,
-                        ext_consume_amount, ext_debt_amount, ext_official_amount
-                    ) VALUES
-                    (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+        String onDuplicateKeyUpdate = """
                     ON DUPLICATE KEY UPDATE
                         enterprise_project_name = VALUES(enterprise_project_name),
                         cloud_service_type_name = VALUES(cloud_service_type_name),
@@ -43,45 +111,20 @@ public interface HuaweiBillingDailyCostRepository extends JpaRepository<HuaweiBi
                 """;
 
         if (internal) {
-            sql += """
+            onDuplicateKeyUpdate += """
                         consume_amount = VALUES(consume_amount),
                         debt_amount = VALUES(debt_amount),
                         official_amount = VALUES(official_amount)
                     """;
         } else {
-            sql += """
+            onDuplicateKeyUpdate += """
                         ext_consume_amount = VALUES(ext_consume_amount),
                         ext_debt_amount = VALUES(ext_debt_amount),
                         ext_official_amount = VALUES(ext_official_amount)
                     """;
         }
 
-        jdbcTemplate.batchUpdate(sql, bills, 500, (ps, bill) -> {
-            ps.setDate(1, java.sql.Date.valueOf(bill.getBillDate()));
-            ps.setDate(2, java.sql.Date.valueOf(bill.getBillingMonth()));
-            ps.setString(3, bill.getPayerAccountId());
-            ps.setString(4, bill.getCustomerId());
-            ps.setString(5, bill.getEnterpriseProjectId());
-            ps.setString(6, bill.getEnterpriseProjectName());
-            ps.setString(7, bill.getCloudServiceType());
-            ps.setString(8, bill.getCloudServiceTypeName());
-            ps.setString(9, bill.getSkuCode());
-            ps.setString(10, bill.getProductSpecDesc());
-            ps.setString(11, bill.getResourceTypeCode());
-            ps.setString(12, bill.getResourceTypeName());
-            ps.setString(13, bill.getResourceName());
-            ps.setString(14, bill.getRegion());
-            ps.setString(15, bill.getRegionName());
-            ps.setInt(16, bill.getChargeMode());
-            ps.setInt(17, bill.getBillType());
-            ps.setBigDecimal(18, bill.getUsageAmount());
-            ps.setBigDecimal(19, bill.getConsumeAmount());
-            ps.setBigDecimal(20, bill.getDebtAmount());
-            ps.setBigDecimal(21, bill.getOfficialAmount());
-            ps.setBigDecimal(22, bill.getExtConsumeAmount());
-            ps.setBigDecimal(23, bill.getExtDebtAmount());
-            ps.setBigDecimal(24, bill.getExtOfficialAmount());
-        });
+        return onDuplicateKeyUpdate;
     }
 
 }
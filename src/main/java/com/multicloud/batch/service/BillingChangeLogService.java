@@ -0,0 +1,70 @@
+package com.multicloud.batch.service;
+
+import com.multicloud.batch.enums.CloudProvider;
+import com.multicloud.batch.model.BillingDataChange;
+import com.multicloud.batch.repository.BillingDataChangeRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BillingChangeLogService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BillingDataChangeRepository billingDataChangeRepository;
+
+    /**
+     * Records the usage dates written by a sync job. Outside of month line items are merged on the
+     * last day of their billing month, so that day is marked for every billing month as well.
+     * Runs in the caller's transaction, a failed partition rolls back its marks with its data.
+     */
+    public void markChanged(CloudProvider provider, Collection<LocalDate> usageDates,
+                            Collection<LocalDate> billingMonths) {
+
+        Set<LocalDate> dates = new TreeSet<>();
+
+        for (LocalDate usageDate : usageDates) {
+            if (usageDate != null) {
+                dates.add(usageDate);
+            }
+        }
+
+        for (LocalDate billingMonth : billingMonths) {
+            if (billingMonth != null) {
+                dates.add(billingMonth.withDayOfMonth(billingMonth.lengthOfMonth()));
+            }
+        }
+
+        billingDataChangeRepository.upsertChanges(provider, dates, LocalDateTime.now(), jdbcTemplate);
+
+        log.info("Marked {} {} billing days as changed", dates.size(), provider);
+    }
+
+    public void markChanged(CloudProvider provider, LocalDate from, LocalDate to) {
+
+        Set<LocalDate> dates = new TreeSet<>();
+        Set<LocalDate> billingMonths = new TreeSet<>();
+
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            dates.add(date);
+            billingMonths.add(date.withDayOfMonth(1));
+        }
+
+        markChanged(provider, dates, billingMonths);
+    }
+
+    public List<BillingDataChange> findPending(LocalDateTime snapshot) {
+        return billingDataChangeRepository.findAllPending(snapshot);
+    }
+
+}
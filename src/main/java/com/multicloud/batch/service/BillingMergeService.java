@@ -0,0 +1,125 @@
+package com.multicloud.batch.service;
+
+import com.multicloud.batch.enums.CloudProvider;
+import com.multicloud.batch.helper.ServiceLevelBillingSql;
+import com.multicloud.batch.model.BillingDataChange;
+import com.multicloud.batch.repository.BillingDataChangeRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Set-based merge of the raw provider tables into service_level_billings, entirely inside MariaDB.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BillingMergeService {
+
+    private record MergeSql(String regular, String extraLineItems) {
+    }
+
+    private static final Map<CloudProvider, MergeSql> MERGE_SQL = Map.of(
+            CloudProvider.HWC, new MergeSql(
+                    ServiceLevelBillingSql.pushDownUpsertSql(ServiceLevelBillingSql.HUAWEI_SQL),
+                    ServiceLevelBillingSql.pushDownUpsertSql(ServiceLevelBillingSql.HUAWEI_EXTRA_LI_SQL)
+            ),
+            CloudProvider.GCP, new MergeSql(
+                    ServiceLevelBillingSql.pushDownUpsertSql(ServiceLevelBillingSql.GCP_SQL),
+                    ServiceLevelBillingSql.pushDownUpsertSql(ServiceLevelBillingSql.GCP_EXTRA_LI_SQL)
+            ),
+            CloudProvider.AWS, new MergeSql(
+                    ServiceLevelBillingSql.pushDownUpsertSql(ServiceLevelBillingSql.AWS_SQL),
+                    ServiceLevelBillingSql.pushDownUpsertSql(ServiceLevelBillingSql.AWS_EXTRA_LI_SQL)
+            )
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BillingDataChangeRepository billingDataChangeRepository;
+
+    /**
+     * Merges every provider for one slice (at most a month) in its own transaction.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int mergeSlice(LocalDate from, LocalDate to, LocalDateTime updatedAt) {
+
+        int rows = 0;
+
+        for (CloudProvider provider : CloudProvider.values()) {
+            rows += merge(provider, from, to, updatedAt);
+        }
+
+        return rows;
+    }
+
+    /**
+     * Re-merges one changed slice of a provider and removes the rows that no longer have raw data
+     * (reconciliation scoped to the slice), then marks the changes as merged.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int mergeChangedSlice(CloudProvider provider, LocalDate from, LocalDate to, LocalDateTime updatedAt,
+                                 List<BillingDataChange> changes) {
+
+        int rows = merge(provider, from, to, updatedAt);
+
+        int deleted = jdbcTemplate.update(
+                """
+                        DELETE FROM service_level_billings
+                        WHERE cloud_provider = ? AND usage_date >= ? AND usage_date <= ? AND last_updated_at < ?
+                        """,
+                provider.name(), Date.valueOf(from), Date.valueOf(to), Timestamp.valueOf(updatedAt)
+        );
+
+        billingDataChangeRepository.markMerged(changes, jdbcTemplate);
+
+        log.info("Removed {} stale {} billing rows for {} - {}", deleted, provider, from, to);
+
+        return rows;
+    }
+
+    /**
+     * Re-aggregates the usage dates [from, to] of one provider, the slice must not span months.
+     */
+    public int merge(CloudProvider provider, LocalDate from, LocalDate to, LocalDateTime updatedAt) {
+
+        if (from.getMonthValue() != to.getMonthValue() || from.getYear() != to.getYear()) {
+            throw new RuntimeException("Merge slice must be within a month: %s - %s".formatted(from, to));
+        }
+
+        MergeSql sql = MERGE_SQL.get(provider);
+
+        Timestamp lastUpdatedAt = Timestamp.valueOf(updatedAt);
+
+        // Regular line items can't be in the future, same bound as the cursor readers
+        LocalDate regularTo = to.isAfter(LocalDate.now()) ? LocalDate.now() : to;
+
+        int regular = jdbcTemplate.update(
+                sql.regular(),
+                lastUpdatedAt, Date.valueOf(from), Date.valueOf(regularTo), Date.valueOf(from), Date.valueOf(to)
+        );
+
+        // Outside of month line items are written on the last day of their billing month
+        int extra = jdbcTemplate.update(
+                sql.extraLineItems(),
+                lastUpdatedAt, Date.valueOf(from.withDayOfMonth(1)), Date.valueOf(from), Date.valueOf(to)
+        );
+
+        log.info(
+                "Merged {} billing data for {} - {}: {} regular and {} outside of month rows affected",
+                provider, from, to, regular, extra
+        );
+
+        return regular + extra;
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.multicloud.batch.service;
+
+import com.multicloud.batch.enums.CloudProvider;
+import com.multicloud.batch.model.BillingSyncFingerprint;
+import com.multicloud.batch.repository.BillingSyncFingerprintRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Skip-unchanged detection of the sync jobs. Fingerprints are kept per day (not per partition range),
+ * the ranges move with the current date from one run to the next.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BillingSyncFingerprintService {
+
+    @Value("${batch_job.skip_unchanged.enabled:false}")
+    private boolean enabled;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BillingSyncFingerprintRepository billingSyncFingerprintRepository;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * True when every slice still has the fingerprint of its last successful sync.
+     */
+    public boolean unchanged(CloudProvider provider, String source, boolean internal,
+                             Map<BillingSyncFingerprint.Slice, String> fingerprints) {
+
+        if (!enabled || fingerprints.isEmpty()) {
+            return false;
+        }
+
+        return changedDays(provider, source, internal, fingerprints).isEmpty();
+    }
+
+    /**
+     * Usage dates of the slices whose fingerprint differs from the one of their last successful sync
+     * (all of them when the skipping is disabled).
+     */
+    public Set<LocalDate> changedDays(CloudProvider provider, String source, boolean internal,
+                                      Map<BillingSyncFingerprint.Slice, String> fingerprints) {
+
+        Set<LocalDate> changed = new HashSet<>();
+
+        if (!enabled || fingerprints.isEmpty()) {
+            fingerprints.keySet().forEach(slice -> changed.add(slice.usageDate()));
+            return changed;
+        }
+
+        List<LocalDate> days = fingerprints.keySet().stream().map(BillingSyncFingerprint.Slice::usageDate).toList();
+
+        Map<BillingSyncFingerprint.Slice, String> stored = new HashMap<>();
+
+        billingSyncFingerprintRepository
+                .findAllByCloudProviderAndSourceAndInternalAndUsageDateBetween(
+                        provider, source, internal, Collections.min(days), Collections.max(days)
+                )
+                .forEach(f -> stored.put(
+                        new BillingSyncFingerprint.Slice(f.getBillingMonth(), f.getUsageDate()), f.getFingerprint()
+                ));
+
+        for (Map.Entry<BillingSyncFingerprint.Slice, String> entry : fingerprints.entrySet()) {
+            if (!entry.getValue().equals(stored.get(entry.getKey()))) {
+                changed.add(entry.getKey().usageDate());
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Call once the slices are stored, in the partition's transaction.
+     */
+    public void store(CloudProvider provider, String source, boolean internal,
+                      Map<BillingSyncFingerprint.Slice, String> fingerprints) {
+
+        if (!enabled) {
+            return;
+        }
+
+        billingSyncFingerprintRepository.upsertFingerprints(
+                provider, source, internal, fingerprints, LocalDateTime.now(), jdbcTemplate
+        );
+    }
+
+    public void clear(CloudProvider provider, LocalDate from) {
+
+        int deleted = billingSyncFingerprintRepository.deleteFrom(provider, from, from);
+
+        log.info("Cleared {} {} sync fingerprints from {}", deleted, provider, from);
+    }
+
+    /**
+     * SHA-256 (hex) of the values, e.g. the row count, cost sums and checksum of a slice.
+     */
+    public static String digest(Object... values) {
+
+        MessageDigest digest = newDigest();
+
+        for (Object value : values) {
+            update(digest, value);
+            digest.update((byte) '|');
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Incremental form of {@code digest(text)} for a large text: update with its parts as they are produced,
+     * then finish.
+     */
+    public static MessageDigest newDigest() {
+
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+
+    public static void update(MessageDigest digest, Object text) {
+        digest.update(String.valueOf(text).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String finish(MessageDigest digest) {
+        digest.update((byte) '|');
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.multicloud.batch.service;
+
+import com.multicloud.batch.enums.CloudProvider;
+import com.multicloud.batch.util.CostCube;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds one {@link CostCube} per job, loaded at the start of the job and released at its end.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CostCubeStoreService {
+
+    private final Map<String, CostCube> COST_CUBES = new ConcurrentHashMap<>();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CostCube load(String key, LocalDate from, LocalDate to) {
+
+        long startedAt = System.currentTimeMillis();
+
+        CostCube.Builder builder = CostCube.builder(from, to);
+
+        // One sequential scan, costs come back as fixed point integers (scale 8, same as the columns)
+        String costSql = """
+                SELECT usage_account_id, usage_date, cloud_provider,
+                    CAST(SUM(COALESCE(cost, 0)) * 100000000 AS SIGNED) AS cost,
+                    CAST(SUM(COALESCE(ext_cost, 0)) * 100000000 AS SIGNED) AS ext_cost
+                FROM service_level_billings
+                WHERE usage_date >= ? AND usage_date <= ? AND usage_account_id IS NOT NULL
+                GROUP BY usage_account_id, usage_date, cloud_provider
+                """;
+
+        jdbcTemplate.query(
+                con -> {
+                    PreparedStatement ps = con.prepareStatement(
+                            costSql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY
+                    );
+                    ps.setFetchSize(1000);
+                    ps.setDate(1, Date.valueOf(from));
+                    ps.setDate(2, Date.valueOf(to));
+                    return ps;
+                },
+                rs -> {
+                    builder.addCost(
+                            rs.getString("usage_account_id"),
+                            rs.getDate("usage_date").toLocalDate(),
+                            CloudProvider.valueOf(rs.getString("cloud_provider")),
+                            rs.getLong("cost"),
+                            rs.getLong("ext_cost")
+                    );
+                }
+        );
+
+        jdbcTemplate.query(
+                "SELECT DISTINCT product_id, organization_id, account_id FROM product_accounts",
+                rs -> {
+                    builder.addProductAccount(
+                            rs.getLong("product_id"), rs.getLong("organization_id"), rs.getString("account_id")
+                    );
+                }
+        );
+
+        jdbcTemplate.query(
+                """
+                        SELECT organization_id, cloud_provider, pricing_date, discount, handling_fee, support_fee
+                        FROM daily_organization_pricing
+                        WHERE pricing_date >= ? AND pricing_date <= ?
+                        """,
+                rs -> {
+                    builder.addPricing(
+                            rs.getLong("organization_id"),
+                            CloudProvider.valueOf(rs.getString("cloud_provider")),
+                            rs.getDate("pricing_date").toLocalDate(),
+                            rs.getBigDecimal("discount"),
+                            rs.getBigDecimal("handling_fee"),
+                            rs.getBigDecimal("support_fee")
+                    );
+                },
+                from, to
+        );
+
+        CostCube cube = builder.build();
+
+        COST_CUBES.put(key, cube);
+
+        log.info(
+                "Loaded cost cube {} for {} - {}: {} rows in {} ms",
+                key, from, to, cube.size(), System.currentTimeMillis() - startedAt
+        );
+
+        return cube;
+    }
+
+    public CostCube get(String key) {
+        return COST_CUBES.get(key);
+    }
+
+    public void release(String key) {
+        COST_CUBES.remove(key);
+    }
+
+}
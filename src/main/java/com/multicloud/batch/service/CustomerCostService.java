@@ -1,17 +1,27 @@
 package com.multicloud.batch.service;
 
 import com.multicloud.batch.dto.PerDayCostDTO;
+import com.multicloud.batch.dto.ProductDTO;
 import com.multicloud.batch.enums.CloudProvider;
+import com.multicloud.batch.util.CostCube;
+import com.multicloud.batch.util.ProductGroupingRowHandler;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.data.util.Pair;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 /**
  * Created by IntelliJ IDEA.
@@ -86,6 +96,23 @@ public class CustomerCostService {
         return jdbcTemplate.query(sql, mapper, productId, organizationId, startDate);
     }
 
+    /**
+     * Answers from the cost cube when it is loaded and covers the range, falls back to the query otherwise.
+     */
+    public List<PerDayCostDTO> findPerDayCustomerCost(CostCube cube,
+                                                      long productId,
+                                                      long organizationId,
+                                                      boolean isInternalOrg,
+                                                      LocalDate startDate,
+                                                      LocalDate endDate) {
+
+        if (cube != null && cube.covers(startDate, endDate)) {
+            return cube.perDayCustomerCost(productId, organizationId, isInternalOrg, startDate, endDate);
+        }
+
+        return findPerDayCustomerCost(productId, organizationId, isInternalOrg, startDate, endDate);
+    }
+
     public List<PerDayCostDTO> findPerDayCustomerCost(long productId,
                                                       long organizationId,
                                                       boolean isInternalOrg,
@@ -145,4 +172,135 @@ public class CustomerCostService {
         );
     }
 
+    /**
+     * Same figures as {@link #findPerDayCustomerCost} for every non-internal product in one grouped
+     * query. Rows are streamed ordered by product, the consumer gets one call per product.
+     * Callers slice the range by month to keep each scan (and its sort) small.
+     */
+    public void streamPerDayCustomerCosts(LocalDate startDate, LocalDate endDate,
+                                          BiConsumer<ProductDTO, List<PerDayCostDTO>> consumer) {
+
+        String sql = """
+                SELECT p.id AS product_id, p.name AS product_name,
+                    o.id AS org_id, o.name AS org_name, o.internal, o.exceptional,
+                    c.usage_date,
+                    c.cloud_provider,
+                    SUM(IF(o.internal, COALESCE(c.cost, 0), COALESCE(c.ext_cost, 0))) AS cost,
+                    SUM(IF(
+                        o.internal,
+                        (COALESCE(c.cost, 0) - (COALESCE(c.cost, 0) * COALESCE(d.discount, 0) / 100)),
+                        (COALESCE(c.ext_cost, 0) - (COALESCE(c.ext_cost, 0) * COALESCE(d.discount, 0) / 100))
+                    )) AS after_discount_cost,
+                    SUM(IF(
+                        o.internal,
+                        ((COALESCE(c.cost, 0) - (COALESCE(c.cost, 0) * COALESCE(d.discount, 0) / 100)) * COALESCE(d.handling_fee, 0) / 100),
+                        ((COALESCE(c.ext_cost, 0) - (COALESCE(c.ext_cost, 0) * COALESCE(d.discount, 0) / 100)) * COALESCE(d.handling_fee, 0) / 100)
+                    )) AS handling_fee,
+                    SUM(IF(
+                        o.internal,
+                        ((COALESCE(c.cost, 0) - (COALESCE(c.cost, 0) * COALESCE(d.discount, 0) / 100)) * COALESCE(d.support_fee, 0) / 100),
+                        ((COALESCE(c.ext_cost, 0) - (COALESCE(c.ext_cost, 0) * COALESCE(d.discount, 0) / 100)) * COALESCE(d.support_fee, 0) / 100)
+                    )) AS support_fee
+                FROM products p
+                    JOIN organizations o ON p.organization_id = o.id
+                    JOIN (
+                        SELECT DISTINCT product_id, organization_id, account_id FROM product_accounts
+                    ) pa ON pa.product_id = p.id AND pa.organization_id = o.id
+                    JOIN service_level_billings c ON c.usage_account_id = pa.account_id
+                    LEFT JOIN daily_organization_pricing d ON d.organization_id = o.id
+                        AND d.cloud_provider = c.cloud_provider AND d.pricing_date = c.usage_date
+                WHERE o.internal = false
+                    AND c.usage_date >= ? AND c.usage_date <= ?
+                GROUP BY p.id, p.name, o.id, o.name, o.internal, o.exceptional, c.usage_date, c.cloud_provider
+                ORDER BY p.id, o.id, c.usage_date, c.cloud_provider;
+                """;
+
+        RowMapper<PerDayCostDTO> mapper = (rs, rowNum) ->
+                new PerDayCostDTO(
+                        LocalDate.parse(rs.getString("usage_date")),
+                        CloudProvider.valueOf(rs.getString("cloud_provider")),
+                        rs.getBigDecimal("cost"),
+                        rs.getBigDecimal("after_discount_cost"),
+                        rs.getBigDecimal("handling_fee"),
+                        rs.getBigDecimal("support_fee")
+                );
+
+        ProductGroupingRowHandler<PerDayCostDTO> handler = new ProductGroupingRowHandler<>(mapper, consumer);
+
+        jdbcTemplate.query(
+                con -> {
+                    PreparedStatement ps = con.prepareStatement(
+                            sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY
+                    );
+                    ps.setFetchSize(500);
+                    ps.setDate(1, Date.valueOf(startDate));
+                    ps.setDate(2, Date.valueOf(endDate));
+                    return ps;
+                },
+                handler
+        );
+
+        handler.finish();
+    }
+
+    /**
+     * {@link #findPerDayAzerionCost} of every product, keyed by (product id, organization id).
+     */
+    public Map<Pair<Long, Long>, Map<LocalDate, BigDecimal>> findAllPerDayAzerionCosts(LocalDate startDate,
+                                                                                       LocalDate endDate) {
+
+        String sql = """
+                SELECT pa.product_id, pa.organization_id, c.usage_date, COALESCE(SUM(c.net_unblended_cost), 0) AS cost
+                FROM (
+                        SELECT DISTINCT product_id, organization_id, account_id FROM product_accounts
+                    ) pa
+                    JOIN aws_billing_daily_costs c ON c.usage_account_id = pa.account_id
+                WHERE c.usage_date >= ? AND c.usage_date <= ?
+                    AND DATE_FORMAT(c.usage_date, '%Y-%m') = DATE_FORMAT(c.billing_month, '%Y-%m')
+                    AND c.billing_type <> 'Tax'
+                GROUP BY 1, 2, 3;
+                """;
+
+        return queryProductDailyCosts(sql, startDate, endDate);
+    }
+
+    /**
+     * {@link #findOutsideOfMonthAzerionCost} of every product, keyed by (product id, organization id).
+     */
+    public Map<Pair<Long, Long>, Map<LocalDate, BigDecimal>> findAllOutsideOfMonthAzerionCosts(LocalDate startDate) {
+
+        String sql = """
+                SELECT pa.product_id, pa.organization_id, LAST_DAY(c.billing_month) AS usage_date,
+                    COALESCE(SUM(c.net_unblended_cost), 0) AS cost
+                FROM (
+                        SELECT DISTINCT product_id, organization_id, account_id FROM product_accounts
+                    ) pa
+                    JOIN aws_billing_daily_costs c ON c.usage_account_id = pa.account_id
+                WHERE DATE_FORMAT(c.usage_date, '%Y-%m') <> DATE_FORMAT(c.billing_month, '%Y-%m')
+                    AND c.billing_type <> 'Tax'
+                    AND c.billing_month >= ?
+                GROUP BY 1, 2, 3;
+                """;
+
+        return queryProductDailyCosts(sql, startDate);
+    }
+
+    private Map<Pair<Long, Long>, Map<LocalDate, BigDecimal>> queryProductDailyCosts(String sql, Object... args) {
+
+        Map<Pair<Long, Long>, Map<LocalDate, BigDecimal>> costs = new HashMap<>();
+
+        jdbcTemplate.query(
+                sql,
+                rs -> {
+                    costs.computeIfAbsent(
+                            Pair.of(rs.getLong("product_id"), rs.getLong("organization_id")),
+                            key -> new HashMap<>()
+                    ).put(LocalDate.parse(rs.getString("usage_date")), rs.getBigDecimal("cost"));
+                },
+                args
+        );
+
+        return costs;
+    }
+
 }
@@ -0,0 +1,97 @@
+package com.multicloud.batch.service;
+
+import com.multicloud.batch.enums.CloudProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Timers and counters of the billing ingest stages, exposed on /actuator/prometheus.
+ * Tags are resolved on the partition thread ({@link #stepTags}) and handed to the worker threads,
+ * which have no step context of their own.
+ */
+@Service
+@RequiredArgsConstructor
+public class IngestMetricsService {
+
+    public static final String ATHENA_PERMIT_WAIT = "batch.ingest.athena.permit.wait";
+    public static final String ATHENA_QUEUE = "batch.ingest.athena.queue";
+    public static final String ATHENA_EXECUTION = "batch.ingest.athena.execution";
+    public static final String S3_BYTES = "batch.ingest.s3.bytes";
+    public static final String ROWS_PARSED = "batch.ingest.rows.parsed";
+    public static final String BIGQUERY_QUERY = "batch.ingest.bigquery.query";
+    public static final String BIGQUERY_PAGE = "batch.ingest.bigquery.page";
+    public static final String HUAWEI_PAGE = "batch.ingest.huawei.page";
+    public static final String UPSERT = "batch.ingest.upsert";
+    public static final String UPSERT_ROWS = "batch.ingest.upsert.rows";
+    public static final String UPSERT_AFFECTED = "batch.ingest.upsert.affected";
+    public static final String BULK_LOAD = "batch.ingest.bulk.load";
+    public static final String SKIPPED_UNCHANGED = "batch.ingest.skipped.unchanged";
+
+    private static final String NONE = "none";
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * job, provider and source (table, project or account) tags. The step name is left out, it is
+     * different for every partition and would give each run its own series.
+     */
+    public Tags stepTags(CloudProvider provider, String source) {
+
+        String job = NONE;
+
+        StepContext context = StepSynchronizationManager.getContext();
+
+        if (context != null) {
+            StepExecution stepExecution = context.getStepExecution();
+            job = stepExecution.getJobExecution().getJobInstance().getJobName();
+        }
+
+        return Tags.of(
+                "job", job,
+                "provider", provider.name(),
+                "source", source == null || source.isEmpty() ? NONE : source
+        );
+    }
+
+    public Timer.Sample startTimer() {
+        return Timer.start(meterRegistry);
+    }
+
+    public void stopTimer(Timer.Sample sample, String name, Tags tags) {
+        sample.stop(meterRegistry.timer(name, tags));
+    }
+
+    public void recordTime(String name, Tags tags, long amount, TimeUnit unit) {
+        meterRegistry.timer(name, tags).record(amount, unit);
+    }
+
+    public <T> T time(String name, Tags tags, Supplier<T> supplier) {
+        return meterRegistry.timer(name, tags).record(supplier);
+    }
+
+    public void count(String name, Tags tags, double amount) {
+        meterRegistry.counter(name, tags).increment(amount);
+    }
+
+    /**
+     * Times an upsert and counts its rows and the affected rows reported by the driver.
+     */
+    public void recordUpsert(Tags tags, long rows, LongSupplier upsert) {
+
+        long affected = meterRegistry.timer(UPSERT, tags).record(upsert);
+
+        count(UPSERT_ROWS, tags, rows);
+        count(UPSERT_AFFECTED, tags, affected);
+    }
+
+}
@@ -2,6 +2,9 @@ package com.multicloud.batch.service;
 
 import com.multicloud.batch.dto.BillingDTO;
 import com.multicloud.batch.dto.CloudProviderCostDTO;
+import com.multicloud.batch.dto.ProductDTO;
+import com.multicloud.batch.util.CostCube;
+import com.multicloud.batch.util.ProductGroupingRowHandler;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -10,8 +13,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 /**
  * Created by IntelliJ IDEA.
@@ -27,6 +35,23 @@ public class InvoiceCostService {
 
     private final JdbcTemplate jdbcTemplate;
 
+    /**
+     * Answers from the cost cube when it is loaded and covers the range, falls back to the query otherwise.
+     */
+    public List<CloudProviderCostDTO> findCloudProviderCosts(CostCube cube,
+                                                             long productId,
+                                                             long organizationId,
+                                                             boolean isInternalOrg,
+                                                             LocalDate startDate,
+                                                             LocalDate endDate) {
+
+        if (cube != null && cube.covers(startDate, endDate)) {
+            return cube.cloudProviderCosts(productId, organizationId, isInternalOrg, startDate, endDate);
+        }
+
+        return findCloudProviderCosts(productId, organizationId, isInternalOrg, startDate, endDate);
+    }
+
     public List<CloudProviderCostDTO> findCloudProviderCosts(long productId,
                                                              long organizationId,
                                                              boolean isInternalOrg,
@@ -80,4 +105,78 @@ public class InvoiceCostService {
         return invoiceNumberList.isEmpty() ? 0 : invoiceNumberList.getFirst();
     }
 
+    /**
+     * Same figures as {@link #findCloudProviderCosts} for every product in one grouped query,
+     * streamed ordered by product (and provider) with one consumer call per product.
+     */
+    public void streamCloudProviderCosts(LocalDate startDate, LocalDate endDate,
+                                         BiConsumer<ProductDTO, List<CloudProviderCostDTO>> consumer) {
+
+        String sql = """
+                    SELECT p.id AS product_id, p.name AS product_name,
+                        o.id AS org_id, o.name AS org_name, o.internal, o.exceptional,
+                        c.cloud_provider,
+                        SUM(IF(
+                            o.internal,
+                            COALESCE(c.cost, 0) - (COALESCE(c.cost, 0) * COALESCE(d.discount, 0) / 100),
+                            COALESCE(c.ext_cost, 0) - (COALESCE(c.ext_cost, 0) * COALESCE(d.discount, 0) / 100)
+                        )) AS cost
+                    FROM products p
+                        JOIN organizations o ON p.organization_id = o.id
+                        JOIN (
+                            SELECT DISTINCT product_id, organization_id, account_id FROM product_accounts
+                        ) pa ON pa.product_id = p.id AND pa.organization_id = o.id
+                        JOIN service_level_billings c ON c.usage_account_id = pa.account_id
+                        LEFT JOIN daily_organization_pricing d ON d.organization_id = o.id
+                            AND d.cloud_provider = c.cloud_provider AND d.pricing_date = c.usage_date
+                    WHERE c.usage_date >= ? AND c.usage_date <= ?
+                    GROUP BY p.id, p.name, o.id, o.name, o.internal, o.exceptional, c.cloud_provider
+                    ORDER BY p.id, o.id, c.cloud_provider;
+                """;
+
+        RowMapper<CloudProviderCostDTO> mapper = (rs, rowNum) ->
+                new CloudProviderCostDTO(
+                        rs.getString("cloud_provider"),
+                        rs.getBigDecimal("cost")
+                );
+
+        ProductGroupingRowHandler<CloudProviderCostDTO> handler = new ProductGroupingRowHandler<>(mapper, consumer);
+
+        jdbcTemplate.query(
+                con -> {
+                    PreparedStatement ps = con.prepareStatement(
+                            sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY
+                    );
+                    ps.setFetchSize(500);
+                    ps.setDate(1, Date.valueOf(startDate));
+                    ps.setDate(2, Date.valueOf(endDate));
+                    return ps;
+                },
+                handler
+        );
+
+        handler.finish();
+    }
+
+    /**
+     * {@link #getLatestInvoiceNumber} of every product that has a billing.
+     */
+    public Map<Long, Long> getLatestInvoiceNumbers() {
+
+        String sql = """
+                    SELECT product_id, MAX(invoice_number) AS invoice_number FROM billings GROUP BY product_id;
+                """;
+
+        Map<Long, Long> invoiceNumbers = new HashMap<>();
+
+        jdbcTemplate.query(
+                sql,
+                rs -> {
+                    invoiceNumbers.put(rs.getLong("product_id"), rs.getLong("invoice_number"));
+                }
+        );
+
+        return invoiceNumbers;
+    }
+
 }
@@ -0,0 +1,358 @@
+package com.multicloud.batch.util;
+
+import com.multicloud.batch.dto.CloudProviderCostDTO;
+import com.multicloud.batch.dto.PerDayCostDTO;
+import com.multicloud.batch.enums.CloudProvider;
+import org.springframework.data.util.Pair;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Read-only columnar copy of service_level_billings aggregated by (usage account, day, provider).
+ * Accounts are dictionary encoded, days are offsets from {@link #from}, costs are fixed point
+ * longs with {@link #SCALE} decimals. Rows are sorted by account, so the rows of one account are
+ * the slice [accountOffsets[id], accountOffsets[id + 1]).
+ * <p>
+ * Product accounts and the daily organization pricing are kept next to it, so the customer cost
+ * and invoice figures of a product can be answered without touching the database.
+ * <p>
+ * The queries apply the pricing per billing row, the cube per (day, provider) cell. Pricing is the
+ * same for every row of a cell and MariaDB doesn't round the intermediate decimals here, so both
+ * sum to the same value; results are returned at the scale the queries return them with.
+ */
+public final class CostCube {
+
+    public static final int SCALE = 8;
+
+    // MariaDB's default div_precision_increment, a division adds it to the scale of the dividend
+    private static final int DIV_PRECISION_INCREMENT = 4;
+
+    private static final CloudProvider[] PROVIDERS = CloudProvider.values();
+
+    private record Pricing(BigDecimal discount, BigDecimal handlingFee, BigDecimal supportFee) {
+    }
+
+    private final LocalDate from;
+    private final LocalDate to;
+    private final int dayCount;
+
+    private final int[] accountOffsets;
+    private final int[] days;
+    private final byte[] providers;
+    private final long[] costs;
+    private final long[] extCosts;
+
+    // (product id, organization id) -> account ids
+    private final Map<Pair<Long, Long>, int[]> productAccounts;
+
+    // organization id -> pricing per (day, provider) cell, null where there is no pricing
+    private final Map<Long, Pricing[]> pricing;
+
+    // Result scales of the queries, e.g. cost - cost * discount / 100 is SCALE + discount scale + 4
+    private final int afterDiscountScale;
+    private final int handlingFeeScale;
+    private final int supportFeeScale;
+
+    private CostCube(Builder builder, int[] accountOffsets, int[] days, byte[] providers, long[] costs,
+                     long[] extCosts, Map<Pair<Long, Long>, int[]> productAccounts) {
+        this.from = builder.from;
+        this.to = builder.to;
+        this.dayCount = builder.dayCount;
+        this.accountOffsets = accountOffsets;
+        this.days = days;
+        this.providers = providers;
+        this.costs = costs;
+        this.extCosts = extCosts;
+        this.productAccounts = productAccounts;
+        this.pricing = builder.pricing;
+        this.afterDiscountScale = SCALE + builder.discountScale + DIV_PRECISION_INCREMENT;
+        this.handlingFeeScale = afterDiscountScale + builder.handlingFeeScale + DIV_PRECISION_INCREMENT;
+        this.supportFeeScale = afterDiscountScale + builder.supportFeeScale + DIV_PRECISION_INCREMENT;
+    }
+
+    public static Builder builder(LocalDate from, LocalDate to) {
+        return new Builder(from, to);
+    }
+
+    public boolean covers(LocalDate start, LocalDate end) {
+        return !start.isBefore(from) && !end.isAfter(to);
+    }
+
+    public int size() {
+        return costs.length;
+    }
+
+    /**
+     * Same rows as CustomerCostService#findPerDayCustomerCost, ordered by day and provider.
+     */
+    public List<PerDayCostDTO> perDayCustomerCost(long productId, long organizationId, boolean internal,
+                                                  LocalDate start, LocalDate end) {
+
+        long[] sums = sumCells(productId, organizationId, internal, start, end);
+        Pricing[] orgPricing = pricing.get(organizationId);
+
+        List<PerDayCostDTO> result = new ArrayList<>();
+
+        for (int cell = 0; cell < sums.length; cell++) {
+
+            if (sums[cell] == Long.MIN_VALUE) {
+                continue;
+            }
+
+            BigDecimal cost = BigDecimal.valueOf(sums[cell], SCALE);
+            Pricing cellPricing = orgPricing == null ? null : orgPricing[cell];
+
+            BigDecimal afterDiscount = afterDiscount(cost, cellPricing);
+
+            result.add(new PerDayCostDTO(
+                    from.plusDays(cell / PROVIDERS.length),
+                    PROVIDERS[cell % PROVIDERS.length],
+                    cost,
+                    afterDiscount.setScale(afterDiscountScale, RoundingMode.HALF_UP),
+                    fee(afterDiscount, cellPricing == null ? null : cellPricing.handlingFee(), handlingFeeScale),
+                    fee(afterDiscount, cellPricing == null ? null : cellPricing.supportFee(), supportFeeScale)
+            ));
+
+        }
+
+        return result;
+    }
+
+    /**
+     * Same rows as InvoiceCostService#findCloudProviderCosts, ordered by provider.
+     */
+    public List<CloudProviderCostDTO> cloudProviderCosts(long productId, long organizationId, boolean internal,
+                                                         LocalDate start, LocalDate end) {
+
+        long[] sums = sumCells(productId, organizationId, internal, start, end);
+        Pricing[] orgPricing = pricing.get(organizationId);
+
+        BigDecimal[] totals = new BigDecimal[PROVIDERS.length];
+
+        for (int cell = 0; cell < sums.length; cell++) {
+
+            if (sums[cell] == Long.MIN_VALUE) {
+                continue;
+            }
+
+            int provider = cell % PROVIDERS.length;
+
+            BigDecimal afterDiscount = afterDiscount(
+                    BigDecimal.valueOf(sums[cell], SCALE), orgPricing == null ? null : orgPricing[cell]
+            );
+
+            totals[provider] = totals[provider] == null ? afterDiscount : totals[provider].add(afterDiscount);
+        }
+
+        List<CloudProviderCostDTO> result = new ArrayList<>();
+
+        for (int provider = 0; provider < PROVIDERS.length; provider++) {
+            if (totals[provider] != null) {
+                result.add(new CloudProviderCostDTO(
+                        PROVIDERS[provider].name(), totals[provider].setScale(afterDiscountScale, RoundingMode.HALF_UP)
+                ));
+            }
+        }
+
+        // The SQL groups (and so sorts) by the provider name
+        result.sort(Comparator.comparing(CloudProviderCostDTO::cloudProvider));
+
+        return result;
+    }
+
+    /**
+     * Sums the product's accounts per (day, provider) cell, Long.MIN_VALUE marks cells without rows.
+     */
+    private long[] sumCells(long productId, long organizationId, boolean internal, LocalDate start, LocalDate end) {
+
+        if (!covers(start, end)) {
+            throw new RuntimeException("Cost cube %s - %s doesn't cover %s - %s".formatted(from, to, start, end));
+        }
+
+        int startDay = (int) (start.toEpochDay() - from.toEpochDay());
+        int endDay = (int) (end.toEpochDay() - from.toEpochDay());
+
+        long[] sums = new long[dayCount * PROVIDERS.length];
+        Arrays.fill(sums, Long.MIN_VALUE);
+
+        long[] values = internal ? costs : extCosts;
+
+        for (int account : productAccounts.getOrDefault(Pair.of(productId, organizationId), new int[0])) {
+
+            for (int row = accountOffsets[account]; row < accountOffsets[account + 1]; row++) {
+
+                int day = days[row];
+
+                if (day < startDay || day > endDay) {
+                    continue;
+                }
+
+                int cell = day * PROVIDERS.length + providers[row];
+
+                sums[cell] = sums[cell] == Long.MIN_VALUE ? values[row] : Math.addExact(sums[cell], values[row]);
+            }
+
+        }
+
+        return sums;
+    }
+
+    private static BigDecimal afterDiscount(BigDecimal cost, Pricing pricing) {
+
+        if (pricing == null) {
+            return cost;
+        }
+
+        return cost.subtract(percentage(cost, pricing.discount()));
+    }
+
+    private static BigDecimal fee(BigDecimal afterDiscount, BigDecimal fee, int scale) {
+
+        if (fee == null) {
+            return BigDecimal.ZERO.setScale(scale, RoundingMode.HALF_UP);
+        }
+
+        return percentage(afterDiscount, fee).setScale(scale, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal percentage(BigDecimal value, BigDecimal percentage) {
+        return value.multiply(percentage).movePointLeft(2);
+    }
+
+    public static final class Builder {
+
+        private final LocalDate from;
+        private final LocalDate to;
+        private final int dayCount;
+
+        private final Map<String, Integer> accountIds = new HashMap<>();
+        private final Map<Pair<Long, Long>, Set<String>> productAccountNames = new HashMap<>();
+        private final Map<Long, Pricing[]> pricing = new HashMap<>();
+
+        // Scales of the pricing columns, taken from the values as the driver returns them
+        private int discountScale;
+        private int handlingFeeScale;
+        private int supportFeeScale;
+
+        private int size;
+        private int[] accounts = new int[1024];
+        private int[] days = new int[1024];
+        private byte[] providers = new byte[1024];
+        private long[] costs = new long[1024];
+        private long[] extCosts = new long[1024];
+
+        private Builder(LocalDate from, LocalDate to) {
+            this.from = from;
+            this.to = to;
+            this.dayCount = (int) (to.toEpochDay() - from.toEpochDay()) + 1;
+        }
+
+        /**
+         * @param cost    internal cost, fixed point with {@link #SCALE} decimals
+         * @param extCost external cost, fixed point with {@link #SCALE} decimals
+         */
+        public Builder addCost(String usageAccountId, LocalDate day, CloudProvider provider, long cost, long extCost) {
+
+            if (day.isBefore(from) || day.isAfter(to)) {
+                throw new RuntimeException("Day %s is outside of the cost cube %s - %s".formatted(day, from, to));
+            }
+
+            if (size == costs.length) {
+                int capacity = size * 2;
+                accounts = Arrays.copyOf(accounts, capacity);
+                days = Arrays.copyOf(days, capacity);
+                providers = Arrays.copyOf(providers, capacity);
+                costs = Arrays.copyOf(costs, capacity);
+                extCosts = Arrays.copyOf(extCosts, capacity);
+            }
+
+            accounts[size] = accountIds.computeIfAbsent(usageAccountId, key -> accountIds.size());
+            days[size] = (int) (day.toEpochDay() - from.toEpochDay());
+            providers[size] = (byte) provider.ordinal();
+            costs[size] = cost;
+            extCosts[size] = extCost;
+            size++;
+
+            return this;
+        }
+
+        public Builder addProductAccount(long productId, long organizationId, String accountId) {
+            productAccountNames.computeIfAbsent(Pair.of(productId, organizationId), key -> new HashSet<>())
+                    .add(accountId);
+            return this;
+        }
+
+        public Builder addPricing(long organizationId, CloudProvider provider, LocalDate day,
+                                  BigDecimal discount, BigDecimal handlingFee, BigDecimal supportFee) {
+
+            if (day.isBefore(from) || day.isAfter(to)) {
+                return this;
+            }
+
+            int cell = (int) (day.toEpochDay() - from.toEpochDay()) * PROVIDERS.length + provider.ordinal();
+
+            discountScale = Math.max(discountScale, discount == null ? 0 : discount.scale());
+            handlingFeeScale = Math.max(handlingFeeScale, handlingFee == null ? 0 : handlingFee.scale());
+            supportFeeScale = Math.max(supportFeeScale, supportFee == null ? 0 : supportFee.scale());
+
+            pricing.computeIfAbsent(organizationId, key -> new Pricing[dayCount * PROVIDERS.length])[cell] =
+                    new Pricing(
+                            Objects.requireNonNullElse(discount, BigDecimal.ZERO),
+                            Objects.requireNonNullElse(handlingFee, BigDecimal.ZERO),
+                            Objects.requireNonNullElse(supportFee, BigDecimal.ZERO)
+                    );
+
+            return this;
+        }
+
+        public CostCube build() {
+
+            // Counting sort by account, keeps the insertion order within an account
+            int[] accountOffsets = new int[accountIds.size() + 1];
+
+            for (int row = 0; row < size; row++) {
+                accountOffsets[accounts[row] + 1]++;
+            }
+
+            for (int account = 0; account < accountIds.size(); account++) {
+                accountOffsets[account + 1] += accountOffsets[account];
+            }
+
+            int[] next = Arrays.copyOf(accountOffsets, accountIds.size());
+
+            int[] sortedDays = new int[size];
+            byte[] sortedProviders = new byte[size];
+            long[] sortedCosts = new long[size];
+            long[] sortedExtCosts = new long[size];
+
+            for (int row = 0; row < size; row++) {
+                int target = next[accounts[row]]++;
+                sortedDays[target] = days[row];
+                sortedProviders[target] = providers[row];
+                sortedCosts[target] = costs[row];
+                sortedExtCosts[target] = extCosts[row];
+            }
+
+            // Accounts without any billing row in the cube are dropped
+            Map<Pair<Long, Long>, int[]> productAccounts = new HashMap<>();
+
+            productAccountNames.forEach((product, names) -> productAccounts.put(
+                    product,
+                    names.stream()
+                            .map(accountIds::get)
+                            .filter(Objects::nonNull)
+                            .mapToInt(Integer::intValue)
+                            .toArray()
+            ));
+
+            return new CostCube(
+                    this, accountOffsets, sortedDays, sortedProviders, sortedCosts, sortedExtCosts, productAccounts
+            );
+        }
+
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.multicloud.batch.util;
+
+import java.math.BigDecimal;
+
+/**
+ * Plain decimal parser for billing exports ("0", "12.34560000", "-0.5").
+ * Zero values return the shared {@link BigDecimal#ZERO} and values with up to 18 significant
+ * digits are built from a long, so only exotic input (exponents, very long numbers) falls back
+ * to {@link BigDecimal#BigDecimal(String)}.
+ */
+public final class DecimalParser {
+
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private DecimalParser() {
+    }
+
+    public static BigDecimal parse(String value) {
+
+        if (value == null || value.isEmpty()) {
+            return BigDecimal.ZERO;
+        }
+
+        int length = value.length();
+        int index = 0;
+        boolean negative = false;
+
+        char first = value.charAt(0);
+
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            index++;
+        }
+
+        long unscaled = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean dot = false;
+        boolean anyDigit = false;
+
+        for (; index < length; index++) {
+
+            char c = value.charAt(index);
+
+            if (c >= '0' && c <= '9') {
+
+                anyDigit = true;
+
+                // Leading zeros don't count against the long capacity
+                if (unscaled != 0 || c != '0') {
+
+                    if (++digits > MAX_LONG_DIGITS) {
+                        return slowParse(value);
+                    }
+
+                    unscaled = unscaled * 10 + (c - '0');
+                }
+
+                if (dot) {
+                    scale++;
+                }
+
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                return slowParse(value);
+            }
+
+        }
+
+        if (!anyDigit) {
+            return slowParse(value);
+        }
+
+        if (unscaled == 0) {
+            return BigDecimal.ZERO;
+        }
+
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, scale);
+    }
+
+    private static BigDecimal slowParse(String value) {
+        try {
+            return new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Error parsing BigDecimal: " + value, e);
+        }
+    }
+
+}
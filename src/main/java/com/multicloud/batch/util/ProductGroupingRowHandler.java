@@ -0,0 +1,65 @@
+package com.multicloud.batch.util;
+
+import com.multicloud.batch.dto.ProductDTO;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Turns a cursor ordered by product into one callback per product, only the rows of the
+ * current product are held in memory. Call {@link #finish()} once the query is done.
+ */
+public class ProductGroupingRowHandler<T> implements RowCallbackHandler {
+
+    private static final RowMapper<ProductDTO> PRODUCT_MAPPER = (rs, rowNum) -> new ProductDTO(
+            rs.getLong("product_id"),
+            rs.getString("product_name"),
+            rs.getLong("org_id"),
+            rs.getString("org_name"),
+            rs.getBoolean("internal"),
+            rs.getBoolean("exceptional")
+    );
+
+    private final RowMapper<T> rowMapper;
+    private final BiConsumer<ProductDTO, List<T>> consumer;
+
+    private ProductDTO current;
+    private List<T> rows = new ArrayList<>();
+    private int rowNum;
+
+    public ProductGroupingRowHandler(RowMapper<T> rowMapper, BiConsumer<ProductDTO, List<T>> consumer) {
+        this.rowMapper = rowMapper;
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void processRow(ResultSet rs) throws SQLException {
+
+        ProductDTO product = PRODUCT_MAPPER.mapRow(rs, rowNum);
+
+        if (current != null && !current.equals(product)) {
+            flush();
+        }
+
+        current = product;
+        rows.add(rowMapper.mapRow(rs, rowNum++));
+    }
+
+    public void finish() {
+        if (current != null) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        consumer.accept(current, rows);
+        current = null;
+        rows = new ArrayList<>();
+    }
+
+}
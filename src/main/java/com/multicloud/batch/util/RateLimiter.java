@@ -0,0 +1,47 @@
+package com.multicloud.batch.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces out callers to at most the given number of permits per second (no bursts).
+ * Each caller reserves the next free slot and sleeps until it, so waiting threads don't hold a lock.
+ */
+public final class RateLimiter {
+
+    private final long intervalNanos;
+    private long nextFreeSlot;
+
+    public RateLimiter(double permitsPerSecond) {
+
+        if (permitsPerSecond <= 0) {
+            throw new RuntimeException("Permits per second must be positive: " + permitsPerSecond);
+        }
+
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.nextFreeSlot = System.nanoTime();
+    }
+
+    public void acquire() {
+
+        long waitNanos;
+
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextFreeSlot);
+            nextFreeSlot = slot + intervalNanos;
+            waitNanos = slot - now;
+        }
+
+        if (waitNanos <= 0) {
+            return;
+        }
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a rate limit permit", e);
+        }
+    }
+
+}
@@ -7,6 +7,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -60,4 +61,14 @@ public class Util {
         return value == null ? "" : value;
     }
 
+    // Virtual threads for the blocking I/O (HTTP, S3, BigQuery) when spring.threads.virtual.enabled
+    public static ThreadFactory threadFactory(String namePrefix, boolean virtual) {
+
+        if (virtual) {
+            return Thread.ofVirtual().name(namePrefix, 0).factory();
+        }
+
+        return Thread.ofPlatform().name(namePrefix, 0).factory();
+    }
+
 }
@@ -0,0 +1,13 @@
+-- Change watermarks of the raw billing tables (BillingDataChange), written by every sync job
+-- and read by the incremental merge (batch_job.merge_billing.incremental)
+
+CREATE TABLE IF NOT EXISTS billing_data_changes
+(
+    id             BIGINT       NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    cloud_provider VARCHAR(100) NOT NULL,
+    usage_date     DATE         NOT NULL,
+    changed_at     DATETIME(6)  NOT NULL,
+    merged_at      DATETIME(6),
+    CONSTRAINT idx_uq_billing_data_changes UNIQUE (cloud_provider, usage_date),
+    INDEX idx_changed_at_billing_data_changes (changed_at)
+);
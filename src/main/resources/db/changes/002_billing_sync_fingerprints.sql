@@ -0,0 +1,16 @@
+-- Per-day content fingerprints of the sync jobs (BillingSyncFingerprint), used when batch_job.skip_unchanged
+-- is enabled. The entity is validated at startup either way.
+
+CREATE TABLE IF NOT EXISTS billing_sync_fingerprints
+(
+    id             BIGINT       NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    cloud_provider VARCHAR(100) NOT NULL,
+    source         VARCHAR(150) NOT NULL,
+    internal       BOOLEAN      NOT NULL,
+    billing_month  DATE         NOT NULL,
+    usage_date     DATE         NOT NULL,
+    fingerprint    VARCHAR(64)  NOT NULL,
+    synced_at      DATETIME(6)  NOT NULL,
+    CONSTRAINT idx_uq_billing_sync_fingerprints UNIQUE (cloud_provider, source, internal, billing_month, usage_date),
+    INDEX idx_usage_date_billing_sync_fingerprints (cloud_provider, usage_date)
+);
@@ -0,0 +1,13 @@
+-- Volume of the last successful run of a sync range (row_count, duration_ms), read by the partition sizing
+
+ALTER TABLE aws_data_sync_histories
+    ADD COLUMN IF NOT EXISTS row_count   BIGINT AFTER fail_count,
+    ADD COLUMN IF NOT EXISTS duration_ms BIGINT AFTER row_count;
+
+ALTER TABLE gcp_data_sync_histories
+    ADD COLUMN IF NOT EXISTS row_count   BIGINT AFTER fail_count,
+    ADD COLUMN IF NOT EXISTS duration_ms BIGINT AFTER row_count;
+
+ALTER TABLE huawei_data_sync_histories
+    ADD COLUMN IF NOT EXISTS row_count   BIGINT AFTER fail_count,
+    ADD COLUMN IF NOT EXISTS duration_ms BIGINT AFTER row_count;
@@ -0,0 +1,129 @@
+package com.multicloud.batch.dao.huawei;
+
+import com.multicloud.batch.dao.huawei.payload.HuaweiBillingGroup;
+import com.multicloud.batch.model.HuaweiBillingDailyCost;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HuaweiCostAggregatorTest {
+
+    @Test
+    void matchesMapGrouping() {
+
+        List<HuaweiCostFixture.Row> rows = HuaweiCostFixture.rows(1, 20_000);
+
+        HuaweiCostAggregator aggregator = HuaweiCostFixture.aggregate(rows);
+
+        for (boolean internal : new boolean[]{true, false}) {
+            HuaweiCostFixture.assertSameCosts(HuaweiCostFixture.expected(rows, internal), costs(aggregator, internal));
+        }
+
+    }
+
+    @Test
+    void mergedPagesMatchMapGrouping() {
+
+        List<HuaweiCostFixture.Row> rows = HuaweiCostFixture.rows(2, 20_000);
+
+        // Pages of 1000 records, each decoded into its own aggregator and merged into the day's
+        HuaweiCostAggregator day = new HuaweiCostAggregator();
+
+        for (int from = 0; from < rows.size(); from += 1000) {
+            day.merge(HuaweiCostFixture.aggregate(rows.subList(from, from + 1000)));
+        }
+
+        HuaweiCostFixture.assertSameCosts(HuaweiCostFixture.expected(rows, true), costs(day, true));
+    }
+
+    @Test
+    void groupsComeInGroupOrder() {
+
+        HuaweiCostAggregator aggregator = HuaweiCostFixture.aggregate(HuaweiCostFixture.rows(3, 5_000));
+
+        List<HuaweiBillingGroup> groups = new ArrayList<>();
+        aggregator.forEachSorted(true, (group, cost) -> groups.add(group));
+
+        assertEquals(aggregator.size(), groups.size());
+
+        for (int i = 1; i < groups.size(); i++) {
+            assertTrue(groups.get(i - 1).compareTo(groups.get(i)) < 0, "group " + i);
+        }
+
+    }
+
+    @Test
+    void amountsAreRoundedToTheColumnScale() {
+
+        HuaweiCostAggregator aggregator = new HuaweiCostAggregator();
+        Object[] dimensions = dimensions("sku");
+        String[] names = new String[HuaweiCostAggregator.NAMES];
+
+        aggregator.add(dimensions, names, new BigDecimal("0.000000005"), new BigDecimal("1.123456784"), null);
+        aggregator.add(dimensions, names, new BigDecimal("0.000000005"), null, new BigDecimal("-2"));
+
+        HuaweiBillingDailyCost cost = costs(aggregator, true).getFirst();
+
+        assertEquals(new BigDecimal("0.00000002"), cost.getConsumeAmount());
+        assertEquals(new BigDecimal("1.12345678"), cost.getDebtAmount());
+        assertEquals(new BigDecimal("-2.00000000"), cost.getOfficialAmount());
+    }
+
+    @Test
+    void exhaustedCodeSpaceFails() {
+
+        HuaweiCostAggregator aggregator = new HuaweiCostAggregator();
+        String[] names = new String[HuaweiCostAggregator.NAMES];
+
+        // 2^21 codes per dictionary: every group adds 6 new descriptive values to the names dictionary
+        int codes = 1 << 21;
+        int fullGroups = codes / HuaweiCostAggregator.NAMES;
+
+        for (int group = 0; group < fullGroups; group++) {
+            aggregator.add(dimensions("sku-" + group), names(names, group), BigDecimal.ONE, null, null);
+        }
+
+        // The last 2 codes fit, the 3rd name of the next group doesn't
+        RuntimeException e = assertThrows(
+                RuntimeException.class,
+                () -> aggregator.add(
+                        dimensions("sku-" + fullGroups), names(names, fullGroups), BigDecimal.ONE, null, null
+                )
+        );
+
+        assertTrue(e.getMessage().startsWith("Too many distinct Huawei billing values"), e.getMessage());
+    }
+
+    private static List<HuaweiBillingDailyCost> costs(HuaweiCostAggregator aggregator, boolean internal) {
+
+        List<HuaweiBillingDailyCost> costs = new ArrayList<>();
+        aggregator.forEachSorted(internal, (group, cost) -> costs.add(cost));
+
+        return costs;
+    }
+
+    private static Object[] dimensions(String skuCode) {
+
+        Object[] dimensions = new Object[HuaweiCostAggregator.DIMENSIONS];
+
+        dimensions[HuaweiCostAggregator.BILL_DATE] = "2025-06-01";
+        dimensions[HuaweiCostAggregator.CYCLE] = "2025-06";
+        dimensions[HuaweiCostAggregator.SKU_CODE] = skuCode;
+
+        return dimensions;
+    }
+
+    private static String[] names(String[] names, int group) {
+
+        for (int i = 0; i < names.length; i++) {
+            names[i] = Integer.toString(group * names.length + i, 36);
+        }
+
+        return names;
+    }
+
+}
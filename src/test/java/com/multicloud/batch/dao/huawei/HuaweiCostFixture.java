@@ -0,0 +1,203 @@
+package com.multicloud.batch.dao.huawei;
+
+import com.multicloud.batch.dao.huawei.payload.HuaweiBillingGroup;
+import com.multicloud.batch.model.HuaweiBillingDailyCost;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Random res-records and the grouping the Huawei sync did before {@link HuaweiCostAggregator}: a map of
+ * {@link HuaweiBillingGroup} to the first record's fields, with the amounts summed as BigDecimals.
+ */
+final class HuaweiCostFixture {
+
+    record Row(Object[] dimensions, String[] names, BigDecimal consumeAmount, BigDecimal debtAmount,
+               BigDecimal officialAmount) {
+    }
+
+    private HuaweiCostFixture() {
+    }
+
+    /**
+     * Values come from small pools (nulls included), so groups repeat. Amounts have at most 8 decimals,
+     * the scale of the cost columns.
+     */
+    static List<Row> rows(long seed, int count) {
+
+        Random random = new Random(seed);
+        List<Row> rows = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+
+            Object[] dimensions = new Object[HuaweiCostAggregator.DIMENSIONS];
+
+            dimensions[HuaweiCostAggregator.BILL_DATE] = "2025-06-0" + (1 + random.nextInt(3));
+            dimensions[HuaweiCostAggregator.CYCLE] = random.nextInt(10) == 0 ? "2025-05" : "2025-06";
+            dimensions[HuaweiCostAggregator.PAYER_ACCOUNT_ID] = pick(random, "payer-1", "payer-2");
+            dimensions[HuaweiCostAggregator.CUSTOMER_ID] = pick(random, "customer-1", "customer-2", "customer-3", null);
+            dimensions[HuaweiCostAggregator.ENTERPRISE_PROJECT_ID] = pick(random, "0", "project-1", null);
+            dimensions[HuaweiCostAggregator.CLOUD_SERVICE_TYPE] =
+                    pick(random, "hws.service.type.ec2", "hws.service.type.obs");
+            dimensions[HuaweiCostAggregator.SKU_CODE] = pick(random, "s6.large.2", "s6.xlarge.2", "obs.standard", "");
+            dimensions[HuaweiCostAggregator.RESOURCE_TYPE_CODE] = pick(random, "hws.resource.type.vm", null);
+            dimensions[HuaweiCostAggregator.REGION] = pick(random, "ap-southeast-1", "eu-west-101");
+            dimensions[HuaweiCostAggregator.CHARGE_MODE] = pick(random, 1, 3, 10, null);
+            dimensions[HuaweiCostAggregator.BILL_TYPE] = pick(random, 1, 2, null);
+
+            String[] names = new String[HuaweiCostAggregator.NAMES];
+
+            for (int n = 0; n < names.length; n++) {
+                names[n] = random.nextInt(5) == 0 ? null : "name-" + n + "-" + random.nextInt(3);
+            }
+
+            rows.add(new Row(dimensions, names, amount(random), amount(random), amount(random)));
+        }
+
+        return rows;
+    }
+
+    static HuaweiCostAggregator aggregate(List<Row> rows) {
+
+        HuaweiCostAggregator aggregator = new HuaweiCostAggregator();
+
+        for (Row row : rows) {
+            aggregator.add(row.dimensions(), row.names(), row.consumeAmount(), row.debtAmount(), row.officialAmount());
+        }
+
+        return aggregator;
+    }
+
+    /**
+     * The costs as the map based grouping made them, in {@link HuaweiBillingGroup} order.
+     */
+    static List<HuaweiBillingDailyCost> expected(List<Row> rows, boolean internal) {
+
+        Map<HuaweiBillingGroup, HuaweiBillingDailyCost> data = new TreeMap<>();
+
+        for (Row row : rows) {
+
+            Object[] d = row.dimensions();
+
+            HuaweiBillingGroup group = new HuaweiBillingGroup(
+                    LocalDate.parse((String) d[HuaweiCostAggregator.BILL_DATE]),
+                    YearMonth.parse((String) d[HuaweiCostAggregator.CYCLE]).atDay(1),
+                    nullToEmpty(d[HuaweiCostAggregator.PAYER_ACCOUNT_ID]),
+                    nullToEmpty(d[HuaweiCostAggregator.CUSTOMER_ID]),
+                    nullToEmpty(d[HuaweiCostAggregator.ENTERPRISE_PROJECT_ID]),
+                    nullToEmpty(d[HuaweiCostAggregator.CLOUD_SERVICE_TYPE]),
+                    nullToEmpty(d[HuaweiCostAggregator.SKU_CODE]),
+                    nullToEmpty(d[HuaweiCostAggregator.RESOURCE_TYPE_CODE]),
+                    nullToEmpty(d[HuaweiCostAggregator.REGION]),
+                    (Integer) d[HuaweiCostAggregator.CHARGE_MODE],
+                    (Integer) d[HuaweiCostAggregator.BILL_TYPE]
+            );
+
+            HuaweiBillingDailyCost cost = data.get(group);
+
+            if (cost == null) {
+
+                String[] names = row.names();
+
+                data.put(group, HuaweiBillingDailyCost.builder()
+                        .billDate(group.billDate())
+                        .billingMonth(group.billingMonth())
+                        .payerAccountId(group.payerAccountId())
+                        .customerId(group.customerId())
+                        .enterpriseProjectId(group.enterpriseProjectId())
+                        .enterpriseProjectName(nullToEmpty(names[HuaweiCostAggregator.ENTERPRISE_PROJECT_NAME]))
+                        .cloudServiceType(group.cloudServiceType())
+                        .cloudServiceTypeName(nullToEmpty(names[HuaweiCostAggregator.CLOUD_SERVICE_TYPE_NAME]))
+                        .skuCode(group.skuCode())
+                        .productSpecDesc(nullToEmpty(names[HuaweiCostAggregator.PRODUCT_SPEC_DESC]))
+                        .resourceTypeCode(group.resourceTypeCode())
+                        .resourceTypeName(nullToEmpty(names[HuaweiCostAggregator.RESOURCE_TYPE_NAME]))
+                        .resourceName(nullToEmpty(names[HuaweiCostAggregator.RESOURCE_NAME]))
+                        .region(group.region())
+                        .regionName(nullToEmpty(names[HuaweiCostAggregator.REGION_NAME]))
+                        .chargeMode(group.chargeMode())
+                        .billType(group.billType())
+                        .consumeAmount(internal ? zeroIfNull(row.consumeAmount()) : BigDecimal.ZERO)
+                        .debtAmount(internal ? zeroIfNull(row.debtAmount()) : BigDecimal.ZERO)
+                        .officialAmount(internal ? zeroIfNull(row.officialAmount()) : BigDecimal.ZERO)
+                        .extConsumeAmount(internal ? BigDecimal.ZERO : zeroIfNull(row.consumeAmount()))
+                        .extDebtAmount(internal ? BigDecimal.ZERO : zeroIfNull(row.debtAmount()))
+                        .extOfficialAmount(internal ? BigDecimal.ZERO : zeroIfNull(row.officialAmount()))
+                        .build());
+
+                continue;
+            }
+
+            if (internal) {
+                cost.setConsumeAmount(cost.getConsumeAmount().add(zeroIfNull(row.consumeAmount())));
+                cost.setDebtAmount(cost.getDebtAmount().add(zeroIfNull(row.debtAmount())));
+                cost.setOfficialAmount(cost.getOfficialAmount().add(zeroIfNull(row.officialAmount())));
+            } else {
+                cost.setExtConsumeAmount(cost.getExtConsumeAmount().add(zeroIfNull(row.consumeAmount())));
+                cost.setExtDebtAmount(cost.getExtDebtAmount().add(zeroIfNull(row.debtAmount())));
+                cost.setExtOfficialAmount(cost.getExtOfficialAmount().add(zeroIfNull(row.officialAmount())));
+            }
+        }
+
+        return new ArrayList<>(data.values());
+    }
+
+    /**
+     * Amounts are compared by value, stored with the scale of the cost columns either way.
+     */
+    static void assertSameCosts(List<HuaweiBillingDailyCost> expected, List<HuaweiBillingDailyCost> actual) {
+
+        assertEquals(expected.size(), actual.size(), "groups");
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(fields(expected.get(i)), fields(actual.get(i)), "group " + i);
+        }
+
+    }
+
+    private static List<Object> fields(HuaweiBillingDailyCost cost) {
+
+        return Arrays.asList(
+                cost.getBillDate(), cost.getBillingMonth(), cost.getPayerAccountId(), cost.getCustomerId(),
+                cost.getEnterpriseProjectId(), cost.getEnterpriseProjectName(), cost.getCloudServiceType(),
+                cost.getCloudServiceTypeName(), cost.getSkuCode(), cost.getProductSpecDesc(),
+                cost.getResourceTypeCode(), cost.getResourceTypeName(), cost.getResourceName(), cost.getRegion(),
+                cost.getRegionName(), cost.getChargeMode(), cost.getBillType(),
+                scaled(cost.getConsumeAmount()), scaled(cost.getDebtAmount()), scaled(cost.getOfficialAmount()),
+                scaled(cost.getExtConsumeAmount()), scaled(cost.getExtDebtAmount()),
+                scaled(cost.getExtOfficialAmount())
+        );
+    }
+
+    private static BigDecimal scaled(BigDecimal amount) {
+        return amount.setScale(8, RoundingMode.UNNECESSARY);
+    }
+
+    private static BigDecimal amount(Random random) {
+
+        if (random.nextInt(8) == 0) {
+            return null;
+        }
+
+        return BigDecimal.valueOf(random.nextLong(-1_000_000_000L, 1_000_000_000L), random.nextInt(9));
+    }
+
+    @SafeVarargs
+    private static <T> T pick(Random random, T... values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String nullToEmpty(Object value) {
+        return value == null ? "" : (String) value;
+    }
+
+    private static BigDecimal zeroIfNull(BigDecimal value) {
+        return value == null ? BigDecimal.ZERO : value;
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.multicloud.batch.dao.huawei;
+
+import com.multicloud.batch.model.HuaweiBillingDailyCost;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HuaweiCostSpillTest {
+
+    @Test
+    void mergedRunsMatchMapGrouping() {
+
+        List<HuaweiCostFixture.Row> rows = HuaweiCostFixture.rows(4, 20_000);
+
+        // A budget below a single page: every page is spilled as its own run
+        try (HuaweiCostSpill spill = spill(rows, 1)) {
+
+            assertEquals(20, spill.runs());
+
+            for (boolean internal : new boolean[]{true, false}) {
+                HuaweiCostFixture.assertSameCosts(HuaweiCostFixture.expected(rows, internal), costs(spill, internal));
+            }
+
+        }
+
+    }
+
+    @Test
+    void spilledAndInMemoryAggregationsAreTheSame() {
+
+        List<HuaweiCostFixture.Row> rows = HuaweiCostFixture.rows(5, 20_000);
+
+        // About 4 pages fit in the budget
+        long budgetBytes = HuaweiCostFixture.aggregate(rows.subList(0, 4_000)).estimatedBytes();
+
+        try (HuaweiCostSpill inMemory = spill(rows, Long.MAX_VALUE);
+             HuaweiCostSpill spilled = spill(rows, budgetBytes)) {
+
+            assertEquals(0, inMemory.runs());
+            assertTrue(spilled.runs() > 1, "runs: " + spilled.runs());
+
+            HuaweiCostFixture.assertSameCosts(costs(inMemory, true), costs(spilled, true));
+        }
+
+    }
+
+    @Test
+    void firstRunKeepsTheDescriptiveFields() {
+
+        Object[] dimensions = new Object[HuaweiCostAggregator.DIMENSIONS];
+        dimensions[HuaweiCostAggregator.BILL_DATE] = "2025-06-01";
+        dimensions[HuaweiCostAggregator.CYCLE] = "2025-06";
+
+        try (HuaweiCostSpill spill = new HuaweiCostSpill(1)) {
+
+            for (String name : List.of("first", "second", "third")) {
+
+                HuaweiCostAggregator page = new HuaweiCostAggregator();
+                String[] names = new String[HuaweiCostAggregator.NAMES];
+                names[HuaweiCostAggregator.RESOURCE_NAME] = name;
+
+                page.add(dimensions, names, BigDecimal.ONE, BigDecimal.TEN, null);
+                spill.merge(page);
+            }
+
+            assertEquals(3, spill.runs());
+
+            List<HuaweiBillingDailyCost> costs = costs(spill, true);
+
+            assertEquals(1, costs.size());
+            assertEquals("first", costs.getFirst().getResourceName());
+            assertEquals(new BigDecimal("3.00000000"), costs.getFirst().getConsumeAmount());
+            assertEquals(new BigDecimal("30.00000000"), costs.getFirst().getDebtAmount());
+        }
+
+    }
+
+    @Test
+    void canBeReadMoreThanOnce() {
+
+        List<HuaweiCostFixture.Row> rows = HuaweiCostFixture.rows(6, 5_000);
+
+        try (HuaweiCostSpill spill = spill(rows, 1)) {
+            HuaweiCostFixture.assertSameCosts(costs(spill, false), costs(spill, false));
+        }
+
+    }
+
+    @Test
+    void closeDeletesTheRuns() {
+
+        HuaweiCostSpill spill = spill(HuaweiCostFixture.rows(7, 5_000), 1);
+
+        costs(spill, true);
+
+        @SuppressWarnings("unchecked")
+        List<Path> runs = new ArrayList<>((List<Path>) ReflectionTestUtils.getField(spill, "runs"));
+
+        assertEquals(5, runs.size());
+        runs.forEach(run -> assertTrue(Files.exists(run), run.toString()));
+
+        spill.close();
+
+        assertEquals(0, spill.runs());
+        runs.forEach(run -> assertFalse(Files.exists(run), run.toString()));
+    }
+
+    /**
+     * The rows merged page by page (1000 records), like the Huawei sync does.
+     */
+    private static HuaweiCostSpill spill(List<HuaweiCostFixture.Row> rows, long budgetBytes) {
+
+        HuaweiCostSpill spill = new HuaweiCostSpill(budgetBytes);
+
+        for (int from = 0; from < rows.size(); from += 1000) {
+            spill.merge(HuaweiCostFixture.aggregate(rows.subList(from, Math.min(from + 1000, rows.size()))));
+        }
+
+        return spill;
+    }
+
+    private static List<HuaweiBillingDailyCost> costs(HuaweiCostSpill spill, boolean internal) {
+
+        List<HuaweiBillingDailyCost> costs = new ArrayList<>();
+        spill.forEachSorted(internal, (group, cost) -> costs.add(cost));
+
+        return costs;
+    }
+
+}
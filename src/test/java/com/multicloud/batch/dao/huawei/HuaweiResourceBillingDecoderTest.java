@@ -0,0 +1,142 @@
+package com.multicloud.batch.dao.huawei;
+
+import com.multicloud.batch.dao.huawei.payload.HuaweiBillingGroup;
+import com.multicloud.batch.model.HuaweiBillingDailyCost;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HuaweiResourceBillingDecoderTest {
+
+    private static final String RECORD = """
+            {
+                "cycle": "2025-06",
+                "bill_date": "%s",
+                "bill_type": 1,
+                "customer_id": "customer-1",
+                "region": "ap-southeast-1",
+                "region_name": "AP-Singapore",
+                "cloud_service_type": "hws.service.type.ec2",
+                "resource_Type_code": "hws.resource.type.vm",
+                "cloud_service_type_name": "Elastic Cloud Server",
+                "resource_type_name": "ECS",
+                "res_instance_id": "instance-1",
+                "resource_name": "web-1",
+                "resource_tag": null,
+                "sku_code": "s6.large.2",
+                "enterprise_project_id": "0",
+                "enterprise_project_name": "default",
+                "charge_mode": %s,
+                "consume_amount": %s,
+                "cash_amount": 9.99,
+                "debt_amount": %s,
+                "official_amount": %s,
+                "az_code_infos": [{"az_code": "ap-southeast-1a"}, {"az_code": "ap-southeast-1b"}],
+                "product_spec_desc": "General Computing | 2 vCPUs | 4 GiB",
+                "payer_account_id": "payer-1",
+                "extend_params": {"nested": {"deeper": [1, 2, {"x": "y"}]}}
+            }
+            """;
+
+    @Test
+    void decodesAndAggregatesTheRecords() throws IOException {
+
+        String body = """
+                {
+                    "currency": "USD",
+                    "monthly_records": [%s, %s, %s],
+                    "total_count": 2500
+                }
+                """.formatted(
+                record("2025-06-01", "1", "1.5", "0.25", "\"2.00000001\""),
+                record("2025-06-01", "1", "\"0.5\"", "null", "1"),
+                record("2025-06-02", "null", "\" \"", "0", "3.123")
+        );
+
+        HuaweiResourceBillingDecoder.Page page = HuaweiResourceBillingDecoder.decode(stream(body));
+
+        assertEquals(2500, page.totalCount());
+        assertEquals(3, page.records());
+        assertEquals(2, page.groups().size());
+
+        List<HuaweiBillingGroup> groups = new ArrayList<>();
+        List<HuaweiBillingDailyCost> costs = new ArrayList<>();
+
+        page.groups().forEachSorted(true, (group, cost) -> {
+            groups.add(group);
+            costs.add(cost);
+        });
+
+        assertEquals(
+                new HuaweiBillingGroup(
+                        LocalDate.of(2025, 6, 1), LocalDate.of(2025, 6, 1), "payer-1", "customer-1", "0",
+                        "hws.service.type.ec2", "s6.large.2", "hws.resource.type.vm", "ap-southeast-1", 1, 1
+                ),
+                groups.get(0)
+        );
+        assertNull(groups.get(1).chargeMode());
+
+        HuaweiBillingDailyCost first = costs.get(0);
+
+        assertEquals(new BigDecimal("2.00000000"), first.getConsumeAmount());
+        assertEquals(new BigDecimal("0.25000000"), first.getDebtAmount());
+        assertEquals(new BigDecimal("3.00000001"), first.getOfficialAmount());
+        assertEquals("default", first.getEnterpriseProjectName());
+        assertEquals("Elastic Cloud Server", first.getCloudServiceTypeName());
+        assertEquals("General Computing | 2 vCPUs | 4 GiB", first.getProductSpecDesc());
+        assertEquals("ECS", first.getResourceTypeName());
+        assertEquals("web-1", first.getResourceName());
+        assertEquals("AP-Singapore", first.getRegionName());
+
+        // A blank amount string counts as no amount
+        HuaweiBillingDailyCost second = costs.get(1);
+
+        assertEquals(new BigDecimal("0E-8"), second.getConsumeAmount());
+        assertEquals(new BigDecimal("3.12300000"), second.getOfficialAmount());
+    }
+
+    @Test
+    void emptyPage() throws IOException {
+
+        HuaweiResourceBillingDecoder.Page page = HuaweiResourceBillingDecoder.decode(
+                stream("{\"total_count\": 0, \"monthly_records\": []}")
+        );
+
+        assertEquals(0, page.totalCount());
+        assertEquals(0, page.records());
+        assertEquals(0, page.groups().size());
+    }
+
+    @Test
+    void bodyWithoutRecordsFails() {
+
+        assertThrows(
+                RuntimeException.class,
+                () -> HuaweiResourceBillingDecoder.decode(stream("{\"total_count\": 10, \"error_code\": \"CBC.0150\"}"))
+        );
+        assertThrows(
+                RuntimeException.class,
+                () -> HuaweiResourceBillingDecoder.decode(stream("{\"monthly_records\": null}"))
+        );
+        assertThrows(RuntimeException.class, () -> HuaweiResourceBillingDecoder.decode(stream("[]")));
+    }
+
+    private static String record(String billDate, String chargeMode, String consumeAmount, String debtAmount,
+                                 String officialAmount) {
+        return RECORD.formatted(billDate, chargeMode, consumeAmount, debtAmount, officialAmount);
+    }
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,327 @@
+package com.multicloud.batch.job;
+
+import com.multicloud.batch.dto.SyncRangeDTO;
+import com.multicloud.batch.dto.SyncSourceView;
+import com.multicloud.batch.repository.DataSyncHistoryQueries;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Ranges and run order of {@link PartitionPlanner#plan(SyncPartitionSpec)}. The window is set by the startDate
+ * (20 days up to today), the expected ranges come from {@link DateRangePartition} with the expected interval.
+ */
+class PartitionPlannerTest {
+
+    private static final String JOB_NAME = "test_job";
+
+    private static final long WINDOW_DAYS = 20;
+
+    private static final LocalDate START_DATE = LocalDate.now().minusDays(WINDOW_DAYS - 1);
+
+    private record Source(String source, Long rowCount, Long durationMs, Long days) implements SyncSourceView {
+
+        @Override
+        public String getSource() {
+            return source;
+        }
+
+        @Override
+        public Long getRowCount() {
+            return rowCount;
+        }
+
+        @Override
+        public Long getDurationMs() {
+            return durationMs;
+        }
+
+        @Override
+        public Long getDays() {
+            return days;
+        }
+
+    }
+
+    private record FakeHistory(List<SyncSourceView> sources, List<SyncRangeDTO> retries)
+            implements DataSyncHistoryQueries {
+
+        @Override
+        public List<SyncSourceView> findSyncSources(String jobName, LocalDateTime since) {
+            return sources;
+        }
+
+        @Override
+        public List<SyncRangeDTO> findRetryRanges(String jobName, int maxFailCount) {
+            return retries;
+        }
+
+    }
+
+    @Test
+    void withoutHistoryTheJobIntervalIsUsed() {
+
+        List<CustomDateRange> ranges = ranges(planner(true).plan(spec(history(List.of(), List.of()), 3)));
+
+        assertEquals(DateRangePartition.getPartitions(WINDOW_DAYS, 3), ranges);
+    }
+
+    @Test
+    void busySourcesAreSizedByTheRowBudget() {
+
+        // 100000 rows per day: 250000 / 100000 = 2 days
+        DataSyncHistoryQueries history = history(List.of(new Source("a", 1_000_000L, 1_000L, 10L)), List.of());
+
+        List<CustomDateRange> ranges = ranges(planner(true).plan(spec(history, 3)));
+
+        assertEquals(DateRangePartition.getPartitions(WINDOW_DAYS, 2), ranges);
+    }
+
+    @Test
+    void slowSourcesAreSizedByTheTargetDuration() {
+
+        // 150000 ms per day: 600000 / 150000 = 4 days, the rows would allow 25
+        DataSyncHistoryQueries history = history(List.of(new Source("a", 100_000L, 1_500_000L, 10L)), List.of());
+
+        List<CustomDateRange> ranges = ranges(planner(true).plan(spec(history, 3)));
+
+        assertEquals(DateRangePartition.getPartitions(WINDOW_DAYS, 4), ranges);
+    }
+
+    @Test
+    void quietSourcesGetUpToMaxDays() {
+
+        // No recorded volume: a single range per month of the window
+        DataSyncHistoryQueries history = history(List.of(new Source("a", 0L, 0L, 10L)), List.of());
+
+        List<CustomDateRange> ranges = ranges(planner(true).plan(spec(history, 3)));
+
+        assertEquals(DateRangePartition.getPartitions(WINDOW_DAYS, Long.MAX_VALUE), ranges);
+    }
+
+    @Test
+    void busiestSourcesGoDownToSingleDays() {
+
+        DataSyncHistoryQueries history = history(List.of(new Source("a", 10_000_000L, 1_000L, 10L)), List.of());
+
+        List<CustomDateRange> ranges = ranges(planner(true).plan(spec(history, 3)));
+
+        assertEquals(WINDOW_DAYS, ranges.size());
+        assertEquals(DateRangePartition.getPartitions(WINDOW_DAYS, 1), ranges);
+    }
+
+    @Test
+    void historyWithoutDaysUsesTheJobInterval() {
+
+        DataSyncHistoryQueries history = history(List.of(new Source("a", 0L, 0L, 0L)), List.of());
+
+        List<CustomDateRange> ranges = ranges(planner(true).plan(spec(history, 3)));
+
+        assertEquals(DateRangePartition.getPartitions(WINDOW_DAYS, 3), ranges);
+    }
+
+    @Test
+    void disabledSizingUsesTheJobInterval() {
+
+        DataSyncHistoryQueries history = history(List.of(new Source("a", 1_000_000L, 1_000L, 10L)), List.of());
+
+        List<CustomDateRange> ranges = ranges(planner(false).plan(spec(history, 3)));
+
+        assertEquals(DateRangePartition.getPartitions(WINDOW_DAYS, 3), ranges);
+    }
+
+    @Test
+    void wholeMonthsIgnoreTheVolume() {
+
+        DataSyncHistoryQueries history = history(List.of(new Source("a", 10_000_000L, 1_000L, 10L)), List.of());
+
+        SyncPartitionSpec spec = SyncPartitionSpec.builder()
+                .jobName(JOB_NAME)
+                .history(history)
+                .sources(Set.of("a"))
+                .interval(1)
+                .wholeMonths(true)
+                .startDate(START_DATE)
+                .build();
+
+        List<CustomDateRange> ranges = ranges(planner(true).plan(spec));
+
+        assertEquals(DateRangePartition.getPartitions(WINDOW_DAYS, Long.MAX_VALUE), ranges);
+        ranges.forEach(range -> assertEquals(range.month(), range.start().getMonthValue(), range.toString()));
+    }
+
+    @Test
+    void retriesComeFirstThenTheNewestRanges() {
+
+        LocalDate old = START_DATE.minusMonths(3).withDayOfMonth(1);
+
+        SyncRangeDTO older = new SyncRangeDTO("a", old, old.plusDays(1));
+        SyncRangeDTO newer = new SyncRangeDTO("a", old.plusDays(5), old.plusDays(5));
+
+        List<CustomDateRange> ranges = ranges(
+                planner(true).plan(spec(history(List.of(), List.of(older, newer)), 3))
+        );
+
+        List<CustomDateRange> expected = new ArrayList<>();
+        expected.add(range(newer));
+        expected.add(range(older));
+        expected.addAll(DateRangePartition.getPartitions(WINDOW_DAYS, 3));
+
+        assertEquals(expected, ranges);
+    }
+
+    @Test
+    void coveredRetriesAreLeftToThePlannedRange() {
+
+        List<CustomDateRange> planned = DateRangePartition.getPartitions(WINDOW_DAYS, 3);
+        CustomDateRange oldest = planned.getLast();
+
+        SyncRangeDTO retry = new SyncRangeDTO("a", oldest.start(), oldest.start());
+
+        List<CustomDateRange> ranges = ranges(
+                planner(true).plan(spec(history(List.of(), List.of(retry)), 3))
+        );
+
+        assertEquals(planned, ranges);
+    }
+
+    @Test
+    void overlappingRetriesAreMergedAndComeFirst() {
+
+        List<CustomDateRange> planned = DateRangePartition.getPartitions(WINDOW_DAYS, 3);
+
+        // Two adjacent ranges of the same month (the newer one first)
+        int i = 0;
+
+        while (planned.get(i).month() != planned.get(i + 1).month()) {
+            i++;
+        }
+
+        CustomDateRange newer = planned.get(i);
+        CustomDateRange older = planned.get(i + 1);
+
+        // Overlaps both
+        SyncRangeDTO retry = new SyncRangeDTO("a", older.end(), newer.start());
+
+        List<CustomDateRange> ranges = ranges(
+                planner(true).plan(spec(history(List.of(), List.of(retry)), 3))
+        );
+
+        List<CustomDateRange> expected = new ArrayList<>(planned);
+        expected.remove(newer);
+        expected.remove(older);
+        expected.addFirst(new CustomDateRange(older.start(), newer.end(), newer.year(), newer.month()));
+
+        assertEquals(expected, ranges);
+    }
+
+    @Test
+    void retriesOfOtherSourcesAreIgnored() {
+
+        LocalDate old = START_DATE.minusMonths(3).withDayOfMonth(1);
+
+        SyncRangeDTO retry = new SyncRangeDTO("removed", old, old);
+
+        List<CustomDateRange> ranges = ranges(
+                planner(true).plan(spec(history(List.of(), List.of(retry)), 3))
+        );
+
+        assertEquals(DateRangePartition.getPartitions(WINDOW_DAYS, 3), ranges);
+    }
+
+    @Test
+    void eachSourceIsSizedByItsOwnVolume() {
+
+        DataSyncHistoryQueries history = history(
+                List.of(new Source("busy", 1_000_000L, 1_000L, 10L), new Source("quiet", 0L, 0L, 10L)),
+                List.of()
+        );
+
+        SyncPartitionSpec spec = SyncPartitionSpec.builder()
+                .jobName(JOB_NAME)
+                .history(history)
+                .sources(Set.of("busy", "quiet"))
+                .sourceKey("table")
+                .sourceValue(source -> "table_" + source)
+                .interval(3)
+                .startDate(START_DATE)
+                .build();
+
+        Map<String, ExecutionContext> partitions = planner(true).plan(spec);
+
+        List<CustomDateRange> busy = new ArrayList<>();
+        List<CustomDateRange> quiet = new ArrayList<>();
+
+        for (int i = 1; i <= partitions.size(); i++) {
+
+            ExecutionContext executionContext = partitions.get("partition" + i);
+            CustomDateRange range = (CustomDateRange) executionContext.get("range");
+
+            assertEquals(i, executionContext.getInt("order"));
+
+            switch (executionContext.getString("table")) {
+                case "table_busy" -> busy.add(range);
+                case "table_quiet" -> quiet.add(range);
+                default -> fail(executionContext.getString("table"));
+            }
+        }
+
+        assertEquals(DateRangePartition.getPartitions(WINDOW_DAYS, 2), busy);
+        assertEquals(DateRangePartition.getPartitions(WINDOW_DAYS, Long.MAX_VALUE), quiet);
+    }
+
+    private static PartitionPlanner planner(boolean enabled) {
+
+        PartitionPlanner planner = new PartitionPlanner();
+
+        ReflectionTestUtils.setField(planner, "enabled", enabled);
+        ReflectionTestUtils.setField(planner, "rowBudget", 250_000L);
+        ReflectionTestUtils.setField(planner, "targetDurationMs", 600_000L);
+        ReflectionTestUtils.setField(planner, "maxDays", 31L);
+        ReflectionTestUtils.setField(planner, "historyDays", 30L);
+
+        return planner;
+    }
+
+    private static DataSyncHistoryQueries history(List<SyncSourceView> sources, List<SyncRangeDTO> retries) {
+        return new FakeHistory(sources, retries);
+    }
+
+    private static SyncPartitionSpec spec(DataSyncHistoryQueries history, long interval) {
+        return SyncPartitionSpec.builder()
+                .jobName(JOB_NAME)
+                .history(history)
+                .sources(Set.of("a"))
+                .interval(interval)
+                .startDate(START_DATE)
+                .build();
+    }
+
+    /**
+     * The ranges in their run order.
+     */
+    private static List<CustomDateRange> ranges(Map<String, ExecutionContext> partitions) {
+
+        List<CustomDateRange> ranges = new ArrayList<>();
+
+        for (int i = 1; i <= partitions.size(); i++) {
+            ranges.add((CustomDateRange) partitions.get("partition" + i).get("range"));
+        }
+
+        return ranges;
+    }
+
+    private static CustomDateRange range(SyncRangeDTO item) {
+        return new CustomDateRange(item.start(), item.end(), item.end().getYear(), item.end().getMonthValue());
+    }
+
+}
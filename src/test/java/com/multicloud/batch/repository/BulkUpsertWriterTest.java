@@ -0,0 +1,212 @@
+package com.multicloud.batch.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Rows per statement of {@link BulkUpsertWriter}, read back from the placeholders of the executed SQL.
+ */
+class BulkUpsertWriterTest {
+
+    private static final long GIGABYTE = 1024L * 1024 * 1024;
+
+    /**
+     * Records the rows of every executed statement, optionally taking some time per statement.
+     */
+    private static final class FakeJdbcTemplate extends JdbcTemplate {
+
+        private final Long maxAllowedPacket;
+        private final long statementMillis;
+        private final List<Integer> executedRows = new ArrayList<>();
+
+        private int columnCount;
+
+        private FakeJdbcTemplate(Long maxAllowedPacket, long statementMillis) {
+            this.maxAllowedPacket = maxAllowedPacket;
+            this.statementMillis = statementMillis;
+        }
+
+        @Override
+        public <T> T queryForObject(String sql, Class<T> requiredType) {
+
+            if (maxAllowedPacket == null) {
+                throw new DataAccessResourceFailureException("max_allowed_packet is not readable");
+            }
+
+            return requiredType.cast(maxAllowedPacket);
+        }
+
+        @Override
+        public <T> T execute(ConnectionCallback<T> action) {
+            try {
+                return action.doInConnection(connection());
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private Connection connection() {
+            return (Connection) Proxy.newProxyInstance(
+                    getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> method.getName().equals("prepareStatement")
+                            ? statement((String) args[0])
+                            : null
+            );
+        }
+
+        private PreparedStatement statement(String sql) {
+
+            int rows = (int) sql.chars().filter(c -> c == '?').count() / columnCount;
+
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+
+                        if (!method.getName().equals("executeUpdate")) {
+                            return null;
+                        }
+
+                        if (statementMillis > 0) {
+                            Thread.sleep(statementMillis);
+                        }
+
+                        executedRows.add(rows);
+
+                        return rows;
+                    }
+            );
+        }
+
+    }
+
+    @Test
+    void placeholderLimitCapsRows() {
+
+        FakeJdbcTemplate jdbcTemplate = new FakeJdbcTemplate(GIGABYTE, 0);
+        BulkUpsertWriter writer = writer(jdbcTemplate, 10_000, false, 250);
+
+        // 65535 / 100 = 655 rows
+        long affected = writer.write(statement(jdbcTemplate, 100, 1), rows(2_000));
+
+        assertEquals(List.of(655, 655, 655, 35), jdbcTemplate.executedRows);
+        assertEquals(2_000, affected);
+    }
+
+    @Test
+    void halfOfMaxAllowedPacketCapsRows() {
+
+        FakeJdbcTemplate jdbcTemplate = new FakeJdbcTemplate(1_000_000L, 0);
+        BulkUpsertWriter writer = writer(jdbcTemplate, 10_000, false, 250);
+
+        // 1000000 * 0.5 / 1000 bytes = 500 rows
+        writer.write(statement(jdbcTemplate, 10, 1_000), rows(1_200));
+
+        assertEquals(List.of(500, 500, 200), jdbcTemplate.executedRows);
+    }
+
+    @Test
+    void unreadableMaxAllowedPacketFallsBackToDefault() {
+
+        FakeJdbcTemplate jdbcTemplate = new FakeJdbcTemplate(null, 0);
+        BulkUpsertWriter writer = writer(jdbcTemplate, 10_000, false, 250);
+
+        // 16 MiB * 0.5 / 100000 bytes = 83 rows
+        writer.write(statement(jdbcTemplate, 10, 100_000), rows(100));
+
+        assertEquals(List.of(83, 17), jdbcTemplate.executedRows);
+    }
+
+    @Test
+    void slowStatementsShrinkDownToMinRows() {
+
+        FakeJdbcTemplate jdbcTemplate = new FakeJdbcTemplate(GIGABYTE, 5);
+        // Every statement takes more than twice the target
+        BulkUpsertWriter writer = writer(jdbcTemplate, 64, true, 1);
+
+        BulkUpsertWriter.UpsertStatement<Long> statement = statement(jdbcTemplate, 10, 1);
+
+        for (int i = 0; i < 4; i++) {
+            writer.write(statement, rows(64));
+        }
+
+        assertEquals(List.of(64, 32, 32, 16, 16, 16, 16, 16, 16, 16, 16), jdbcTemplate.executedRows);
+    }
+
+    @Test
+    void fastStatementsGrowUpToTheCap() {
+
+        FakeJdbcTemplate jdbcTemplate = new FakeJdbcTemplate(GIGABYTE, 0);
+        BulkUpsertWriter writer = writer(jdbcTemplate, 16, true, 10_000);
+
+        // 65535 / 1000 = 65 rows, growth is max(16, rows / 4) per statement
+        BulkUpsertWriter.UpsertStatement<Long> statement = statement(jdbcTemplate, 1_000, 1);
+
+        for (int i = 0; i < 6; i++) {
+            writer.write(statement, rows(65));
+        }
+
+        assertEquals(List.of(16, 16, 16, 16, 1, 32, 32, 1, 48, 17, 64, 1, 65, 65), jdbcTemplate.executedRows);
+    }
+
+    @Test
+    void capsBelowMinRowsWin() {
+
+        FakeJdbcTemplate jdbcTemplate = new FakeJdbcTemplate(GIGABYTE, 5);
+        BulkUpsertWriter writer = writer(jdbcTemplate, 500, true, 1);
+
+        // 65535 / 10000 = 6 rows, under MIN_ROWS and kept there when statements are slow
+        BulkUpsertWriter.UpsertStatement<Long> statement = statement(jdbcTemplate, 10_000, 1);
+
+        writer.write(statement, rows(12));
+        writer.write(statement, rows(12));
+
+        assertEquals(List.of(6, 6, 6, 6), jdbcTemplate.executedRows);
+    }
+
+    private static BulkUpsertWriter writer(JdbcTemplate jdbcTemplate, int initialRows, boolean adaptive,
+                                           long targetLatencyMs) {
+
+        BulkUpsertWriter writer = new BulkUpsertWriter(jdbcTemplate);
+
+        ReflectionTestUtils.setField(writer, "initialRows", initialRows);
+        ReflectionTestUtils.setField(writer, "adaptive", adaptive);
+        ReflectionTestUtils.setField(writer, "targetLatencyMs", targetLatencyMs);
+        ReflectionTestUtils.setField(writer, "packetRatio", 0.5);
+
+        return writer;
+    }
+
+    private static BulkUpsertWriter.UpsertStatement<Long> statement(FakeJdbcTemplate jdbcTemplate, int columnCount,
+                                                                    int estimatedRowBytes) {
+
+        jdbcTemplate.columnCount = columnCount;
+
+        return new BulkUpsertWriter.UpsertStatement<>(
+                "test_" + columnCount, "INSERT INTO test (id)", columnCount, "ON DUPLICATE KEY UPDATE id = id",
+                estimatedRowBytes,
+                (ps, offset, row) -> {
+                    for (int column = 1; column <= columnCount; column++) {
+                        ps.setLong(offset + column, row);
+                    }
+                }
+        );
+    }
+
+    private static List<Long> rows(int count) {
+        return LongStream.range(0, count).boxed().toList();
+    }
+
+}
@@ -0,0 +1,275 @@
+package com.multicloud.batch.util;
+
+import com.multicloud.batch.dto.CloudProviderCostDTO;
+import com.multicloud.batch.dto.PerDayCostDTO;
+import com.multicloud.batch.enums.CloudProvider;
+import com.multicloud.batch.service.CustomerCostService;
+import com.multicloud.batch.service.InvoiceCostService;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Compares the cube answers of CustomerCostService and InvoiceCostService with the figures their
+ * queries return for the same fixture. The queries are MariaDB specific, so {@link #perDaySql} and
+ * {@link #providerSql} evaluate them row by row with MariaDB's decimal typing (DECIMAL(20, 8) costs,
+ * DECIMAL(5, 2) pricing, div_precision_increment 4).
+ */
+class CostCubeTest {
+
+    private static final LocalDate FROM = LocalDate.of(2025, 6, 1);
+    private static final LocalDate TO = LocalDate.of(2025, 6, 30);
+
+    private static final long PRODUCT = 7;
+    private static final long ORGANIZATION = 3;
+
+    private record BillingRow(String account, LocalDate day, CloudProvider provider, BigDecimal cost,
+                              BigDecimal extCost) {
+    }
+
+    private record PricingRow(long organizationId, LocalDate day, CloudProvider provider, BigDecimal discount,
+                              BigDecimal handlingFee, BigDecimal supportFee) {
+    }
+
+    private record Fees(BigDecimal cost, BigDecimal afterDiscount, BigDecimal handlingFee, BigDecimal supportFee) {
+    }
+
+    private final List<BillingRow> billings = List.of(
+            // Several rows per (account, day, provider) cell, the cube only sees their sums
+            row("111", 1, CloudProvider.AWS, "10.12345678", "11.87654321"),
+            row("111", 1, CloudProvider.AWS, "0.00000001", "0.00000003"),
+            row("222", 1, CloudProvider.AWS, "3.33333333", null),
+            row("111", 1, CloudProvider.GCP, "7.77777777", "8.00000001"),
+            row("222", 2, CloudProvider.HWC, "-1.50000000", "-1.25000000"),
+            row("222", 2, CloudProvider.HWC, "123456.98765432", "130000.00000007"),
+            // No pricing for this day
+            row("111", 3, CloudProvider.AWS, "5.55555555", "6.66666666"),
+            // No pricing for GCP on this day
+            row("222", 4, CloudProvider.GCP, "0.99999999", "1.00000001"),
+            row("111", 30, CloudProvider.AWS, "2.00000000", "2.10000000"),
+            // Not an account of the product
+            row("999", 1, CloudProvider.AWS, "1000.00000000", "1000.00000000")
+    );
+
+    private final List<PricingRow> pricing = List.of(
+            pricing(ORGANIZATION, 1, CloudProvider.AWS, "12.35", "3.33", "1.01"),
+            pricing(ORGANIZATION, 1, CloudProvider.GCP, "5.00", "0.00", "2.50"),
+            pricing(ORGANIZATION, 2, CloudProvider.HWC, "55.55", "7.77", "0.01"),
+            pricing(ORGANIZATION, 4, CloudProvider.AWS, "10.00", "1.00", "1.00"),
+            pricing(ORGANIZATION, 30, CloudProvider.AWS, "99.99", "12.34", "56.78"),
+            // Pricing of another organization on a cell the product has costs in
+            pricing(ORGANIZATION + 1, 1, CloudProvider.AWS, "50.00", "50.00", "50.00")
+    );
+
+    private final CostCube cube = cube();
+
+    private final CustomerCostService customerCostService = new CustomerCostService(null);
+    private final InvoiceCostService invoiceCostService = new InvoiceCostService(null);
+
+    @Test
+    void perDayCustomerCostMatchesQuery() {
+
+        for (boolean internal : new boolean[]{true, false}) {
+
+            List<PerDayCostDTO> expected = perDaySql(internal, FROM, TO);
+
+            List<PerDayCostDTO> actual = customerCostService.findPerDayCustomerCost(
+                    cube, PRODUCT, ORGANIZATION, internal, FROM, TO
+            );
+
+            assertEquals(expected, actual);
+        }
+
+    }
+
+    @Test
+    void perDayCustomerCostMatchesQueryForPartOfTheCube() {
+
+        LocalDate start = FROM.plusDays(1);
+        LocalDate end = FROM.plusDays(3);
+
+        assertEquals(
+                perDaySql(false, start, end),
+                customerCostService.findPerDayCustomerCost(cube, PRODUCT, ORGANIZATION, false, start, end)
+        );
+    }
+
+    @Test
+    void cloudProviderCostsMatchQuery() {
+
+        for (boolean internal : new boolean[]{true, false}) {
+
+            List<CloudProviderCostDTO> expected = providerSql(internal, FROM, TO);
+
+            List<CloudProviderCostDTO> actual = invoiceCostService.findCloudProviderCosts(
+                    cube, PRODUCT, ORGANIZATION, internal, FROM, TO
+            );
+
+            assertEquals(expected, actual);
+        }
+
+    }
+
+    @Test
+    void unknownProductHasNoCosts() {
+        assertEquals(List.of(), cube.perDayCustomerCost(PRODUCT + 1, ORGANIZATION, false, FROM, TO));
+        assertEquals(List.of(), cube.cloudProviderCosts(PRODUCT + 1, ORGANIZATION, false, FROM, TO));
+    }
+
+    @Test
+    void rangeOutsideOfTheCubeFails() {
+        assertThrows(
+                RuntimeException.class,
+                () -> cube.perDayCustomerCost(PRODUCT, ORGANIZATION, false, FROM.minusDays(1), TO)
+        );
+    }
+
+    private CostCube cube() {
+
+        CostCube.Builder builder = CostCube.builder(FROM, TO);
+
+        // Same pre-aggregation as CostCubeStoreService: summed per (account, day, provider), scaled to longs
+        Map<List<Object>, BigDecimal[]> cells = new LinkedHashMap<>();
+
+        for (BillingRow row : billings) {
+            BigDecimal[] sums = cells.computeIfAbsent(
+                    List.of(row.account(), row.day(), row.provider()),
+                    key -> new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO}
+            );
+            sums[0] = sums[0].add(coalesce(row.cost()));
+            sums[1] = sums[1].add(coalesce(row.extCost()));
+        }
+
+        cells.forEach((key, sums) -> builder.addCost(
+                (String) key.get(0), (LocalDate) key.get(1), (CloudProvider) key.get(2),
+                sums[0].movePointRight(CostCube.SCALE).longValueExact(),
+                sums[1].movePointRight(CostCube.SCALE).longValueExact()
+        ));
+
+        builder.addProductAccount(PRODUCT, ORGANIZATION, "111")
+                .addProductAccount(PRODUCT, ORGANIZATION, "222")
+                .addProductAccount(PRODUCT, ORGANIZATION + 1, "999");
+
+        for (PricingRow row : pricing) {
+            builder.addPricing(
+                    row.organizationId(), row.provider(), row.day(), row.discount(), row.handlingFee(), row.supportFee()
+            );
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * CustomerCostService#findPerDayCustomerCost, rows come back ordered by day and provider.
+     */
+    private List<PerDayCostDTO> perDaySql(boolean internal, LocalDate start, LocalDate end) {
+
+        Map<List<Object>, Fees> groups = new TreeMap<>(
+                Comparator.comparing((List<Object> key) -> (LocalDate) key.get(0))
+                        .thenComparing(key -> (CloudProvider) key.get(1))
+        );
+
+        for (BillingRow row : productRows(start, end)) {
+
+            Fees fees = rowFees(row, internal);
+
+            groups.merge(List.of(row.day(), row.provider()), fees, (a, b) -> new Fees(
+                    a.cost().add(b.cost()),
+                    a.afterDiscount().add(b.afterDiscount()),
+                    a.handlingFee().add(b.handlingFee()),
+                    a.supportFee().add(b.supportFee())
+            ));
+        }
+
+        List<PerDayCostDTO> result = new ArrayList<>();
+
+        groups.forEach((key, fees) -> result.add(new PerDayCostDTO(
+                (LocalDate) key.get(0), (CloudProvider) key.get(1),
+                fees.cost(), fees.afterDiscount(), fees.handlingFee(), fees.supportFee()
+        )));
+
+        return result;
+    }
+
+    /**
+     * InvoiceCostService#findCloudProviderCosts, grouped by the provider name.
+     */
+    private List<CloudProviderCostDTO> providerSql(boolean internal, LocalDate start, LocalDate end) {
+
+        Map<String, BigDecimal> groups = new TreeMap<>();
+
+        for (BillingRow row : productRows(start, end)) {
+            groups.merge(row.provider().name(), rowFees(row, internal).afterDiscount(), BigDecimal::add);
+        }
+
+        List<CloudProviderCostDTO> result = new ArrayList<>();
+
+        groups.forEach((provider, cost) -> result.add(new CloudProviderCostDTO(provider, cost)));
+
+        return result;
+    }
+
+    private List<BillingRow> productRows(LocalDate start, LocalDate end) {
+        return billings.stream()
+                .filter(row -> !row.account().equals("999"))
+                .filter(row -> !row.day().isBefore(start) && !row.day().isAfter(end))
+                .toList();
+    }
+
+    /**
+     * One row of the LEFT JOIN, a missing pricing row is COALESCE(d.x, 0) of a DECIMAL(5, 2) column.
+     */
+    private Fees rowFees(BillingRow row, boolean internal) {
+
+        PricingRow rowPricing = pricing.stream()
+                .filter(p -> p.organizationId() == ORGANIZATION && p.day().equals(row.day())
+                        && p.provider() == row.provider())
+                .findFirst()
+                .orElse(null);
+
+        BigDecimal zero = new BigDecimal("0.00");
+        BigDecimal discount = rowPricing == null ? zero : rowPricing.discount();
+        BigDecimal handlingFee = rowPricing == null ? zero : rowPricing.handlingFee();
+        BigDecimal supportFee = rowPricing == null ? zero : rowPricing.supportFee();
+
+        BigDecimal cost = coalesce(internal ? row.cost() : row.extCost());
+        BigDecimal afterDiscount = cost.subtract(divide(cost.multiply(discount)));
+
+        return new Fees(
+                cost,
+                afterDiscount,
+                divide(afterDiscount.multiply(handlingFee)),
+                divide(afterDiscount.multiply(supportFee))
+        );
+    }
+
+    private static BigDecimal divide(BigDecimal value) {
+        return value.divide(BigDecimal.valueOf(100), value.scale() + 4, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal coalesce(BigDecimal value) {
+        return value == null ? new BigDecimal("0.00000000") : value;
+    }
+
+    private static BillingRow row(String account, int day, CloudProvider provider, String cost, String extCost) {
+        return new BillingRow(
+                account, FROM.plusDays(day - 1), provider,
+                new BigDecimal(cost), extCost == null ? null : new BigDecimal(extCost)
+        );
+    }
+
+    private static PricingRow pricing(long organizationId, int day, CloudProvider provider, String discount,
+                                      String handlingFee, String supportFee) {
+        return new PricingRow(
+                organizationId, FROM.plusDays(day - 1), provider,
+                new BigDecimal(discount), new BigDecimal(handlingFee), new BigDecimal(supportFee)
+        );
+    }
+
+}
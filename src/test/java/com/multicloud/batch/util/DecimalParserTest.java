@@ -0,0 +1,128 @@
+package com.multicloud.batch.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecimalParserTest {
+
+    @Test
+    void plainValuesMatchBigDecimal() {
+
+        List<String> values = List.of(
+                "1", "12.34560000", "-0.5", "+7", "0.00000001", "-123456.78901234", "5.", ".5", "-.25",
+                "000123.4500", "-0000.0001000"
+        );
+
+        for (String value : values) {
+            assertEquals(new BigDecimal(value), DecimalParser.parse(value), value);
+        }
+
+    }
+
+    @Test
+    void zerosAreTheSharedZero() {
+
+        for (String value : List.of("0", "-0", "+0", "0.00000000", "-0.0", "000", ".0")) {
+            assertSame(BigDecimal.ZERO, DecimalParser.parse(value), value);
+        }
+
+    }
+
+    @Test
+    void emptyAndNullAreZero() {
+        assertSame(BigDecimal.ZERO, DecimalParser.parse(null));
+        assertSame(BigDecimal.ZERO, DecimalParser.parse(""));
+    }
+
+    @Test
+    void exponentsMatchBigDecimal() {
+
+        for (String value : List.of("1E+3", "1.5e-7", "-2.5E10", "1e0", "0E-8", "+3.0E2")) {
+            assertEquals(new BigDecimal(value), DecimalParser.parse(value), value);
+        }
+
+    }
+
+    @Test
+    void precisionBeyondALongMatchesBigDecimal() {
+
+        List<String> values = List.of(
+                // 18 significant digits, still built from a long
+                "123456789012345678",
+                "-0.123456789012345678",
+                "0.000000123456789012345678",
+                "999999999999999999",
+                // 19 and more, BigDecimal's own parsing
+                "1234567890123456789",
+                "-99999999999999999.99",
+                "9223372036854775808",
+                "0.12345678901234567890123456789",
+                "12345678901234567890123456789.123456789"
+        );
+
+        for (String value : values) {
+            assertEquals(new BigDecimal(value), DecimalParser.parse(value), value);
+        }
+
+    }
+
+    @Test
+    void randomValuesMatchBigDecimal() {
+
+        Random random = new Random(42);
+
+        for (int i = 0; i < 10_000; i++) {
+
+            StringBuilder value = new StringBuilder();
+
+            switch (random.nextInt(3)) {
+                case 0 -> value.append('-');
+                case 1 -> value.append('+');
+                default -> {
+                }
+            }
+
+            int integerDigits = 1 + random.nextInt(12);
+            int fractionDigits = random.nextInt(12);
+
+            for (int d = 0; d < integerDigits; d++) {
+                value.append((char) ('0' + random.nextInt(10)));
+            }
+
+            if (fractionDigits > 0) {
+
+                value.append('.');
+
+                for (int d = 0; d < fractionDigits; d++) {
+                    value.append((char) ('0' + random.nextInt(10)));
+                }
+
+            }
+
+            BigDecimal expected = new BigDecimal(value.toString());
+            BigDecimal parsed = DecimalParser.parse(value.toString());
+
+            if (expected.signum() == 0) {
+                assertSame(BigDecimal.ZERO, parsed, value.toString());
+            } else {
+                assertEquals(expected, parsed, value.toString());
+            }
+        }
+
+    }
+
+    @Test
+    void malformedValuesFail() {
+
+        for (String value : List.of("abc", "-", "+", ".", "1.2.3", " 1", "1,5", "--1", "1-")) {
+            assertThrows(RuntimeException.class, () -> DecimalParser.parse(value), value);
+        }
+
+    }
+
+}